@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 1998-2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.ma2.Index;
+import ucar.ma2.IndexIterator;
+import ucar.ma2.InvalidRangeException;
+
+/** Iterating over ucar.ma2.Array, and taking sections and slices. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ArrayBenchmark {
+  private static final int[] SHAPE = {50, 180, 360};
+
+  private Array array;
+  private Array section;
+
+  @Setup
+  public void setup() throws InvalidRangeException {
+    array = Array.factory(DataType.FLOAT, SHAPE, Fixtures.makeField(SHAPE[0] * SHAPE[1] * SHAPE[2], SHAPE[2]));
+    section = array.section(new int[] {10, 45, 90}, new int[] {20, 90, 180});
+  }
+
+  @Benchmark
+  public double iterateContiguous() {
+    double sum = 0;
+    IndexIterator iter = array.getIndexIterator();
+    while (iter.hasNext()) {
+      sum += iter.getFloatNext();
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public double iterateSection() {
+    double sum = 0;
+    IndexIterator iter = section.getIndexIterator();
+    while (iter.hasNext()) {
+      sum += iter.getFloatNext();
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public double indexSection() {
+    double sum = 0;
+    int[] shape = section.getShape();
+    Index index = section.getIndex();
+    for (int i = 0; i < shape[0]; i++) {
+      for (int j = 0; j < shape[1]; j++) {
+        for (int k = 0; k < shape[2]; k++) {
+          sum += section.getFloat(index.set(i, j, k));
+        }
+      }
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public Array makeSection() throws InvalidRangeException {
+    return array.section(new int[] {10, 45, 90}, new int[] {20, 90, 180});
+  }
+
+  @Benchmark
+  public Array copySection() throws InvalidRangeException {
+    return array.section(new int[] {10, 45, 90}, new int[] {20, 90, 180}).copy();
+  }
+
+  @Benchmark
+  public Array copySlice() {
+    return array.slice(1, 90).copy();
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 1998-2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ucar.nc2.iosp.bufr.Message;
+import ucar.nc2.iosp.bufr.MessageScanner;
+import ucar.unidata.io.RandomAccessFile;
+
+/** Iterating over the messages of a BUFR file, made of many copies of a sample file. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BufrScanBenchmark {
+  private static final String SAMPLE = "bufr/src/test/data/RadiosondeStationData.bufr";
+  private static final int COPIES = 200;
+
+  private Path dir;
+  private String location;
+
+  @Setup
+  public void setup() throws IOException {
+    dir = Fixtures.createTempDir("bufr");
+    Path file = dir.resolve("messages.bufr");
+    Fixtures.repeat(Fixtures.sourceFile(SAMPLE), COPIES, file);
+    location = file.toString();
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    Fixtures.deleteRecursively(dir);
+  }
+
+  @Benchmark
+  public int scanMessages() throws IOException {
+    int nobs = 0;
+    try (RandomAccessFile raf = new RandomAccessFile(location, "r")) {
+      MessageScanner scanner = new MessageScanner(raf);
+      while (scanner.hasNext()) {
+        Message m = scanner.next();
+        if (m != null) {
+          nobs += m.getNumberDatasets();
+        }
+      }
+    }
+    return nobs;
+  }
+
+  @Benchmark
+  public int scanAndCountBits() throws IOException {
+    int nok = 0;
+    try (RandomAccessFile raf = new RandomAccessFile(location, "r")) {
+      MessageScanner scanner = new MessageScanner(raf);
+      while (scanner.hasNext()) {
+        Message m = scanner.next();
+        if (m != null && m.isBitCountOk()) {
+          nok++;
+        }
+      }
+    }
+    return nok;
+  }
+}
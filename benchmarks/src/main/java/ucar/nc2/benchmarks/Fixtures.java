@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 1998-2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.benchmarks;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Makes the files read by the benchmarks. Files are generated in a temporary directory, except for formats that the
+ * library can't write (GRIB, BUFR), which are made from the sample files in the source tree.
+ */
+class Fixtures {
+  /** The root of the netcdf-java source tree, set by the jmh task. */
+  static final String DATA_DIR_PROPERTY = "unidata.benchmarks.dataDir";
+
+  private Fixtures() {}
+
+  /** A file in the source tree, given its path relative to the root. */
+  static Path sourceFile(String path) throws IOException {
+    Path file = Paths.get(System.getProperty(DATA_DIR_PROPERTY, "."), path);
+    if (!Files.exists(file)) {
+      throw new FileNotFoundException(file + " not found; set -D" + DATA_DIR_PROPERTY + " to the source tree root");
+    }
+    return file;
+  }
+
+  static Path createTempDir(String prefix) throws IOException {
+    return Files.createTempDirectory("benchmarks-" + prefix);
+  }
+
+  static void deleteRecursively(Path dir) throws IOException {
+    if (dir == null || !Files.exists(dir)) {
+      return;
+    }
+    try (Stream<Path> paths = Files.walk(dir)) {
+      paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+    }
+  }
+
+  /** Write n copies of the file to dest, eg to make a file with many messages. */
+  static void repeat(Path file, int n, Path dest) throws IOException {
+    byte[] bytes = Files.readAllBytes(file);
+    byte[] result = new byte[bytes.length * n];
+    for (int i = 0; i < n; i++) {
+      System.arraycopy(bytes, 0, result, i * bytes.length, bytes.length);
+    }
+    Files.write(dest, result);
+  }
+
+  /**
+   * A smooth field with some repeatable noise, which compresses about as well as real data.
+   *
+   * @param n number of values
+   * @param period number of values in a wave
+   */
+  static float[] makeField(int n, int period) {
+    float[] data = new float[n];
+    long seed = 17;
+    for (int i = 0; i < n; i++) {
+      seed = seed * 6364136223846793005L + 1442695040888963407L;
+      float noise = (seed >>> 40) / (float) (1 << 24);
+      data[i] = (float) (280.0 + 20.0 * Math.sin(2 * Math.PI * i / period)) + noise;
+    }
+    return data;
+  }
+}
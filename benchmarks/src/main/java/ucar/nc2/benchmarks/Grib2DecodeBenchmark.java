@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 1998-2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import ucar.nc2.grib.grib2.Grib2Record;
+import ucar.nc2.grib.grib2.Grib2RecordScanner;
+import ucar.unidata.io.RandomAccessFile;
+
+/**
+ * Decoding the data of GRIB2 records, from sample files with complex packing and spatial differencing
+ * (data representation template 5.3) and JPEG2000 (template 5.40).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class Grib2DecodeBenchmark {
+
+  @Param({"complex", "jpeg2000"})
+  public String packing;
+
+  private RandomAccessFile raf;
+  private final List<Grib2Record> records = new ArrayList<>();
+
+  @Setup
+  public void setup() throws IOException {
+    String sample;
+    switch (packing) {
+      case "complex":
+        sample = "grib/src/test/data/GFS_Global_onedeg_20220627_0000.TotalPrecip.Out48hrs.grib2";
+        break;
+      case "jpeg2000":
+        sample = "grib/src/test/data/ofs_atl.grib2";
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown packing " + packing);
+    }
+    raf = new RandomAccessFile(Fixtures.sourceFile(sample).toString(), "r");
+    Grib2RecordScanner scanner = new Grib2RecordScanner(raf);
+    while (scanner.hasNext()) {
+      records.add(scanner.next());
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    if (raf != null) {
+      raf.close();
+    }
+  }
+
+  @Benchmark
+  public void decodeRecords(Blackhole bh) throws IOException {
+    for (Grib2Record record : records) {
+      bh.consume(record.readData(raf));
+    }
+  }
+}
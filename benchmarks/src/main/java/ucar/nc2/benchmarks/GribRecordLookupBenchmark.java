@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 1998-2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import ucar.nc2.grib.collection.GribCollectionImmutable.Record;
+import ucar.nc2.grib.collection.GribCollectionImmutable.RecordList;
+import ucar.nc2.grib.coord.SparseArray;
+
+/**
+ * Looking up the records of a synthetic GRIB variable with millions of records, from several threads: records kept as
+ * objects behind a lock, or kept in primitive arrays without one. The retained heap of each is printed in setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class GribRecordLookupBenchmark {
+  private static final int NRECORDS = 4_000_000;
+
+  @Param({"objects", "arrays"})
+  public String records;
+
+  private SparseArray<Record> sa;
+  private final Object lock = new Object();
+
+  @Setup
+  public void setup() {
+    long before = usedHeap();
+    int[] track = new int[NRECORDS];
+    for (int i = 0; i < NRECORDS; i++) {
+      track[i] = i + 1;
+    }
+    List<Record> content;
+    switch (records) {
+      case "objects":
+        content = new ArrayList<>(NRECORDS);
+        for (int i = 0; i < NRECORDS; i++) {
+          content.add(new Record(i % 100, 1000L * i, 0, 16));
+        }
+        break;
+      case "arrays":
+        int[] fileno = new int[NRECORDS];
+        long[] pos = new long[NRECORDS];
+        int[] drsOffset = new int[NRECORDS];
+        for (int i = 0; i < NRECORDS; i++) {
+          fileno[i] = i % 100;
+          pos[i] = 1000L * i;
+          drsOffset[i] = 16;
+        }
+        content = new RecordList(fileno, pos, new int[NRECORDS], drsOffset);
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown records " + records);
+    }
+    sa = new SparseArray<>(new int[] {NRECORDS / 1000, 1000}, track, content, 0);
+    System.out.printf("%n%s: %d MB retained for %d records%n", records, (usedHeap() - before) >> 20, NRECORDS);
+  }
+
+  private static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  @Benchmark
+  public long lookup() {
+    int index = ThreadLocalRandom.current().nextInt(NRECORDS);
+    Record record;
+    if (records.equals("objects")) {
+      synchronized (lock) { // as the records were looked up before
+        record = sa.getContent(index);
+      }
+    } else {
+      record = sa.getContent(index);
+    }
+    return record.pos + record.fileno;
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 1998-2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.ma2.InvalidRangeException;
+import ucar.nc2.Attribute;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFiles;
+import ucar.nc2.Variable;
+import ucar.nc2.constants.CDM;
+import ucar.nc2.ffi.netcdf.NetcdfClibrary;
+import ucar.nc2.write.Nc4Chunking;
+import ucar.nc2.write.Nc4ChunkingStrategy;
+import ucar.nc2.write.NetcdfFileFormat;
+import ucar.nc2.write.NetcdfFormatWriter;
+
+/**
+ * Reading a chunked, deflated (with shuffle) NetCDF-4 variable with the pure java HDF5 reader.
+ * Writing the file needs the netCDF-C library.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class Hdf5ChunkedReadBenchmark {
+  private static final int NT = 50;
+  private static final int NY = 180;
+  private static final int NX = 360;
+
+  private Path dir;
+  private NetcdfFile ncfile;
+  private Variable data;
+
+  @Setup
+  public void setup() throws IOException, InvalidRangeException {
+    if (!NetcdfClibrary.isLibraryPresent()) {
+      throw new IllegalStateException("Writing the NetCDF-4 file for this benchmark needs the netCDF-C library");
+    }
+    dir = Fixtures.createTempDir("hdf5");
+    String location = dir.resolve("chunked.nc4").toString();
+
+    Nc4Chunking chunker = Nc4ChunkingStrategy.factory(Nc4Chunking.Strategy.standard, 5, true);
+    NetcdfFormatWriter.Builder builder =
+        NetcdfFormatWriter.createNewNetcdf4(NetcdfFileFormat.NETCDF4, location, chunker).setFill(false);
+    builder.addDimension("time", NT);
+    builder.addDimension("y", NY);
+    builder.addDimension("x", NX);
+    builder.addVariable("data", DataType.FLOAT, "time y x").addAttribute(Attribute.builder(CDM.CHUNK_SIZES)
+        .setValues(Array.factory(DataType.INT, new int[] {3}, new int[] {1, 90, 90})).build());
+    int[] shape = {NT, NY, NX};
+    try (NetcdfFormatWriter writer = builder.build()) {
+      writer.write("data", Array.factory(DataType.FLOAT, shape, Fixtures.makeField(NT * NY * NX, NX)));
+    }
+
+    ncfile = NetcdfFiles.open(location);
+    data = ncfile.findVariable("data");
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    if (ncfile != null) {
+      ncfile.close();
+    }
+    Fixtures.deleteRecursively(dir);
+  }
+
+  @Benchmark
+  public Array readAll() throws IOException {
+    return data.read();
+  }
+
+  @Benchmark
+  public Array readOneChunk() throws IOException, InvalidRangeException {
+    return data.read("10, 0:89, 90:179");
+  }
+
+  @Benchmark
+  public Array readTimeSeries() throws IOException, InvalidRangeException {
+    return data.read(":, 90, 180");
+  }
+}
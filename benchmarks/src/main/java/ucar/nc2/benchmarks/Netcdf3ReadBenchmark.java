@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 1998-2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.ma2.InvalidRangeException;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFiles;
+import ucar.nc2.Variable;
+import ucar.nc2.write.NetcdfFormatWriter;
+
+/** Reading a NetCDF-3 file: a contiguous variable, and record variables interleaved in the records. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class Netcdf3ReadBenchmark {
+  private static final int NT = 50;
+  private static final int NY = 180;
+  private static final int NX = 360;
+
+  private Path dir;
+  private NetcdfFile ncfile;
+  private Variable contiguous;
+  private Variable record;
+
+  @Setup
+  public void setup() throws IOException, InvalidRangeException {
+    dir = Fixtures.createTempDir("netcdf3");
+    String location = dir.resolve("netcdf3.nc").toString();
+
+    NetcdfFormatWriter.Builder builder = NetcdfFormatWriter.createNewNetcdf3(location).setFill(false);
+    builder.addUnlimitedDimension("time");
+    builder.addDimension("z", NT);
+    builder.addDimension("y", NY);
+    builder.addDimension("x", NX);
+    builder.addVariable("contiguous", DataType.FLOAT, "z y x");
+    builder.addVariable("record", DataType.FLOAT, "time y x");
+    builder.addVariable("record2", DataType.FLOAT, "time y x");
+    int[] shape = {NT, NY, NX};
+    Array data = Array.factory(DataType.FLOAT, shape, Fixtures.makeField(NT * NY * NX, NX));
+    try (NetcdfFormatWriter writer = builder.build()) {
+      writer.write("contiguous", data);
+      writer.write("record", new int[3], data);
+      writer.write("record2", new int[3], data);
+    }
+
+    ncfile = NetcdfFiles.open(location);
+    contiguous = ncfile.findVariable("contiguous");
+    record = ncfile.findVariable("record");
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    if (ncfile != null) {
+      ncfile.close();
+    }
+    Fixtures.deleteRecursively(dir);
+  }
+
+  @Benchmark
+  public Array readContiguous() throws IOException {
+    return contiguous.read();
+  }
+
+  @Benchmark
+  public Array readContiguousTimeSeries() throws IOException, InvalidRangeException {
+    return contiguous.read(":, 90, 180");
+  }
+
+  @Benchmark
+  public Array readRecord() throws IOException {
+    return record.read();
+  }
+
+  @Benchmark
+  public Array readRecordTimeSeries() throws IOException, InvalidRangeException {
+    return record.read(":, 90, 180");
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 1998-2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.ma2.InvalidRangeException;
+import ucar.nc2.Variable;
+import ucar.nc2.write.NetcdfFormatWriter;
+
+/**
+ * Writing a NetCDF-3 file one record at a time, with many record variables: directly to the file, or assembling
+ * records in a record buffer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class Netcdf3WriteBenchmark {
+  private static final int NVARS = 40;
+  private static final int NT = 100;
+  private static final int NY = 45;
+  private static final int NX = 90;
+
+  @Param({"0", "8388608"})
+  public int recordBufferSize;
+
+  @Param({"true", "false"})
+  public boolean fill;
+
+  private Path dir;
+  private Array data;
+
+  @Setup
+  public void setup() throws IOException {
+    dir = Fixtures.createTempDir("netcdf3write");
+    data = Array.factory(DataType.FLOAT, new int[] {1, NY, NX}, Fixtures.makeField(NY * NX, NX));
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    Fixtures.deleteRecursively(dir);
+  }
+
+  @Benchmark
+  public long writeRecords() throws IOException, InvalidRangeException {
+    String location = dir.resolve("netcdf3.nc").toString();
+    NetcdfFormatWriter.Builder builder =
+        NetcdfFormatWriter.createNewNetcdf3(location).setFill(fill).setRecordBufferSize(recordBufferSize);
+    builder.addUnlimitedDimension("time");
+    builder.addDimension("y", NY);
+    builder.addDimension("x", NX);
+    builder.addVariable("time", DataType.DOUBLE, "time");
+    for (int i = 0; i < NVARS; i++) {
+      builder.addVariable("var" + i, DataType.FLOAT, "time y x");
+    }
+
+    try (NetcdfFormatWriter writer = builder.build()) {
+      Variable time = writer.findVariable("time");
+      Variable[] vars = new Variable[NVARS];
+      for (int i = 0; i < NVARS; i++) {
+        vars[i] = writer.findVariable("var" + i);
+      }
+      for (int t = 0; t < NT; t++) {
+        writer.write(time, new int[] {t}, Array.makeArray(DataType.DOUBLE, 1, t, 1));
+        for (Variable var : vars) {
+          writer.write(var, new int[] {t, 0, 0}, data);
+        }
+      }
+    }
+    return dir.resolve("netcdf3.nc").toFile().length();
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 1998-2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ucar.ma2.Array;
+import ucar.ma2.InvalidRangeException;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFiles;
+import ucar.nc2.Variable;
+
+/** Reading a Zarr v2 directory store with zlib compressed chunks. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ZarrChunkReadBenchmark {
+  private static final int NT = 50;
+  private static final int NY = 180;
+  private static final int NX = 360;
+  private static final int CHUNK_Y = 90;
+  private static final int CHUNK_X = 90;
+
+  private Path dir;
+  private NetcdfFile ncfile;
+  private Variable data;
+
+  @Setup
+  public void setup() throws IOException {
+    dir = Fixtures.createTempDir("zarr");
+    Path store = dir.resolve("bench.zarr");
+    writeStore(store);
+    ncfile = NetcdfFiles.open(store.toString());
+    data = ncfile.findVariable("data");
+  }
+
+  private static void writeStore(Path store) throws IOException {
+    Path var = Files.createDirectories(store.resolve("data"));
+    write(store.resolve(".zgroup"), "{\"zarr_format\": 2}");
+    write(var.resolve(".zattrs"), "{\"_ARRAY_DIMENSIONS\": [\"time\", \"y\", \"x\"]}");
+    write(var.resolve(".zarray"),
+        String.format("{\"chunks\": [1, %d, %d], \"compressor\": {\"id\": \"zlib\", \"level\": 1}, \"dtype\": \"<f4\", "
+            + "\"fill_value\": 0.0, \"filters\": null, \"order\": \"C\", \"shape\": [%d, %d, %d], \"zarr_format\": 2}",
+            CHUNK_Y, CHUNK_X, NT, NY, NX));
+
+    float[] field = Fixtures.makeField(NT * NY * NX, NX);
+    for (int t = 0; t < NT; t++) {
+      for (int cy = 0; cy < NY / CHUNK_Y; cy++) {
+        for (int cx = 0; cx < NX / CHUNK_X; cx++) {
+          ByteBuffer chunk = ByteBuffer.allocate(CHUNK_Y * CHUNK_X * 4).order(ByteOrder.LITTLE_ENDIAN);
+          for (int y = cy * CHUNK_Y; y < (cy + 1) * CHUNK_Y; y++) {
+            for (int x = cx * CHUNK_X; x < (cx + 1) * CHUNK_X; x++) {
+              chunk.putFloat(field[(t * NY + y) * NX + x]);
+            }
+          }
+          Files.write(var.resolve(t + "." + cy + "." + cx), deflate(chunk.array()));
+        }
+      }
+    }
+  }
+
+  private static void write(Path file, String content) throws IOException {
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static byte[] deflate(byte[] bytes) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length);
+    Deflater deflater = new Deflater(1);
+    try (DeflaterOutputStream dos = new DeflaterOutputStream(out, deflater)) {
+      dos.write(bytes);
+    } finally {
+      deflater.end();
+    }
+    return out.toByteArray();
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    if (ncfile != null) {
+      ncfile.close();
+    }
+    Fixtures.deleteRecursively(dir);
+  }
+
+  @Benchmark
+  public Array readAll() throws IOException {
+    return data.read();
+  }
+
+  @Benchmark
+  public Array readOneChunk() throws IOException, InvalidRangeException {
+    return data.read("10, 0:89, 90:179");
+  }
+
+  @Benchmark
+  public Array readTimeSeries() throws IOException, InvalidRangeException {
+    return data.read(":, 90, 180");
+  }
+}
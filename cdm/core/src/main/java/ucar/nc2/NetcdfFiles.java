@@ -21,15 +21,20 @@ import java.nio.channels.OverlappingFileLockException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Formatter;
 import java.util.List;
+import java.util.Map;
 import java.util.ServiceLoader;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import javax.annotation.Nullable;
-import ucar.nc2.internal.iosp.netcdf3.N3headerNew;
 import ucar.nc2.internal.iosp.netcdf3.N3iospNew;
 import ucar.nc2.iosp.AbstractIOServiceProvider;
+import ucar.nc2.iosp.FileSignature;
 import ucar.nc2.iosp.IOServiceProvider;
 import ucar.nc2.util.CancelTask;
 import ucar.nc2.util.DiskCache;
@@ -52,12 +57,18 @@ public class NetcdfFiles {
   private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(NetcdfFiles.class);
   private static final List<IOServiceProvider> registeredProviders = new ArrayList<>();
   private static final List<RandomAccessFileProvider> registeredRandomAccessFileProviders = new ArrayList<>();
-  private static final int default_buffersize = 8092;
+  private static final int default_buffersize = 8192;
   private static final StringLocker stringLocker = new StringLocker();
   private static final List<String> possibleCompressedSuffixes = Arrays.asList("Z", "zip", "gzip", "gz", "bz2");
   private static boolean loadWarnings = false;
   private static boolean userLoads;
 
+  // the number of bytes at the start of a file that are tested against the FileSignatures of the IOSPs
+  private static final int signatureHeaderSize = 1024;
+  private static final IOServiceProvider netcdf3Provider = new N3iospNew();
+  private static volatile List<IOServiceProvider> loadedProviders; // by the ServiceLoader, on first use
+  private static final Map<String, IospProbeStats> probeStats = new ConcurrentHashMap<>();
+
   // load core service providers
   static {
     // Make sure RC gets loaded
@@ -782,49 +793,173 @@ public class NetcdfFiles {
     if (NetcdfFile.debugSPI)
       log.info("NetcdfFile try to open = {}", raf.getLocation());
 
+    // read the start of the file once, and only call isValidFile() on the iosps with a signature that may match
+    byte[] header = new byte[signatureHeaderSize];
+    int headerLength = 0;
+    long fileLength = Long.MAX_VALUE; // if not known, any magic bytes beyond the header may match
+    if (!raf.isDirectory()) {
+      try {
+        fileLength = raf.length();
+        headerLength = (int) Math.min(signatureHeaderSize, fileLength);
+        raf.seek(0);
+        raf.readFully(header, 0, headerLength);
+      } catch (IOException e) {
+        headerLength = 0;
+        fileLength = Long.MAX_VALUE;
+      }
+    }
+    ProbedFile probed = new ProbedFile(raf, header, headerLength, fileLength);
+
     // Registered providers override defaults.
     for (IOServiceProvider registeredSpi : registeredProviders) {
       if (NetcdfFile.debugSPI)
         log.info(" try iosp = {}", registeredSpi.getClass().getName());
 
-      if (registeredSpi.isValidFile(raf)) {
-        // need a new instance for thread safety
-        Class c = registeredSpi.getClass();
-        try {
-          return (IOServiceProvider) c.newInstance();
-        } catch (InstantiationException e) {
-          throw new IOException("IOServiceProvider " + c.getName() + "must have no-arg constructor.");
-        } catch (IllegalAccessException e) {
-          throw new IOException("IOServiceProvider " + c.getName() + " IllegalAccessException: " + e.getMessage());
-        }
+      if (probed.isValidFile(registeredSpi)) {
+        return newInstance(registeredSpi); // need a new instance for thread safety
       }
     }
 
-    if (N3headerNew.isValidFile(raf)) {
+    if (probed.isValidFile(netcdf3Provider)) {
       return new N3iospNew();
+    }
 
-    } else {
-      // look for dynamically loaded IOSPs, and sort before using
-      final ServiceLoader<IOServiceProvider> iosps = ServiceLoader.load(IOServiceProvider.class);
-      final List<IOServiceProvider> sortedIosps = Lists.newArrayList(iosps);
-      Collections.sort(sortedIosps);
-
-      for (IOServiceProvider loadedSpi : sortedIosps) {
-        if (loadedSpi.isValidFile(raf)) {
-          Class c = loadedSpi.getClass();
-          try {
-            return (IOServiceProvider) c.newInstance();
-          } catch (InstantiationException e) {
-            throw new IOException("IOServiceProvider " + c.getName() + "must have no-arg constructor.");
-          } catch (IllegalAccessException e) {
-            throw new IOException("IOServiceProvider " + c.getName() + " IllegalAccessException: " + e.getMessage());
-          }
-        }
+    // look for dynamically loaded IOSPs
+    for (IOServiceProvider loadedSpi : getLoadedProviders()) {
+      if (probed.isValidFile(loadedSpi)) {
+        return newInstance(loadedSpi);
       }
     }
     return null;
   }
 
+  private static IOServiceProvider newInstance(IOServiceProvider spi) throws IOException {
+    Class c = spi.getClass();
+    try {
+      return (IOServiceProvider) c.newInstance();
+    } catch (InstantiationException e) {
+      throw new IOException("IOServiceProvider " + c.getName() + "must have no-arg constructor.");
+    } catch (IllegalAccessException e) {
+      throw new IOException("IOServiceProvider " + c.getName() + " IllegalAccessException: " + e.getMessage());
+    }
+  }
+
+  // The IOSPs found by the ServiceLoader, sorted before using. They are only looked for once.
+  private static List<IOServiceProvider> getLoadedProviders() {
+    List<IOServiceProvider> result = loadedProviders;
+    if (result == null) {
+      synchronized (NetcdfFiles.class) {
+        result = loadedProviders;
+        if (result == null) {
+          List<IOServiceProvider> sortedIosps = Lists.newArrayList(ServiceLoader.load(IOServiceProvider.class));
+          Collections.sort(sortedIosps);
+          result = Collections.unmodifiableList(sortedIosps);
+          loadedProviders = result;
+        }
+      }
+    }
+    return result;
+  }
+
+  // The start of a file, read once to test the FileSignatures of the IOSPs
+  private static class ProbedFile {
+    final ucar.unidata.io.RandomAccessFile raf;
+    final byte[] header;
+    final int headerLength;
+    final long fileLength;
+
+    ProbedFile(ucar.unidata.io.RandomAccessFile raf, byte[] header, int headerLength, long fileLength) {
+      this.raf = raf;
+      this.header = header;
+      this.headerLength = headerLength;
+      this.fileLength = fileLength;
+    }
+
+    boolean isValidFile(IOServiceProvider spi) throws IOException {
+      IospProbeStats stats = probeStats.computeIfAbsent(spi.getClass().getName(), k -> new IospProbeStats());
+      if (!mayMatch(spi.getFileSignatures())) {
+        stats.skipped.increment();
+        return false;
+      }
+
+      long start = System.nanoTime();
+      boolean valid = false;
+      try {
+        valid = spi.isValidFile(raf);
+        return valid;
+      } finally {
+        stats.count.increment();
+        stats.nanos.add(System.nanoTime() - start);
+        if (valid) {
+          stats.valid.increment();
+        }
+      }
+    }
+
+    private boolean mayMatch(List<FileSignature> signatures) {
+      if (signatures.isEmpty()) {
+        return true;
+      }
+      for (FileSignature signature : signatures) {
+        if (signature.mayMatch(header, headerLength, fileLength, raf.getLocation())) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  /** Statistics of the calls to isValidFile() of one IOServiceProvider class, when opening files. */
+  public static class IospProbeStats {
+    private final LongAdder count = new LongAdder();
+    private final LongAdder valid = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+
+    /** Number of calls to isValidFile(). */
+    public long getCount() {
+      return count.sum();
+    }
+
+    /** Number of calls to isValidFile() that returned true. */
+    public long getValid() {
+      return valid.sum();
+    }
+
+    /** Number of files that isValidFile() was not called on, because none of the FileSignatures matched. */
+    public long getSkipped() {
+      return skipped.sum();
+    }
+
+    /** Total time spent in isValidFile(), in nanoseconds. */
+    public long getNanos() {
+      return nanos.sum();
+    }
+  }
+
+  /**
+   * Get the statistics of the calls to isValidFile() made when opening files, since startup or the last
+   * {@link #clearIospProbeStats()}.
+   *
+   * @return statistics keyed by the class name of the IOServiceProvider.
+   */
+  public static Map<String, IospProbeStats> getIospProbeStats() {
+    return Collections.unmodifiableMap(new TreeMap<>(probeStats));
+  }
+
+  public static void clearIospProbeStats() {
+    probeStats.clear();
+  }
+
+  public static void showIospProbeStats(Formatter f) {
+    f.format("IOSP probes: count, valid, skipped, msecs%n");
+    for (Map.Entry<String, IospProbeStats> entry : getIospProbeStats().entrySet()) {
+      IospProbeStats stats = entry.getValue();
+      f.format(" %-60s %8d %8d %8d %10.3f%n", entry.getKey(), stats.getCount(), stats.getValid(), stats.getSkipped(),
+          stats.getNanos() / 1.0e6);
+    }
+  }
+
   public static NetcdfFile build(IOServiceProvider spi, ucar.unidata.io.RandomAccessFile raf, String location,
       ucar.nc2.util.CancelTask cancelTask) throws IOException {
 
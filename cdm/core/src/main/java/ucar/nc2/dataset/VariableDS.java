@@ -293,21 +293,7 @@ public class VariableDS extends Variable implements VariableEnhanced, EnhanceSca
         toApply.add(classifier);
       }
 
-      double[] dataArray = (double[]) data.get1DJavaArray(DataType.DOUBLE);
-
-      dataArray = Arrays.stream(dataArray).parallel().map((num) -> {
-        for (Enhancement e : toApply) {
-          num = e.convert(num);
-        }
-        return num;
-      }).toArray();
-
-      Array out = Array.factory(convertedType, data.getShape());
-      IndexIterator iterOut = out.getIndexIterator();
-      for (int i = 0; i < data.getSize(); i++) {
-        iterOut.setObjectNext(dataArray[i]);
-      }
-      return out;
+      return new EnhancementPipeline(toApply, convertedType).convert(data);
     }
   }
 
@@ -5,17 +5,138 @@
 
 package ucar.nc2.filter;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.stream.IntStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
-
-// TODO: Still to be implemented
+/**
+ * Filter implementation of the Blosc (version 1) meta-compressor.
+ * <p>
+ * A Blosc frame is a 16 byte header, followed by a table of block offsets and the compressed blocks.
+ * Each block is optionally byte or bit shuffled and then compressed, possibly in one stream per byte of the type.
+ * The blosclz, lz4, lz4hc and zlib internal codecs are supported; snappy and zstd are not.
+ * Independent blocks of large frames are encoded and decoded in parallel.
+ */
 public class Blosc extends Filter {
 
   private static final String name = "blosc";
 
   private static final int id = 32001;
 
-  public Blosc(Map<String, Object> properties) {}
+  // header layout
+  private static final int HEADER_SIZE = 16;
+  private static final int VERSION_FORMAT = 2;
+  private static final int VERSION_LZ = 1;
+
+  // header flags
+  private static final int DOSHUFFLE = 0x01;
+  private static final int MEMCPYED = 0x02;
+  private static final int DOBITSHUFFLE = 0x04;
+  private static final int DONT_SPLIT = 0x10;
+
+  // shuffle modes
+  private static final int NOSHUFFLE = 0;
+  private static final int SHUFFLE = 1;
+  private static final int BITSHUFFLE = 2;
+  private static final int AUTOSHUFFLE = -1;
+
+  // blocks are split into one stream per byte of the type, for small types and large enough blocks
+  private static final int MAX_SPLITS = 16;
+  private static final int MIN_BUFFERSIZE = 128;
+  private static final int MAX_TYPESIZE = 255;
+
+  // frames smaller than this are not worth spreading across threads
+  private static final int PARALLEL_THRESHOLD = 256 * 1024;
+
+  /**
+   * Internal codecs, with the code stored in the top 3 bits of the header flags
+   */
+  public enum Compressor {
+    BLOSCLZ("blosclz", 0), LZ4("lz4", 1), LZ4HC("lz4hc", 1), SNAPPY("snappy", 2), ZLIB("zlib", 3), ZSTD("zstd", 4);
+
+    private final String cname;
+    private final int code;
+
+    Compressor(String cname, int code) {
+      this.cname = cname;
+      this.code = code;
+    }
+
+    public String getName() {
+      return cname;
+    }
+
+    static Compressor fromName(String cname) {
+      for (Compressor c : values()) {
+        if (c.cname.equalsIgnoreCase(cname)) {
+          return c;
+        }
+      }
+      throw new IllegalArgumentException("Unknown blosc compressor: " + cname);
+    }
+
+    static Compressor fromCode(int code) throws IOException {
+      for (Compressor c : values()) {
+        if (c.code == code) {
+          return c;
+        }
+      }
+      throw new IOException("Unknown blosc compressor code: " + code);
+    }
+  }
+
+  private final Compressor compressor;
+  private final int clevel; // compression level
+  private final int shuffle; // shuffle mode
+  private final int blocksize; // 0 means automatic
+  private final int typesize;
+
+  public Blosc(Map<String, Object> properties) {
+    int[] data = (int[]) properties.get(Filters.Keys.DATA);
+    if (data != null && data.length >= 7) {
+      // HDF5 client data: filter revision, blosc version, typesize, buffer size, clevel, shuffle, compressor code
+      this.typesize = data[2];
+      this.clevel = data[4];
+      this.shuffle = data[5];
+      this.compressor = Compressor.values()[Math.min(Math.max(data[6], 0), Compressor.values().length - 1)];
+      this.blocksize = 0;
+    } else {
+      Object cname = properties.get("cname");
+      this.compressor = cname == null ? Compressor.LZ4 : Compressor.fromName(cname.toString());
+      this.clevel = getInt(properties, "clevel", 5);
+      this.shuffle = getInt(properties, "shuffle", SHUFFLE);
+      this.blocksize = getInt(properties, "blocksize", 0);
+      this.typesize = getInt(properties, "typesize", getInt(properties, Filters.Keys.ELEM_SIZE, 1));
+    }
+    validate();
+  }
+
+  private static int getInt(Map<String, Object> properties, String key, int defaultValue) {
+    Object obj = properties.get(key);
+    if (obj == null) {
+      return defaultValue;
+    } else if (obj instanceof String) {
+      return Integer.parseInt((String) obj);
+    }
+    return ((Number) obj).intValue();
+  }
+
+  private void validate() {
+    if (clevel < 0 || clevel > 9) {
+      throw new IllegalArgumentException("Invalid compression level: " + clevel);
+    }
+    if (shuffle < AUTOSHUFFLE || shuffle > BITSHUFFLE) {
+      throw new IllegalArgumentException("Invalid shuffle: " + shuffle);
+    }
+    if (blocksize < 0) {
+      throw new IllegalArgumentException("Invalid blocksize: " + blocksize);
+    }
+  }
 
   @Override
   public String getName() {
@@ -27,14 +148,722 @@ public class Blosc extends Filter {
     return id;
   }
 
+  //////////////////////////////////////////////////////////////////////////////////////////////
+  // encode
+
   @Override
-  public byte[] encode(byte[] dataIn) {
-    return new byte[0];
+  public byte[] encode(byte[] dataIn) throws IOException {
+    final int nbytes = dataIn.length;
+    final int tsize = (typesize < 1 || typesize > MAX_TYPESIZE) ? 1 : typesize;
+    if (clevel == 0 || nbytes < MIN_BUFFERSIZE || compressor == Compressor.SNAPPY || compressor == Compressor.ZSTD) {
+      // snappy and zstd cannot be produced here, so store uncompressed, which any blosc reader understands
+      return memcpyFrame(dataIn, tsize, 0);
+    }
+
+    int flags = compressor.code << 5;
+    int mode = shuffle == AUTOSHUFFLE ? (tsize > 1 ? SHUFFLE : NOSHUFFLE) : shuffle;
+    if (mode == SHUFFLE && tsize > 1) {
+      flags |= DOSHUFFLE;
+    } else if (mode == BITSHUFFLE) {
+      flags |= DOBITSHUFFLE;
+    }
+
+    final int bsize = computeBlocksize(nbytes, tsize);
+    // readers take the flag as the split mode of the whole frame, so set it whenever full blocks are not split
+    boolean split = compressor != Compressor.ZLIB && tsize <= MAX_SPLITS && (bsize / tsize) >= MIN_BUFFERSIZE;
+    if (!split) {
+      flags |= DONT_SPLIT;
+    }
+
+    final int nblocks = (nbytes + bsize - 1) / bsize;
+    final int finalFlags = flags;
+    byte[][] blocks = new byte[nblocks][];
+    IntStream range = IntStream.range(0, nblocks);
+    if (nblocks > 1 && nbytes >= PARALLEL_THRESHOLD) {
+      range = range.parallel();
+    }
+    range.forEach(b -> {
+      int start = b * bsize;
+      int len = Math.min(bsize, nbytes - start);
+      blocks[b] = compressBlock(dataIn, start, len, len < bsize, finalFlags, tsize);
+    });
+
+    long cbytes = HEADER_SIZE + 4L * nblocks;
+    for (byte[] block : blocks) {
+      cbytes += block.length;
+    }
+    if (cbytes >= nbytes + HEADER_SIZE) {
+      // compression did not pay off
+      return memcpyFrame(dataIn, tsize, compressor.code << 5);
+    }
+
+    byte[] out = new byte[(int) cbytes];
+    writeHeader(out, flags, tsize, nbytes, bsize, (int) cbytes);
+    int pos = HEADER_SIZE + 4 * nblocks;
+    for (int b = 0; b < nblocks; b++) {
+      writeInt(out, HEADER_SIZE + 4 * b, pos);
+      System.arraycopy(blocks[b], 0, out, pos, blocks[b].length);
+      pos += blocks[b].length;
+    }
+    return out;
+  }
+
+  private int computeBlocksize(int nbytes, int tsize) {
+    int bsize = blocksize;
+    if (bsize == 0) {
+      bsize = clevel <= 3 ? 64 * 1024 : clevel <= 6 ? 128 * 1024 : 256 * 1024;
+    }
+    bsize = Math.min(bsize, nbytes);
+    if (bsize > tsize) {
+      bsize -= bsize % tsize;
+    }
+    return Math.max(bsize, 1);
+  }
+
+  private byte[] memcpyFrame(byte[] dataIn, int tsize, int flags) {
+    byte[] out = new byte[dataIn.length + HEADER_SIZE];
+    writeHeader(out, flags | MEMCPYED, tsize, dataIn.length, dataIn.length, out.length);
+    System.arraycopy(dataIn, 0, out, HEADER_SIZE, dataIn.length);
+    return out;
+  }
+
+  private static void writeHeader(byte[] out, int flags, int tsize, int nbytes, int bsize, int cbytes) {
+    out[0] = (byte) VERSION_FORMAT;
+    out[1] = (byte) VERSION_LZ;
+    out[2] = (byte) flags;
+    out[3] = (byte) tsize;
+    writeInt(out, 4, nbytes);
+    writeInt(out, 8, bsize);
+    writeInt(out, 12, cbytes);
+  }
+
+  private byte[] compressBlock(byte[] src, int start, int bsize, boolean leftover, int flags, int tsize) {
+    byte[] block = Arrays.copyOfRange(src, start, start + bsize);
+    if ((flags & DOSHUFFLE) != 0) {
+      block = shuffle(block, tsize);
+    } else if ((flags & DOBITSHUFFLE) != 0) {
+      block = bitshuffle(block, tsize, VERSION_FORMAT);
+    }
+
+    int nsplits = numSplits(flags, tsize, bsize, leftover);
+    int neblock = bsize / nsplits;
+    byte[] out = new byte[bsize + 4 * nsplits];
+    int pos = 0;
+    for (int j = 0; j < nsplits; j++) {
+      int off = j * neblock;
+      int csize = compressStream(block, off, neblock, out, pos + 4, neblock);
+      if (csize <= 0 || csize >= neblock) {
+        // incompressible, store as is
+        System.arraycopy(block, off, out, pos + 4, neblock);
+        csize = neblock;
+      }
+      writeInt(out, pos, csize);
+      pos += 4 + csize;
+    }
+    return Arrays.copyOf(out, pos);
   }
 
+  /** returns the compressed size, or -1 if it does not fit in maxOut bytes */
+  private int compressStream(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int maxOut) {
+    switch (compressor) {
+      case BLOSCLZ:
+        return BloscLZ.compress(src, srcOff, srcLen, dst, dstOff, maxOut);
+      case LZ4:
+      case LZ4HC:
+        return LZ4.compress(src, srcOff, srcLen, dst, dstOff, maxOut);
+      case ZLIB:
+        Deflater deflater = new Deflater(clevel);
+        try {
+          deflater.setInput(src, srcOff, srcLen);
+          deflater.finish();
+          int n = deflater.deflate(dst, dstOff, maxOut);
+          return deflater.finished() ? n : -1;
+        } finally {
+          deflater.end();
+        }
+      default:
+        return -1;
+    }
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////
+  // decode
+
   @Override
-  public byte[] decode(byte[] dataIn) {
-    return new byte[0];
+  public byte[] decode(byte[] dataIn) throws IOException {
+    if (dataIn.length < HEADER_SIZE) {
+      throw new IOException("Blosc frame too short: " + dataIn.length);
+    }
+    final int version = dataIn[0] & 0xff;
+    final int flags = dataIn[2] & 0xff;
+    final int tsize = dataIn[3] & 0xff;
+    final int nbytes = readInt(dataIn, 4);
+    final int bsize = readInt(dataIn, 8);
+    final int cbytes = readInt(dataIn, 12);
+
+    if ((flags & (DOSHUFFLE | DOBITSHUFFLE)) == (DOSHUFFLE | DOBITSHUFFLE)) {
+      throw new IOException("Blosc2 extended headers are not supported");
+    }
+    if (nbytes < 0 || cbytes > dataIn.length || cbytes < HEADER_SIZE) {
+      throw new IOException(String.format("Invalid blosc header: nbytes=%d cbytes=%d", nbytes, cbytes));
+    }
+    byte[] dataOut = new byte[nbytes];
+    if (nbytes == 0) {
+      return dataOut;
+    }
+
+    if ((flags & MEMCPYED) != 0) {
+      if (cbytes < nbytes + HEADER_SIZE) {
+        throw new IOException("Blosc memcpyed frame is truncated");
+      }
+      System.arraycopy(dataIn, HEADER_SIZE, dataOut, 0, nbytes);
+      return dataOut;
+    }
+    if (bsize <= 0) {
+      throw new IOException("Invalid blosc blocksize: " + bsize);
+    }
+
+    final Compressor comp = Compressor.fromCode(flags >> 5);
+    if (comp == Compressor.SNAPPY || comp == Compressor.ZSTD) {
+      throw new IOException("Blosc internal compressor not supported: " + comp.getName());
+    }
+
+    final int nblocks = (int) (((long) nbytes + bsize - 1) / bsize);
+    if (HEADER_SIZE + 4L * nblocks > cbytes) {
+      throw new IOException("Blosc frame is truncated");
+    }
+    IntStream range = IntStream.range(0, nblocks);
+    if (nblocks > 1 && nbytes >= PARALLEL_THRESHOLD) {
+      range = range.parallel();
+    }
+    try {
+      range.forEach(b -> {
+        int start = b * bsize;
+        int len = Math.min(bsize, nbytes - start);
+        int srcOff = readInt(dataIn, HEADER_SIZE + 4 * b);
+        try {
+          decompressBlock(dataIn, srcOff, cbytes, dataOut, start, len, len < bsize, comp, flags, tsize, version);
+        } catch (IOException ioe) {
+          throw new UncheckedIOException(ioe);
+        }
+      });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    return dataOut;
+  }
+
+  private static void decompressBlock(byte[] src, int srcOff, int srcEnd, byte[] dest, int destOff, int bsize,
+      boolean leftover, Compressor comp, int flags, int tsize, int version) throws IOException {
+    boolean shuffled = (flags & DOSHUFFLE) != 0 && tsize > 1;
+    boolean bitshuffled = (flags & DOBITSHUFFLE) != 0;
+    byte[] block = (shuffled || bitshuffled) ? new byte[bsize] : dest;
+    int blockOff = (shuffled || bitshuffled) ? 0 : destOff;
+
+    int nsplits = numSplits(flags, tsize, bsize, leftover);
+    int neblock = bsize / nsplits;
+    int pos = srcOff;
+    for (int j = 0; j < nsplits; j++) {
+      if (pos < HEADER_SIZE || pos + 4 > srcEnd) {
+        throw new IOException("Blosc block offset out of range: " + pos);
+      }
+      int csize = readInt(src, pos);
+      pos += 4;
+      if (csize < 0 || pos + csize > srcEnd) {
+        throw new IOException("Blosc stream size out of range: " + csize);
+      }
+      int outOff = blockOff + j * neblock;
+      if (csize == neblock) {
+        System.arraycopy(src, pos, block, outOff, neblock);
+      } else {
+        int n = decompressStream(comp, src, pos, csize, block, outOff, neblock);
+        if (n != neblock) {
+          throw new IOException(String.format("Blosc %s stream decoded to %d bytes, expected %d", comp.getName(), n,
+              neblock));
+        }
+      }
+      pos += csize;
+    }
+
+    if (shuffled) {
+      System.arraycopy(unshuffle(block, tsize), 0, dest, destOff, bsize);
+    } else if (bitshuffled) {
+      System.arraycopy(bitunshuffle(block, tsize, version), 0, dest, destOff, bsize);
+    }
+  }
+
+  private static int decompressStream(Compressor comp, byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff,
+      int dstLen) throws IOException {
+    switch (comp) {
+      case BLOSCLZ:
+        return BloscLZ.decompress(src, srcOff, srcLen, dst, dstOff, dstLen);
+      case LZ4:
+      case LZ4HC:
+        return LZ4.decompress(src, srcOff, srcLen, dst, dstOff, dstLen);
+      case ZLIB:
+        Inflater inflater = new Inflater();
+        try {
+          inflater.setInput(src, srcOff, srcLen);
+          int total = 0;
+          while (total < dstLen && !inflater.finished()) {
+            int n = inflater.inflate(dst, dstOff + total, dstLen - total);
+            if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+              break;
+            }
+            total += n;
+          }
+          return total;
+        } catch (DataFormatException e) {
+          throw new IOException(e);
+        } finally {
+          inflater.end();
+        }
+      default:
+        throw new IOException("Blosc internal compressor not supported: " + comp.getName());
+    }
+  }
+
+  private static int numSplits(int flags, int tsize, int bsize, boolean leftover) {
+    boolean split = (flags & DONT_SPLIT) == 0 && tsize > 0 && tsize <= MAX_SPLITS && (bsize / tsize) >= MIN_BUFFERSIZE
+        && !leftover;
+    return split ? tsize : 1;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////
+  // shuffles; a trailing partial element (or partial group of 8 elements for bitshuffle) is left as is
+
+  static byte[] shuffle(byte[] in, int tsize) {
+    byte[] out = new byte[in.length];
+    int nelems = in.length / tsize;
+    for (int j = 0; j < tsize; j++) {
+      int dest = j * nelems;
+      for (int i = 0, src = j; i < nelems; i++, src += tsize) {
+        out[dest + i] = in[src];
+      }
+    }
+    int done = nelems * tsize;
+    System.arraycopy(in, done, out, done, in.length - done);
+    return out;
+  }
+
+  static byte[] unshuffle(byte[] in, int tsize) {
+    byte[] out = new byte[in.length];
+    int nelems = in.length / tsize;
+    for (int j = 0; j < tsize; j++) {
+      int src = j * nelems;
+      for (int i = 0, dest = j; i < nelems; i++, dest += tsize) {
+        out[dest] = in[src + i];
+      }
+    }
+    int done = nelems * tsize;
+    System.arraycopy(in, done, out, done, in.length - done);
+    return out;
+  }
+
+  /**
+   * Transpose bits: bit k of byte j of element i goes to bit (i % 8) of byte (i / 8) in the row (j * 8 + k),
+   * each row being nelems / 8 bytes long.
+   */
+  static byte[] bitshuffle(byte[] in, int tsize, int version) {
+    int nelems = bitshuffleElems(in.length, tsize, version);
+    if (nelems == 0) {
+      return in.clone();
+    }
+    byte[] out = new byte[in.length];
+    int rowLen = nelems / 8;
+    for (int j = 0; j < tsize; j++) {
+      for (int g = 0; g < rowLen; g++) {
+        // gather byte j of 8 consecutive elements, and transpose the 8x8 bit matrix
+        long x = 0;
+        for (int e = 0; e < 8; e++) {
+          x |= (in[(g * 8 + e) * tsize + j] & 0xffL) << (8 * e);
+        }
+        x = transpose8x8(x);
+        for (int k = 0; k < 8; k++) {
+          out[(j * 8 + k) * rowLen + g] = (byte) (x >>> (8 * k));
+        }
+      }
+    }
+    int done = nelems * tsize;
+    System.arraycopy(in, done, out, done, in.length - done);
+    return out;
+  }
+
+  static byte[] bitunshuffle(byte[] in, int tsize, int version) {
+    int nelems = bitshuffleElems(in.length, tsize, version);
+    if (nelems == 0) {
+      return in.clone();
+    }
+    byte[] out = new byte[in.length];
+    int rowLen = nelems / 8;
+    for (int j = 0; j < tsize; j++) {
+      for (int g = 0; g < rowLen; g++) {
+        long x = 0;
+        for (int k = 0; k < 8; k++) {
+          x |= (in[(j * 8 + k) * rowLen + g] & 0xffL) << (8 * k);
+        }
+        x = transpose8x8(x);
+        for (int e = 0; e < 8; e++) {
+          out[(g * 8 + e) * tsize + j] = (byte) (x >>> (8 * e));
+        }
+      }
+    }
+    int done = nelems * tsize;
+    System.arraycopy(in, done, out, done, in.length - done);
+    return out;
+  }
+
+  /** number of elements that are bitshuffled: format version 2 only shuffles when all of them can be */
+  private static int bitshuffleElems(int len, int tsize, int version) {
+    int nelems = len / tsize;
+    if (version <= VERSION_FORMAT) {
+      return nelems % 8 == 0 ? nelems : 0;
+    }
+    return nelems - nelems % 8;
+  }
+
+  /** transpose the 8x8 bit matrix whose rows are the bytes of x, least significant first */
+  private static long transpose8x8(long x) {
+    long t;
+    t = (x ^ (x >>> 7)) & 0x00AA00AA00AA00AAL;
+    x = x ^ t ^ (t << 7);
+    t = (x ^ (x >>> 14)) & 0x0000CCCC0000CCCCL;
+    x = x ^ t ^ (t << 14);
+    t = (x ^ (x >>> 28)) & 0x00000000F0F0F0F0L;
+    x = x ^ t ^ (t << 28);
+    return x;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////
+
+  private static int readInt(byte[] b, int pos) {
+    return (b[pos] & 0xff) | (b[pos + 1] & 0xff) << 8 | (b[pos + 2] & 0xff) << 16 | (b[pos + 3] & 0xff) << 24;
+  }
+
+  private static void writeInt(byte[] b, int pos, int val) {
+    b[pos] = (byte) val;
+    b[pos + 1] = (byte) (val >>> 8);
+    b[pos + 2] = (byte) (val >>> 16);
+    b[pos + 3] = (byte) (val >>> 24);
+  }
+
+  /** copy a match, which may overlap its own output */
+  private static void copyMatch(byte[] buf, int from, int to, int len) {
+    if (to - from >= len) {
+      System.arraycopy(buf, from, buf, to, len);
+    } else {
+      for (int i = 0; i < len; i++) {
+        buf[to + i] = buf[from + i];
+      }
+    }
+  }
+
+  /**
+   * The blosclz codec, a FastLZ derivative: literal runs of up to 32 bytes, and matches at a distance
+   * of up to 8191 bytes (or 65535 + 8191 with the far encoding).
+   */
+  private static class BloscLZ {
+    private static final int MAX_DISTANCE = 8191;
+    private static final int MAX_LITERAL = 32;
+    private static final int HASH_LOG = 12;
+
+    static int decompress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen)
+        throws IOException {
+      if (srcLen == 0) {
+        return 0;
+      }
+      int ip = srcOff;
+      final int ipLimit = srcOff + srcLen;
+      int op = dstOff;
+      final int opLimit = dstOff + dstLen;
+      int ctrl = src[ip++] & 31;
+
+      while (true) {
+        if (ctrl >= 32) {
+          // match
+          int len = (ctrl >>> 5) - 1;
+          int ofs = (ctrl & 31) << 8;
+          if (len == 7 - 1) {
+            int code;
+            do {
+              if (ip + 1 >= ipLimit) {
+                throw new IOException("Corrupt blosclz stream");
+              }
+              code = src[ip++] & 0xff;
+              len += code;
+            } while (code == 255);
+          } else if (ip + 1 >= ipLimit) {
+            throw new IOException("Corrupt blosclz stream");
+          }
+          int code = src[ip++] & 0xff;
+          len += 3;
+          int ref = op - ofs - code;
+
+          // match from 16-bit distance
+          if (code == 255 && ofs == (31 << 8)) {
+            if (ip + 1 >= ipLimit) {
+              throw new IOException("Corrupt blosclz stream");
+            }
+            ofs = (src[ip++] & 0xff) << 8;
+            ofs += src[ip++] & 0xff;
+            ref = op - ofs - MAX_DISTANCE;
+          }
+          ref--;
+
+          if (op + len > opLimit || ref < dstOff) {
+            throw new IOException("Corrupt blosclz stream");
+          }
+          copyMatch(dst, ref, op, len);
+          op += len;
+          if (ip >= ipLimit) {
+            break;
+          }
+          ctrl = src[ip++] & 0xff;
+        } else {
+          // literal
+          ctrl++;
+          if (op + ctrl > opLimit || ip + ctrl > ipLimit) {
+            throw new IOException("Corrupt blosclz stream");
+          }
+          System.arraycopy(src, ip, dst, op, ctrl);
+          op += ctrl;
+          ip += ctrl;
+          if (ip >= ipLimit) {
+            break;
+          }
+          ctrl = src[ip++] & 0xff;
+        }
+      }
+      return op - dstOff;
+    }
+
+    static int compress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int maxOut) {
+      int[] table = new int[1 << HASH_LOG];
+      Arrays.fill(table, -1);
+      final int srcEnd = srcOff + srcLen;
+      // the stream always ends with a literal run
+      final int matchLimit = srcEnd - 4;
+      int anchor = srcOff;
+      int ip = srcOff;
+      int op = dstOff;
+      final int opLimit = dstOff + maxOut;
+
+      while (ip < matchLimit - 4) {
+        int seq = readInt(src, ip);
+        int h = hash(seq);
+        int ref = table[h];
+        table[h] = ip;
+        int distance = ip - ref;
+        if (ref < 0 || distance > MAX_DISTANCE || readInt(src, ref) != seq) {
+          ip++;
+          continue;
+        }
+        int len = 4;
+        while (ip + len < matchLimit && src[ref + len] == src[ip + len]) {
+          len++;
+        }
+
+        op = writeLiterals(src, anchor, ip - anchor, dst, op, opLimit);
+        if (op < 0 || op + 3 + len / 255 > opLimit) {
+          return -1;
+        }
+        int dd = distance - 1;
+        int mlen = len - 2;
+        if (mlen < 7) {
+          dst[op++] = (byte) ((mlen << 5) + (dd >>> 8));
+        } else {
+          dst[op++] = (byte) ((7 << 5) + (dd >>> 8));
+          for (mlen -= 7; mlen >= 255; mlen -= 255) {
+            dst[op++] = (byte) 255;
+          }
+          dst[op++] = (byte) mlen;
+        }
+        dst[op++] = (byte) dd;
+
+        ip += len;
+        anchor = ip;
+      }
+
+      op = writeLiterals(src, anchor, srcEnd - anchor, dst, op, opLimit);
+      return op < 0 ? -1 : op - dstOff;
+    }
+
+    private static int writeLiterals(byte[] src, int start, int len, byte[] dst, int op, int opLimit) {
+      if (op + len + (len + MAX_LITERAL - 1) / MAX_LITERAL > opLimit) {
+        return -1;
+      }
+      while (len > 0) {
+        int n = Math.min(len, MAX_LITERAL);
+        dst[op++] = (byte) (n - 1);
+        System.arraycopy(src, start, dst, op, n);
+        op += n;
+        start += n;
+        len -= n;
+      }
+      return op;
+    }
+
+    private static int hash(int seq) {
+      return (seq * -1640531535) >>> (32 - HASH_LOG);
+    }
+  }
+
+  /**
+   * The LZ4 block format codec. Both lz4 and lz4hc produce this format; the compressor here is the fast one.
+   */
+  private static class LZ4 {
+    private static final int MIN_MATCH = 4;
+    private static final int LAST_LITERALS = 5;
+    private static final int MFLIMIT = 12;
+    private static final int MAX_DISTANCE = 65535;
+    private static final int HASH_LOG = 12;
+
+    static int decompress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen)
+        throws IOException {
+      int ip = srcOff;
+      final int ipLimit = srcOff + srcLen;
+      int op = dstOff;
+      final int opLimit = dstOff + dstLen;
+
+      while (ip < ipLimit) {
+        int token = src[ip++] & 0xff;
+
+        // literals
+        int litLen = token >>> 4;
+        if (litLen == 15) {
+          int b;
+          do {
+            if (ip >= ipLimit) {
+              throw new IOException("Corrupt lz4 stream");
+            }
+            b = src[ip++] & 0xff;
+            litLen += b;
+          } while (b == 255);
+        }
+        if (ip + litLen > ipLimit || op + litLen > opLimit) {
+          throw new IOException("Corrupt lz4 stream");
+        }
+        System.arraycopy(src, ip, dst, op, litLen);
+        ip += litLen;
+        op += litLen;
+        if (ip >= ipLimit) {
+          break; // last sequence has no match
+        }
+
+        // match
+        if (ip + 2 > ipLimit) {
+          throw new IOException("Corrupt lz4 stream");
+        }
+        int offset = (src[ip] & 0xff) | (src[ip + 1] & 0xff) << 8;
+        ip += 2;
+        int matchLen = token & 15;
+        if (matchLen == 15) {
+          int b;
+          do {
+            if (ip >= ipLimit) {
+              throw new IOException("Corrupt lz4 stream");
+            }
+            b = src[ip++] & 0xff;
+            matchLen += b;
+          } while (b == 255);
+        }
+        matchLen += MIN_MATCH;
+        int ref = op - offset;
+        if (offset == 0 || ref < dstOff || op + matchLen > opLimit) {
+          throw new IOException("Corrupt lz4 stream");
+        }
+        copyMatch(dst, ref, op, matchLen);
+        op += matchLen;
+      }
+      return op - dstOff;
+    }
+
+    static int compress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int maxOut) {
+      final int srcEnd = srcOff + srcLen;
+      final int opLimit = dstOff + maxOut;
+      int anchor = srcOff;
+      int ip = srcOff;
+      int op = dstOff;
+
+      if (srcLen > MFLIMIT) {
+        int[] table = new int[1 << HASH_LOG];
+        Arrays.fill(table, -1);
+        final int limit = srcEnd - MFLIMIT;
+        final int matchLimit = srcEnd - LAST_LITERALS;
+
+        while (ip < limit) {
+          int seq = readInt(src, ip);
+          int h = hash(seq);
+          int ref = table[h];
+          table[h] = ip;
+          if (ref < 0 || ip - ref > MAX_DISTANCE || readInt(src, ref) != seq) {
+            ip++;
+            continue;
+          }
+          int len = MIN_MATCH;
+          while (ip + len < matchLimit && src[ref + len] == src[ip + len]) {
+            len++;
+          }
+
+          int litLen = ip - anchor;
+          if (op + 1 + litLen + litLen / 255 + 2 + len / 255 + 1 > opLimit) {
+            return -1;
+          }
+          int tokenPos = op++;
+          int token = 0;
+          if (litLen >= 15) {
+            token = 15 << 4;
+            op = writeLength(dst, op, litLen - 15);
+          } else {
+            token = litLen << 4;
+          }
+          System.arraycopy(src, anchor, dst, op, litLen);
+          op += litLen;
+          int offset = ip - ref;
+          dst[op++] = (byte) offset;
+          dst[op++] = (byte) (offset >>> 8);
+          int ml = len - MIN_MATCH;
+          if (ml >= 15) {
+            token |= 15;
+            op = writeLength(dst, op, ml - 15);
+          } else {
+            token |= ml;
+          }
+          dst[tokenPos] = (byte) token;
+
+          ip += len;
+          anchor = ip;
+        }
+      }
+
+      // last literals
+      int litLen = srcEnd - anchor;
+      if (op + 1 + litLen + litLen / 255 + 1 > opLimit) {
+        return -1;
+      }
+      if (litLen >= 15) {
+        dst[op++] = (byte) (15 << 4);
+        op = writeLength(dst, op, litLen - 15);
+      } else {
+        dst[op++] = (byte) (litLen << 4);
+      }
+      System.arraycopy(src, anchor, dst, op, litLen);
+      op += litLen;
+      return op - dstOff;
+    }
+
+    private static int writeLength(byte[] dst, int op, int len) {
+      while (len >= 255) {
+        dst[op++] = (byte) 255;
+        len -= 255;
+      }
+      dst[op++] = (byte) len;
+      return op;
+    }
+
+    private static int hash(int seq) {
+      return (seq * -1640531535) >>> (32 - HASH_LOG);
+    }
   }
 
   public static class Provider implements FilterProvider {
@@ -2,4 +2,14 @@ package ucar.nc2.filter;
 
 public interface Enhancement {
   double convert(double num);
+
+  /**
+   * Convert values[start] to values[end - 1] in place. Implementations override this with a loop that does not call
+   * {@link #convert(double)} for each value, when that is faster.
+   */
+  default void convert(double[] values, int start, int end) {
+    for (int i = start; i < end; i++) {
+      values[i] = convert(values[i]);
+    }
+  }
 }
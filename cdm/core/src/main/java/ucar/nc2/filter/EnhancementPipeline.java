@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 1998-2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.filter;
+
+import java.util.List;
+import java.util.stream.IntStream;
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+
+/**
+ * Applies a chain of enhancements to the values of an Array in one pass, writing the results directly into the
+ * storage of the output Array.
+ * <p>
+ * Values are converted a block at a time: the block is read from the primitive input storage into a small double
+ * buffer, each enhancement converts the whole block in place with {@link Enhancement#convert(double[], int, int)},
+ * and the block is written to the primitive output storage. Nothing is boxed, and the only allocation besides the
+ * output is one block buffer per chunk. Large arrays are converted in chunks in parallel.
+ * <p>
+ * The results are the same as converting each value with {@link Enhancement#convert(double)}, and setting it into the
+ * output with {@link ucar.ma2.IndexIterator#setObjectNext(Object)}.
+ */
+public class EnhancementPipeline {
+  private static final int BLOCK_SIZE = 1024;
+  // arrays with at least this many values are converted in parallel, in chunks of this size
+  private static final int CHUNK_SIZE = 1 << 16;
+
+  private final Enhancement[] enhancements;
+  private final DataType outType;
+
+  /**
+   * @param enhancements applied in this order
+   * @param outType data type of the result
+   */
+  public EnhancementPipeline(List<Enhancement> enhancements, DataType outType) {
+    this.enhancements = enhancements.toArray(new Enhancement[0]);
+    this.outType = outType;
+  }
+
+  public DataType getOutType() {
+    return outType;
+  }
+
+  /**
+   * Convert all the values of a numeric Array.
+   *
+   * @param in the values to convert, in any layout
+   * @return a new Array of the output type, with the same shape
+   */
+  public Array convert(Array in) {
+    Array out = Array.factory(outType, in.getShape());
+    convert(in, out, 0);
+    return out;
+  }
+
+  /**
+   * Convert all the values of a numeric Array, writing them into part of the output, eg as the chunks of a larger
+   * result are read.
+   *
+   * @param in the values to convert, in any layout
+   * @param out the output, of the output type, in canonical order
+   * @param outStart write the converted values starting at this element of out
+   */
+  public void convert(Array in, Array out, int outStart) {
+    // the input storage, in canonical order; copied only if in is not already
+    Object inStorage = in.get1DJavaArray(in.getDataType());
+    boolean unsigned = in.isUnsigned();
+    Object outStorage = out.getStorage();
+    int n = (int) in.getSize();
+    if (outStart < 0 || (long) outStart + n > out.getSize()) {
+      throw new IllegalArgumentException(
+          "Cant write " + n + " values at " + outStart + " into an array of size " + out.getSize());
+    }
+
+    if (n < 2 * CHUNK_SIZE) {
+      convertChunk(inStorage, unsigned, 0, outStorage, outStart, n);
+    } else {
+      int nchunks = (n + CHUNK_SIZE - 1) / CHUNK_SIZE;
+      IntStream.range(0, nchunks).parallel().forEach(chunk -> {
+        int start = chunk * CHUNK_SIZE;
+        convertChunk(inStorage, unsigned, start, outStorage, outStart + start, Math.min(CHUNK_SIZE, n - start));
+      });
+    }
+  }
+
+  private void convertChunk(Object in, boolean unsigned, int inStart, Object out, int outStart, int count) {
+    double[] block = new double[Math.min(BLOCK_SIZE, count)];
+    for (int done = 0; done < count; done += block.length) {
+      int len = Math.min(block.length, count - done);
+      read(in, unsigned, inStart + done, block, len);
+      for (Enhancement e : enhancements) {
+        e.convert(block, 0, len);
+      }
+      write(block, len, out, outStart + done);
+    }
+  }
+
+  // widen like Array.getDouble()
+  private static void read(Object in, boolean unsigned, int start, double[] block, int len) {
+    if (in instanceof double[]) {
+      System.arraycopy(in, start, block, 0, len);
+    } else if (in instanceof float[]) {
+      float[] values = (float[]) in;
+      for (int i = 0; i < len; i++) {
+        block[i] = values[start + i];
+      }
+    } else if (in instanceof short[]) {
+      short[] values = (short[]) in;
+      if (unsigned) {
+        for (int i = 0; i < len; i++) {
+          block[i] = values[start + i] & 0xffff;
+        }
+      } else {
+        for (int i = 0; i < len; i++) {
+          block[i] = values[start + i];
+        }
+      }
+    } else if (in instanceof byte[]) {
+      byte[] values = (byte[]) in;
+      if (unsigned) {
+        for (int i = 0; i < len; i++) {
+          block[i] = values[start + i] & 0xff;
+        }
+      } else {
+        for (int i = 0; i < len; i++) {
+          block[i] = values[start + i];
+        }
+      }
+    } else if (in instanceof int[]) {
+      int[] values = (int[]) in;
+      if (unsigned) {
+        for (int i = 0; i < len; i++) {
+          block[i] = values[start + i] & 0xffffffffL;
+        }
+      } else {
+        for (int i = 0; i < len; i++) {
+          block[i] = values[start + i];
+        }
+      }
+    } else if (in instanceof long[]) {
+      long[] values = (long[]) in;
+      for (int i = 0; i < len; i++) {
+        block[i] = values[start + i];
+      }
+    } else {
+      throw new IllegalArgumentException("Cant enhance storage of type " + in.getClass().getSimpleName());
+    }
+  }
+
+  // narrow like Number.xxxValue(), as Array.setObject() does
+  private static void write(double[] block, int len, Object out, int start) {
+    if (out instanceof double[]) {
+      System.arraycopy(block, 0, out, start, len);
+    } else if (out instanceof float[]) {
+      float[] values = (float[]) out;
+      for (int i = 0; i < len; i++) {
+        values[start + i] = (float) block[i];
+      }
+    } else if (out instanceof short[]) {
+      short[] values = (short[]) out;
+      for (int i = 0; i < len; i++) {
+        values[start + i] = (short) block[i];
+      }
+    } else if (out instanceof byte[]) {
+      byte[] values = (byte[]) out;
+      for (int i = 0; i < len; i++) {
+        values[start + i] = (byte) block[i];
+      }
+    } else if (out instanceof int[]) {
+      int[] values = (int[]) out;
+      for (int i = 0; i < len; i++) {
+        values[start + i] = (int) block[i];
+      }
+    } else if (out instanceof long[]) {
+      long[] values = (long[]) out;
+      for (int i = 0; i < len; i++) {
+        values[start + i] = (long) block[i];
+      }
+    } else {
+      throw new IllegalArgumentException("Cant enhance into storage of type " + out.getClass().getSimpleName());
+    }
+  }
+}
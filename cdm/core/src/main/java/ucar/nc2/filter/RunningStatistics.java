@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 1998-2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.filter;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.IntStream;
+import ucar.ma2.Array;
+import ucar.ma2.Index;
+import ucar.ma2.InvalidRangeException;
+import ucar.nc2.Attribute;
+import ucar.nc2.Variable;
+import ucar.nc2.constants.CDM;
+import ucar.nc2.write.ChunkingIndex;
+
+/**
+ * Count, mean, variance, min and max of a stream of values, ignoring NaNs. Values are added one at a time with
+ * Welford's algorithm, and partial results can be merged (Chan et al), so that large arrays can be summarized in
+ * parallel, and variables a section at a time without reading all their data into memory.
+ * The variance and standard deviation are of a sample, dividing by count - 1, as in commons-math SummaryStatistics.
+ */
+public class RunningStatistics {
+  // arrays with at least this many values are summarized in parallel, in chunks of this size
+  private static final int CHUNK_SIZE = 1 << 16;
+  // read variables in sections of about this many values
+  private static final long SECTION_SIZE = 1 << 22;
+
+  private long count;
+  private double mean;
+  private double m2; // sum of squared differences from the mean
+  private double min = Double.POSITIVE_INFINITY;
+  private double max = Double.NEGATIVE_INFINITY;
+
+  /** The statistics of the values of an Array. */
+  public static RunningStatistics of(Array arr) {
+    RunningStatistics stats = new RunningStatistics();
+    stats.addAll(arr);
+    return stats;
+  }
+
+  /**
+   * The statistics of the values of a Variable, read a section at a time, following the chunking of the variable if
+   * known. Each section is summarized in parallel, while the next one is read.
+   */
+  public static RunningStatistics of(Variable var) throws IOException {
+    RunningStatistics total = new RunningStatistics();
+    if (var.getRank() == 0) {
+      total.addAll(var.read());
+      return total;
+    }
+
+    long maxElems = sectionSize(var);
+    ChunkingIndex index = new ChunkingIndex(var.getShape());
+    CompletableFuture<RunningStatistics> pending = null;
+    try {
+      while (index.currentElement() < index.getSize()) {
+        int[] origin = index.getCurrentCounter();
+        int[] shape = index.computeChunkShape(maxElems);
+        Array data = var.read(origin, shape);
+        if (pending != null) {
+          total.merge(pending.join());
+        }
+        pending = CompletableFuture.supplyAsync(() -> of(data));
+        index.setCurrentCounter(index.currentElement() + (int) Index.computeSize(shape));
+      }
+      if (pending != null) {
+        total.merge(pending.join());
+      }
+    } catch (InvalidRangeException e) {
+      throw new IOException(e.getMessage() + " for Variable " + var.getFullName(), e);
+    } catch (CompletionException e) {
+      throw new IOException("Failed computing statistics for Variable " + var.getFullName(), e.getCause());
+    }
+    return total;
+  }
+
+  // a whole number of rows of chunks along the outer dimension, if the chunk sizes are known
+  private static long sectionSize(Variable var) {
+    int[] shape = var.getShape();
+    long rowSize = Index.computeSize(shape) / Math.max(shape[0], 1);
+    Attribute chunkAtt = var.findAttribute(CDM.CHUNK_SIZES);
+    if (chunkAtt != null && !chunkAtt.isString() && chunkAtt.getLength() == shape.length) {
+      long chunkRows = Math.max(chunkAtt.getNumericValue(0).longValue(), 1) * rowSize;
+      return Math.max(SECTION_SIZE / chunkRows, 1) * chunkRows;
+    }
+    return Math.max(SECTION_SIZE, rowSize);
+  }
+
+  /** Statistics of no values, to add values to. */
+  public RunningStatistics() {}
+
+  RunningStatistics(long count, double mean, double m2, double min, double max) {
+    this.count = count;
+    this.mean = mean;
+    this.m2 = m2;
+    this.min = min;
+    this.max = max;
+  }
+
+  /** Add a value; NaNs are ignored. */
+  public void add(double value) {
+    if (Double.isNaN(value)) {
+      return;
+    }
+    count++;
+    double delta = value - mean;
+    mean += delta / count;
+    m2 += delta * (value - mean);
+    if (value < min) {
+      min = value;
+    }
+    if (value > max) {
+      max = value;
+    }
+  }
+
+  /** Add the values of a numeric Array. */
+  public void addAll(Array arr) {
+    Object storage = arr.get1DJavaArray(arr.getDataType());
+    boolean unsigned = arr.isUnsigned();
+    int n = (int) arr.getSize();
+    if (n < 2 * CHUNK_SIZE) {
+      addAll(storage, unsigned, 0, n);
+      return;
+    }
+    int nchunks = (n + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    // each chunk has its own statistics, so combine() only modifies results of this reduction
+    IntStream.range(0, nchunks).parallel().mapToObj(chunk -> {
+      RunningStatistics part = new RunningStatistics();
+      int start = chunk * CHUNK_SIZE;
+      part.addAll(storage, unsigned, start, Math.min(start + CHUNK_SIZE, n));
+      return part;
+    }).reduce(RunningStatistics::combine).ifPresent(this::merge);
+  }
+
+  // widen like Array.getDouble()
+  private void addAll(Object storage, boolean unsigned, int start, int end) {
+    if (storage instanceof double[]) {
+      double[] values = (double[]) storage;
+      for (int i = start; i < end; i++) {
+        add(values[i]);
+      }
+    } else if (storage instanceof float[]) {
+      float[] values = (float[]) storage;
+      for (int i = start; i < end; i++) {
+        add(values[i]);
+      }
+    } else if (storage instanceof short[]) {
+      short[] values = (short[]) storage;
+      for (int i = start; i < end; i++) {
+        add(unsigned ? values[i] & 0xffff : values[i]);
+      }
+    } else if (storage instanceof byte[]) {
+      byte[] values = (byte[]) storage;
+      for (int i = start; i < end; i++) {
+        add(unsigned ? values[i] & 0xff : values[i]);
+      }
+    } else if (storage instanceof int[]) {
+      int[] values = (int[]) storage;
+      for (int i = start; i < end; i++) {
+        add(unsigned ? values[i] & 0xffffffffL : values[i]);
+      }
+    } else if (storage instanceof long[]) {
+      long[] values = (long[]) storage;
+      for (int i = start; i < end; i++) {
+        add(values[i]);
+      }
+    } else {
+      throw new IllegalArgumentException("Cant compute statistics of " + storage.getClass().getSimpleName());
+    }
+  }
+
+  /** Add the values summarized by other. */
+  public void merge(RunningStatistics other) {
+    if (other.count == 0) {
+      return;
+    }
+    if (count == 0) {
+      count = other.count;
+      mean = other.mean;
+      m2 = other.m2;
+      min = other.min;
+      max = other.max;
+      return;
+    }
+    long n = count + other.count;
+    double delta = other.mean - mean;
+    mean += delta * other.count / n;
+    m2 += other.m2 + delta * delta * ((double) count * other.count / n);
+    count = n;
+    min = Math.min(min, other.min);
+    max = Math.max(max, other.max);
+  }
+
+  private static RunningStatistics combine(RunningStatistics a, RunningStatistics b) {
+    a.merge(b);
+    return a;
+  }
+
+  /** Number of values, not counting NaNs */
+  public long getCount() {
+    return count;
+  }
+
+  /** Mean, or NaN if there are no values */
+  public double getMean() {
+    return count == 0 ? Double.NaN : mean;
+  }
+
+  /** Sample variance, 0 for a single value, or NaN if there are no values */
+  public double getVariance() {
+    if (count == 0) {
+      return Double.NaN;
+    }
+    return count == 1 ? 0.0 : m2 / (count - 1);
+  }
+
+  /** Sample standard deviation, 0 for a single value, or NaN if there are no values */
+  public double getStandardDeviation() {
+    return Math.sqrt(getVariance());
+  }
+
+  /** Minimum, or NaN if there are no values */
+  public double getMin() {
+    return count == 0 ? Double.NaN : min;
+  }
+
+  /** Maximum, or NaN if there are no values */
+  public double getMax() {
+    return count == 0 ? Double.NaN : max;
+  }
+
+  // for StatisticsCache
+  double getM2() {
+    return m2;
+  }
+
+  @Override
+  public String toString() {
+    return "RunningStatistics{count=" + count + ", mean=" + getMean() + ", stdDev=" + getStandardDeviation() + ", min="
+        + getMin() + ", max=" + getMax() + '}';
+  }
+}
@@ -264,6 +264,32 @@ public class ScaleOffset extends Filter implements Enhancement {
     return value / scale + offset;
   }
 
+  @Override
+  public void convert(double[] values, int start, int end) {
+    if (dtype.isIntegral()) {
+      for (int i = start; i < end; i++) {
+        values[i] = Math.round(values[i] / scale + offset);
+      }
+    } else {
+      for (int i = start; i < end; i++) {
+        values[i] = values[i] / scale + offset;
+      }
+    }
+  }
+
+  /** Apply {@link #applyScaleOffset(double)} to values[start] to values[end - 1] in place. */
+  public void applyScaleOffset(double[] values, int start, int end) {
+    if (astype.isIntegral()) {
+      for (int i = start; i < end; i++) {
+        values[i] = Math.round((values[i] - offset) * scale);
+      }
+    } else {
+      for (int i = start; i < end; i++) {
+        values[i] = (values[i] - offset) * scale;
+      }
+    }
+  }
+
   private Number convertUnsigned(Number value, Signedness signedness) {
     if (signedness == Signedness.UNSIGNED) {
       // Handle integral types that should be treated as unsigned by widening them if necessary.
@@ -4,10 +4,8 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
-import org.apache.commons.math.stat.descriptive.SummaryStatistics;
 import ucar.ma2.Array;
 import ucar.ma2.DataType;
-import ucar.ma2.IndexIterator;
 import ucar.nc2.dataset.VariableDS;
 
 public class Standardizer implements Enhancement {
@@ -18,16 +16,17 @@ public class Standardizer implements Enhancement {
 
   public static Standardizer createFromVariable(VariableDS var) {
     try {
-      Array arr = var.read();
-      DataType type = var.getDataType();
-      return createFromArray(arr, type);
+      return createFromStatistics(StatisticsCache.get(var, "standardizer"), var.getDataType());
     } catch (IOException e) {
       return new Standardizer(0.0, 1.0, var.getDataType());
     }
   }
 
   public static Standardizer createFromArray(Array arr, DataType type) {
-    SummaryStatistics statistics = calculationHelper(arr);
+    return createFromStatistics(RunningStatistics.of(arr), type);
+  }
+
+  private static Standardizer createFromStatistics(RunningStatistics statistics, DataType type) {
     if (statistics.getStandardDeviation() == 0) {
       return new Standardizer(0.0, 1.0, type);
     }
@@ -44,18 +43,6 @@ public class Standardizer implements Enhancement {
     scaleOffset = new ScaleOffset(props);
   }
 
-  private static SummaryStatistics calculationHelper(Array arr) {
-    SummaryStatistics sumStat = new SummaryStatistics();
-    IndexIterator iterArr = arr.getIndexIterator();
-    while (iterArr.hasNext()) {
-      Number value = (Number) iterArr.getObjectNext();
-      if (!Double.isNaN(value.doubleValue())) {
-        sumStat.addValue(value.doubleValue());
-      }
-    }
-    return sumStat;
-  }
-
   public Array convert(Array arr) {
     return scaleOffset.applyScaleOffset(arr);
   }
@@ -64,6 +51,11 @@ public class Standardizer implements Enhancement {
     return scaleOffset.applyScaleOffset(val);
   }
 
+  @Override
+  public void convert(double[] values, int start, int end) {
+    scaleOffset.applyScaleOffset(values, start, end);
+  }
+
   public double getMean() {
     return mean;
   }
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 1998-2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.filter;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Formatter;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.dataset.NetcdfDataset;
+import ucar.nc2.dataset.VariableDS;
+import ucar.nc2.util.DiskCache2;
+import ucar.unidata.io.RandomAccessFile;
+
+/**
+ * Remembers the statistics of variables in local files, so that the Standardizer and Normalizer don't read all the
+ * data of a variable every time the file is opened. Statistics are kept in memory, and, if a persistence cache is
+ * set, in a small properties file per data file, next to the NcML aggregation and GRIB index caches.
+ * Statistics are recomputed when the data file is modified. NcML datasets and aggregations are not cached, as the
+ * modification time of their location does not tell when their data changes.
+ */
+public class StatisticsCache {
+  private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(StatisticsCache.class);
+  private static final String SUFFIX = ".stats";
+  private static final String LAST_MODIFIED = "lastModified";
+
+  private static final Cache<String, RunningStatistics> cache =
+      CacheBuilder.newBuilder().maximumSize(1000).recordStats().build();
+  private static volatile DiskCache2 diskCache2;
+
+  /** Where to persist statistics; null (the default) to only keep them in memory. */
+  public static void setPersistenceCache(DiskCache2 dc) {
+    diskCache2 = dc;
+    if (diskCache2 != null)
+      diskCache2.setAlwaysUseCache(true); // never write next to the data file
+  }
+
+  /**
+   * The statistics of the data of a variable, as read by the caller's enhancement.
+   *
+   * @param var the variable
+   * @param use the enhancement that uses the statistics, as the data read depends on the enhancements already applied
+   */
+  public static RunningStatistics get(VariableDS var, String use) throws IOException {
+    File dataFile = dataFile(var.getNetcdfFile());
+    long lastModified = dataFile == null ? 0 : dataFile.lastModified();
+    if (lastModified <= 0) { // not a local file, or a file that is being written
+      return RunningStatistics.of(var);
+    }
+
+    // the data read also depends on the other enhancements of the variable
+    String enhancements = var.getEnhanceMode().stream().map(Enum::name).sorted().collect(Collectors.joining("+"));
+    String name = var.getFullNameEscaped() + "." + use + "." + enhancements;
+    String key = dataFile.getPath() + "#" + lastModified + "#" + name;
+    try {
+      return cache.get(key, () -> {
+        RunningStatistics stats = readPersisted(dataFile, lastModified, name);
+        if (stats == null) {
+          stats = RunningStatistics.of(var);
+          persist(dataFile, lastModified, name, stats);
+        }
+        return stats;
+      });
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException("Failed computing statistics for Variable " + var.getFullName(), e.getCause());
+    }
+  }
+
+  // the local file holding the data, or null if the data is not read from the file at the dataset location
+  private static File dataFile(NetcdfFile ncfile) {
+    if (ncfile instanceof NetcdfDataset) {
+      NetcdfDataset ncd = (NetcdfDataset) ncfile;
+      if (ncd.getAggregation() != null) {
+        return null;
+      }
+      ncfile = ncd.getReferencedFile();
+    }
+    if (ncfile == null) {
+      return null;
+    }
+    // the location of an NcML dataset is the NcML, not the file that is read
+    File dataFile = localFile(ncfile.getLocation());
+    Object raf = ncfile.sendIospMessage(NetcdfFile.IOSP_MESSAGE_RANDOM_ACCESS_FILE);
+    if (dataFile == null || !(raf instanceof RandomAccessFile)
+        || !dataFile.equals(localFile(((RandomAccessFile) raf).getLocation()))) {
+      return null;
+    }
+    return dataFile;
+  }
+
+  private static File localFile(String location) {
+    if (location == null) {
+      return null;
+    }
+    if (location.startsWith("file:")) {
+      location = location.substring(5);
+    }
+    File file = new File(location);
+    return file.isFile() ? file : null;
+  }
+
+  private static File persistFile(File dataFile) {
+    DiskCache2 dc = diskCache2;
+    return dc == null ? null : dc.getCacheFile(dataFile.getPath() + SUFFIX);
+  }
+
+  private static RunningStatistics readPersisted(File dataFile, long lastModified, String name) {
+    File statsFile = persistFile(dataFile);
+    if (statsFile == null || !statsFile.exists()) {
+      return null;
+    }
+    Properties props = new Properties();
+    try (InputStream in = new FileInputStream(statsFile)) {
+      props.load(in);
+      if (!Long.toString(lastModified).equals(props.getProperty(LAST_MODIFIED))
+          || props.getProperty(name + ".count") == null) {
+        return null;
+      }
+      return new RunningStatistics(Long.parseLong(props.getProperty(name + ".count")),
+          Double.parseDouble(props.getProperty(name + ".mean")), Double.parseDouble(props.getProperty(name + ".m2")),
+          Double.parseDouble(props.getProperty(name + ".min")), Double.parseDouble(props.getProperty(name + ".max")));
+    } catch (IOException | NumberFormatException e) {
+      logger.warn("Failed reading statistics from {}", statsFile, e);
+      return null;
+    }
+  }
+
+  private static synchronized void persist(File dataFile, long lastModified, String name, RunningStatistics stats) {
+    File statsFile = persistFile(dataFile);
+    if (statsFile == null) {
+      return;
+    }
+    Properties props = new Properties();
+    if (statsFile.exists()) {
+      try (InputStream in = new FileInputStream(statsFile)) {
+        props.load(in);
+      } catch (IOException e) {
+        logger.warn("Failed reading statistics from {}", statsFile, e);
+      }
+      if (!Long.toString(lastModified).equals(props.getProperty(LAST_MODIFIED))) {
+        props.clear(); // the data file has changed since
+      }
+    }
+    props.setProperty(LAST_MODIFIED, Long.toString(lastModified));
+    props.setProperty(name + ".count", Long.toString(stats.getCount()));
+    props.setProperty(name + ".mean", Double.toString(stats.getMean()));
+    props.setProperty(name + ".m2", Double.toString(stats.getM2()));
+    props.setProperty(name + ".min", Double.toString(stats.getMin()));
+    props.setProperty(name + ".max", Double.toString(stats.getMax()));
+    // replace the file in one step, so that readers never see it partly written
+    try {
+      Path tmp = Files.createTempFile(statsFile.getParentFile().toPath(), statsFile.getName(), ".tmp");
+      try {
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+          props.store(out, "statistics of " + dataFile.getPath());
+        }
+        Files.move(tmp, statsFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+        Files.deleteIfExists(tmp);
+      }
+    } catch (IOException e) {
+      logger.warn("Failed writing statistics to {}", statsFile, e);
+    }
+  }
+
+  /** Forget the statistics kept in memory. */
+  public static void clearCache() {
+    cache.invalidateAll();
+  }
+
+  public static void showStats(Formatter f) {
+    f.format("StatisticsCache %s%n", cache.stats());
+  }
+}
@@ -73,6 +73,33 @@ public class UnsignedConversion implements Enhancement {
     return this.signedness == DataType.Signedness.UNSIGNED ? DataType.widenNumberIfNegative(val).doubleValue() : value;
   }
 
+  @Override
+  public void convert(double[] values, int start, int end) {
+    if (signedness == DataType.Signedness.SIGNED) {
+      return;
+    }
+    switch (outType) {
+      case UBYTE:
+      case USHORT:
+        for (int i = start; i < end; i++) {
+          values[i] = (byte) values[i] & 0xff;
+        }
+        break;
+      case UINT:
+        for (int i = start; i < end; i++) {
+          values[i] = (short) values[i] & 0xffff;
+        }
+        break;
+      case ULONG:
+        for (int i = start; i < end; i++) {
+          values[i] = (int) values[i] & 0xffffffffL;
+        }
+        break;
+      default:
+        break;
+    }
+  }
+
   public Array convertUnsigned(Array in) {
     if (signedness == DataType.Signedness.SIGNED) {
       return in;
@@ -0,0 +1,952 @@
+/*
+ * Copyright (c) 1998-2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.internal.iosp.hdf5;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.nc2.Attribute;
+import ucar.nc2.Dimension;
+import ucar.nc2.Group;
+import ucar.nc2.Variable;
+import ucar.nc2.constants.CDM;
+import ucar.nc2.iosp.netcdf4.Nc4;
+import ucar.unidata.io.RandomAccessFile;
+
+/**
+ * Writes the metadata of a netCDF-4 file for H5iospWriter: the superblock, the object headers of the groups and
+ * datasets, the chunk index B-trees, and a global heap for the variable length attribute values.
+ * The objects are laid out the way the netCDF-C library does, with shared dimensions as HDF5 dimension scales.
+ */
+class H5headerWriter {
+  static final long UNDEFINED_ADDRESS = -1L;
+  static final int SUPERBLOCK_SIZE = 48;
+
+  private static final byte[] HDF5_SIGNATURE = {(byte) 0x89, 'H', 'D', 'F', '\r', '\n', 0x1a, '\n'};
+  private static final String DIMENSION_NOT_VARIABLE = "This is a netCDF dimension but not a netCDF variable.";
+  private static final int BTREE_K = 32; // default "indexed storage internal node K"
+
+  // message types
+  private static final int DATASPACE = 1;
+  private static final int LINK_INFO = 2;
+  private static final int DATATYPE = 3;
+  private static final int FILL_VALUE = 5;
+  private static final int LINK = 6;
+  private static final int LAYOUT = 8;
+  private static final int GROUP_INFO = 10;
+  private static final int FILTER_PIPELINE = 11;
+  private static final int ATTRIBUTE = 12;
+  private static final int ATTRIBUTE_INFO = 21;
+
+  // message flags
+  private static final int CONSTANT = 1;
+  private static final int DONT_SHARE = 4;
+
+  // dont propagate these - written here from the metadata, or meaningless in the file
+  private static final List<String> skipAttributes = Arrays.asList(H5headerNew.HDF5_CLASS,
+      H5headerNew.HDF5_DIMENSION_LIST, H5headerNew.HDF5_DIMENSION_SCALE, H5headerNew.HDF5_DIMENSION_LABELS,
+      H5headerNew.HDF5_REFERENCE_LIST, CDM.CHUNK_SIZES, CDM.COMPRESS, CDM.NCPROPERTIES, CDM.ISNETCDF4,
+      CDM.SUPERBLOCKVERSION, Nc4.NETCDF4_COORDINATES, Nc4.NETCDF4_DIMID, Nc4.NETCDF4_STRICT);
+
+  private final H5iospWriter writer;
+  private final RandomAccessFile raf;
+  private final boolean isClassic;
+
+  private final Map<String, DatasetNode> scales = new HashMap<>(); // key is group full name + "/" + dimension name
+  private final List<Node> nodes = new ArrayList<>(); // in the order they are written
+  private int nextDimid;
+  private GlobalHeap heap;
+
+  H5headerWriter(H5iospWriter writer, RandomAccessFile raf, boolean isClassic) {
+    this.writer = writer;
+    this.raf = raf;
+    this.isClassic = isClassic;
+  }
+
+  /**
+   * Write all the metadata at the given file position, then point the superblock to it.
+   *
+   * @return the end of the file
+   */
+  long write(Group root, long start) throws IOException {
+    long pos = start;
+    for (Variable v : H5iospWriter.getAllVariables(root)) {
+      H5iospWriter.Vinfo vinfo = (H5iospWriter.Vinfo) v.getSPobject();
+      vinfo.btreeAddress = UNDEFINED_ADDRESS;
+      if (vinfo.isChunked) {
+        List<H5iospWriter.Chunk> stored = vinfo.getStoredChunks();
+        if (!stored.isEmpty()) {
+          byte[] btree = makeBtree(vinfo, stored, pos);
+          raf.seek(pos);
+          raf.write(btree);
+          vinfo.btreeAddress = pos + btree.length - btreeNodeSize(vinfo.chunkShape.length + 1);
+          pos += btree.length;
+        }
+      }
+    }
+
+    GroupNode rootNode = makeGroup(root, "");
+
+    // the sizes of the object headers dont depend on the addresses in them, so lay them out with dummy addresses
+    heap = new GlobalHeap(0);
+    long address = pos;
+    for (Node node : nodes) {
+      node.address = address;
+      address += encode(node).length;
+    }
+
+    heap = new GlobalHeap(address);
+    raf.seek(pos);
+    for (Node node : nodes) {
+      raf.write(encode(node));
+    }
+    byte[] heapBytes = heap.finish();
+    raf.write(heapBytes);
+    long eof = address + heapBytes.length;
+
+    writeSuperblock(raf, eof, rootNode.address);
+    return eof;
+  }
+
+  static void writeSuperblock(RandomAccessFile raf, long eof, long rootAddress) throws IOException {
+    Bytes b = new Bytes(SUPERBLOCK_SIZE);
+    b.put(HDF5_SIGNATURE);
+    b.putByte(2); // version
+    b.putByte(8); // size of offsets
+    b.putByte(8); // size of lengths
+    b.putByte(0); // file consistency flags
+    b.putLong(0); // base address
+    b.putLong(UNDEFINED_ADDRESS); // superblock extension
+    b.putLong(eof);
+    b.putLong(rootAddress);
+    b.putChecksum();
+    raf.seek(0);
+    raf.write(b.toByteArray());
+  }
+
+  ////////////////////////////////////////////////////////////////////////////////////////////
+  // the objects in the file
+
+  private abstract static class Node {
+    final String name;
+    long address;
+
+    Node(String name) {
+      this.name = name;
+    }
+  }
+
+  private static class GroupNode extends Node {
+    final Group group;
+    final List<Node> links = new ArrayList<>();
+
+    GroupNode(Group group, String name) {
+      super(name);
+      this.group = group;
+    }
+  }
+
+  private static class DatasetNode extends Node {
+    final Variable var; // null for a dimension that has no coordinate variable
+    final Dimension dim; // set if this is a dimension scale
+    int dimid = -1;
+    int[] dimids; // _Netcdf4Coordinates
+    List<DatasetNode> dimensionList; // DIMENSION_LIST, null for dimension scales
+    final List<DatasetNode> referenceVars = new ArrayList<>(); // REFERENCE_LIST
+    final List<Integer> referenceIndex = new ArrayList<>();
+
+    DatasetNode(String name, Variable var, Dimension dim) {
+      super(name);
+      this.var = var;
+      this.dim = dim;
+    }
+  }
+
+  private GroupNode makeGroup(Group g, String name) {
+    GroupNode node = new GroupNode(g, name);
+    nodes.add(node);
+
+    // the dimension scales come first, so that they are read in the order of the dimensions
+    Map<String, DatasetNode> coordinates = new HashMap<>();
+    for (Dimension dim : g.getDimensions()) {
+      Variable coord = g.findVariableLocal(dim.getShortName());
+      DatasetNode scale;
+      if (coord != null && isCoordinate(coord, dim)) {
+        scale = new DatasetNode(coord.getShortName(), coord, dim);
+        coordinates.put(coord.getShortName(), scale);
+      } else { // a dimension without a coordinate variable gets a dataset of its own
+        scale = new DatasetNode(dim.getShortName(), null, dim);
+      }
+      scale.dimid = nextDimid++;
+      scales.put(dimensionKey(g, dim.getShortName()), scale);
+      node.links.add(scale);
+      nodes.add(scale);
+    }
+
+    for (Variable v : g.getVariables()) {
+      DatasetNode vnode = coordinates.get(v.getShortName());
+      if (vnode == null) {
+        boolean clash = g.findDimensionLocal(v.getShortName()) != null;
+        vnode = new DatasetNode(clash ? Nc4.NETCDF4_NON_COORD + v.getShortName() : v.getShortName(), v, null);
+        node.links.add(vnode);
+        nodes.add(vnode);
+      }
+      if (v.getRank() > 0) {
+        vnode.dimids = new int[v.getRank()];
+        List<DatasetNode> dimList = new ArrayList<>();
+        for (int i = 0; i < v.getRank(); i++) {
+          DatasetNode scale = findScale(v, v.getDimension(i));
+          vnode.dimids[i] = scale.dimid;
+          dimList.add(scale);
+          if (vnode.dim == null) {
+            scale.referenceVars.add(vnode);
+            scale.referenceIndex.add(i);
+          }
+        }
+        if (vnode.dim == null) { // a dimension scale cant have scales attached
+          vnode.dimensionList = dimList;
+        }
+      }
+    }
+
+    for (Group nested : g.getGroups()) {
+      node.links.add(makeGroup(nested, nested.getShortName()));
+    }
+    return node;
+  }
+
+  // multidimensional coordinates, eg char time(time, strlen), are written as ordinary variables
+  private static boolean isCoordinate(Variable v, Dimension dim) {
+    return v.getRank() == 1 && v.getDimension(0).getShortName().equals(dim.getShortName());
+  }
+
+  private static String dimensionKey(Group g, String dimName) {
+    return g.getFullName() + "/" + dimName;
+  }
+
+  private DatasetNode findScale(Variable v, Dimension dim) {
+    for (Group g = v.getParentGroup(); g != null; g = g.getParentGroup()) {
+      if (g.findDimensionLocal(dim.getShortName()) != null) {
+        return scales.get(dimensionKey(g, dim.getShortName()));
+      }
+    }
+    throw new IllegalStateException("Cant find dimension " + dim.getShortName() + " of variable " + v.getFullName());
+  }
+
+  ////////////////////////////////////////////////////////////////////////////////////////////
+  // object headers
+
+  private static class Message {
+    final int type;
+    final int flags;
+    final int creationOrder;
+    final byte[] body;
+
+    Message(int type, int flags, int creationOrder, byte[] body) {
+      this.type = type;
+      this.flags = flags;
+      this.creationOrder = creationOrder;
+      this.body = body;
+    }
+  }
+
+  private byte[] encode(Node node) throws IOException {
+    List<Message> messages = new ArrayList<>();
+    List<Message> attributes = new ArrayList<>();
+    if (node instanceof GroupNode) {
+      GroupNode gnode = (GroupNode) node;
+      messages.add(new Message(LINK_INFO, 0, 0, linkInfo(gnode.links.size())));
+      messages.add(new Message(GROUP_INFO, CONSTANT, 0, new byte[2]));
+      int creationOrder = 0;
+      for (Node link : gnode.links) {
+        messages.add(new Message(LINK, 0, 0, link(link.name, link.address, creationOrder++)));
+      }
+      Group g = gnode.group;
+      for (Attribute att : writer.getAttributes(g, null)) {
+        addAttribute(attributes, att, null);
+      }
+      if (g.isRoot() && isClassic) {
+        addAttribute(attributes, Nc4.NETCDF4_STRICT, datatype(DataType.INT, 4), scalar(),
+            new Bytes(4).putInt(1).toByteArray());
+      }
+
+    } else {
+      DatasetNode dnode = (DatasetNode) node;
+      if (dnode.var != null) {
+        addDatasetMessages(messages, dnode.var);
+        for (Attribute att : writer.getAttributes(dnode.var.getParentGroup(), dnode.var)) {
+          addAttribute(attributes, att, dnode.var);
+        }
+      } else {
+        addDimensionMessages(messages, dnode.dim);
+      }
+      addDimensionAttributes(attributes, dnode);
+    }
+
+    byte[] attInfo = new Bytes(28).putShort(0x0300).putShort(attributes.size()).putLong(UNDEFINED_ADDRESS)
+        .putLong(UNDEFINED_ADDRESS).putLong(UNDEFINED_ADDRESS).toByteArray();
+    messages.add(new Message(ATTRIBUTE_INFO, DONT_SHARE, 0, attInfo));
+    messages.addAll(attributes);
+    return objectHeader(messages, node.name);
+  }
+
+  private static byte[] objectHeader(List<Message> messages, String name) throws IOException {
+    int size = 0;
+    for (Message m : messages) {
+      if (m.body.length > 0xffff) {
+        throw new IOException("Object header message too large (" + m.body.length + " bytes) in " + name);
+      }
+      size += 6 + m.body.length;
+    }
+    int sizeFlag = (size <= 0xff) ? 0 : (size <= 0xffff) ? 1 : 2;
+
+    Bytes b = new Bytes(size + 18);
+    b.put("OHDR".getBytes(StandardCharsets.US_ASCII));
+    b.putByte(2); // version
+    b.putByte(0x0c | sizeFlag); // attribute creation order tracked and indexed
+    b.putSized(size, 1 << sizeFlag);
+    for (Message m : messages) {
+      b.putByte(m.type);
+      b.putShort(m.body.length);
+      b.putByte(m.flags);
+      b.putShort(m.creationOrder);
+      b.put(m.body);
+    }
+    b.putChecksum();
+    return b.toByteArray();
+  }
+
+  private static byte[] linkInfo(int nlinks) {
+    // creation order tracked and indexed, links are stored compactly in the object header
+    return new Bytes(34).putShort(0x0300).putLong(nlinks).putLong(UNDEFINED_ADDRESS).putLong(UNDEFINED_ADDRESS)
+        .putLong(UNDEFINED_ADDRESS).toByteArray();
+  }
+
+  private static byte[] link(String name, long address, int creationOrder) {
+    byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+    int lengthFlag = (nameBytes.length <= 0xff) ? 0 : 1;
+    boolean isUtf8 = nameBytes.length != name.length();
+    Bytes b = new Bytes(nameBytes.length + 22);
+    b.putByte(1); // version
+    b.putByte(lengthFlag | 0x04 | (isUtf8 ? 0x10 : 0));
+    b.putLong(creationOrder);
+    if (isUtf8) {
+      b.putByte(1);
+    }
+    b.putSized(nameBytes.length, 1 << lengthFlag);
+    b.put(nameBytes);
+    b.putLong(address);
+    return b.toByteArray();
+  }
+
+  private void addDatasetMessages(List<Message> messages, Variable v) {
+    H5iospWriter.Vinfo vinfo = (H5iospWriter.Vinfo) v.getSPobject();
+    int[] shape = v.getShape();
+    long[] maxShape = new long[shape.length];
+    for (int i = 0; i < shape.length; i++) {
+      maxShape[i] = v.getDimension(i).isUnlimited() ? UNDEFINED_ADDRESS : shape[i];
+    }
+    messages.add(new Message(DATASPACE, 0, 0, dataspace(shape, maxShape)));
+    messages.add(new Message(DATATYPE, CONSTANT, 0, datatype(vinfo.dataType, vinfo.elemSize)));
+
+    Bytes fill = new Bytes(16);
+    fill.putByte(3); // version
+    int allocTime = vinfo.isChunked ? 3 : 2; // incremental or late, like the HDF5 defaults
+    if (vinfo.fillValue != null) {
+      fill.putByte(allocTime | (2 << 2) | 0x20).putInt(vinfo.fillValue.length).put(vinfo.fillValue);
+    } else {
+      fill.putByte(allocTime | (2 << 2));
+    }
+    messages.add(new Message(FILL_VALUE, CONSTANT, 0, fill.toByteArray()));
+
+    if (vinfo.isChunked && (vinfo.shuffle || vinfo.deflateLevel > 0)) {
+      Bytes b = new Bytes(24);
+      b.putByte(2).putByte((vinfo.shuffle ? 1 : 0) + (vinfo.deflateLevel > 0 ? 1 : 0));
+      if (vinfo.shuffle) { // id, flags (optional), number of values, element size
+        b.putShort(2).putShort(1).putShort(1).putInt(vinfo.elemSize);
+      }
+      if (vinfo.deflateLevel > 0) {
+        b.putShort(1).putShort(1).putShort(1).putInt(vinfo.deflateLevel);
+      }
+      messages.add(new Message(FILTER_PIPELINE, CONSTANT, 0, b.toByteArray()));
+    }
+
+    if (vinfo.isChunked) {
+      messages.add(new Message(LAYOUT, 0, 0, chunkedLayout(vinfo.btreeAddress, vinfo.chunkShape, vinfo.elemSize)));
+    } else {
+      long size = vinfo.elemSize;
+      for (int len : shape) {
+        size *= len;
+      }
+      messages.add(new Message(LAYOUT, 0, 0, contiguousLayout(vinfo.dataPos, size)));
+    }
+  }
+
+  // a dimension without a coordinate variable is an empty float dataset, like netCDF-C writes them
+  private void addDimensionMessages(List<Message> messages, Dimension dim) {
+    int len = dim.getLength();
+    long maxLen = dim.isUnlimited() ? UNDEFINED_ADDRESS : len;
+    messages.add(new Message(DATASPACE, 0, 0, dataspace(new int[] {len}, new long[] {maxLen})));
+    messages.add(new Message(DATATYPE, CONSTANT, 0, floatBigEndian()));
+    messages.add(new Message(FILL_VALUE, CONSTANT, 0, new byte[] {3, (byte) ((dim.isUnlimited() ? 3 : 2) | (2 << 2))}));
+    if (dim.isUnlimited()) {
+      messages.add(new Message(LAYOUT, 0, 0, chunkedLayout(UNDEFINED_ADDRESS, new int[] {1}, 4)));
+    } else {
+      messages.add(new Message(LAYOUT, 0, 0, contiguousLayout(UNDEFINED_ADDRESS, 4L * len)));
+    }
+  }
+
+  private void addDimensionAttributes(List<Message> attributes, DatasetNode node) {
+    if (node.dim != null) {
+      addAttribute(attributes, H5headerNew.HDF5_CLASS, fixedString(16), scalar(),
+          nullTerminated(H5headerNew.HDF5_DIMENSION_SCALE, 16));
+      String name = (node.var != null) ? node.var.getShortName()
+          : String.format("%s%10d", DIMENSION_NOT_VARIABLE, node.dim.getLength());
+      byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+      addAttribute(attributes, H5headerNew.HDF5_DIMENSION_NAME, fixedString(nameBytes.length + 1), scalar(),
+          nullTerminated(name, nameBytes.length + 1));
+      if (!node.referenceVars.isEmpty()) {
+        int n = node.referenceVars.size();
+        Bytes data = new Bytes(16 * n);
+        for (int i = 0; i < n; i++) {
+          data.putLong(node.referenceVars.get(i).address).putInt(node.referenceIndex.get(i)).putInt(0);
+        }
+        addAttribute(attributes, H5headerNew.HDF5_REFERENCE_LIST, referenceListType(), dataspace(n),
+            data.toByteArray());
+      }
+      addAttribute(attributes, Nc4.NETCDF4_DIMID, datatype(DataType.INT, 4), scalar(),
+          new Bytes(4).putInt(node.dimid).toByteArray());
+    }
+
+    if (node.dimids != null) {
+      Bytes data = new Bytes(4 * node.dimids.length);
+      for (int dimid : node.dimids) {
+        data.putInt(dimid);
+      }
+      addAttribute(attributes, Nc4.NETCDF4_COORDINATES, datatype(DataType.INT, 4), dataspace(node.dimids.length),
+          data.toByteArray());
+    }
+
+    if (node.dimensionList != null) {
+      Bytes data = new Bytes(16 * node.dimensionList.size());
+      for (DatasetNode scale : node.dimensionList) {
+        long[] heapId = heap.add(new Bytes(8).putLong(scale.address).toByteArray());
+        data.putInt(1).putLong(heapId[0]).putInt((int) heapId[1]);
+      }
+      Bytes type = new Bytes(16).putByte(0x19).putByte(0).putShort(0).putInt(16).put(objectReferenceType());
+      addAttribute(attributes, H5headerNew.HDF5_DIMENSION_LIST, type.toByteArray(),
+          dataspace(node.dimensionList.size()), data.toByteArray());
+    }
+  }
+
+  ////////////////////////////////////////////////////////////////////////////////////////////
+  // attributes
+
+  private void addAttribute(List<Message> attributes, Attribute att, Variable v) {
+    String name = att.getShortName();
+    if (skipAttributes.contains(name) || (v != null && name.equals(H5headerNew.HDF5_DIMENSION_NAME))) {
+      return;
+    }
+    DataType dtype = att.getDataType();
+    int n = att.getLength();
+
+    if (v != null && name.equals(CDM.FILL_VALUE) && !H5iospWriter.isValidFillValue(att, v)) {
+      return;
+    }
+
+    if (dtype == DataType.STRING && v != null && v.getDataType() == DataType.CHAR && name.equals(CDM.FILL_VALUE)) {
+      byte[] b = att.getStringValue().getBytes(StandardCharsets.UTF_8);
+      writeText(attributes, name, (b.length == 0) ? new byte[1] : Arrays.copyOf(b, 1));
+
+    } else if (dtype == DataType.STRING && (isClassic || n == 0)) {
+      // Must write it as character typed attribute
+      StringBuilder text = new StringBuilder();
+      for (int i = 0; i < n; i++) {
+        text.append(att.getStringValue(i));
+      }
+      writeText(attributes, name, text.toString().getBytes(StandardCharsets.UTF_8));
+
+    } else if (dtype == DataType.STRING) {
+      Bytes data = new Bytes(16 * n);
+      for (int i = 0; i < n; i++) {
+        String s = att.getStringValue(i);
+        byte[] b = (s == null) ? new byte[0] : s.getBytes(StandardCharsets.UTF_8);
+        long[] heapId = heap.add(b);
+        data.putInt(b.length).putLong(heapId[0]).putInt((int) heapId[1]);
+      }
+      addAttribute(attributes, name, datatype(DataType.STRING, 16), dataspace(n), data.toByteArray());
+
+    } else if (dtype == DataType.CHAR) {
+      Array values = att.getValues();
+      byte[] b = new byte[(int) values.getSize()];
+      for (int i = 0; i < b.length; i++) {
+        b[i] = (byte) values.getChar(i);
+      }
+      writeText(attributes, name, b);
+
+    } else if (dtype.isNumeric()) {
+      Array values = att.getValues();
+      if (values == null || n == 0) {
+        addAttribute(attributes, name, datatype(dtype, dtype.getSize()), nullDataspace(), new byte[0]);
+      } else {
+        addAttribute(attributes, name, datatype(dtype, dtype.getSize()), dataspace(n),
+            H5iospWriter.toLittleEndianBytes(values, dtype));
+      }
+    }
+  }
+
+  private void writeText(List<Message> attributes, String name, byte[] text) {
+    if (text.length == 0) {
+      text = new byte[1];
+    }
+    addAttribute(attributes, name, fixedString(text.length, isAscii(text) ? 0 : 1), scalar(), text);
+  }
+
+  private static void addAttribute(List<Message> attributes, String name, byte[] type, byte[] space, byte[] data) {
+    byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+    Bytes b = new Bytes(9 + nameBytes.length + 1 + type.length + space.length + data.length);
+    b.putByte(3); // version
+    b.putByte(0);
+    b.putShort(nameBytes.length + 1);
+    b.putShort(type.length);
+    b.putShort(space.length);
+    b.putByte(isAscii(nameBytes) ? 0 : 1);
+    b.put(nameBytes).putByte(0);
+    b.put(type);
+    b.put(space);
+    b.put(data);
+    attributes.add(new Message(ATTRIBUTE, 0, attributes.size(), b.toByteArray()));
+  }
+
+  private static boolean isAscii(byte[] b) {
+    for (byte c : b) {
+      if (c < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static byte[] nullTerminated(String s, int size) {
+    return Arrays.copyOf(s.getBytes(StandardCharsets.UTF_8), size);
+  }
+
+  ////////////////////////////////////////////////////////////////////////////////////////////
+  // datatypes, dataspaces, layouts
+
+  /** The HDF5 datatype of a netCDF-4 type, little endian like netCDF-C writes them. */
+  static byte[] datatype(DataType dtype, int size) {
+    Bytes b = new Bytes(24);
+    switch (dtype) {
+      case BYTE:
+      case UBYTE:
+      case SHORT:
+      case USHORT:
+      case INT:
+      case UINT:
+      case LONG:
+      case ULONG:
+        b.putByte(0x10).putByte(dtype.isUnsigned() ? 0 : 0x08).putShort(0).putInt(size);
+        b.putShort(0).putShort(8 * size); // bit offset, bit precision
+        break;
+      case FLOAT: // IEEE single precision
+        b.putByte(0x11).putByte(0x20).putByte(31).putByte(0).putInt(4);
+        b.putShort(0).putShort(32).putByte(23).putByte(8).putByte(0).putByte(23).putInt(127);
+        break;
+      case DOUBLE: // IEEE double precision
+        b.putByte(0x11).putByte(0x20).putByte(63).putByte(0).putInt(8);
+        b.putShort(0).putShort(64).putByte(52).putByte(11).putByte(0).putByte(52).putInt(1023);
+        break;
+      case CHAR:
+        return fixedString(1);
+      case STRING: // variable length UTF-8 string, base type is an unsigned byte
+        b.putByte(0x19).putByte(1).putByte(1).putByte(0).putInt(16);
+        b.putByte(0x10).putByte(0).putShort(0).putInt(1).putShort(0).putShort(8);
+        break;
+      default:
+        throw new IllegalArgumentException("Unsupported data type " + dtype);
+    }
+    return b.toByteArray();
+  }
+
+  private static byte[] floatBigEndian() {
+    return new Bytes(20).putByte(0x11).putByte(0x21).putByte(31).putByte(0).putInt(4).putShort(0).putShort(32)
+        .putByte(23).putByte(8).putByte(0).putByte(23).putInt(127).toByteArray();
+  }
+
+  private static byte[] fixedString(int size) {
+    return fixedString(size, 0);
+  }
+
+  // null terminated, charset 0 = ASCII, 1 = UTF-8
+  private static byte[] fixedString(int size, int charset) {
+    return new Bytes(8).putByte(0x13).putByte(charset << 4).putShort(0).putInt(size).toByteArray();
+  }
+
+  private static byte[] objectReferenceType() {
+    return new Bytes(8).putByte(0x17).putByte(0).putShort(0).putInt(8).toByteArray();
+  }
+
+  // compound {object reference dataset; int dimension}, as written by the HDF5 dimension scale API
+  private static byte[] referenceListType() {
+    Bytes b = new Bytes(64);
+    b.putByte(0x36).putShort(2).putByte(0).putInt(16);
+    b.put("dataset".getBytes(StandardCharsets.US_ASCII)).putByte(0).putByte(0).put(objectReferenceType());
+    b.put("dimension".getBytes(StandardCharsets.US_ASCII)).putByte(0).putByte(8).put(datatype(DataType.INT, 4));
+    return b.toByteArray();
+  }
+
+  private static byte[] scalar() {
+    return new byte[] {2, 0, 0, 0};
+  }
+
+  private static byte[] nullDataspace() {
+    return new byte[] {2, 0, 0, 2};
+  }
+
+  private static byte[] dataspace(int n) {
+    return dataspace(new int[] {n}, new long[] {n});
+  }
+
+  private static byte[] dataspace(int[] shape, long[] maxShape) {
+    if (shape.length == 0) {
+      return scalar();
+    }
+    Bytes b = new Bytes(4 + 16 * shape.length);
+    b.putByte(2).putByte(shape.length).putByte(1).putByte(1); // version, rank, max dims present, simple
+    for (int len : shape) {
+      b.putLong(len);
+    }
+    for (long len : maxShape) {
+      b.putLong(len);
+    }
+    return b.toByteArray();
+  }
+
+  private static byte[] contiguousLayout(long address, long size) {
+    return new Bytes(18).putByte(3).putByte(1).putLong(address).putLong(size).toByteArray();
+  }
+
+  private static byte[] chunkedLayout(long btreeAddress, int[] chunkShape, int elemSize) {
+    Bytes b = new Bytes(11 + 4 * chunkShape.length + 4);
+    b.putByte(3).putByte(2).putByte(chunkShape.length + 1).putLong(btreeAddress);
+    for (int len : chunkShape) {
+      b.putInt(len);
+    }
+    b.putInt(elemSize);
+    return b.toByteArray();
+  }
+
+  ////////////////////////////////////////////////////////////////////////////////////////////
+  // version 1 B-tree of the chunks of a variable
+
+  private static int btreeKeySize(int ndims) {
+    return 8 + 8 * ndims;
+  }
+
+  private static int btreeNodeSize(int ndims) {
+    int keySize = btreeKeySize(ndims);
+    return 24 + 2 * BTREE_K * (keySize + 8) + keySize;
+  }
+
+  private static class BtreeNode {
+    final int level;
+    final List<long[]> keys = new ArrayList<>(); // size, filter mask, offsets
+    final List<Long> chunkAddresses = new ArrayList<>(); // leaves only
+    final List<BtreeNode> children = new ArrayList<>();
+    long address;
+
+    BtreeNode(int level) {
+      this.level = level;
+    }
+
+    int nentries() {
+      return (level == 0) ? chunkAddresses.size() : children.size();
+    }
+  }
+
+  // the leaves come first and the root last; every node is allocated full size, as the HDF5 library expects
+  private static byte[] makeBtree(H5iospWriter.Vinfo vinfo, List<H5iospWriter.Chunk> chunks, long start) {
+    int ndims = vinfo.chunkShape.length + 1;
+    int nodeSize = btreeNodeSize(ndims);
+    int maxEntries = 2 * BTREE_K;
+
+    List<List<BtreeNode>> levels = new ArrayList<>();
+    List<BtreeNode> level = new ArrayList<>();
+    for (int i = 0; i < chunks.size(); i += maxEntries) {
+      BtreeNode leaf = new BtreeNode(0);
+      for (H5iospWriter.Chunk chunk : chunks.subList(i, Math.min(i + maxEntries, chunks.size()))) {
+        long[] key = new long[2 + ndims];
+        key[0] = chunk.storedSize;
+        System.arraycopy(toLongs(chunk.offset), 0, key, 2, ndims - 1);
+        leaf.keys.add(key);
+        leaf.chunkAddresses.add(chunk.filePos);
+      }
+      level.add(leaf);
+    }
+    // the final key of a leaf is the first key of the next one; after the last chunk its past it in every dimension
+    H5iospWriter.Chunk lastChunk = chunks.get(chunks.size() - 1);
+    long[] finalKey = new long[2 + ndims];
+    for (int i = 0; i < ndims - 1; i++) {
+      finalKey[2 + i] = (long) lastChunk.offset[i] + vinfo.chunkShape[i];
+    }
+    for (int i = 0; i < level.size(); i++) {
+      level.get(i).keys.add((i < level.size() - 1) ? level.get(i + 1).keys.get(0) : finalKey);
+    }
+    levels.add(level);
+
+    while (level.size() > 1) {
+      List<BtreeNode> parents = new ArrayList<>();
+      for (int i = 0; i < level.size(); i += maxEntries) {
+        BtreeNode parent = new BtreeNode(levels.size());
+        parent.children.addAll(level.subList(i, Math.min(i + maxEntries, level.size())));
+        for (BtreeNode child : parent.children) {
+          parent.keys.add(child.keys.get(0));
+        }
+        BtreeNode last = parent.children.get(parent.children.size() - 1);
+        parent.keys.add(last.keys.get(last.keys.size() - 1));
+        parents.add(parent);
+      }
+      levels.add(parents);
+      level = parents;
+    }
+
+    long address = start;
+    for (List<BtreeNode> nodes : levels) {
+      for (BtreeNode node : nodes) {
+        node.address = address;
+        address += nodeSize;
+      }
+    }
+
+    Bytes b = new Bytes((int) (address - start));
+    for (List<BtreeNode> nodes : levels) {
+      for (int pos = 0; pos < nodes.size(); pos++) {
+        BtreeNode node = nodes.get(pos);
+        int nodeStart = b.size();
+        b.put("TREE".getBytes(StandardCharsets.US_ASCII));
+        b.putByte(1); // raw data chunks
+        b.putByte(node.level);
+        b.putShort(node.nentries());
+        b.putLong(pos > 0 ? nodes.get(pos - 1).address : UNDEFINED_ADDRESS);
+        b.putLong(pos < nodes.size() - 1 ? nodes.get(pos + 1).address : UNDEFINED_ADDRESS);
+        for (int i = 0; i < node.keys.size(); i++) {
+          long[] key = node.keys.get(i);
+          b.putInt((int) key[0]).putInt((int) key[1]);
+          for (int j = 2; j < key.length; j++) {
+            b.putLong(key[j]);
+          }
+          if (i < node.nentries()) {
+            b.putLong((node.level == 0) ? node.chunkAddresses.get(i) : node.children.get(i).address);
+          }
+        }
+        b.putZeros(nodeStart + nodeSize - b.size());
+      }
+    }
+    return b.toByteArray();
+  }
+
+  private static long[] toLongs(int[] values) {
+    long[] result = new long[values.length];
+    for (int i = 0; i < values.length; i++) {
+      result[i] = values[i];
+    }
+    return result;
+  }
+
+  ////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** Global heap collections, laid out from a starting address as objects are added. */
+  static class GlobalHeap {
+    private static final int MIN_COLLECTION_SIZE = 4096;
+    private static final int MAX_COLLECTION_SIZE = 1024 * 1024;
+    private static final int MAX_OBJECTS = 0xffff;
+
+    private final Bytes finished = new Bytes(MIN_COLLECTION_SIZE);
+    private final long start;
+    private Bytes objects;
+    private int nobjects;
+
+    GlobalHeap(long start) {
+      this.start = start;
+    }
+
+    /** Add an object, return its collection address and index. */
+    long[] add(byte[] data) {
+      int objectSize = 16 + padded(data.length);
+      if (objects != null && (nobjects == MAX_OBJECTS || objects.size() + objectSize > MAX_COLLECTION_SIZE)) {
+        finishCollection();
+      }
+      if (objects == null) {
+        objects = new Bytes(MIN_COLLECTION_SIZE);
+        nobjects = 0;
+      }
+      int index = ++nobjects;
+      objects.putShort(index).putShort(0).putInt(0).putLong(data.length).put(data);
+      objects.putZeros(padded(data.length) - data.length);
+      return new long[] {start + finished.size(), index};
+    }
+
+    private static int padded(int size) {
+      return (size + 7) & ~7;
+    }
+
+    private void finishCollection() {
+      int size = Math.max(MIN_COLLECTION_SIZE, 16 + objects.size());
+      int free = size - 16 - objects.size();
+      if (free > 0 && free < 16) { // room for the free space object
+        size += 16;
+        free += 16;
+      }
+      finished.put("GCOL".getBytes(StandardCharsets.US_ASCII)).putByte(1).putZeros(3).putLong(size);
+      finished.put(objects.toByteArray());
+      if (free > 0) { // the free space is described by object 0
+        finished.putShort(0).putShort(0).putInt(0).putLong(free).putZeros(free - 16);
+      }
+      objects = null;
+    }
+
+    /** All the collections, empty if no objects were added. */
+    byte[] finish() {
+      if (objects != null) {
+        finishCollection();
+      }
+      return finished.toByteArray();
+    }
+  }
+
+  /** A growable little endian byte buffer. */
+  static class Bytes {
+    private byte[] buf;
+    private int count;
+
+    Bytes(int initialSize) {
+      buf = new byte[Math.max(initialSize, 16)];
+    }
+
+    private void ensure(int n) {
+      if (count + n > buf.length) {
+        buf = Arrays.copyOf(buf, Math.max(2 * buf.length, count + n));
+      }
+    }
+
+    Bytes putByte(int b) {
+      ensure(1);
+      buf[count++] = (byte) b;
+      return this;
+    }
+
+    Bytes putShort(int v) {
+      return putSized(v, 2);
+    }
+
+    Bytes putInt(int v) {
+      return putSized(v, 4);
+    }
+
+    Bytes putLong(long v) {
+      return putSized(v, 8);
+    }
+
+    Bytes putSized(long v, int nbytes) {
+      ensure(nbytes);
+      for (int i = 0; i < nbytes; i++) {
+        buf[count++] = (byte) (v >>> (8 * i));
+      }
+      return this;
+    }
+
+    Bytes put(byte[] b) {
+      ensure(b.length);
+      System.arraycopy(b, 0, buf, count, b.length);
+      count += b.length;
+      return this;
+    }
+
+    Bytes putZeros(int n) {
+      ensure(n);
+      count += n; // already zero
+      return this;
+    }
+
+    /** Append the checksum of everything so far. */
+    Bytes putChecksum() {
+      return putInt(checksum(buf, 0, count));
+    }
+
+    int size() {
+      return count;
+    }
+
+    byte[] toByteArray() {
+      return Arrays.copyOf(buf, count);
+    }
+  }
+
+  /** Jenkins' lookup3 hash, used by HDF5 for the checksums of its metadata. */
+  static int checksum(byte[] data, int offset, int length) {
+    int a, b, c;
+    a = b = c = 0xdeadbeef + length;
+    int i = offset;
+    while (length > 12) {
+      a += getInt(data, i);
+      b += getInt(data, i + 4);
+      c += getInt(data, i + 8);
+      a -= c;
+      a ^= Integer.rotateLeft(c, 4);
+      c += b;
+      b -= a;
+      b ^= Integer.rotateLeft(a, 6);
+      a += c;
+      c -= b;
+      c ^= Integer.rotateLeft(b, 8);
+      b += a;
+      a -= c;
+      a ^= Integer.rotateLeft(c, 16);
+      c += b;
+      b -= a;
+      b ^= Integer.rotateLeft(a, 19);
+      a += c;
+      c -= b;
+      c ^= Integer.rotateLeft(b, 4);
+      b += a;
+      length -= 12;
+      i += 12;
+    }
+    if (length == 0) {
+      return c;
+    }
+    byte[] tail = new byte[12];
+    System.arraycopy(data, i, tail, 0, length);
+    a += getInt(tail, 0);
+    b += getInt(tail, 4);
+    c += getInt(tail, 8);
+    c ^= b;
+    c -= Integer.rotateLeft(b, 14);
+    a ^= c;
+    a -= Integer.rotateLeft(c, 11);
+    b ^= a;
+    b -= Integer.rotateLeft(a, 25);
+    c ^= b;
+    c -= Integer.rotateLeft(b, 16);
+    a ^= c;
+    a -= Integer.rotateLeft(c, 4);
+    b ^= a;
+    b -= Integer.rotateLeft(a, 14);
+    c ^= b;
+    c -= Integer.rotateLeft(b, 24);
+    return c;
+  }
+
+  private static int getInt(byte[] b, int pos) {
+    return (b[pos] & 0xff) | (b[pos + 1] & 0xff) << 8 | (b[pos + 2] & 0xff) << 16 | (b[pos + 3] & 0xff) << 24;
+  }
+}
@@ -0,0 +1,868 @@
+/*
+ * Copyright (c) 1998-2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.internal.iosp.hdf5;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import javax.annotation.Nullable;
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.ma2.IndexIterator;
+import ucar.ma2.InvalidRangeException;
+import ucar.ma2.Range;
+import ucar.ma2.Section;
+import ucar.ma2.StructureData;
+import ucar.nc2.Attribute;
+import ucar.nc2.Dimension;
+import ucar.nc2.Group;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.Structure;
+import ucar.nc2.Variable;
+import ucar.nc2.constants.CDM;
+import ucar.nc2.constants.DataFormatType;
+import ucar.nc2.filter.Deflate;
+import ucar.nc2.filter.Filter;
+import ucar.nc2.filter.Filters;
+import ucar.nc2.filter.Shuffle;
+import ucar.nc2.iosp.AbstractIOServiceProvider;
+import ucar.nc2.iosp.IOServiceProviderWriter;
+import ucar.nc2.iosp.Layout;
+import ucar.nc2.iosp.LayoutRegular;
+import ucar.nc2.iosp.netcdf3.N3iosp;
+import ucar.nc2.util.CancelTask;
+import ucar.nc2.util.DaemonExecutors;
+import ucar.nc2.write.Nc4Chunking;
+import ucar.nc2.write.Nc4ChunkingDefault;
+import ucar.nc2.write.NetcdfFileFormat;
+import ucar.unidata.io.RandomAccessFile;
+
+/**
+ * IOServiceProviderWriter for new netCDF-4 files, written in Java without the netCDF-C library.
+ * Handles the classic and the enhanced model, except for user defined types, Structures and non-shared dimensions:
+ * use {@link #canWrite(NetcdfFile)} to check. The data is written as it comes in, chunked variables are compressed
+ * on a shared pool of threads as their chunks are completed. The metadata is written at the end of the file on
+ * flush() and close().
+ */
+public class H5iospWriter extends AbstractIOServiceProvider implements IOServiceProviderWriter {
+  // attribute values must fit into an object header message
+  private static final int MAX_ATTRIBUTE_SIZE = 60000;
+
+  /////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  // compression of chunks: may be set with the system property, or with setCompressThreads()
+  private static final String COMPRESS_THREADS_PROPERTY = "ucar.nc2.hdf5.writer.compressThreads";
+
+  private static int compressThreads =
+      Integer.getInteger(COMPRESS_THREADS_PROPERTY, Runtime.getRuntime().availableProcessors());
+  private static ExecutorService compressExecutor;
+
+  /**
+   * Compress the chunks of compressed variables concurrently. The data is still written to the file in order on the
+   * calling thread, with at most 2 * nthreads completed chunks waiting to be compressed.
+   *
+   * @param nthreads number of threads that compress chunks; 0 or 1 compresses on the calling thread.
+   *        Default is the number of processors.
+   */
+  public static synchronized void setCompressThreads(int nthreads) {
+    if (nthreads != compressThreads) {
+      compressExecutor = null; // idle threads of the old pool time out
+    }
+    compressThreads = nthreads;
+  }
+
+  private static synchronized ExecutorService getCompressExecutor() {
+    if (compressThreads <= 1) {
+      return null;
+    }
+    if (compressExecutor == null) {
+      compressExecutor = DaemonExecutors.newFixedThreadPool("H5iospWriter-compress", compressThreads);
+    }
+    return compressExecutor;
+  }
+
+  private static synchronized int getMaxChunksInFlight() {
+    return 2 * compressThreads;
+  }
+
+  /**
+   * Whether this writer can write the given file, otherwise the netCDF-C library must be used.
+   * Structures, user defined types, non-shared dimensions and very large attributes are not supported.
+   */
+  public static boolean canWrite(NetcdfFile ncfile) {
+    return canWrite(ncfile.getRootGroup());
+  }
+
+  private static boolean canWrite(Group g) {
+    if (!canWrite(g.attributes())) {
+      return false;
+    }
+    for (Variable v : g.getVariables()) {
+      if (v instanceof Structure || !isSupported(v.getDataType()) || !canWrite(v.attributes())) {
+        return false;
+      }
+      for (Dimension dim : v.getDimensions()) {
+        if (!dim.isShared() || dim.isVariableLength() || (dim.getLength() == 0 && !dim.isUnlimited())) {
+          return false;
+        }
+      }
+    }
+    for (Group nested : g.getGroups()) {
+      if (!canWrite(nested)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean canWrite(Iterable<Attribute> atts) {
+    for (Attribute att : atts) {
+      DataType dtype = att.getDataType();
+      if (!isSupported(dtype)) {
+        return false;
+      }
+      long size = 0;
+      if (dtype == DataType.STRING) {
+        for (int i = 0; i < att.getLength(); i++) {
+          String s = att.getStringValue(i);
+          size += 16 + (s == null ? 0 : s.length() * 3L); // worst case of UTF-8
+        }
+      } else {
+        size = (long) att.getLength() * dtype.getSize();
+      }
+      if (size > MAX_ATTRIBUTE_SIZE) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isSupported(DataType dtype) {
+    return dtype.isNumeric() || dtype == DataType.CHAR || dtype == DataType.STRING;
+  }
+
+  /////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  private final boolean isClassic;
+  private Nc4Chunking chunker = new Nc4ChunkingDefault();
+  private boolean fill = true;
+  private long eof; // end of the data; the metadata is written after it
+  private final Deque<Chunk> pending = new ArrayDeque<>(); // chunks being compressed, in the order they completed
+  private final Map<Object, Map<String, Attribute>> updatedAttributes = new IdentityHashMap<>();
+
+  public H5iospWriter(NetcdfFileFormat format) {
+    this.isClassic = (format == NetcdfFileFormat.NETCDF4_CLASSIC);
+  }
+
+  /** Set the chunking strategy, null uses the default. */
+  public void setChunker(Nc4Chunking chunker) {
+    if (chunker != null) {
+      this.chunker = chunker;
+    }
+  }
+
+  @Override
+  public void create(String filename, NetcdfFile ncfile, int extra, long preallocateSize, boolean largeFile)
+      throws IOException {
+    this.ncfile = ncfile;
+    this.location = filename;
+
+    raf = new RandomAccessFile(filename, "rw");
+    raf.order(RandomAccessFile.LITTLE_ENDIAN);
+    raf.write(new byte[H5headerWriter.SUPERBLOCK_SIZE]); // written when the metadata is
+    eof = H5headerWriter.SUPERBLOCK_SIZE;
+
+    for (Variable v : getAllVariables(ncfile.getRootGroup())) {
+      v.setSPobject(new Vinfo(v));
+    }
+  }
+
+  @Override
+  public void openForWriting(RandomAccessFile raf, NetcdfFile ncfile, CancelTask cancelTask) {
+    throw new UnsupportedOperationException("H5iospWriter only writes new files");
+  }
+
+  @Override
+  public void setFill(boolean fill) {
+    this.fill = fill;
+  }
+
+  @Override
+  public boolean rewriteHeader(boolean largeFile) {
+    return false;
+  }
+
+  /** The attribute is added, or replaces the one of the same name, when the metadata is written. */
+  @Override
+  public void updateAttribute(@Nullable Variable v2, Attribute att) {
+    Object key = (v2 == null) ? ncfile.getRootGroup() : v2;
+    updatedAttributes.computeIfAbsent(key, k -> new LinkedHashMap<>()).put(att.getShortName(), att);
+  }
+
+  /** The attributes of a group or variable, with any updates. */
+  List<Attribute> getAttributes(Group g, @Nullable Variable v) {
+    Map<String, Attribute> result = new LinkedHashMap<>();
+    for (Attribute att : (v == null) ? g.attributes() : v.attributes()) {
+      result.put(att.getShortName(), att);
+    }
+    Map<String, Attribute> updated = updatedAttributes.get((v == null) ? g : v);
+    if (updated != null) {
+      result.putAll(updated);
+    }
+    return new ArrayList<>(result.values());
+  }
+
+  @Override
+  public int appendStructureData(Structure s, StructureData sdata) {
+    throw new UnsupportedOperationException("H5iospWriter does not write Structures");
+  }
+
+  @Override
+  public Array readData(Variable v2, Section section) {
+    throw new UnsupportedOperationException("H5iospWriter does not read");
+  }
+
+  @Override
+  public boolean isValidFile(RandomAccessFile raf) {
+    return false;
+  }
+
+  @Override
+  public String getFileTypeId() {
+    return DataFormatType.NETCDF4.getDescription();
+  }
+
+  @Override
+  public String getFileTypeDescription() {
+    return "Hierarchical Data Format, version 5";
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////
+  // write
+
+  @Override
+  public void writeData(Variable v2, Section section, Array values) throws IOException, InvalidRangeException {
+    Vinfo vinfo = (Vinfo) v2.getSPobject();
+    if (v2.isUnlimited()) {
+      extendUnlimited(v2, section);
+    }
+    if (section.computeSize() == 0) {
+      return;
+    }
+
+    if (vinfo.isChunked || vinfo.dataType == DataType.STRING) {
+      writeChunked(vinfo, v2.getShape(), section, values);
+    } else {
+      writeContiguous(vinfo, v2, section, values);
+    }
+  }
+
+  private void extendUnlimited(Variable v2, Section section) {
+    boolean extended = false;
+    for (int i = 0; i < v2.getRank(); i++) {
+      Dimension dim = v2.getDimension(i);
+      int length = section.getRange(i).last() + 1;
+      if (dim.isUnlimited() && length > dim.getLength()) {
+        dim.setLength(length);
+        extended = true;
+      }
+    }
+    if (extended) {
+      // need to let all unlimited variables know of new shape
+      for (Variable v : getAllVariables(ncfile.getRootGroup())) {
+        if (v.isUnlimited()) {
+          v.resetShape();
+          v.setCachedData(null, false);
+        }
+      }
+    }
+  }
+
+  private void writeContiguous(Vinfo vinfo, Variable v2, Section section, Array values)
+      throws IOException, InvalidRangeException {
+    if (vinfo.dataPos < 0) {
+      vinfo.dataPos = eof;
+      long size = vinfo.elemSize * v2.getSize();
+      eof += size;
+      if (fill) {
+        writeFill(vinfo, size);
+      }
+    }
+    byte[] bytes = toLittleEndianBytes(values, vinfo.dataType);
+    Layout layout = new LayoutRegular(vinfo.dataPos, vinfo.elemSize, v2.getShape(), section);
+    while (layout.hasNext()) {
+      Layout.Chunk chunk = layout.next();
+      raf.seek(chunk.getSrcPos());
+      raf.write(bytes, (int) chunk.getDestElem() * vinfo.elemSize, chunk.getNelems() * vinfo.elemSize);
+    }
+  }
+
+  private void writeFill(Vinfo vinfo, long size) throws IOException {
+    byte[] block = new byte[(int) Math.min(size, 1 << 16) / vinfo.elemSize * vinfo.elemSize];
+    for (int i = 0; i < block.length; i += vinfo.elemSize) {
+      System.arraycopy(vinfo.fillValue, 0, block, i, vinfo.elemSize);
+    }
+    raf.seek(vinfo.dataPos);
+    for (long done = 0; done < size; done += block.length) {
+      raf.write(block, 0, (int) Math.min(block.length, size - done));
+    }
+  }
+
+  private void writeChunked(Vinfo vinfo, int[] varShape, Section section, Array values)
+      throws IOException, InvalidRangeException {
+    int stridedDim = 0;
+    while (stridedDim < section.getRank() && section.getRange(stridedDim).stride() == 1) {
+      stridedDim++;
+    }
+    if (stridedDim < section.getRank()) { // split into sections of stride 1 along the first strided stridedDimension
+      List<Range> ranges = new ArrayList<>(section.getRanges());
+      int[] origin = new int[values.getRank()];
+      int[] shape = values.getShape();
+      shape[stridedDim] = 1;
+      int count = 0;
+      for (int index : section.getRange(stridedDim)) {
+        ranges.set(stridedDim, new Range(index, index));
+        origin[stridedDim] = count++;
+        writeChunked(vinfo, varShape, new Section(ranges), values.sectionNoReduce(origin, shape, null));
+      }
+      return;
+    }
+
+    int rank = varShape.length;
+    int[] origin = section.getOrigin();
+    int[] shape = section.getShape();
+    int[] chunkShape = vinfo.chunkShape;
+
+    // loop over the chunks that intersect the section, in row-major order
+    int[] first = new int[rank];
+    int[] last = new int[rank];
+    for (int i = 0; i < rank; i++) {
+      first[i] = origin[i] / chunkShape[i];
+      last[i] = (origin[i] + shape[i] - 1) / chunkShape[i];
+    }
+    int[] index = first.clone();
+    while (true) {
+      int[] chunkOrigin = new int[rank];
+      int[] partOrigin = new int[rank];
+      int[] localOrigin = new int[rank];
+      int[] partShape = new int[rank];
+      for (int i = 0; i < rank; i++) {
+        chunkOrigin[i] = index[i] * chunkShape[i];
+        int lo = Math.max(origin[i], chunkOrigin[i]);
+        int hi = Math.min(origin[i] + shape[i], chunkOrigin[i] + chunkShape[i]);
+        partOrigin[i] = lo - origin[i];
+        localOrigin[i] = lo - chunkOrigin[i];
+        partShape[i] = hi - lo;
+      }
+      Array part = values.sectionNoReduce(partOrigin, partShape, null);
+      writeChunk(vinfo, varShape, getChunk(vinfo, chunkOrigin), new Section(localOrigin, partShape), part);
+
+      int dim = rank - 1;
+      while (dim >= 0 && index[dim] == last[dim]) {
+        index[dim] = first[dim];
+        dim--;
+      }
+      if (dim < 0) {
+        break;
+      }
+      index[dim]++;
+    }
+  }
+
+  // copy part of the data into a chunk
+  private void writeChunk(Vinfo vinfo, int[] varShape, Chunk chunk, Section local, Array part)
+      throws IOException, InvalidRangeException {
+    if (vinfo.dataType == DataType.STRING) {
+      IndexIterator iter = part.getIndexIterator();
+      Layout layout = new LayoutRegular(0, 1, vinfo.chunkShape, local);
+      while (layout.hasNext()) {
+        Layout.Chunk run = layout.next();
+        for (int i = 0; i < run.getNelems(); i++) {
+          Object s = iter.getObjectNext();
+          chunk.strings[(int) run.getSrcPos() + i] = (s == null) ? "" : s.toString();
+        }
+      }
+      vinfo.stringsDirty = true;
+      return;
+    }
+
+    byte[] bytes = toLittleEndianBytes(part, vinfo.dataType);
+    Layout layout = new LayoutRegular(0, vinfo.elemSize, vinfo.chunkShape, local);
+    while (layout.hasNext()) {
+      Layout.Chunk run = layout.next();
+      System.arraycopy(bytes, (int) run.getDestElem() * vinfo.elemSize, chunk.data, (int) run.getSrcPos(),
+          run.getNelems() * vinfo.elemSize);
+    }
+    chunk.dirty = true;
+    chunk.nwritten += local.computeSize();
+
+    // a chunk is complete when all of it that lies within the variable has been written; along an unlimited
+    // dimension the whole chunk is expected, since the variable may still grow into it
+    long expected = 1;
+    for (int i = 0; i < varShape.length; i++) {
+      boolean unlimited = vinfo.unlimited[i];
+      expected *= unlimited ? vinfo.chunkShape[i] : Math.min(vinfo.chunkShape[i], varShape[i] - chunk.offset[i]);
+    }
+    if (chunk.nwritten >= expected) {
+      chunk.complete = true;
+      submit(chunk);
+    }
+  }
+
+  private Chunk getChunk(Vinfo vinfo, int[] offset) throws IOException {
+    Chunk chunk = vinfo.chunks.get(offset);
+    if (chunk == null) {
+      chunk = new Chunk(vinfo, offset);
+      vinfo.chunks.put(offset, chunk);
+    }
+    if (vinfo.dataType == DataType.STRING) {
+      if (chunk.strings == null) {
+        chunk.strings = new String[vinfo.chunkSize];
+        Arrays.fill(chunk.strings, "");
+      }
+      return chunk;
+    }
+
+    if (chunk.compressed != null) { // wait until its been compressed, then keep on using the data
+      waitFor(chunk);
+      pending.remove(chunk);
+    }
+    if (chunk.data == null) {
+      chunk.data = (chunk.filePos >= 0) ? readChunk(chunk) : newChunkData(vinfo);
+      chunk.nwritten = 0;
+      chunk.complete = false;
+    }
+    return chunk;
+  }
+
+  private byte[] newChunkData(Vinfo vinfo) {
+    byte[] data = new byte[vinfo.chunkSize * vinfo.elemSize];
+    if (!isZero(vinfo.fillValue)) {
+      for (int i = 0; i < data.length; i += vinfo.elemSize) {
+        System.arraycopy(vinfo.fillValue, 0, data, i, vinfo.elemSize);
+      }
+    }
+    return data;
+  }
+
+  private static boolean isZero(byte[] b) {
+    for (byte value : b) {
+      if (value != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private byte[] readChunk(Chunk chunk) throws IOException {
+    byte[] data = new byte[chunk.storedSize];
+    raf.seek(chunk.filePos);
+    raf.readFully(data);
+    List<Filter> filters = chunk.vinfo.filters;
+    for (int i = filters.size() - 1; i >= 0; i--) {
+      data = filters.get(i).decode(data);
+    }
+    if (data.length != chunk.vinfo.chunkSize * chunk.vinfo.elemSize) {
+      throw new IOException("Chunk at " + chunk.filePos + " has " + data.length + " bytes, expected "
+          + chunk.vinfo.chunkSize * chunk.vinfo.elemSize);
+    }
+    return data;
+  }
+
+  // compress the chunk on the pool, or right away if there is no pool
+  private void submit(Chunk chunk) throws IOException {
+    byte[] data = chunk.data;
+    List<Filter> filters = chunk.vinfo.filters;
+    chunk.dirty = false;
+    ExecutorService executor = filters.isEmpty() ? null : getCompressExecutor();
+    if (executor == null) {
+      storeChunk(chunk, encode(filters, data));
+      return;
+    }
+    chunk.compressed = executor.submit(() -> encode(filters, data));
+    pending.addLast(chunk);
+    int maxInFlight = getMaxChunksInFlight();
+    while (pending.size() > maxInFlight) {
+      Chunk oldest = pending.removeFirst();
+      storeChunk(oldest, waitFor(oldest));
+    }
+  }
+
+  private static byte[] encode(List<Filter> filters, byte[] data) throws IOException {
+    for (Filter filter : filters) {
+      data = filter.encode(data);
+    }
+    return data;
+  }
+
+  private byte[] waitFor(Chunk chunk) throws IOException {
+    try {
+      return chunk.compressed.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while compressing a chunk of " + chunk.vinfo.name, e);
+    } catch (ExecutionException e) {
+      throw new IOException("Failed to compress a chunk of " + chunk.vinfo.name, e.getCause());
+    } finally {
+      chunk.compressed = null;
+    }
+  }
+
+  // write the encoded chunk in place if it fits, else at the end of the data
+  private void storeChunk(Chunk chunk, byte[] encoded) throws IOException {
+    if (chunk.filePos < 0 || encoded.length > chunk.allocated) {
+      chunk.filePos = eof;
+      chunk.allocated = encoded.length;
+      eof += encoded.length;
+    }
+    raf.seek(chunk.filePos);
+    raf.write(encoded);
+    chunk.storedSize = encoded.length;
+    if (chunk.complete) {
+      chunk.data = null; // read back if its written to again
+    }
+  }
+
+  private void storeAllChunks() throws IOException {
+    for (Variable v : getAllVariables(ncfile.getRootGroup())) {
+      Vinfo vinfo = (Vinfo) v.getSPobject();
+      if (vinfo.dataType == DataType.STRING) {
+        continue;
+      }
+      for (Chunk chunk : vinfo.chunks.values()) {
+        if (chunk.dirty && chunk.compressed == null) {
+          submit(chunk);
+        }
+      }
+    }
+    while (!pending.isEmpty()) {
+      Chunk oldest = pending.removeFirst();
+      storeChunk(oldest, waitFor(oldest));
+    }
+  }
+
+  // Strings are stored in a global heap, the data are the heap ids; the old heap objects are abandoned
+  private void storeStrings() throws IOException, InvalidRangeException {
+    for (Variable v : getAllVariables(ncfile.getRootGroup())) {
+      Vinfo vinfo = (Vinfo) v.getSPobject();
+      if (vinfo.dataType != DataType.STRING || !vinfo.stringsDirty) {
+        continue;
+      }
+      // every chunk of the variable must exist
+      int[] shape = v.getShape();
+      if (new Section(shape).computeSize() > 0) {
+        forEachChunkOrigin(shape, vinfo.chunkShape, offset -> getChunk(vinfo, offset));
+      }
+
+      H5headerWriter.GlobalHeap heap = new H5headerWriter.GlobalHeap(eof);
+      Map<Chunk, byte[]> ids = new HashMap<>();
+      for (Chunk chunk : vinfo.chunks.values()) {
+        H5headerWriter.Bytes b = new H5headerWriter.Bytes(16 * chunk.strings.length);
+        for (String s : chunk.strings) {
+          byte[] sbytes = s.getBytes(StandardCharsets.UTF_8);
+          long[] heapId = heap.add(sbytes);
+          b.putInt(sbytes.length).putLong(heapId[0]).putInt((int) heapId[1]);
+        }
+        ids.put(chunk, b.toByteArray());
+      }
+      byte[] heapBytes = heap.finish();
+      raf.seek(eof);
+      raf.write(heapBytes);
+      eof += heapBytes.length;
+
+      for (Chunk chunk : vinfo.chunks.values()) {
+        if (vinfo.isChunked) {
+          storeChunk(chunk, ids.get(chunk));
+        } else {
+          if (vinfo.dataPos < 0) {
+            vinfo.dataPos = eof;
+            eof += ids.get(chunk).length;
+          }
+          raf.seek(vinfo.dataPos);
+          raf.write(ids.get(chunk));
+        }
+      }
+      vinfo.stringsDirty = false;
+    }
+  }
+
+  private interface ChunkAction {
+    void apply(int[] offset) throws IOException;
+  }
+
+  private static void forEachChunkOrigin(int[] shape, int[] chunkShape, ChunkAction action) throws IOException {
+    int rank = shape.length;
+    int[] offset = new int[rank];
+    while (true) {
+      action.apply(offset.clone());
+      int dim = rank - 1;
+      while (dim >= 0 && offset[dim] + chunkShape[dim] >= shape[dim]) {
+        offset[dim] = 0;
+        dim--;
+      }
+      if (dim < 0) {
+        return;
+      }
+      offset[dim] += chunkShape[dim];
+    }
+  }
+
+  // write everything out, then the metadata after the data
+  private long writeAll() throws IOException {
+    try {
+      storeAllChunks();
+      storeStrings();
+    } catch (InvalidRangeException e) {
+      throw new IllegalStateException(e); // cant happen
+    }
+    long end = new H5headerWriter(this, raf, isClassic).write(ncfile.getRootGroup(), eof);
+    raf.flush();
+    return end;
+  }
+
+  /** Write the data and the metadata, so that the file can be read. */
+  @Override
+  public void flush() throws IOException {
+    if (raf != null) {
+      writeAll();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (raf != null) {
+      try {
+        long end = writeAll();
+        raf.getRandomAccessFile().setLength(end);
+      } finally {
+        pending.clear();
+        super.close();
+        raf = null;
+      }
+    }
+  }
+
+  /////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  static List<Variable> getAllVariables(Group root) {
+    List<Variable> result = new ArrayList<>();
+    addVariables(root, result);
+    return result;
+  }
+
+  private static void addVariables(Group g, List<Variable> result) {
+    result.addAll(g.getVariables());
+    for (Group nested : g.getGroups()) {
+      addVariables(nested, result);
+    }
+  }
+
+  /** A _FillValue is used if it has a single value of the variable's type. */
+  static boolean isValidFillValue(@Nullable Attribute att, Variable v) {
+    if (att == null || att.getLength() != 1) {
+      return false;
+    }
+    DataType dtype = v.getDataType();
+    return att.getDataType() == dtype || (dtype == DataType.CHAR && att.getDataType() == DataType.STRING);
+  }
+
+  /** The values as little endian bytes, in row-major order. */
+  static byte[] toLittleEndianBytes(Array values, DataType dtype) {
+    ByteBuffer bb = ByteBuffer.allocate((int) values.getSize() * dtype.getSize()).order(ByteOrder.LITTLE_ENDIAN);
+    IndexIterator iter = values.getIndexIterator();
+    while (iter.hasNext()) {
+      switch (dtype) {
+        case BYTE:
+        case UBYTE:
+          bb.put(iter.getByteNext());
+          break;
+        case CHAR:
+          bb.put((byte) iter.getCharNext());
+          break;
+        case SHORT:
+        case USHORT:
+          bb.putShort(iter.getShortNext());
+          break;
+        case INT:
+        case UINT:
+          bb.putInt(iter.getIntNext());
+          break;
+        case LONG:
+        case ULONG:
+          bb.putLong(iter.getLongNext());
+          break;
+        case FLOAT:
+          bb.putFloat(iter.getFloatNext());
+          break;
+        case DOUBLE:
+          bb.putDouble(iter.getDoubleNext());
+          break;
+        default:
+          throw new IllegalArgumentException("Unsupported data type " + dtype);
+      }
+    }
+    return bb.array();
+  }
+
+  // chunks are ordered the way HDF5 indexes them
+  private static int compareOffsets(int[] o1, int[] o2) {
+    for (int i = 0; i < o1.length; i++) {
+      if (o1[i] != o2[i]) {
+        return Integer.compare(o1[i], o2[i]);
+      }
+    }
+    return 0;
+  }
+
+  private static byte[] fillValueBytes(DataType dtype, Number value) {
+    ByteBuffer bb = ByteBuffer.allocate(dtype.getSize()).order(ByteOrder.LITTLE_ENDIAN);
+    switch (dtype) {
+      case BYTE:
+      case UBYTE:
+      case CHAR:
+        bb.put(value.byteValue());
+        break;
+      case SHORT:
+      case USHORT:
+        bb.putShort(value.shortValue());
+        break;
+      case INT:
+      case UINT:
+        bb.putInt(value.intValue());
+        break;
+      case LONG:
+      case ULONG:
+        bb.putLong(value.longValue());
+        break;
+      case FLOAT:
+        bb.putFloat(value.floatValue());
+        break;
+      case DOUBLE:
+        bb.putDouble(value.doubleValue());
+        break;
+      default:
+        throw new IllegalArgumentException("Unsupported data type " + dtype);
+    }
+    return bb.array();
+  }
+
+  /** What is needed to write a variable. */
+  class Vinfo {
+    final String name;
+    final DataType dataType;
+    final int elemSize;
+    final boolean isChunked;
+    final boolean[] unlimited;
+    final int[] chunkShape; // for contiguous String variables, the shape of the variable
+    final int chunkSize; // number of elements in a chunk
+    final int deflateLevel;
+    final boolean shuffle;
+    final List<Filter> filters = new ArrayList<>();
+    final byte[] fillValue; // null for Strings
+
+    long dataPos = H5headerWriter.UNDEFINED_ADDRESS; // contiguous data
+    long btreeAddress = H5headerWriter.UNDEFINED_ADDRESS;
+    boolean stringsDirty;
+    final TreeMap<int[], Chunk> chunks = new TreeMap<>(H5iospWriter::compareOffsets);
+
+    Vinfo(Variable v) {
+      this.name = v.getFullName();
+      this.dataType = v.getDataType();
+      this.elemSize = (dataType == DataType.STRING) ? 16 : dataType.getSize();
+      this.isChunked = v.isUnlimited() || (v.getRank() > 0 && chunker.isChunked(v));
+
+      int rank = v.getRank();
+      int[] shape = v.getShape();
+      this.unlimited = new boolean[rank];
+      this.chunkShape = new int[rank];
+      long[] chunking = isChunked ? chunker.computeChunking(v) : null;
+      long size = 1;
+      for (int i = 0; i < rank; i++) {
+        unlimited[i] = v.getDimension(i).isUnlimited();
+        if (chunking == null) {
+          chunkShape[i] = shape[i];
+        } else {
+          long len = Math.max(1, chunking[i]);
+          chunkShape[i] = (int) (unlimited[i] ? len : Math.min(len, shape[i]));
+        }
+        size *= chunkShape[i];
+      }
+      this.chunkSize = (int) size;
+
+      // netCDF-4 does not allow filters on variable length types
+      int level = chunker.getDeflateLevel(v);
+      this.deflateLevel = (isChunked && dataType != DataType.STRING && level > 0) ? level : 0;
+      this.shuffle = deflateLevel > 0 && chunker.isShuffle(v);
+      if (shuffle) {
+        Map<String, Object> props = new HashMap<>();
+        props.put(Filters.Keys.ELEM_SIZE, elemSize);
+        filters.add(new Shuffle(props));
+      }
+      if (deflateLevel > 0) {
+        Map<String, Object> props = new HashMap<>();
+        props.put("level", deflateLevel);
+        filters.add(new Deflate(props));
+      }
+
+      if (dataType == DataType.STRING) {
+        this.fillValue = null;
+        this.stringsDirty = true; // always written, since the reader has no fill value for strings
+      } else {
+        Attribute att = v.findAttribute(CDM.FILL_VALUE);
+        if (!isValidFillValue(att, v)) {
+          fillValue = fillValueBytes(dataType, N3iosp.getFillValueDefault(dataType));
+        } else if (dataType == DataType.CHAR) {
+          byte[] b = att.getStringValue().getBytes(StandardCharsets.UTF_8);
+          fillValue = new byte[] {(b.length == 0) ? 0 : b[0]};
+        } else {
+          fillValue = fillValueBytes(dataType, att.getNumericValue());
+        }
+      }
+    }
+
+    /** The chunks that have been written to the file, in the order of their offsets. */
+    List<Chunk> getStoredChunks() {
+      List<Chunk> result = new ArrayList<>();
+      for (Chunk chunk : chunks.values()) {
+        if (chunk.filePos >= 0) {
+          result.add(chunk);
+        }
+      }
+      return result;
+    }
+  }
+
+  /** A chunk of a variable, or all of a contiguous String variable. */
+  static class Chunk {
+    final Vinfo vinfo;
+    final int[] offset;
+    byte[] data; // uncompressed, null when not in memory
+    String[] strings; // for String variables
+    long nwritten; // number of values written since the data was loaded
+    boolean dirty;
+    boolean complete;
+    Future<byte[]> compressed;
+    long filePos = H5headerWriter.UNDEFINED_ADDRESS;
+    int allocated; // space in the file
+    int storedSize;
+
+    Chunk(Vinfo vinfo, int[] offset) {
+      this.vinfo = vinfo;
+      this.offset = offset;
+    }
+  }
+}
@@ -11,6 +11,8 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import ucar.ma2.DataType;
@@ -20,9 +22,11 @@ import ucar.nc2.Variable;
 import ucar.nc2.filter.Filter;
 import ucar.nc2.filter.Filters;
 import ucar.nc2.filter.UnknownFilterException;
+import ucar.nc2.iosp.ChunkCache;
 import ucar.nc2.iosp.LayoutBB;
 import ucar.nc2.iosp.LayoutBBTiled;
 import ucar.nc2.iosp.hdf5.DataBTree;
+import ucar.unidata.io.FileRange;
 import ucar.nc2.util.IO;
 import ucar.unidata.io.RandomAccessFile;
 
@@ -40,6 +44,8 @@ public class H5tiledLayoutBB implements LayoutBB {
   static final int DEFAULTZIPBUFFERSIZE = 512;
   // System property name for -D flag
   static final String INFLATEBUFFERSIZE = "unidata.h5iosp.inflate.buffersize";
+  // read the chunks of a section with one vectored read, if they total no more than this
+  private static final long MAX_PREFETCH_BYTES = 64 * 1024 * 1024;
 
   public static boolean debugFilter;
 
@@ -56,6 +62,11 @@ public class H5tiledLayoutBB implements LayoutBB {
 
   private boolean debug;
 
+  // identifies the variable in the ChunkCache
+  private String location;
+  private long lastModified;
+  private String varName;
+
   private int inflatebuffersize = DEFAULTZIPBUFFERSIZE;
 
   /**
@@ -78,6 +89,9 @@ public class H5tiledLayoutBB implements LayoutBB {
     assert vinfo.btree != null;
 
     this.raf = raf;
+    this.location = raf.getLocation();
+    this.lastModified = raf.getLastModified();
+    this.varName = v2.getFullName();
     this.filters = new Filter[filterProps.length];
     for (int i = 0; i < filterProps.length; i++) {
       // add var info to filter props
@@ -108,10 +122,10 @@ public class H5tiledLayoutBB implements LayoutBB {
     System.arraycopy(vinfo.storageSize, 0, chunkSize, 0, nChunkDims);
     this.elemSize = vinfo.storageSize[vinfo.storageSize.length - 1]; // last one is always the elements size
 
-    // create the data chunk iterator
-    DataBTree.DataChunkIterator iter = vinfo.btree.getDataChunkIteratorFilter(this.want);
-    DataChunkIterator dcIter = new DataChunkIterator(iter);
-    delegate = new LayoutBBTiled(dcIter, chunkSize, elemSize, this.want);
+    // find the chunks of the section, and read them together
+    List<DataChunk> chunks = findChunks(vinfo.btree.getDataChunkIteratorFilter(this.want));
+    prefetch(chunks);
+    delegate = new LayoutBBTiled(new DataChunkIterator(chunks), chunkSize, elemSize, this.want);
 
     if (System.getProperty(INFLATEBUFFERSIZE) != null) {
       try {
@@ -161,19 +175,57 @@ public class H5tiledLayoutBB implements LayoutBB {
     return sbuff.toString();
   }
 
-  private class DataChunkIterator implements LayoutBBTiled.DataChunkIterator {
-    DataBTree.DataChunkIterator delegate;
+  // the chunks intersecting want, stopping once they cover all of it
+  private List<DataChunk> findChunks(DataBTree.DataChunkIterator iter) throws IOException, InvalidRangeException {
+    List<DataChunk> result = new ArrayList<>();
+    long wantSize = want.computeSize();
+    long found = 0;
+    while (found < wantSize && iter.hasNext()) {
+      DataChunk dc = new DataChunk(iter.next());
+      Section dataSection = new Section(dc.getOffset(), chunkSize);
+      if (dataSection.intersects(want)) {
+        result.add(dc);
+        found += dataSection.intersect(want).computeSize();
+      }
+    }
+    return result;
+  }
 
-    DataChunkIterator(DataBTree.DataChunkIterator delegate) {
-      this.delegate = delegate;
+  // read the raw bytes of the chunks not already in the ChunkCache with one vectored read, so that nearby chunks
+  // are read together, and remote chunks are requested concurrently
+  private void prefetch(List<DataChunk> chunks) throws IOException {
+    List<FileRange> ranges = new ArrayList<>();
+    long total = 0;
+    for (DataChunk dc : chunks) {
+      if (!ChunkCache.getInstance().contains(dc.getCacheKey())) {
+        dc.prefetched = new FileRange(dc.delegate.filePos, dc.delegate.size);
+        ranges.add(dc.prefetched);
+        total += dc.delegate.size;
+      }
+    }
+    if (ranges.size() < 2 || total > MAX_PREFETCH_BYTES) {
+      for (DataChunk dc : chunks) {
+        dc.prefetched = null; // read each chunk when needed
+      }
+      return;
+    }
+    raf.readVectored(ranges);
+  }
+
+  private static class DataChunkIterator implements LayoutBBTiled.DataChunkIterator {
+    private final List<DataChunk> chunks;
+    private int next;
+
+    DataChunkIterator(List<DataChunk> chunks) {
+      this.chunks = chunks;
     }
 
     public boolean hasNext() {
-      return delegate.hasNext();
+      return next < chunks.size();
     }
 
-    public LayoutBBTiled.DataChunk next() throws IOException {
-      return new DataChunk(delegate.next());
+    public LayoutBBTiled.DataChunk next() {
+      return chunks.get(next++);
     }
   }
 
@@ -182,6 +234,7 @@ public class H5tiledLayoutBB implements LayoutBB {
     private static final int MAX_ARRAY_LEN = Integer.MAX_VALUE - 8;
 
     DataBTree.DataChunk delegate;
+    FileRange prefetched; // raw bytes read by prefetch(), if any
 
     DataChunk(DataBTree.DataChunk delegate) {
       this.delegate = delegate;
@@ -218,22 +271,9 @@ public class H5tiledLayoutBB implements LayoutBB {
 
     public ByteBuffer getByteBuffer() throws IOException {
       try {
-        // read the data
-        byte[] data = new byte[delegate.size];
-        raf.seek(delegate.filePos);
-        raf.readFully(data);
-
-        // apply filters backwards
-        for (int i = filters.length - 1; i >= 0; i--) {
-          Filter f = filters[i];
-          if (isBitSet(delegate.filterMask, i)) {
-            if (debug) {
-              System.out.println("skip for chunk " + delegate);
-            }
-            continue;
-          }
-          data = f.decode(data);
-        }
+        // decoded chunks are shared through the ChunkCache
+        byte[] data = ChunkCache.getInstance().get(getCacheKey(), this::readAndDecode);
+        prefetched = null;
 
         ByteBuffer result = ByteBuffer.wrap(data);
         result.order(byteOrder);
@@ -246,6 +286,36 @@ public class H5tiledLayoutBB implements LayoutBB {
       }
     }
 
+    ChunkCache.Key getCacheKey() {
+      return ChunkCache.makeKey(location, lastModified, varName, delegate.filePos);
+    }
+
+    private byte[] readAndDecode() throws IOException {
+      // read the data, unless already read by prefetch()
+      byte[] data;
+      if (prefetched != null && prefetched.getData() != null) {
+        data = prefetched.getData();
+      } else {
+        data = new byte[delegate.size];
+        raf.seek(delegate.filePos);
+        raf.readFully(data);
+      }
+
+      // apply filters backwards
+      for (int i = filters.length - 1; i >= 0; i--) {
+        Filter f = filters[i];
+        if (isBitSet(delegate.filterMask, i)) {
+          if (debug) {
+            System.out.println("skip for chunk " + delegate);
+          }
+          continue;
+        }
+        data = f.decode(data);
+      }
+
+      return data;
+    }
+
     boolean isBitSet(int val, int bitno) {
       return ((val >>> bitno) & 1) != 0;
     }
@@ -8,6 +8,7 @@ import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import ucar.ma2.*;
 import ucar.nc2.*;
+import ucar.nc2.iosp.FileSignature;
 import ucar.nc2.write.NetcdfFileFormat;
 import ucar.unidata.io.RandomAccessFile;
 import java.util.*;
@@ -26,6 +27,10 @@ public class N3headerNew {
   static final int MAGIC_VAR = 11;
   static final int MAGIC_ATT = 12;
 
+  /** The signatures of the files that isValidFile() accepts. */
+  public static final List<FileSignature> SIGNATURES =
+      Collections.unmodifiableList(Arrays.asList(FileSignature.magic(0, MAGIC), FileSignature.magic(0, MAGIC_LONG)));
+
   public static boolean disallowFileTruncation; // see NetcdfFile.setDebugFlags
   public static boolean debugHeaderSize; // see NetcdfFile.setDebugFlags
 
@@ -8,6 +8,7 @@ import java.io.IOException;
 import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
 import java.util.Formatter;
+import java.util.List;
 import java.util.Optional;
 import ucar.ma2.Array;
 import ucar.ma2.ArrayStructureBB;
@@ -22,6 +23,7 @@ import ucar.nc2.Structure;
 import ucar.nc2.Variable;
 import ucar.nc2.constants.DataFormatType;
 import ucar.nc2.iosp.AbstractIOServiceProvider;
+import ucar.nc2.iosp.FileSignature;
 import ucar.nc2.iosp.IOServiceProvider;
 import ucar.nc2.iosp.IospHelper;
 import ucar.nc2.iosp.Layout;
@@ -94,6 +96,11 @@ public class N3iospNew extends AbstractIOServiceProvider implements IOServicePro
     return N3headerNew.isValidFile(raf);
   }
 
+  @Override
+  public List<FileSignature> getFileSignatures() {
+    return N3headerNew.SIGNATURES;
+  }
+
   @Override
   public String getDetailInfo() {
     Formatter f = new Formatter();
@@ -6,7 +6,9 @@ package ucar.nc2.internal.iosp.netcdf3;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import ucar.ma2.Array;
 import ucar.ma2.ArrayChar;
 import ucar.ma2.ArrayObject;
@@ -41,6 +43,8 @@ public class N3iospWriter extends N3iospNew implements IOServiceProviderWriter {
   ////////////////////////////////////////////////////////////////////////////////////////////////////////
   private boolean fill = true;
   private IOServiceProvider iosp = null;
+  private int recordBufferSize;
+  private N3recordBuffer recordBuffer; // created on the first write to a record not yet in the file
 
   public N3iospWriter(IOServiceProvider iosp) {
     this.iosp = iosp;
@@ -73,6 +77,15 @@ public class N3iospWriter extends N3iospNew implements IOServiceProviderWriter {
     this.fill = fill;
   }
 
+  /**
+   * Assemble whole records in memory, up to this many bytes, and write them to the file in blocks,
+   * instead of writing each variable of each record separately. Default 0, which writes directly to the file.
+   * Used only when at least one record fits.
+   */
+  public void setRecordBufferSize(int recordBufferSize) {
+    this.recordBufferSize = recordBufferSize;
+  }
+
   @Override
   public void create(String filename, ucar.nc2.NetcdfFile ncfile, int extra, long preallocateSize, boolean largeFile)
       throws IOException {
@@ -101,6 +114,8 @@ public class N3iospWriter extends N3iospNew implements IOServiceProviderWriter {
 
   @Override
   public boolean rewriteHeader(boolean largeFile) throws IOException {
+    writeRecords(); // the records may move
+    recordBuffer = null;
     return ((N3headerWriter) header).rewriteHeader(largeFile, null);
   }
 
@@ -114,7 +129,15 @@ public class N3iospWriter extends N3iospNew implements IOServiceProviderWriter {
 
     if (v2.isUnlimited()) {
       Range firstRange = section.getRange(0);
+      boolean buffered = !(v2 instanceof Structure) && N3recordBuffer.canBuffer(dataType)
+          && (recordBuffer != null || (firstRange.first() >= header.numrecs && makeRecordBuffer()));
       setNumrecs(firstRange.last() + 1);
+
+      if (buffered && firstRange.first() >= recordBuffer.getFirst()) {
+        recordBuffer.write(vinfo.begin, v2.getElementSize(), v2.getShape(), section, values, dataType);
+        return;
+      }
+      writeRecords(); // the buffered records must be in the file before writing directly to it
     }
 
     if (v2 instanceof Structure) {
@@ -141,6 +164,7 @@ public class N3iospWriter extends N3iospNew implements IOServiceProviderWriter {
   public int appendStructureData(Structure s, StructureData sdata) throws IOException, InvalidRangeException {
     int recnum = header.numrecs;
     setNumrecs(recnum + 1);
+    writeRecords();
     writeRecordData(s, recnum, sdata);
     return recnum;
   }
@@ -288,8 +312,8 @@ public class N3iospWriter extends N3iospNew implements IOServiceProviderWriter {
       }
     }
 
-    // extend file, handle filling
-    if (fill)
+    // extend file, handle filling. The record buffer fills the records it owns when it writes them.
+    if (fill && recordBuffer == null)
       fillRecordVariables(startRec, n);
     else
       raf.setMinLength(header.calcFileSize());
@@ -314,12 +338,48 @@ public class N3iospWriter extends N3iospNew implements IOServiceProviderWriter {
   @Override
   public void flush() throws java.io.IOException {
     if (raf != null) {
+      writeRecords();
       raf.flush();
       ((N3headerWriter) header).writeNumrecs();
       raf.flush();
     }
   }
 
+  /////////////////////////////////////////////////////////////
+  // record buffering
+
+  /** Create the record buffer if needed and possible. Return true if there is one. */
+  private boolean makeRecordBuffer() throws InvalidRangeException {
+    if (recordBuffer != null)
+      return true;
+    if (recordBufferSize <= 0 || header.recsize <= 0 || header.recsize > recordBufferSize)
+      return false;
+
+    int recsize = (int) header.recsize;
+    ByteBuffer template = null;
+    if (fill) { // one record of fill values
+      template = ByteBuffer.allocateDirect(recsize);
+      for (Variable v : ncfile.getVariables()) {
+        if (!v.isUnlimited() || (v instanceof Structure) || !N3recordBuffer.canBuffer(v.getDataType()))
+          continue;
+        N3headerNew.Vinfo vinfo = (N3headerNew.Vinfo) v.getSPobject();
+        int[] recordShape = Arrays.copyOfRange(v.getShape(), 1, v.getRank());
+        Layout layout = new LayoutRegular(vinfo.begin - header.recStart, v.getElementSize(), recordShape,
+            new Section(recordShape));
+        N3recordBuffer.put(template, layout, makeConstantArray(v, recordShape).getIndexIterator(), v.getDataType());
+      }
+    }
+    recordBuffer = new N3recordBuffer(raf, header.recStart, recsize, recordBufferSize / recsize, header.numrecs,
+        template);
+    return true;
+  }
+
+  /** Write all the buffered records to the file, filling the ones not written to. */
+  private void writeRecords() throws IOException {
+    if (recordBuffer != null)
+      recordBuffer.writeRecords(header.numrecs);
+  }
+
   /////////////////////////////////////////////////////////////
 
   // fill buffer with fill value
@@ -355,6 +415,10 @@ public class N3iospWriter extends N3iospNew implements IOServiceProviderWriter {
   }
 
   private Array makeConstantArray(Variable v) {
+    return makeConstantArray(v, v.getShape());
+  }
+
+  private Array makeConstantArray(Variable v, int[] shape) {
     Class classType = v.getDataType().getPrimitiveClassType();
     // int [] shape = v.getShape();
     Attribute att = v.findAttribute(CDM.FILL_VALUE);
@@ -391,7 +455,7 @@ public class N3iospWriter extends N3iospNew implements IOServiceProviderWriter {
       storage = storageP;
     }
 
-    return Array.factoryConstant(v.getDataType(), v.getShape(), storage);
+    return Array.factoryConstant(v.getDataType(), shape, storage);
   }
 
   //////////////////////////////////////////////////////////////////////////////////////////////
@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 1998-2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.internal.iosp.netcdf3;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.ma2.IndexIterator;
+import ucar.ma2.InvalidRangeException;
+import ucar.ma2.Range;
+import ucar.ma2.Section;
+import ucar.nc2.iosp.Layout;
+import ucar.nc2.iosp.LayoutRegular;
+import ucar.unidata.io.RandomAccessFile;
+
+/**
+ * Assembles whole records of the record variables in direct ByteBuffers, and writes blocks of records to the file
+ * with gathering writes, instead of seeking to each variable in each record.
+ * Records before {@link #getFirst()} are in the file; records from there up to numrecs are owned by this buffer,
+ * and are written as fill values (the template record) unless they have been assembled.
+ */
+class N3recordBuffer {
+  private static final int MAX_GATHER = 1024; // IOV_MAX on most systems
+
+  static boolean canBuffer(DataType dataType) {
+    switch (dataType) {
+      case BYTE:
+      case CHAR:
+      case SHORT:
+      case INT:
+      case FLOAT:
+      case DOUBLE:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  private final RandomAccessFile raf;
+  private final long recStart;
+  private final int recsize;
+  private final ByteBuffer template; // one record of fill values, or null if not filling
+  private final ByteBuffer[] records; // records [first, first + records.length), allocated as needed
+  private final boolean[] assembled; // if the record has been copied into records[i]
+  private int first; // first record not yet in the file
+
+  /**
+   * @param raf write to this file
+   * @param recStart where the record data starts
+   * @param recsize size of each record
+   * @param maxRecords number of records to assemble before writing them
+   * @param first first record not yet in the file
+   * @param template one record of fill values, or null if not filling
+   */
+  N3recordBuffer(RandomAccessFile raf, long recStart, int recsize, int maxRecords, int first, ByteBuffer template) {
+    this.raf = raf;
+    this.recStart = recStart;
+    this.recsize = recsize;
+    this.records = new ByteBuffer[maxRecords];
+    this.assembled = new boolean[maxRecords];
+    this.first = first;
+    this.template = template;
+  }
+
+  /** The first record not yet in the file. Earlier records must be written directly to the file. */
+  int getFirst() {
+    return first;
+  }
+
+  /**
+   * Copy values of a record variable into the records. The first record in the section must be at least getFirst().
+   *
+   * @param begin offset of the variable in the first record
+   * @param elemSize size of each element
+   * @param shape shape of the variable
+   * @param section section of the variable to write
+   * @param values write these values
+   * @param dataType dataType of the variable
+   */
+  void write(long begin, int elemSize, int[] shape, Section section, Array values, DataType dataType)
+      throws IOException, InvalidRangeException {
+    int[] recordShape = new int[shape.length - 1];
+    System.arraycopy(shape, 1, recordShape, 0, recordShape.length);
+    Section recordSection = section.toBuilder().removeFirst(1).build();
+
+    IndexIterator ii = values.getIndexIterator();
+    for (int recnum : section.getRange(0)) {
+      ByteBuffer record = getRecord(recnum);
+      put(record, new LayoutRegular(begin - recStart, elemSize, recordShape, recordSection), ii, dataType);
+    }
+  }
+
+  private ByteBuffer getRecord(int recnum) throws IOException {
+    if (recnum >= first + records.length) {
+      writeRecords(recnum);
+    }
+    int slot = recnum - first;
+    if (records[slot] == null) {
+      records[slot] = ByteBuffer.allocateDirect(recsize);
+    }
+    if (!assembled[slot]) {
+      records[slot].clear();
+      if (template != null) {
+        records[slot].put(template.duplicate());
+      } else {
+        while (records[slot].hasRemaining()) {
+          records[slot].put((byte) 0);
+        }
+      }
+      assembled[slot] = true;
+    }
+    return records[slot];
+  }
+
+  /**
+   * Write records [getFirst(), end) to the file, with gathering writes of consecutive records.
+   * Records that have not been assembled are written with fill values, or skipped if not filling.
+   */
+  void writeRecords(int end) throws IOException {
+    int runStart = first;
+    List<ByteBuffer> run = new ArrayList<>();
+    for (int recnum = first; recnum < end; recnum++) {
+      ByteBuffer src = source(recnum);
+      if (src == null || run.size() == MAX_GATHER) {
+        writeRun(runStart, run);
+        runStart = (src == null) ? recnum + 1 : recnum;
+      }
+      if (src != null) {
+        run.add(src);
+      }
+    }
+    writeRun(runStart, run);
+
+    // move the records after end to the front, keeping the allocated buffers
+    int shift = Math.max(end - first, 0);
+    for (int i = 0; i < records.length; i++) {
+      int j = i + shift;
+      if (j < records.length) {
+        ByteBuffer tmp = records[i];
+        records[i] = records[j];
+        records[j] = tmp;
+        assembled[i] = assembled[j];
+        assembled[j] = false;
+      } else {
+        assembled[i] = false;
+      }
+    }
+    first = Math.max(end, first);
+  }
+
+  private ByteBuffer source(int recnum) {
+    int slot = recnum - first;
+    if (slot < records.length && assembled[slot]) {
+      ByteBuffer src = records[slot].duplicate();
+      src.clear();
+      return src;
+    }
+    return (template == null) ? null : template.duplicate();
+  }
+
+  private void writeRun(int runStart, List<ByteBuffer> run) throws IOException {
+    if (run.isEmpty()) {
+      return;
+    }
+    raf.writeGathering(recStart + (long) runStart * recsize, run.toArray(new ByteBuffer[0]));
+    run.clear();
+  }
+
+  /** Put the values into the record buffer, at the positions given by the layout, in big endian order. */
+  static void put(ByteBuffer record, Layout layout, IndexIterator ii, DataType dataType) {
+    while (layout.hasNext()) {
+      Layout.Chunk chunk = layout.next();
+      int pos = (int) chunk.getSrcPos();
+      int nelems = chunk.getNelems();
+      switch (dataType) {
+        case BYTE:
+        case CHAR:
+          for (int k = 0; k < nelems; k++)
+            record.put(pos + k, ii.getByteNext());
+          break;
+        case SHORT:
+          for (int k = 0; k < nelems; k++)
+            record.putShort(pos + 2 * k, ii.getShortNext());
+          break;
+        case INT:
+          for (int k = 0; k < nelems; k++)
+            record.putInt(pos + 4 * k, ii.getIntNext());
+          break;
+        case FLOAT:
+          for (int k = 0; k < nelems; k++)
+            record.putFloat(pos + 4 * k, ii.getFloatNext());
+          break;
+        case DOUBLE:
+          for (int k = 0; k < nelems; k++)
+            record.putDouble(pos + 8 * k, ii.getDoubleNext());
+          break;
+        default:
+          throw new IllegalStateException("dataType= " + dataType);
+      }
+    }
+  }
+}
@@ -14,11 +14,13 @@ import ucar.nc2.Variable;
 import ucar.nc2.dataset.NetcdfDataset;
 import ucar.nc2.units.DateFormatter;
 import ucar.nc2.util.CancelTask;
+import ucar.nc2.util.DaemonExecutors;
 import ucar.nc2.util.DiskCache2;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Superclass for NcML Aggregation Builder.
@@ -62,6 +64,45 @@ public abstract class Aggregation implements ucar.nc2.ncml.AggregationIF {
     executor = exec;
   }
 
+  // concurrent section reads: off by default, may be set with the system property, or with setReadThreads()
+  private static final String READ_THREADS_PROPERTY = "ucar.nc2.ncml.aggregation.readThreads";
+
+  private static int readThreads = Integer.getInteger(READ_THREADS_PROPERTY, 1);
+  private static ExecutorService readExecutor; // used if setExecutor() was not called
+
+  /**
+   * Read a section of an outer dimension aggregation from its nested datasets concurrently, on the executor set with
+   * setExecutor(), or else on a shared pool of nthreads threads. Each aggregation reads at most nthreads of its nested
+   * datasets at once, however many threads read it. Reads that the executor has not started are run on the calling
+   * thread.
+   *
+   * @param nthreads number of nested datasets read at once; 0 or 1 reads them serially (default)
+   */
+  public static synchronized void setReadThreads(int nthreads) {
+    if (nthreads != readThreads) {
+      readExecutor = null; // idle threads of the old pool time out
+    }
+    readThreads = nthreads;
+  }
+
+  protected static synchronized int getReadThreads() {
+    return readThreads;
+  }
+
+  // null to read serially
+  protected static synchronized Executor getReadExecutor() {
+    if (readThreads <= 1) {
+      return null;
+    }
+    if (executor != null) {
+      return executor;
+    }
+    if (readExecutor == null) {
+      readExecutor = DaemonExecutors.newFixedThreadPool("Aggregation-read", readThreads);
+    }
+    return readExecutor;
+  }
+
   public static void setTypicalDatasetMode(String mode) {
     if (mode.equalsIgnoreCase("random"))
       typicalDatasetMode = TypicalDataset.RANDOM;
@@ -0,0 +1,320 @@
+/*
+ * Copyright (c) 1998-2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package ucar.nc2.internal.ncml;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.ma2.IndexIterator;
+
+/**
+ * The persisted index of a joinExisting aggregation. For each nested dataset, keyed by its id, it has the size and
+ * last modified time of the file, its number of coordinates, and the values of the cached variables.
+ * <p>
+ * The file is a header followed by length-prefixed entries. A later entry for an id replaces an earlier one, so only
+ * the nested datasets that are new or changed are appended. The file is rewritten when most of its entries have
+ * been replaced, or if it is not an index, eg the XML of older versions. The file is read into memory in one pass.
+ */
+class AggregationIndex {
+  private static final byte[] MAGIC = "NcAggIdx".getBytes(StandardCharsets.US_ASCII);
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = MAGIC.length + 4;
+
+  /** The persisted info of one nested dataset. */
+  static class Entry {
+    final String id;
+    final long size; // of the file, 0 if not known
+    final long lastModified; // of the file, 0 if not known
+    final int ncoords;
+    final Map<String, Array> cache; // values of the cached variables, keyed by variable name
+
+    Entry(String id, long size, long lastModified, int ncoords, Map<String, Array> cache) {
+      this.id = id;
+      this.size = size;
+      this.lastModified = lastModified;
+      this.ncoords = ncoords;
+      this.cache = cache;
+    }
+
+    /** If the persisted entry is for the same file, and has all of this entry's cached variables. */
+    boolean isPersistedIn(Entry persisted) {
+      return persisted != null && persisted.size == size && persisted.lastModified == lastModified
+          && persisted.ncoords == ncoords && persisted.cache.keySet().containsAll(cache.keySet());
+    }
+  }
+
+  private final File file;
+  private Map<String, Entry> entries; // the latest entry for each id, null if not yet read
+  private int nentries; // number of entries in the file, including replaced ones
+  private boolean valid; // the file is an index that can be appended to
+
+  AggregationIndex(File file) {
+    this.file = file;
+  }
+
+  File getFile() {
+    return file;
+  }
+
+  /**
+   * Read the index. An entry that was cut off, eg by a crash while writing, ends the index.
+   *
+   * @return the latest entry for each id, empty if the file does not exist or is not an index.
+   */
+  Map<String, Entry> read() throws IOException {
+    entries = new HashMap<>();
+    nentries = 0;
+    valid = false;
+    if (!file.exists()) {
+      return entries;
+    }
+
+    try (FileChannel channel = FileChannel.open(file.toPath(), READ)) {
+      long size = channel.size();
+      if (size < HEADER_SIZE) {
+        return entries;
+      }
+      if (size > Integer.MAX_VALUE) {
+        return entries;
+      }
+      // copy to the heap: another process may truncate the file to rewrite it, which would fault a mapped read.
+      // Then fewer bytes are read, and the index is cut off.
+      ByteBuffer bb = ByteBuffer.allocate((int) size);
+      int n;
+      do {
+        n = channel.read(bb);
+      } while (n >= 0 && bb.hasRemaining());
+      bb.flip();
+      if (bb.remaining() < HEADER_SIZE) {
+        return entries;
+      }
+      byte[] magic = new byte[MAGIC.length];
+      bb.get(magic);
+      if (!Arrays.equals(magic, MAGIC) || bb.getInt() != VERSION) {
+        return entries;
+      }
+
+      valid = true;
+      while (bb.hasRemaining()) {
+        int length = (bb.remaining() < 4) ? -1 : bb.getInt();
+        if (length < 0 || length > bb.remaining()) {
+          valid = false; // cut off
+          break;
+        }
+        ByteBuffer entryBuffer = bb.slice();
+        entryBuffer.limit(length);
+        bb.position(bb.position() + length);
+        try {
+          Entry entry = decode(entryBuffer);
+          entries.put(entry.id, entry);
+          nentries++;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+          valid = false;
+          break;
+        }
+      }
+    }
+    return entries;
+  }
+
+  /**
+   * Write the entries of all the nested datasets. Only the ones that are not already in the index are appended,
+   * unless the index needs to be rewritten.
+   *
+   * @return false if the file is locked by another writer, so nothing was written.
+   */
+  boolean write(List<Entry> current) throws IOException {
+    if (entries == null) {
+      try {
+        read();
+      } catch (IOException e) {
+        valid = false; // rewrite it
+      }
+    }
+
+    List<Entry> changed =
+        current.stream().filter(e -> !e.isPersistedIn(entries.get(e.id))).collect(Collectors.toList());
+    int stale = nentries + changed.size() - current.size();
+    boolean rewrite = !valid || stale > current.size();
+    if (!rewrite && changed.isEmpty()) {
+      return true;
+    }
+
+    try (FileChannel channel = FileChannel.open(file.toPath(), CREATE, WRITE)) {
+      // Try acquiring the lock without blocking. This returns null or throws an exception if the file is locked.
+      FileLock lock;
+      try {
+        lock = channel.tryLock();
+      } catch (OverlappingFileLockException e) {
+        return false; // locked in this JVM, give up
+      }
+      if (lock == null) {
+        return false;
+      }
+
+      ByteBuffer bb = ByteBuffer.wrap(encode(rewrite, rewrite ? current : changed));
+      if (rewrite) {
+        channel.truncate(0);
+        channel.position(0);
+      } else {
+        channel.position(channel.size());
+      }
+      while (bb.hasRemaining()) {
+        channel.write(bb);
+      }
+    }
+
+    if (rewrite) {
+      entries = new HashMap<>();
+      nentries = 0;
+    }
+    for (Entry entry : rewrite ? current : changed) {
+      entries.put(entry.id, entry);
+      nentries++;
+    }
+    valid = true;
+    return true;
+  }
+
+  ///////////////////////////////////////////////////////////////////////////////////////////
+  // big endian, strings are a length followed by UTF-8
+
+  private static byte[] encode(boolean withHeader, List<Entry> list) throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bos);
+    if (withHeader) {
+      out.write(MAGIC);
+      out.writeInt(VERSION);
+    }
+
+    ByteArrayOutputStream ebos = new ByteArrayOutputStream();
+    DataOutputStream eout = new DataOutputStream(ebos);
+    for (Entry entry : list) {
+      ebos.reset();
+      writeString(eout, entry.id);
+      eout.writeLong(entry.size);
+      eout.writeLong(entry.lastModified);
+      eout.writeInt(entry.ncoords);
+      eout.writeInt(entry.cache.size());
+      for (Map.Entry<String, Array> cached : entry.cache.entrySet()) {
+        writeString(eout, cached.getKey());
+        writeArray(eout, cached.getValue());
+      }
+      eout.flush();
+      out.writeInt(ebos.size());
+      ebos.writeTo(out);
+    }
+    out.flush();
+    return bos.toByteArray();
+  }
+
+  private static Entry decode(ByteBuffer bb) {
+    String id = readString(bb);
+    long size = bb.getLong();
+    long lastModified = bb.getLong();
+    int ncoords = bb.getInt();
+    int ncache = bb.getInt();
+    Map<String, Array> cache = new LinkedHashMap<>();
+    for (int i = 0; i < ncache; i++) {
+      String varName = readString(bb);
+      cache.put(varName, readArray(bb));
+    }
+    return new Entry(id, size, lastModified, ncoords, cache);
+  }
+
+  private static void writeString(DataOutputStream out, String s) throws IOException {
+    byte[] b = s.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(b.length);
+    out.write(b);
+  }
+
+  private static String readString(ByteBuffer bb) {
+    int length = bb.getInt();
+    if (length < 0 || length > bb.remaining()) {
+      throw new IllegalArgumentException("bad string length " + length);
+    }
+    byte[] b = new byte[length];
+    bb.get(b);
+    return new String(b, StandardCharsets.UTF_8);
+  }
+
+  private static void writeArray(DataOutputStream out, Array data) throws IOException {
+    DataType dtype = data.getDataType();
+    writeString(out, dtype.name());
+    out.writeInt((int) data.getSize());
+    Class<?> primitive = dtype.getPrimitiveClassType();
+    IndexIterator ii = data.getIndexIterator();
+    while (ii.hasNext()) {
+      if (primitive == double.class) {
+        out.writeDouble(ii.getDoubleNext());
+      } else if (primitive == float.class) {
+        out.writeFloat(ii.getFloatNext());
+      } else if (primitive == long.class) {
+        out.writeLong(ii.getLongNext());
+      } else if (primitive == int.class) {
+        out.writeInt(ii.getIntNext());
+      } else if (primitive == short.class) {
+        out.writeShort(ii.getShortNext());
+      } else if (primitive == byte.class) {
+        out.writeByte(ii.getByteNext());
+      } else if (primitive == char.class) {
+        out.writeChar(ii.getCharNext());
+      } else {
+        writeString(out, String.valueOf(ii.getObjectNext()));
+      }
+    }
+  }
+
+  private static Array readArray(ByteBuffer bb) {
+    DataType dtype = DataType.getType(readString(bb));
+    int n = bb.getInt();
+    if (dtype == null || n < 0 || n > bb.remaining()) {
+      throw new IllegalArgumentException("bad cached array");
+    }
+    Array data = Array.factory(dtype, new int[] {n});
+    Class<?> primitive = dtype.getPrimitiveClassType();
+    IndexIterator ii = data.getIndexIterator();
+    while (ii.hasNext()) {
+      if (primitive == double.class) {
+        ii.setDoubleNext(bb.getDouble());
+      } else if (primitive == float.class) {
+        ii.setFloatNext(bb.getFloat());
+      } else if (primitive == long.class) {
+        ii.setLongNext(bb.getLong());
+      } else if (primitive == int.class) {
+        ii.setIntNext(bb.getInt());
+      } else if (primitive == short.class) {
+        ii.setShortNext(bb.getShort());
+      } else if (primitive == byte.class) {
+        ii.setByteNext(bb.get());
+      } else if (primitive == char.class) {
+        ii.setCharNext(bb.getChar());
+      } else {
+        ii.setObjectNext(readString(bb));
+      }
+    }
+    return data;
+  }
+}
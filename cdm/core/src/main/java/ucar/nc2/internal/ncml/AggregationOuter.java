@@ -5,6 +5,7 @@
 package ucar.nc2.internal.ncml;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.Formatter;
@@ -15,7 +16,11 @@ import java.util.StringTokenizer;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.Semaphore;
 import thredds.inventory.MFile;
 import ucar.ma2.Array;
 import ucar.ma2.DataType;
@@ -57,6 +62,8 @@ abstract class AggregationOuter extends Aggregation implements ProxyReader {
 
   protected List<CacheVar> cacheList = new ArrayList<>(); // promote global attribute to variable
   protected boolean timeUnitsChange;
+  private Semaphore readPermits; // limits the nested datasets read concurrently by this aggregation
+  private int readPermitCount;
 
   /**
    * Create an Aggregation for the given NetcdfDataset.
@@ -399,39 +406,173 @@ abstract class AggregationOuter extends Aggregation implements ProxyReader {
 
     List<Range> ranges = section.getRanges();
     Range joinRange = section.getRange(0);
-    List<Range> nestedSection = new ArrayList<>(ranges); // get copy
     List<Range> innerSection = ranges.subList(1, ranges.size());
 
     if (debug)
       System.out.println("   agg wants range=" + mainv.getFullName() + "(" + joinRange + ")");
 
-    // LOOK: could multithread here
+    // numeric data is copied straight into its slice of sectionData, so the nested datasets may be read concurrently
+    boolean copySlices = dtype.isNumeric() || dtype == DataType.CHAR;
+    int readThreads = getReadThreads();
+    Executor readExecutor = copySlices ? getReadExecutor() : null;
+    Semaphore permits = readExecutor == null ? null : getReadPermits(Math.max(readThreads, 1));
+    List<RunnableFuture<Boolean>> futures = new ArrayList<>();
+    int waited = 0; // futures before this one are done
+    int destStart = 0; // index along the outer dimension of sectionData
+
     List<AggDataset> nestedDatasets = getDatasets();
-    for (AggDataset nested : nestedDatasets) {
-      AggDatasetOuter dod = (AggDatasetOuter) nested;
-      Range nestedJoinRange = dod.getNestedJoinRange(joinRange);
-      if (nestedJoinRange == null)
-        continue;
+    try {
+      for (AggDataset nested : nestedDatasets) {
+        AggDatasetOuter dod = (AggDatasetOuter) nested;
+        Range nestedJoinRange = dod.getNestedJoinRange(joinRange);
+        if (nestedJoinRange == null)
+          continue;
 
-      Array varData;
-      if ((type == Type.joinNew) || (type == Type.forecastModelRunCollection)) {
-        varData = dod.read(mainv, cancelTask, innerSection);
-      } else {
-        nestedSection.set(0, nestedJoinRange);
-        varData = dod.read(mainv, cancelTask, nestedSection);
-      }
+        List<Range> nestedSection;
+        if ((type == Type.joinNew) || (type == Type.forecastModelRunCollection)) {
+          nestedSection = innerSection;
+        } else {
+          nestedSection = new ArrayList<>(ranges); // get copy
+          nestedSection.set(0, nestedJoinRange);
+        }
 
-      if ((cancelTask != null) && cancelTask.isCancel())
-        return null;
-      varData = MAMath.convert(varData, dtype); // just in case it need to be converted
+        if (copySlices) {
+          SliceReader task = new SliceReader(dod, mainv, cancelTask, nestedSection, sectionData, destStart,
+              nestedJoinRange.length(), dtype, permits);
+          if (readExecutor == null) {
+            if (!task.call())
+              return null;
+          } else {
+            // at most readThreads nested datasets of this read in flight: wait for the oldest before starting another
+            if (futures.size() - waited >= readThreads && !getSliceResult(futures.get(waited++)))
+              return null;
+            RunnableFuture<Boolean> future = new FutureTask<>(task);
+            futures.add(future);
+            readExecutor.execute(future);
+          }
 
-      Array.arraycopy(varData, 0, sectionData, destPos, (int) varData.getSize());
-      destPos += varData.getSize();
+        } else {
+          Array varData = dod.read(mainv, cancelTask, nestedSection);
+          if ((cancelTask != null) && cancelTask.isCancel())
+            return null;
+          varData = MAMath.convert(varData, dtype); // just in case it need to be converted
+
+          Array.arraycopy(varData, 0, sectionData, destPos, (int) varData.getSize());
+          destPos += varData.getSize();
+        }
+        destStart += nestedJoinRange.length();
+      }
+
+      while (waited < futures.size()) {
+        if (!getSliceResult(futures.get(waited++)))
+          return null;
+      }
+    } finally {
+      // on failure or cancel, dont leave the remaining reads queued on the shared executor
+      for (RunnableFuture<Boolean> future : futures) {
+        future.cancel(false);
+      }
     }
 
+    if ((cancelTask != null) && cancelTask.isCancel())
+      return null;
     return sectionData;
   }
 
+  // Shared by all reads of this aggregation, to bound the nested datasets it reads at once, whatever the number of
+  // threads reading it. Only held while a read runs, never while it is queued, so it cannot deadlock.
+  private synchronized Semaphore getReadPermits(int readThreads) {
+    if (readPermits == null || readPermitCount != readThreads) {
+      readPermits = new Semaphore(readThreads);
+      readPermitCount = readThreads;
+    }
+    return readPermits;
+  }
+
+  // A read that has not started on the executor is run on the calling thread, so a busy executor never stalls the
+  // read, and reads that are themselves run on the executor cannot wait on each other.
+  private static boolean getSliceResult(RunnableFuture<Boolean> future) throws IOException, InvalidRangeException {
+    future.run(); // does nothing if already started
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException(e.getMessage());
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException)
+        throw (IOException) cause;
+      if (cause instanceof InvalidRangeException)
+        throw (InvalidRangeException) cause;
+      if (cause instanceof RuntimeException)
+        throw (RuntimeException) cause;
+      if (cause instanceof Error)
+        throw (Error) cause;
+      throw new IOException(cause);
+    }
+  }
+
+  /**
+   * Reads a section of a nested dataset, and copies it into its slice of the outer dimension of the result,
+   * converting to the result type if needed. Returns false if cancelled.
+   */
+  private static class SliceReader implements Callable<Boolean> {
+    private final AggDatasetOuter dod;
+    private final Variable mainv;
+    private final CancelTask cancelTask;
+    private final List<Range> nestedSection;
+    private final Array sectionData;
+    private final int destStart;
+    private final int destLength;
+    private final DataType dtype;
+    private final Semaphore permits; // null if read serially
+
+    SliceReader(AggDatasetOuter dod, Variable mainv, CancelTask cancelTask, List<Range> nestedSection,
+        Array sectionData, int destStart, int destLength, DataType dtype, Semaphore permits) {
+      this.dod = dod;
+      this.mainv = mainv;
+      this.cancelTask = cancelTask;
+      this.nestedSection = nestedSection;
+      this.sectionData = sectionData;
+      this.destStart = destStart;
+      this.destLength = destLength;
+      this.dtype = dtype;
+      this.permits = permits;
+    }
+
+    @Override
+    public Boolean call() throws IOException, InvalidRangeException {
+      if (permits == null) {
+        return read();
+      }
+      try {
+        permits.acquire();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException(e.getMessage());
+      }
+      try {
+        return read();
+      } finally {
+        permits.release();
+      }
+    }
+
+    private boolean read() throws IOException, InvalidRangeException {
+      Array varData = dod.read(mainv, cancelTask, nestedSection);
+      if ((cancelTask != null) && cancelTask.isCancel())
+        return false;
+
+      int[] origin = new int[sectionData.getRank()];
+      origin[0] = destStart;
+      int[] shape = sectionData.getShape();
+      shape[0] = destLength;
+      Array slice = sectionData.sectionNoReduce(origin, shape, null);
+      MAMath.copy(dtype, varData.getIndexIterator(), slice.getIndexIterator());
+      return true;
+    }
+  }
+
   /**
    * Read an aggregation variable: A variable whose data spans multiple files.
    * This is an implementation of ProxyReader, so must fulfill that contract.
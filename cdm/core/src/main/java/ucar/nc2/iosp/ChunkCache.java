@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 1998-2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.iosp;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.io.IOException;
+import java.util.Formatter;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A process-wide cache of decoded (decompressed and unfiltered) data chunks, shared by the layouts of chunked
+ * formats, eg HDF5 / NetCDF-4 and Zarr. Chunks are keyed by file, variable and chunk offset, and evicted in
+ * least recently used order once the total size of the cached chunks exceeds a byte budget.
+ * <p>
+ * The budget defaults to 64 MiB, and can be set with the system property {@value #MAX_BYTES_PROPERTY},
+ * or with {@link #setMaxBytes(long)}. A budget of 0 disables the cache.
+ * Cached arrays are shared, and must not be modified.
+ */
+public class ChunkCache {
+  private static final Logger logger = LoggerFactory.getLogger(ChunkCache.class);
+
+  public static final String MAX_BYTES_PROPERTY = "ucar.nc2.iosp.chunkCache.maxBytes";
+
+  // 64 MiB default budget
+  private static final long defaultMaxBytes = 64 * 1024 * 1024;
+
+  private static volatile ChunkCache instance = new ChunkCache(readMaxBytesProperty());
+
+  private static long readMaxBytesProperty() {
+    String s = System.getProperty(MAX_BYTES_PROPERTY);
+    if (s == null) {
+      return defaultMaxBytes;
+    }
+    try {
+      return Long.parseLong(s.trim());
+    } catch (NumberFormatException e) {
+      logger.warn("-D{} is not a number: {}", MAX_BYTES_PROPERTY, s);
+      return defaultMaxBytes;
+    }
+  }
+
+  /** The shared instance. */
+  public static ChunkCache getInstance() {
+    return instance;
+  }
+
+  /**
+   * Replace the shared instance with an empty cache holding at most maxBytes of chunk data.
+   *
+   * @param maxBytes byte budget, 0 to disable caching.
+   */
+  public static void setMaxBytes(long maxBytes) {
+    instance = new ChunkCache(maxBytes);
+  }
+
+  /**
+   * Make a key for a chunk.
+   *
+   * @param location location of the file holding the chunk
+   * @param lastModified last modified time of the file, so that rewritten files do not use stale chunks
+   * @param varName full name of the variable
+   * @param chunkOffset position of the chunk in the file
+   * @return key for {@link #get(Key, Callable)}, or null if lastModified is not positive. In-memory and remote files
+   *         have no modification time, so their location alone cannot tell two files apart, and they are not cached.
+   */
+  public static Key makeKey(String location, long lastModified, String varName, long chunkOffset) {
+    if (lastModified <= 0) {
+      return null;
+    }
+    return new Key(location, lastModified, varName, chunkOffset);
+  }
+
+  ////////////////////////////////////////////////////////////////////////
+
+  private final long maxBytes;
+  private final Cache<Key, byte[]> cache; // null if disabled
+
+  private ChunkCache(long maxBytes) {
+    this.maxBytes = Math.max(maxBytes, 0);
+    if (this.maxBytes > 0) {
+      Weigher<Key, byte[]> weigher = (key, value) -> value.length;
+      // guava splits the weight budget across segments, so use one segment to allow chunks up to maxBytes;
+      // chunks are decoded outside of the segment lock, so this does not serialize decoding.
+      this.cache = CacheBuilder.newBuilder().concurrencyLevel(1).maximumWeight(this.maxBytes).weigher(weigher)
+          .recordStats().build();
+    } else {
+      this.cache = null;
+    }
+  }
+
+  /** true if chunks are cached */
+  public boolean isEnabled() {
+    return cache != null;
+  }
+
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  /**
+   * Get the decoded chunk for this key, calling the loader if it is not in the cache.
+   * Concurrent requests for the same missing chunk call the loader only once.
+   *
+   * @param key identifies the chunk, null to call the loader without caching
+   * @param loader reads and decodes the chunk
+   * @return decoded chunk data, which must not be modified
+   * @throws IOException on read error
+   */
+  public byte[] get(Key key, Callable<byte[]> loader) throws IOException {
+    if (cache == null || key == null) {
+      return call(loader);
+    }
+    try {
+      return cache.get(key, loader);
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IOException(cause);
+    } catch (ExecutionError e) {
+      throw (Error) e.getCause();
+    }
+  }
+
+  /** true if the chunk for this key is in the cache */
+  public boolean contains(Key key) {
+    return cache != null && key != null && cache.asMap().containsKey(key);
+  }
+
+  private static byte[] call(Callable<byte[]> loader) throws IOException {
+    try {
+      return loader.call();
+    } catch (IOException | RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new IOException(e);
+    }
+  }
+
+  /** Remove all chunks from the cache */
+  public void clear() {
+    if (cache != null) {
+      cache.invalidateAll();
+    }
+  }
+
+  /** Number of requests satisfied from the cache */
+  public long getHitCount() {
+    return cache == null ? 0 : cache.stats().hitCount();
+  }
+
+  /** Number of requests that had to read and decode the chunk */
+  public long getMissCount() {
+    return cache == null ? 0 : cache.stats().missCount();
+  }
+
+  /** Number of chunks evicted to stay within the byte budget */
+  public long getEvictionCount() {
+    return cache == null ? 0 : cache.stats().evictionCount();
+  }
+
+  /** Number of chunks in the cache */
+  public long size() {
+    return cache == null ? 0 : cache.size();
+  }
+
+  /** Total bytes of the chunks in the cache */
+  public long sizeBytes() {
+    if (cache == null) {
+      return 0;
+    }
+    long total = 0;
+    for (byte[] b : cache.asMap().values()) {
+      total += b.length;
+    }
+    return total;
+  }
+
+  public void showStats(Formatter f) {
+    if (cache == null) {
+      f.format("ChunkCache disabled%n");
+      return;
+    }
+    CacheStats stats = cache.stats();
+    f.format("ChunkCache maxBytes=%d chunks=%d bytes=%d hits=%d misses=%d evictions=%d hitRate=%.3f%n", maxBytes,
+        size(), sizeBytes(), stats.hitCount(), stats.missCount(), stats.evictionCount(), stats.hitRate());
+  }
+
+  /** Identifies a chunk: file, variable and chunk offset */
+  public static final class Key {
+    private final String location;
+    private final long lastModified;
+    private final String varName;
+    private final long chunkOffset;
+
+    private Key(String location, long lastModified, String varName, long chunkOffset) {
+      this.location = location;
+      this.lastModified = lastModified;
+      this.varName = varName;
+      this.chunkOffset = chunkOffset;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      Key key = (Key) o;
+      return lastModified == key.lastModified && chunkOffset == key.chunkOffset && location.equals(key.location)
+          && varName.equals(key.varName);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(location, lastModified, varName, chunkOffset);
+    }
+
+    @Override
+    public String toString() {
+      return location + ":" + varName + "@" + chunkOffset;
+    }
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 1998-2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.iosp;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * A cheap test that a file may be readable by an IOServiceProvider: magic bytes at a fixed offset of the file, or
+ * a suffix of the file location. NetcdfFiles reads the start of a file once, and only calls isValidFile() on the
+ * IOServiceProviders that have a signature that may match.
+ *
+ * @see IOServiceProvider#getFileSignatures()
+ */
+@Immutable
+public class FileSignature {
+
+  /** Magic bytes at an offset of the file. */
+  public static FileSignature magic(long offset, byte[] bytes) {
+    return new FileSignature(offset, bytes.clone(), null);
+  }
+
+  /** Magic bytes at an offset of the file, given as an US-ASCII string. */
+  public static FileSignature magic(long offset, String ascii) {
+    return new FileSignature(offset, ascii.getBytes(StandardCharsets.US_ASCII), null);
+  }
+
+  /** A suffix of the file location, case sensitive. */
+  public static FileSignature suffix(String suffix) {
+    return new FileSignature(0, null, suffix);
+  }
+
+  private final long offset;
+  private final byte[] bytes; // null for a suffix
+  private final String suffix; // null for magic bytes
+
+  private FileSignature(long offset, byte[] bytes, String suffix) {
+    this.offset = offset;
+    this.bytes = bytes;
+    this.suffix = suffix;
+  }
+
+  /**
+   * Whether a file may match this signature. Magic bytes that lie beyond the header may match, unless they
+   * lie beyond the end of the file.
+   *
+   * @param header the first bytes of the file
+   * @param headerLength number of valid bytes in header
+   * @param fileLength length of the file
+   * @param location location of the file
+   * @return false only if the file does not match.
+   */
+  public boolean mayMatch(byte[] header, int headerLength, long fileLength, String location) {
+    if (suffix != null) {
+      return location != null && location.endsWith(suffix);
+    }
+    long end = offset + bytes.length;
+    if (end > headerLength) {
+      return end <= fileLength;
+    }
+    for (int i = 0; i < bytes.length; i++) {
+      if (header[(int) offset + i] != bytes[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    if (suffix != null) {
+      return "suffix " + suffix;
+    }
+    return "magic " + Arrays.toString(bytes) + " at " + offset;
+  }
+}
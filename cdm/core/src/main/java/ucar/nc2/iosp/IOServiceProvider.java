@@ -7,6 +7,8 @@ package ucar.nc2.iosp;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.channels.WritableByteChannel;
+import java.util.Collections;
+import java.util.List;
 import javax.annotation.Nullable;
 import ucar.ma2.Section;
 import ucar.ma2.InvalidRangeException;
@@ -243,6 +245,17 @@ public interface IOServiceProvider extends Comparable<IOServiceProvider> {
    */
   String getFileTypeDescription();
 
+  /**
+   * Cheap tests of the files this IOServiceProvider can read. If not empty, isValidFile() must return false for
+   * files that match none of them, so that NetcdfFiles can skip calling it. An empty list means that any file may be
+   * valid, and isValidFile() is always called.
+   *
+   * @return signatures of the files this IOServiceProvider can read, by default empty.
+   */
+  default List<FileSignature> getFileSignatures() {
+    return Collections.emptyList();
+  }
+
   /**
    * Used to determine the ordering for dynamically loaded IOServiceProviders.
    */
@@ -45,6 +45,7 @@ public class DataBTree {
   private final int ndimStorage, wantType;
 
   private Object owner;
+  private volatile ChunkIndex chunkIndex; // lazily read from the btree
 
   public DataBTree(H5headerIF h5, long rootNodeAddress, int[] varShape, int[] storageSize, MemTracker memTracker) {
     this.h5 = h5;
@@ -78,8 +79,9 @@ public class DataBTree {
   // returns the actual data from the btree leaf (level 0) nodes.
   // used by H5tiledLayout, when there are no filters
   class DataChunkIteratorNoFilter implements LayoutTiled.DataChunkIterator {
-    private Node root;
-    private int nChunkDim;
+    private final ChunkIndex index;
+    private final int nChunkDim;
+    private int current;
 
     /**
      * Constructor
@@ -90,26 +92,19 @@ public class DataBTree {
      */
     DataChunkIteratorNoFilter(Section want, int nChunkDim) throws IOException {
       this.nChunkDim = nChunkDim;
-      root = new Node(rootNodeAddress, -1); // should we cache the nodes ???
-      int[] wantOrigin = (want != null) ? want.getOrigin() : null;
-      root.first(wantOrigin);
+      this.index = getChunkIndex();
+      this.current = index.first((want != null) ? want.getOrigin() : null);
     }
 
     public boolean hasNext() {
-      return root.hasNext(); // && !node.greaterThan(wantOrigin);
+      return current < index.nchunks;
     }
 
-    public LayoutTiled.DataChunk next() throws IOException {
-      DataChunk dc = root.next();
-      int[] offset = dc.offset;
-      if (offset.length > nChunkDim) { // may have to eliminate last offset
-        offset = new int[nChunkDim];
-        System.arraycopy(dc.offset, 0, offset, 0, nChunkDim);
-      }
+    public LayoutTiled.DataChunk next() {
+      int[] offset = index.getOffset(current, Math.min(nChunkDim, ndimStorage));
       if (debugChunkOrder)
-        System.out.printf("LayoutTiled.DataChunk next order %d%n", tiling.order(dc.offset));
-
-      return new LayoutTiled.DataChunk(offset, dc.filePos);
+        System.out.printf("LayoutTiled.DataChunk next order %d%n", index.order[current]);
+      return new LayoutTiled.DataChunk(offset, index.filePos[current++]);
     }
   }
 
@@ -117,8 +112,8 @@ public class DataBTree {
   // returns the data chunck info from the btree leaf (level 0) nodes
   // used by H5tiledLayoutBB, when there are filters
   public class DataChunkIterator {
-    private Node root;
-    private int[] wantOrigin;
+    private final ChunkIndex index;
+    private int current;
 
     /**
      * Constructor
@@ -127,17 +122,116 @@ public class DataBTree {
      * @throws IOException on error
      */
     DataChunkIterator(Section want) throws IOException {
-      root = new Node(rootNodeAddress, -1); // should we cache the nodes ???
-      wantOrigin = (want != null) ? want.getOrigin() : null;
-      root.first(wantOrigin);
+      this.index = getChunkIndex();
+      this.current = index.first((want != null) ? want.getOrigin() : null);
     }
 
     public boolean hasNext() {
-      return root.hasNext(); // && !node.greaterThan(wantOrigin);
+      return current < index.nchunks;
     }
 
     public DataChunk next() throws IOException {
-      return root.next();
+      DataChunk dc = new DataChunk(index.size[current], index.filterMask[current],
+          index.getOffset(current, ndimStorage), index.filePos[current]);
+      current++;
+      return dc;
+    }
+  }
+
+  /**
+   * Get the chunk index, reading the entire btree the first time it is called.
+   * Subsequent calls, eg for each read of a section of the variable, do no I/O.
+   */
+  ChunkIndex getChunkIndex() throws IOException {
+    ChunkIndex result = chunkIndex;
+    if (result == null) {
+      synchronized (this) {
+        result = chunkIndex;
+        if (result == null) {
+          result = new ChunkIndex();
+          chunkIndex = result;
+        }
+      }
+    }
+    return result;
+  }
+
+  // The leaf entries of the btree, materialized in btree order into primitive arrays.
+  // entry i covers [offset(i), offset(i+1)) in tile order, so a section origin is found by binary search on order[].
+  class ChunkIndex {
+    final int nchunks;
+    final int[] offsets; // offsets[nchunks * ndimStorage], offset of chunk i starts at i * ndimStorage
+    final long[] filePos; // long[nchunks]
+    final int[] size; // int[nchunks]
+    final int[] filterMask; // int[nchunks]
+    final int[] order; // int[nchunks] tiling order of each chunk
+    final boolean isSorted; // if order[] is nondecreasing, which it should be, otherwise iterate from the start
+
+    ChunkIndex() throws IOException {
+      int n = 0;
+      int[] offsets = new int[16 * ndimStorage];
+      long[] filePos = new long[16];
+      int[] size = new int[16];
+      int[] filterMask = new int[16];
+
+      Node root = new Node(rootNodeAddress, -1);
+      root.first(null);
+      while (root.hasNext()) {
+        DataChunk dc = root.next();
+        if (n == filePos.length) {
+          int len = 2 * n;
+          offsets = Arrays.copyOf(offsets, len * ndimStorage);
+          filePos = Arrays.copyOf(filePos, len);
+          size = Arrays.copyOf(size, len);
+          filterMask = Arrays.copyOf(filterMask, len);
+        }
+        System.arraycopy(dc.offset, 0, offsets, n * ndimStorage, ndimStorage);
+        filePos[n] = dc.filePos;
+        size[n] = dc.size;
+        filterMask[n] = dc.filterMask;
+        n++;
+      }
+
+      this.nchunks = n;
+      this.offsets = Arrays.copyOf(offsets, n * ndimStorage);
+      this.filePos = Arrays.copyOf(filePos, n);
+      this.size = Arrays.copyOf(size, n);
+      this.filterMask = Arrays.copyOf(filterMask, n);
+
+      this.order = new int[n];
+      boolean sorted = true;
+      for (int i = 0; i < n; i++) {
+        order[i] = tiling.order(getOffset(i, ndimStorage));
+        if (i > 0 && order[i] < order[i - 1])
+          sorted = false;
+      }
+      this.isSorted = sorted;
+      if (debugDataBtree)
+        debugOut.printf("DataBTree (%s) chunk index has %d chunks, sorted=%s%n", owner, n, sorted);
+    }
+
+    int[] getOffset(int chunk, int ndim) {
+      int[] result = new int[ndim];
+      System.arraycopy(offsets, chunk * ndimStorage, result, 0, ndim);
+      return result;
+    }
+
+    // this finds the first entry we dont want to skip.
+    // we want to skip any entries where want >= offset(i+1), so use the last entry with offset(i) <= want
+    int first(int[] wantOrigin) {
+      if (wantOrigin == null || !isSorted || nchunks == 0)
+        return 0;
+      int want = tiling.order(wantOrigin);
+      int low = 0;
+      int high = nchunks; // find the number of entries with order <= want
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (order[mid] <= want)
+          low = mid + 1;
+        else
+          high = mid;
+      }
+      return Math.max(low - 1, 0);
     }
   }
 
@@ -316,6 +410,13 @@ public class DataBTree {
         memTracker.addByLen("Chunked Data (" + owner + ")", filePos, size);
     }
 
+    DataChunk(int size, int filterMask, int[] offset, long filePos) {
+      this.size = size;
+      this.filterMask = filterMask;
+      this.offset = offset;
+      this.filePos = filePos;
+    }
+
     public String toString() {
       StringBuilder sbuff = new StringBuilder();
       sbuff.append("  ChunkedDataNode size=").append(size).append(" filterMask=").append(filterMask).append(" filePos=")
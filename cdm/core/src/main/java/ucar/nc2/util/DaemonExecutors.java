@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 1998-2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.util;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thread pools of daemon threads, for the optional concurrent work of readers and writers. The threads do not keep
+ * the JVM alive, and idle threads time out, so a pool that is no longer used costs nothing and need not be shut down.
+ */
+public class DaemonExecutors {
+  private static final long KEEP_ALIVE_SECONDS = 60;
+
+  private DaemonExecutors() {}
+
+  /**
+   * A pool of at most nthreads threads, named name-0, name-1, ... Tasks wait in an unbounded queue.
+   *
+   * @param name prefix of the thread names
+   * @param nthreads maximum number of threads, must be positive
+   */
+  public static ExecutorService newFixedThreadPool(String name, int nthreads) {
+    ThreadPoolExecutor pool = new ThreadPoolExecutor(nthreads, nthreads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(), threadFactory(name));
+    pool.allowCoreThreadTimeOut(true);
+    return pool;
+  }
+
+  /**
+   * A pool that starts a thread whenever no idle thread can take a task, named name-0, name-1, ...
+   *
+   * @param name prefix of the thread names
+   */
+  public static ExecutorService newCachedThreadPool(String name) {
+    return Executors.newCachedThreadPool(threadFactory(name));
+  }
+
+  private static ThreadFactory threadFactory(String name) {
+    return new ThreadFactoryBuilder().setNameFormat(name + "-%d").setDaemon(true).build();
+  }
+}
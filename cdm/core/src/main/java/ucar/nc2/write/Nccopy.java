@@ -62,6 +62,10 @@ public class Nccopy {
             + "Note: this directory is not automatically cleaned, so be sure to clean-up as needed.")
     File diskCacheRoot;
 
+    @Parameter(names = {"-rt", "--readThreads"}, description = "Number of threads reading the input while the data is "
+        + "written, which may make copying faster. 0 reads and writes in turn.")
+    int readThreads = 0;
+
     // todo - add flag to autoclean diskCacheRoot
 
     @Parameter(names = {"-h", "--help"}, description = "Display this help and exit", help = true)
@@ -71,7 +75,7 @@ public class Nccopy {
 
       // Display parameters in this order in the usage information.
       private final List<String> orderedParamNames = Arrays.asList("--input", "--output", "--ncformat", "--isLargeFile",
-          "--strategy", "--deflateLevel", "--shuffle", "--diskCacheRoot", "--useJna", "--help");
+          "--strategy", "--deflateLevel", "--shuffle", "--diskCacheRoot", "--readThreads", "--useJna", "--help");
 
       @Override
       public int compare(ParameterDescription p0, ParameterDescription p1) {
@@ -172,7 +176,7 @@ public class Nccopy {
 
       NetcdfFormatWriter.Builder builder = NetcdfFormatWriter.builder().setNewFile(true).setFormat(getFormat(cmdLine))
           .setLocation(datasetOut).setChunker(cmdLine.getNc4Chunking()).setUseJna(cmdLine.useJna);
-      NetcdfCopier copier = NetcdfCopier.create(ncfileIn, builder);
+      NetcdfCopier copier = NetcdfCopier.create(ncfileIn, builder).setReadThreads(cmdLine.readThreads);
 
       try (NetcdfFile ncfileOut = copier.write(cancel)) {
 
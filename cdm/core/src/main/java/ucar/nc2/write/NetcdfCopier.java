@@ -4,8 +4,19 @@
  */
 package ucar.nc2.write;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.annotation.Nullable;
 import ucar.ma2.Array;
 import ucar.ma2.ArrayChar;
@@ -20,9 +31,11 @@ import ucar.nc2.Dimensions;
 import ucar.nc2.EnumTypedef;
 import ucar.nc2.Group;
 import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFiles;
 import ucar.nc2.Structure;
 import ucar.nc2.Variable;
 import ucar.nc2.util.CancelTask;
+import ucar.nc2.util.DaemonExecutors;
 
 /**
  * Utility class for copying a NetcdfFile object, or parts of one, to a netcdf-3 or netcdf-4 disk file.
@@ -51,6 +64,10 @@ public class NetcdfCopier {
   private final NetcdfFile fileIn;
   private final NetcdfFormatWriter.Builder writerb;
   private final boolean extended;
+  private int readThreads;
+  private long sectionSize = maxSize;
+  private long bytesCopied;
+  private long elapsedMsecs;
 
   public static NetcdfCopier create(NetcdfFile fileIn, NetcdfFormatWriter.Builder ncwriter) {
     Preconditions.checkNotNull(fileIn);
@@ -73,6 +90,40 @@ public class NetcdfCopier {
     return writerb.getFormat();
   }
 
+  /**
+   * Read the data with this many threads while the calling thread writes it, so that reading overlaps writing.
+   * Sections of all the variables are read in turn, and queued for writing. When writing netcdf-4, each section is a
+   * whole number of output chunks, so that each chunk is written once.
+   * Each reader after the first opens its own copy of the input file, as a NetcdfFile is not thread-safe; if the input
+   * can't be reopened, for example an NcML dataset, there is a single reader.
+   * Up to 2 * readThreads sections of 50 Mbytes are held in memory.
+   *
+   * @param readThreads number of reading threads; 0 (the default) to read and write in turn on the calling thread.
+   * @return this
+   */
+  public NetcdfCopier setReadThreads(int readThreads) {
+    Preconditions.checkArgument(readThreads >= 0, "readThreads must be >= 0");
+    this.readThreads = readThreads;
+    return this;
+  }
+
+  // size in bytes of the sections read in turn with setReadThreads(), smaller in tests
+  @VisibleForTesting
+  NetcdfCopier setSectionSize(long sectionSize) {
+    this.sectionSize = sectionSize;
+    return this;
+  }
+
+  /** Number of bytes of data copied by the last call to write(). */
+  public long getBytesCopied() {
+    return bytesCopied;
+  }
+
+  /** Rate the data was copied by the last call to write(), in Mbytes/sec. */
+  public double getMbytesPerSecond() {
+    return elapsedMsecs == 0 ? 0.0 : bytesCopied / 1.0e3 / elapsedMsecs;
+  }
+
   /*
    * /////////////////////////////////////////////////////////////////////////////////////////////
    * // might be better to push these next up into NetcdfCFWriter, but we want to use copyVarData
@@ -146,15 +197,22 @@ public class NetcdfCopier {
         return null;
       }
 
+      long start = System.nanoTime();
       Count counter = new Count();
-      copyVariableData(ncwriter, fileIn.getRootGroup(), ncwriter.getOutputFile().getRootGroup(), counter, cancel);
+      if (readThreads > 0) {
+        copyVariableDataPipelined(ncwriter, counter, cancel);
+      } else {
+        copyVariableData(ncwriter, fileIn.getRootGroup(), ncwriter.getOutputFile().getRootGroup(), counter, cancel);
+      }
       if (cancel.isCancel()) {
         return null;
       }
 
       ncwriter.flush();
-      System.out.format("FileCopier done: total bytes written = %d, number of variables = %d%n", counter.bytes,
-          counter.countVars);
+      bytesCopied = counter.bytes;
+      elapsedMsecs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+      System.out.format("FileCopier done: total bytes written = %d, number of variables = %d, %.1f Mbytes/sec%n",
+          counter.bytes, counter.countVars, getMbytesPerSecond());
 
       cancel.setSuccess();
       return ncwriter.getOutputFile();
@@ -380,6 +438,288 @@ public class NetcdfCopier {
     }
   }
 
+  //////////////////////////////////////////////////////////////////////////////////////////////
+  // pipelined copy: reader threads read sections of all the variables, the calling thread writes them
+
+  private static class CopyTask {
+    final Variable oldVar;
+    final Variable newVar;
+    final int[] origin; // null to read the whole variable
+    final int[] shape;
+
+    CopyTask(Variable oldVar, Variable newVar, int[] origin, int[] shape) {
+      this.oldVar = oldVar;
+      this.newVar = newVar;
+      this.origin = origin;
+      this.shape = shape;
+    }
+
+    String show() {
+      return (origin == null ? "" : makeSection(origin, shape) + " of ") + oldVar.getFullName();
+    }
+  }
+
+  private static class ReadResult {
+    final CopyTask task;
+    final Array data;
+    final Throwable error;
+
+    ReadResult(CopyTask task, Array data, Throwable error) {
+      this.task = task;
+      this.data = data;
+      this.error = error;
+    }
+  }
+
+  private void copyVariableDataPipelined(NetcdfFormatWriter ncwriter, Count counter, CancelTask cancel)
+      throws IOException {
+    List<CopyTask> tasks = new ArrayList<>();
+    long totalBytes = makeCopyTasks(fileIn.getRootGroup(), ncwriter.getOutputFile().getRootGroup(), tasks, counter);
+    if (tasks.isEmpty()) {
+      return;
+    }
+
+    int nreaders = Math.min(readThreads, tasks.size());
+    BlockingQueue<ReadResult> queue = new ArrayBlockingQueue<>(nreaders);
+    AtomicInteger next = new AtomicInteger();
+    AtomicBoolean stop = new AtomicBoolean();
+    ExecutorService readers = DaemonExecutors.newFixedThreadPool("NetcdfCopier", nreaders);
+    try {
+      for (int i = 0; i < nreaders; i++) {
+        boolean ownCopy = i > 0;
+        readers.submit(() -> readTasks(tasks, next, queue, stop, ownCopy));
+      }
+
+      long start = System.nanoTime();
+      long written = 0;
+      for (int count = 0; count < tasks.size(); count++) {
+        ReadResult result = queue.take();
+        CopyTask task = result.task;
+        if (result.error != null) {
+          if (result.error instanceof IOException) {
+            throw (IOException) result.error;
+          }
+          throw new IOException("Failed reading " + task.show(), result.error);
+        }
+
+        Array data = result.data;
+        if (data.getSize() > 0) { // zero when record dimension = 0
+          if (task.origin == null) {
+            ncwriter.write(task.newVar, data);
+          } else {
+            ncwriter.write(task.newVar, task.origin, data);
+          }
+          if (debugWrite) {
+            System.out.println(" write " + data.getSize() + " elements of " + task.show());
+          }
+          written += data.getSize() * task.oldVar.getElementSize();
+        }
+
+        if (cancel.isCancel()) {
+          return;
+        }
+        double secs = (System.nanoTime() - start) / 1.0e9;
+        cancel.setProgress(String.format("Copied %d of %d Mbytes (%.1f Mbytes/sec)", written / 1000000,
+            totalBytes / 1000000, secs == 0 ? 0.0 : written / 1.0e6 / secs),
+            totalBytes == 0 ? 100 : (int) (100 * written / totalBytes));
+      }
+
+    } catch (InvalidRangeException e) {
+      throw new IOException(e.getMessage(), e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted copying " + fileIn.getLocation(), e);
+    } finally {
+      stop.set(true);
+      readers.shutdownNow(); // interrupt readers waiting for room in the queue
+    }
+  }
+
+  // one task per variable, or per section of a large variable. Return the total bytes to copy.
+  private long makeCopyTasks(Group groupIn, Group groupOut, List<CopyTask> tasks, Count counter) {
+    long total = 0;
+    for (Variable oldVar : groupIn.getVariables()) {
+      Variable newVar = groupOut.findVariableLocal(oldVar.getShortName());
+      counter.countVars++;
+      long size = oldVar.getSize() * oldVar.getElementSize();
+      counter.bytes += size;
+      total += size;
+
+      boolean toChar = !extended && oldVar.getDataType() == DataType.STRING; // converted a whole variable at a time
+      if (size <= sectionSize || oldVar.getRank() == 0 || toChar) {
+        tasks.add(new CopyTask(oldVar, newVar, null, null));
+        continue;
+      }
+
+      long maxElems = Math.max(sectionSize / oldVar.getElementSize(), 1);
+      long[] outputChunk = getOutputChunking(newVar);
+      if (outputChunk != null) {
+        for (Section section : makeChunkAlignedSections(oldVar.getShape(), outputChunk, maxElems)) {
+          tasks.add(new CopyTask(oldVar, newVar, section.getOrigin(), section.getShape()));
+        }
+      } else {
+        ChunkingIndex index = new ChunkingIndex(oldVar.getShape());
+        while (index.currentElement() < index.getSize()) {
+          int[] origin = index.getCurrentCounter();
+          int[] shape = index.computeChunkShape(maxElems);
+          tasks.add(new CopyTask(oldVar, newVar, origin, shape));
+          index.setCurrentCounter(index.currentElement() + (int) Index.computeSize(shape));
+        }
+      }
+    }
+
+    for (Group nestedIn : groupIn.getGroups()) {
+      Group nestedOut = groupOut.findGroupLocal(nestedIn.getShortName());
+      total += makeCopyTasks(nestedIn, nestedOut, tasks, counter);
+    }
+    return total;
+  }
+
+  // the chunk shape the netcdf-4 writer uses for newVar, or null if not chunked
+  @Nullable
+  private long[] getOutputChunking(Variable newVar) {
+    if (!getOutputFormat().isNetcdf4Format()) {
+      return null;
+    }
+    Nc4Chunking chunker = writerb.getChunker() != null ? writerb.getChunker() : new Nc4ChunkingDefault();
+    if (!chunker.isChunked(newVar)) {
+      return null;
+    }
+    long[] chunk = chunker.computeChunking(newVar);
+    return chunk != null && chunk.length == newVar.getRank() ? chunk : null;
+  }
+
+  /**
+   * Divide an array into sections of at most maxElems elements (or a single chunk, if larger), each made of whole
+   * chunks, except at the upper edges of the array. The sections are whole chunks in the outer dimensions, a multiple
+   * of the chunk size in one dimension, and the whole array in the inner dimensions.
+   */
+  static List<Section> makeChunkAlignedSections(int[] shape, long[] chunk, long maxElems) {
+    int rank = shape.length;
+    int[] chunkShape = new int[rank];
+    for (int i = 0; i < rank; i++) {
+      chunkShape[i] = (int) Math.max(Math.min(chunk[i], shape[i]), 1);
+    }
+
+    // the outermost dimension that can be a multiple of the chunk size, with the inner dimensions whole
+    int split = rank - 1;
+    long unit = 1;
+    for (int d = 0; d < rank; d++) {
+      long size = 1;
+      for (int i = 0; i < rank; i++) {
+        size *= i <= d ? chunkShape[i] : shape[i];
+      }
+      if (size <= maxElems || d == rank - 1) {
+        split = d;
+        unit = size;
+        break;
+      }
+    }
+
+    int[] sectionShape = new int[rank];
+    for (int i = 0; i < rank; i++) {
+      sectionShape[i] = i < split ? chunkShape[i] : shape[i];
+    }
+    sectionShape[split] = (int) Math.min((long) shape[split], Math.max(maxElems / unit, 1) * chunkShape[split]);
+
+    List<Section> result = new ArrayList<>();
+    for (int len : shape) {
+      if (len == 0) {
+        return result;
+      }
+    }
+    int[] origin = new int[rank];
+    while (true) {
+      int[] sshape = new int[rank];
+      for (int i = 0; i < rank; i++) {
+        sshape[i] = Math.min(sectionShape[i], shape[i] - origin[i]);
+      }
+      result.add(makeSection(origin.clone(), sshape));
+
+      // odometer over the section origins, last dimension fastest
+      int d = rank - 1;
+      while (d >= 0) {
+        origin[d] += sectionShape[d];
+        if (origin[d] < shape[d]) {
+          break;
+        }
+        origin[d] = 0;
+        d--;
+      }
+      if (d < 0) {
+        return result;
+      }
+    }
+  }
+
+  private static Section makeSection(int[] origin, int[] shape) {
+    try {
+      return new Section(origin, shape);
+    } catch (InvalidRangeException e) {
+      throw new IllegalStateException(e); // cant happen, the sections are inside the array
+    }
+  }
+
+  private void readTasks(List<CopyTask> tasks, AtomicInteger next, BlockingQueue<ReadResult> queue, AtomicBoolean stop,
+      boolean ownCopy) {
+    NetcdfFile source = ownCopy ? openCopy() : fileIn;
+    if (source == null) {
+      return; // the other readers do the work
+    }
+    Map<Variable, Variable> sourceVars = new HashMap<>();
+    try {
+      int i;
+      while (!stop.get() && (i = next.getAndIncrement()) < tasks.size()) {
+        CopyTask task = tasks.get(i);
+        ReadResult result;
+        try {
+          Variable v = source == fileIn ? task.oldVar
+              : sourceVars.computeIfAbsent(task.oldVar, old -> source.findVariable(old.getFullNameEscaped()));
+          if (v == null) {
+            throw new IOException("Cant find " + task.oldVar.getFullName() + " in " + source.getLocation());
+          }
+          Array data = task.origin == null ? v.read() : v.read(task.origin, task.shape);
+          if (!extended && v.getDataType() == DataType.STRING) {
+            data = convertDataToChar(task.newVar, data);
+          }
+          result = new ReadResult(task, data, null);
+        } catch (Throwable t) {
+          result = new ReadResult(task, null, t); // the writer rethrows it
+        }
+        queue.put(result);
+      }
+    } catch (InterruptedException e) {
+      // the copy was stopped
+    } finally {
+      if (source != fileIn) {
+        try {
+          source.close();
+        } catch (IOException e) {
+          log.warn("Failed closing {}", source.getLocation(), e);
+        }
+      }
+    }
+  }
+
+  // a copy of a plain file, to read in parallel with fileIn. null if fileIn can't be reopened the same way.
+  @Nullable
+  private NetcdfFile openCopy() {
+    if (fileIn.getClass() != NetcdfFile.class || fileIn.getLocation() == null) {
+      return null; // eg a NetcdfDataset, whose data may be modified by NcML or enhancements
+    }
+    try {
+      NetcdfFile copy = NetcdfFiles.open(fileIn.getLocation());
+      if (fileIn.getFileTypeId() != null && !fileIn.getFileTypeId().equals(copy.getFileTypeId())) {
+        copy.close();
+        return null;
+      }
+      return copy;
+    } catch (IOException e) {
+      log.warn("Failed opening a copy of {}; reading with fewer threads", fileIn.getLocation(), e);
+      return null;
+    }
+  }
+
   private Array convertDataToChar(Variable newVar, Array oldData) {
     ArrayChar newData = (ArrayChar) Array.factory(DataType.CHAR, newVar.getShape());
     Index ima = newData.getIndex();
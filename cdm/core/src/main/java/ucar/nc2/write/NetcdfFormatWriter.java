@@ -21,6 +21,7 @@ import ucar.ma2.InvalidRangeException;
 import ucar.ma2.Section;
 import ucar.ma2.StructureData;
 import ucar.nc2.*;
+import ucar.nc2.internal.iosp.hdf5.H5iospWriter;
 import ucar.nc2.internal.iosp.netcdf3.N3iospNew;
 import ucar.nc2.internal.iosp.netcdf3.N3iospWriter;
 import ucar.nc2.iosp.IOServiceProvider;
@@ -91,8 +92,10 @@ public class NetcdfFormatWriter implements Closeable {
     private boolean fill = true;
     private int extraHeaderBytes;
     private long preallocateSize;
+    private int recordBufferSize;
     private Nc4Chunking chunker;
     private boolean useJna;
+    private boolean useJavaNetcdf4Writer;
     private IOServiceProvider iosp;
 
     private Group.Builder rootGroup = Group.builder().setName("");
@@ -157,18 +160,44 @@ public class NetcdfFormatWriter implements Closeable {
       return this;
     }
 
+    /**
+     * Assemble whole records in memory, up to this many bytes, and write them in blocks with gathering writes,
+     * instead of writing each variable of each record separately. Only used by netcdf-3.
+     * Default 0, which writes directly to the file.
+     * This is faster when writing one record at a time of many record variables.
+     */
+    public Builder setRecordBufferSize(int recordBufferSize) {
+      this.recordBufferSize = recordBufferSize;
+      return this;
+    }
+
     /** Nc4Chunking, used only for netcdf4 */
     public Builder setChunker(Nc4Chunking chunker) {
       this.chunker = chunker;
       return this;
     }
 
+    /** The Nc4Chunking, or null for the default chunking algorithm */
+    public Nc4Chunking getChunker() {
+      return chunker;
+    }
+
     /** Set if you want to use JNA / netcdf c library to do the writing. Default is false. */
     public Builder setUseJna(boolean useJna) {
       this.useJna = useJna;
       return this;
     }
 
+    /**
+     * Set if you want new netcdf4 files written in Java, without the netcdf c library. Default is false.
+     * Files with Structures, enum, opaque or vlen types, or non-shared dimensions are still written with the
+     * netcdf c library.
+     */
+    public Builder setUseJavaNetcdf4Writer(boolean useJavaNetcdf4Writer) {
+      this.useJavaNetcdf4Writer = useJavaNetcdf4Writer;
+      return this;
+    }
+
     /** Add a global attribute */
     public Builder addAttribute(Attribute att) {
       if (!isNewFile && !useJna) {
@@ -275,6 +304,7 @@ public class NetcdfFormatWriter implements Closeable {
   private final boolean fill;
   private final int extraHeaderBytes;
   private final long preallocateSize;
+  private final int recordBufferSize;
   private final Nc4Chunking chunker;
   private final boolean useJna;
 
@@ -292,12 +322,16 @@ public class NetcdfFormatWriter implements Closeable {
     this.fill = builder.fill;
     this.extraHeaderBytes = builder.extraHeaderBytes;
     this.preallocateSize = builder.preallocateSize;
+    this.recordBufferSize = builder.recordBufferSize;
     this.chunker = builder.chunker;
-    this.useJna = builder.useJna || format.isNetcdf4Format();
 
     this.ncout = NetcdfFile.builder().setRootGroup(builder.rootGroup).setLocation(builder.location).build();
     this.rootGroup = this.ncout.getRootGroup();
 
+    // new netcdf4 files may be written in Java, unless they use something only the C library can write
+    boolean useJavaWriter = builder.useJavaNetcdf4Writer && isNewFile && H5iospWriter.canWrite(this.ncout);
+    this.useJna = builder.useJna || (format != null && format.isNetcdf4Format() && !useJavaWriter);
+
     if (!isNewFile) {
       existingRaf = new ucar.unidata.io.RandomAccessFile(location, "rw");
       NetcdfFileFormat existingVersion = NetcdfFileFormat.findNetcdfFormatType(existingRaf);
@@ -325,8 +359,14 @@ public class NetcdfFormatWriter implements Closeable {
         throw new IllegalArgumentException(className + " cannot use JNI/C library err= " + e.getMessage());
       }
       spiw = spi;
+    } else if (format != null && format.isNetcdf4Format()) {
+      H5iospWriter h5writer = new H5iospWriter(format);
+      h5writer.setChunker(chunker);
+      spiw = h5writer;
     } else {
-      spiw = new N3iospWriter(new N3iospNew());
+      N3iospWriter n3writer = new N3iospWriter(new N3iospNew());
+      n3writer.setRecordBufferSize(recordBufferSize);
+      spiw = n3writer;
     }
 
     // If anything fails, make sure that resources are closed.
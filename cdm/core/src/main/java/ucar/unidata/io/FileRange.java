@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 1998-2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.unidata.io;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A range of bytes in a file, for {@link RandomAccessFile#readVectored(List)}.
+ * The bytes are available from {@link #getData()} once the read completes.
+ */
+public class FileRange {
+  private final long position;
+  private final int length;
+  private byte[] data;
+
+  // for merged ranges: the ranges this one covers
+  private List<FileRange> parts;
+
+  /**
+   * A range of bytes to read.
+   *
+   * @param position start here in the file
+   * @param length number of bytes
+   */
+  public FileRange(long position, int length) {
+    if (position < 0 || length < 0) {
+      throw new IllegalArgumentException(String.format("Illegal range position=%d length=%d", position, length));
+    }
+    this.position = position;
+    this.length = length;
+  }
+
+  public long getPosition() {
+    return position;
+  }
+
+  public int getLength() {
+    return length;
+  }
+
+  /** The bytes of this range, or null if not read yet. */
+  public byte[] getData() {
+    return data;
+  }
+
+  void setData(byte[] data) {
+    this.data = data;
+  }
+
+  @Override
+  public String toString() {
+    return "FileRange{position=" + position + ", length=" + length + '}';
+  }
+
+  /**
+   * Sort ranges by position, and merge ranges that overlap or are separated by no more than maxGap bytes, as long as
+   * the merged range is no longer than maxMergedLength. The bytes in the gaps are read and thrown away, which is
+   * cheaper than another seek on local disk, or another request to a remote service.
+   */
+  static List<FileRange> merge(List<FileRange> ranges, int maxGap, int maxMergedLength) {
+    List<FileRange> sorted = new ArrayList<>(ranges);
+    sorted.sort(Comparator.comparingLong(FileRange::getPosition));
+
+    List<FileRange> result = new ArrayList<>();
+    List<FileRange> current = new ArrayList<>();
+    long start = 0;
+    long end = 0;
+    for (FileRange range : sorted) {
+      long rangeEnd = range.position + range.length;
+      if (!current.isEmpty() && range.position - end <= maxGap && Math.max(end, rangeEnd) - start <= maxMergedLength) {
+        current.add(range);
+        end = Math.max(end, rangeEnd);
+        continue;
+      }
+      if (!current.isEmpty()) {
+        result.add(makeMerged(start, end, current));
+      }
+      current = new ArrayList<>();
+      current.add(range);
+      start = range.position;
+      end = rangeEnd;
+    }
+    if (!current.isEmpty()) {
+      result.add(makeMerged(start, end, current));
+    }
+    return result;
+  }
+
+  private static FileRange makeMerged(long start, long end, List<FileRange> parts) {
+    FileRange merged = new FileRange(start, Math.toIntExact(end - start));
+    merged.parts = parts;
+    return merged;
+  }
+
+  // copy the bytes of a merged range into the ranges it covers
+  void scatter() {
+    for (FileRange part : parts) {
+      if (part.position == position && part.length == length) {
+        part.data = data; // the whole merged range
+      } else {
+        byte[] partData = new byte[part.length];
+        System.arraycopy(data, (int) (part.position - position), partData, 0, part.length);
+        part.data = partData;
+      }
+    }
+    data = null;
+  }
+}
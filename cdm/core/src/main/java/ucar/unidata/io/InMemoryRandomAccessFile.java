@@ -50,6 +50,12 @@ public class InMemoryRandomAccessFile extends ucar.unidata.io.RandomAccessFile {
     // do nothing
   }
 
+  /** The name need not be a file, and any file of that name holds other data: there is no modification time. */
+  @Override
+  public long getLastModified() {
+    return 0;
+  }
+
   @Override
   protected int read_(long pos, byte[] b, int offset, int len) {
     len = Math.min(len, (int) (buffer.length - pos));
@@ -18,6 +18,7 @@ import ucar.nc2.util.cache.FileFactory;
 import ucar.unidata.util.StringUtil2;
 import javax.annotation.concurrent.NotThreadSafe;
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.WritableByteChannel;
 import java.util.*;
@@ -64,7 +65,38 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
   public static final int BIG_ENDIAN = 0;
   public static final int LITTLE_ENDIAN = 1;
 
-  protected static final int defaultBufferSize = 8092; // The default buffer size, in bytes.
+  protected static final int defaultBufferSize = 8192; // The default buffer size, in bytes.
+
+  // adaptive read-ahead: each sequential buffer refill doubles the read size, up to this many bytes; 0 disables
+  private static final String READ_AHEAD_MAX_PROPERTY = "ucar.unidata.io.readAhead.max";
+  private static volatile int readAheadMax = Integer.getInteger(READ_AHEAD_MAX_PROPERTY, 0);
+
+  // readVectored() merges ranges separated by no more than this many bytes, up to a maximum merged length
+  private static final String VECTORED_READ_MAX_GAP_PROPERTY = "ucar.unidata.io.vectoredRead.maxGap";
+  private static volatile int vectoredReadMaxGap = Integer.getInteger(VECTORED_READ_MAX_GAP_PROPERTY, 64 * 1024);
+  private static final int vectoredReadMaxMergedLength = 16 * 1024 * 1024;
+
+  /**
+   * Set the largest gap between ranges that {@link #readVectored(List)} reads through, in order to read both ranges
+   * at once.
+   *
+   * @param maxGap gap in bytes; 0 merges only ranges that touch or overlap.
+   */
+  public static void setVectoredReadMaxGap(int maxGap) {
+    vectoredReadMaxGap = maxGap;
+  }
+
+  /**
+   * Set the largest read-ahead for read only files. When the buffer is refilled sequentially, eg when scanning the
+   * messages of a GRIB or BUFR file, each refill reads twice as many bytes as the last one, up to maxBytes.
+   * A refill anywhere else goes back to reading the buffer size. The default is 0, which always reads the buffer size.
+   * Applies to all files, including those already open.
+   *
+   * @param maxBytes largest read-ahead in bytes; no larger than the buffer size disables adaptive read-ahead.
+   */
+  public static void setReadAheadMax(int maxBytes) {
+    readAheadMax = maxBytes;
+  }
 
   ///////////////////////////////////////////////////////////////////////
   // debug leaks - keep track of open files
@@ -288,6 +320,16 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
    */
   private boolean extendMode;
 
+  // adaptive read-ahead: the buffer size asked for, and the number of bytes read by the last refill
+  private int baseBufferSize;
+  private int readAhead;
+
+  // access statistics
+  private long nSeeks;
+  private long nBufferHits;
+  private long nReads;
+  private long nBytesRead;
+
   /**
    * Constructor, for subclasses
    *
@@ -373,6 +415,8 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
     dataSize = 0;
     filePosition = 0;
     buffer = new byte[bufferSize];
+    baseBufferSize = bufferSize;
+    readAhead = bufferSize;
     endOfFile = false;
     bigEndian = true;
   }
@@ -490,8 +534,10 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
     if (pos < 0)
       throw new java.io.IOException("Negative seek offset");
 
+    nSeeks++;
     // If the seek is into the buffer, just update the file pointer.
     if ((pos >= bufferStart) && (pos < dataEnd)) {
+      nBufferHits++;
       filePosition = pos;
       endOfFile = false;
       return;
@@ -507,10 +553,18 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
       flush();
     }
 
+    int len = buffer.length;
+    if (readonly && readAheadMax > baseBufferSize) {
+      len = nextReadAhead(pos);
+      if (len > buffer.length) {
+        buffer = new byte[len];
+      }
+    }
+
     bufferStart = pos;
     filePosition = pos;
 
-    dataSize = read_(pos, buffer, 0, buffer.length);
+    dataSize = readCounted(pos, buffer, 0, len);
 
     if (dataSize <= 0) {
       dataSize = 0;
@@ -523,6 +577,62 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
     dataEnd = bufferStart + dataSize;
   }
 
+  // Double the read size if this refill continues from the end of the last one, or skips forward less than the last
+  // refill read; otherwise go back to the buffer size. The buffer is kept at the largest size used.
+  private int nextReadAhead(long pos) {
+    boolean sequential = dataSize > 0 && pos >= dataEnd && pos - dataEnd <= readAhead;
+    readAhead = sequential ? (int) Math.min(2L * readAhead, readAheadMax) : baseBufferSize;
+    return Math.max(readAhead, baseBufferSize);
+  }
+
+  // read_ and keep count
+  private int readCounted(long pos, byte[] b, int offset, int len) throws IOException {
+    int n = read_(pos, b, offset, len);
+    countRead(n);
+    return n;
+  }
+
+  private void countRead(int n) {
+    nReads++;
+    if (n > 0) {
+      nBytesRead += n;
+    }
+    if (debugAccess) {
+      debug_nseeks.incrementAndGet();
+      debug_nbytes.addAndGet(Math.max(n, 0));
+    }
+  }
+
+  /** Number of calls to seek(), including those made to refill the buffer. */
+  public long getSeekCount() {
+    return nSeeks;
+  }
+
+  /** Number of calls to seek() to a position already in the buffer. */
+  public long getBufferHitCount() {
+    return nBufferHits;
+  }
+
+  /** Fraction of calls to seek() to a position already in the buffer, or 0 if there were none. */
+  public double getBufferHitRate() {
+    return nSeeks == 0 ? 0 : (double) nBufferHits / nSeeks;
+  }
+
+  /** Number of reads from the underlying file, bypassing the buffer. */
+  public long getReadCount() {
+    return nReads;
+  }
+
+  /** Number of bytes read from the underlying file. */
+  public long getBytesRead() {
+    return nBytesRead;
+  }
+
+  public void showStats(Formatter f) {
+    f.format("%s seeks=%d bufferHits=%d hitRate=%.3f reads=%d bytesRead=%d bufferSize=%d%n", location, nSeeks,
+        nBufferHits, getBufferHitRate(), nReads, nBytesRead, buffer.length);
+  }
+
   /**
    * Returns the current position in the file, where the next read or
    * write will occur.
@@ -679,7 +789,7 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
       // If the amount remaining is more than a buffer's length, read it
       // directly from the file.
       if (extraCopy > buffer.length) {
-        extraCopy = read_(filePosition, b, off + copyLength, len - copyLength);
+        extraCopy = readCounted(filePosition, b, off + copyLength, len - copyLength);
 
         // ...or read a new buffer full, and copy as much as possible...
       } else {
@@ -732,6 +842,67 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
   }
 
 
+  /**
+   * Read a list of ranges of the file, eg all the chunks of a section of a variable.
+   * The ranges are sorted, and nearby ranges are merged, so that they are read with as few reads as possible.
+   * This does not use or change the file position or buffer.
+   *
+   * @param ranges the ranges to read; on return each has its bytes in {@link FileRange#getData()}.
+   * @throws EOFException if a range extends past the end of the file.
+   * @throws IOException on io error
+   */
+  public void readVectored(List<FileRange> ranges) throws IOException {
+    if (bufferModified) {
+      flush();
+    }
+    List<FileRange> merged = FileRange.merge(ranges, vectoredReadMaxGap, vectoredReadMaxMergedLength);
+    readMergedRanges(merged);
+    for (FileRange range : merged) {
+      range.scatter();
+    }
+  }
+
+  /**
+   * Read each of the (merged) ranges, setting its data. Subclasses may override, eg to read remote ranges
+   * concurrently. This implementation reads them in order, with positional reads if this is a local file.
+   *
+   * @param merged sorted, non-overlapping ranges
+   * @throws IOException on io error
+   */
+  protected void readMergedRanges(List<FileRange> merged) throws IOException {
+    for (FileRange range : merged) {
+      byte[] data = new byte[range.getLength()];
+      readRangeFully(range.getPosition(), data);
+      range.setData(data);
+    }
+  }
+
+  private void readRangeFully(long pos, byte[] data) throws IOException {
+    int done = 0;
+    if (file != null) {
+      if (fileChannel == null)
+        fileChannel = file.getChannel();
+      ByteBuffer bb = ByteBuffer.wrap(data);
+      while (bb.hasRemaining()) {
+        int n = fileChannel.read(bb, pos + bb.position());
+        if (n < 0)
+          break;
+      }
+      done = bb.position();
+      countRead(done);
+    } else {
+      while (done < data.length) {
+        int n = readCounted(pos + done, data, done, data.length - done);
+        if (n <= 0)
+          break;
+        done += n;
+      }
+    }
+    if (done < data.length && !extendMode) { // in extendMode, the rest is left as zeros
+      throw new EOFException("Reading " + location + " at " + pos + " file length = " + length());
+    }
+  }
+
   /**
    * Read directly from file, without going through the buffer.
    * All reading goes through here or readToByteChannel;
@@ -750,11 +921,8 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
 
     file.seek(pos);
     int n = file.read(b, offset, len);
-    if (debugAccess) {
-      if (showRead)
-        System.out.printf(" **read_ %s = %d bytes at %d; block = %d%n", location, len, pos, (pos / buffer.length));
-      debug_nseeks.incrementAndGet();
-      debug_nbytes.addAndGet(len);
+    if (debugAccess && showRead) {
+      System.out.printf(" **read_ %s = %d bytes at %d; block = %d%n", location, len, pos, (pos / buffer.length));
     }
 
     if (extendMode && (n < len)) {
@@ -1011,6 +1179,38 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
     writeBytes(b, off, len);
   }
 
+  /**
+   * Write the remaining bytes of each buffer, in order, starting at the specified file offset.
+   * This uses a gathering write on the underlying file channel, bypassing the user buffer, which is flushed and then
+   * emptied so that it cannot hold stale data. This does not change the file position.
+   *
+   * @param pos the offset in the file where writing will start.
+   * @param srcs write these buffers, from their positions to their limits.
+   * @return the number of bytes written.
+   * @throws IOException if an I/O error occurs.
+   */
+  public long writeGathering(long pos, ByteBuffer[] srcs) throws IOException {
+    if (bufferModified) {
+      flush();
+    }
+    bufferStart = filePosition; // an empty buffer
+    dataSize = 0;
+    dataEnd = bufferStart;
+
+    long total = 0;
+    for (ByteBuffer src : srcs) {
+      total += src.remaining();
+    }
+    if (fileChannel == null)
+      fileChannel = file.getChannel();
+    fileChannel.position(pos);
+    long done = 0;
+    while (done < total) {
+      done += fileChannel.write(srcs);
+    }
+    return done;
+  }
+
   //
   // DataInput methods.
   //
@@ -1257,7 +1457,7 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
    */
   public final int readIntUnbuffered(long pos) throws IOException {
     byte[] bb = new byte[4];
-    read_(pos, bb, 0, 4);
+    readCounted(pos, bb, 0, 4);
     int ch1 = bb[0] & 0xff;
     int ch2 = bb[1] & 0xff;
     int ch3 = bb[2] & 0xff;
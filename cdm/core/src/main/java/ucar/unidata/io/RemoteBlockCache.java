@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 1998-2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.unidata.io;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Formatter;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A process-wide cache of the blocks read by {@link RemoteRandomAccessFile}s, so that files opened repeatedly for the
+ * same remote object, eg on a server, share the blocks already read. Blocks are keyed by object location, object
+ * version (eg ETag or last modified time), block size and block number, and evicted in least recently used order
+ * once the total size of the cached blocks exceeds a byte budget.
+ * Concurrent requests for the same missing block make a single remote read.
+ * <p>
+ * The cache is disabled by default, in which case each RemoteRandomAccessFile uses its own cache.
+ * The budget can be set with the system property {@value #MAX_BYTES_PROPERTY}, or with {@link #setMaxBytes(long)}.
+ * Blocks are kept off heap if the system property {@value #OFF_HEAP_PROPERTY} is true.
+ */
+public class RemoteBlockCache {
+  private static final Logger logger = LoggerFactory.getLogger(RemoteBlockCache.class);
+
+  public static final String MAX_BYTES_PROPERTY = "ucar.unidata.io.remote.blockCache.maxBytes";
+  public static final String OFF_HEAP_PROPERTY = "ucar.unidata.io.remote.blockCache.offHeap";
+
+  private static volatile RemoteBlockCache instance =
+      new RemoteBlockCache(readMaxBytesProperty(), Boolean.getBoolean(OFF_HEAP_PROPERTY));
+
+  private static long readMaxBytesProperty() {
+    String s = System.getProperty(MAX_BYTES_PROPERTY);
+    if (s == null) {
+      return 0;
+    }
+    try {
+      return Long.parseLong(s.trim());
+    } catch (NumberFormatException e) {
+      logger.warn("-D{} is not a number: {}", MAX_BYTES_PROPERTY, s);
+      return 0;
+    }
+  }
+
+  /** The shared instance. */
+  public static RemoteBlockCache getInstance() {
+    return instance;
+  }
+
+  /**
+   * Replace the shared instance with an empty cache holding at most maxBytes of blocks, on heap.
+   * Files already open keep using the cache they were opened with.
+   *
+   * @param maxBytes byte budget, 0 to disable the shared cache.
+   */
+  public static void setMaxBytes(long maxBytes) {
+    setMaxBytes(maxBytes, false);
+  }
+
+  /**
+   * Replace the shared instance with an empty cache holding at most maxBytes of blocks.
+   * Files already open keep using the cache they were opened with.
+   *
+   * @param maxBytes byte budget, 0 to disable the shared cache.
+   * @param offHeap keep the blocks in direct ByteBuffers, outside of the java heap.
+   */
+  public static void setMaxBytes(long maxBytes, boolean offHeap) {
+    instance = new RemoteBlockCache(maxBytes, offHeap);
+  }
+
+  /**
+   * Make a key for a block.
+   *
+   * @param location location of the remote object
+   * @param version identifies the content of the object, eg its ETag, so that rewritten objects do not use stale blocks
+   * @param blockSize size of the blocks the object is divided into
+   * @param blockNumber block number, starting at 0 at the start of the object
+   * @return key for {@link #read(Key, int, byte[], int, int, Callable)}
+   */
+  public static Key makeKey(String location, String version, int blockSize, long blockNumber) {
+    return new Key(location, version, blockSize, blockNumber);
+  }
+
+  ////////////////////////////////////////////////////////////////////////
+
+  private final long maxBytes;
+  private final boolean offHeap;
+  private final Cache<Key, ByteBuffer> cache; // null if disabled
+
+  private RemoteBlockCache(long maxBytes, boolean offHeap) {
+    this.maxBytes = Math.max(maxBytes, 0);
+    this.offHeap = offHeap;
+    if (this.maxBytes > 0) {
+      Weigher<Key, ByteBuffer> weigher = (key, value) -> value.capacity();
+      // one segment, so that the whole budget is shared by all blocks rather than divided among guava's segments
+      this.cache = CacheBuilder.newBuilder().concurrencyLevel(1).maximumWeight(this.maxBytes).weigher(weigher)
+          .recordStats().build();
+    } else {
+      this.cache = null;
+    }
+  }
+
+  /** true if blocks are cached */
+  public boolean isEnabled() {
+    return cache != null;
+  }
+
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  public boolean isOffHeap() {
+    return offHeap;
+  }
+
+  /**
+   * Copy part of a block into buff, calling the loader if the block is not in the cache.
+   *
+   * @param key identifies the block
+   * @param offsetIntoBlock start copying here in the block
+   * @param buff copy into this array
+   * @param offset start here in buff
+   * @param len number of bytes to copy, no more than the bytes in the block after offsetIntoBlock
+   * @param loader reads the block from the remote object
+   * @return number of bytes copied
+   * @throws IOException on read error
+   */
+  public int read(Key key, int offsetIntoBlock, byte[] buff, int offset, int len, Callable<byte[]> loader)
+      throws IOException {
+    ByteBuffer block = get(key, loader).duplicate();
+    block.position(offsetIntoBlock);
+    block.get(buff, offset, len);
+    return len;
+  }
+
+  private ByteBuffer get(Key key, Callable<byte[]> loader) throws IOException {
+    if (cache == null) {
+      return ByteBuffer.wrap(call(loader));
+    }
+    try {
+      return cache.get(key, () -> wrap(loader.call()));
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IOException(cause);
+    } catch (ExecutionError e) {
+      throw (Error) e.getCause();
+    }
+  }
+
+  private ByteBuffer wrap(byte[] block) {
+    if (!offHeap) {
+      return ByteBuffer.wrap(block);
+    }
+    ByteBuffer direct = ByteBuffer.allocateDirect(block.length);
+    direct.put(block);
+    direct.flip();
+    return direct;
+  }
+
+  private static byte[] call(Callable<byte[]> loader) throws IOException {
+    try {
+      return loader.call();
+    } catch (IOException | RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new IOException(e);
+    }
+  }
+
+  /** Remove all blocks from the cache */
+  public void clear() {
+    if (cache != null) {
+      cache.invalidateAll();
+    }
+  }
+
+  /** Number of requests satisfied from the cache */
+  public long getHitCount() {
+    return cache == null ? 0 : cache.stats().hitCount();
+  }
+
+  /** Number of requests that had to read the block from the remote object */
+  public long getMissCount() {
+    return cache == null ? 0 : cache.stats().missCount();
+  }
+
+  /** Number of blocks evicted to stay within the byte budget */
+  public long getEvictionCount() {
+    return cache == null ? 0 : cache.stats().evictionCount();
+  }
+
+  /** Number of blocks in the cache */
+  public long size() {
+    return cache == null ? 0 : cache.size();
+  }
+
+  /** Total bytes of the blocks in the cache */
+  public long sizeBytes() {
+    if (cache == null) {
+      return 0;
+    }
+    long total = 0;
+    for (ByteBuffer b : cache.asMap().values()) {
+      total += b.capacity();
+    }
+    return total;
+  }
+
+  public void showStats(Formatter f) {
+    if (cache == null) {
+      f.format("RemoteBlockCache disabled%n");
+      return;
+    }
+    CacheStats stats = cache.stats();
+    f.format("RemoteBlockCache maxBytes=%d offHeap=%s blocks=%d bytes=%d hits=%d misses=%d evictions=%d hitRate=%.3f%n",
+        maxBytes, offHeap, size(), sizeBytes(), stats.hitCount(), stats.missCount(), stats.evictionCount(),
+        stats.hitRate());
+  }
+
+  /** Identifies a block: object location and version, block size and block number */
+  public static final class Key {
+    private final String location;
+    private final String version;
+    private final int blockSize;
+    private final long blockNumber;
+
+    private Key(String location, String version, int blockSize, long blockNumber) {
+      this.location = location;
+      this.version = version;
+      this.blockSize = blockSize;
+      this.blockNumber = blockNumber;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      Key key = (Key) o;
+      return blockSize == key.blockSize && blockNumber == key.blockNumber && location.equals(key.location)
+          && version.equals(key.version);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(location, version, blockSize, blockNumber);
+    }
+
+    @Override
+    public String toString() {
+      return location + "(" + version + "):" + blockNumber + "x" + blockSize;
+    }
+  }
+}
@@ -0,0 +1,381 @@
+/*
+ * Copyright (c) 1998-2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.unidata.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Formatter;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A persistent cache on local disk of the blocks read by {@link RemoteRandomAccessFile}s, beneath the in-memory
+ * caches, so that reopening a remote object, even after a restart, reads its headers and frequently used blocks
+ * from local disk instead of the network.
+ * <p>
+ * Each remote object has a directory, named by a hash of its location, holding a metadata file with the location and
+ * the last opened version (eg ETag or last modified time) of the object, and one file per cached block, named by a hash
+ * of the version it was read from. A block read from one version can so never be taken for a block of another, even if
+ * it is written after the object was opened with a new version. When an object is first opened with a version, the
+ * blocks of versions not opened since this cache was created are deleted; blocks of versions still in use are left to
+ * be evicted. Blocks are evicted in least recently used order once their total size exceeds a byte budget; the last
+ * access time of a block is kept as its file modification time, so that the order survives restarts.
+ * <p>
+ * The cache is disabled by default. It is enabled with the system property {@value #DIR_PROPERTY}, and its budget
+ * set with {@value #MAX_BYTES_PROPERTY} (default 1 GiB), or with {@link #setDirectory(String, long)}.
+ */
+public class RemoteDiskCache {
+  private static final Logger logger = LoggerFactory.getLogger(RemoteDiskCache.class);
+
+  public static final String DIR_PROPERTY = "ucar.unidata.io.remote.diskCache.dir";
+  public static final String MAX_BYTES_PROPERTY = "ucar.unidata.io.remote.diskCache.maxBytes";
+
+  // 1 GiB default budget
+  private static final long defaultMaxBytes = 1024L * 1024 * 1024;
+  private static final String METADATA_FILE = "object.properties";
+  private static final String BLOCK_SUFFIX = ".blk";
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  private static volatile RemoteDiskCache instance = makeFromProperties();
+
+  private static RemoteDiskCache makeFromProperties() {
+    String dir = System.getProperty(DIR_PROPERTY);
+    if (dir == null) {
+      return new RemoteDiskCache(null, 0);
+    }
+    long maxBytes = defaultMaxBytes;
+    String s = System.getProperty(MAX_BYTES_PROPERTY);
+    if (s != null) {
+      try {
+        maxBytes = Long.parseLong(s.trim());
+      } catch (NumberFormatException e) {
+        logger.warn("-D{} is not a number: {}", MAX_BYTES_PROPERTY, s);
+      }
+    }
+    return new RemoteDiskCache(Paths.get(dir), maxBytes);
+  }
+
+  /** The shared instance. */
+  public static RemoteDiskCache getInstance() {
+    return instance;
+  }
+
+  /**
+   * Replace the shared instance with a cache in the given directory, keeping any blocks already there.
+   * Files already open keep using the cache they were opened with.
+   *
+   * @param dir cache directory, created if needed; null to disable the cache.
+   * @param maxBytes byte budget, 0 to disable the cache.
+   */
+  public static void setDirectory(String dir, long maxBytes) {
+    instance = new RemoteDiskCache(dir == null ? null : Paths.get(dir), maxBytes);
+  }
+
+  ////////////////////////////////////////////////////////////////////////
+
+  private final Path root; // null if disabled
+  private final long maxBytes;
+  // all cached blocks and their sizes, least recently used first
+  private final LinkedHashMap<Path, Long> blocks = new LinkedHashMap<>(16, 0.75f, true);
+  // object directory -> hashes of the versions opened since this cache was created
+  private final Map<Path, Set<String>> checkedVersions = new HashMap<>();
+  private long totalBytes;
+  private long hits, misses, evictions;
+
+  private RemoteDiskCache(Path root, long maxBytes) {
+    this.maxBytes = Math.max(maxBytes, 0);
+    Path useRoot = null;
+    if (root != null && this.maxBytes > 0) {
+      try {
+        Files.createDirectories(root);
+        scan(root);
+        useRoot = root;
+        evict();
+      } catch (IOException e) {
+        logger.warn("Cant use {} as the remote file disk cache", root, e);
+      }
+    }
+    this.root = useRoot;
+  }
+
+  // find the blocks already in the cache directory, in order of last access, and delete files left by interrupted writes
+  private void scan(Path root) throws IOException {
+    List<Path> found = new ArrayList<>();
+    Map<Path, BasicFileAttributes> attributes = new HashMap<>();
+    try (Stream<Path> paths = Files.walk(root, 2)) {
+      paths.forEach(p -> {
+        String name = p.getFileName().toString();
+        try {
+          if (name.endsWith(TEMP_SUFFIX)) {
+            Files.deleteIfExists(p);
+            return;
+          }
+          if (!name.endsWith(BLOCK_SUFFIX)) {
+            return;
+          }
+          attributes.put(p, Files.readAttributes(p, BasicFileAttributes.class));
+          found.add(p);
+        } catch (IOException e) {
+          logger.debug("Cant scan {}", p, e);
+        }
+      });
+    }
+    found.sort((p1, p2) -> attributes.get(p1).lastModifiedTime().compareTo(attributes.get(p2).lastModifiedTime()));
+    for (Path p : found) {
+      long size = attributes.get(p).size();
+      blocks.put(p, size);
+      totalBytes += size;
+    }
+  }
+
+  /** true if blocks are cached */
+  public boolean isEnabled() {
+    return root != null;
+  }
+
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  /**
+   * Get a block of a remote object, from the disk cache if present, otherwise calling the loader and adding the block
+   * to the cache.
+   *
+   * @param location location of the remote object
+   * @param version identifies the content of the object, eg its ETag, so that rewritten objects do not use stale blocks
+   * @param blockSize size of the blocks the object is divided into
+   * @param blockNumber block number, starting at 0 at the start of the object
+   * @param expectedLength length of this block, less than blockSize only for the last block of the object
+   * @param loader reads the block from the remote object
+   * @return the block
+   * @throws IOException on read error from the remote object; errors using the disk are logged and ignored
+   */
+  public byte[] read(String location, String version, int blockSize, long blockNumber, int expectedLength,
+      Callable<byte[]> loader) throws IOException {
+    if (root == null) {
+      return call(loader);
+    }
+
+    Path block = null;
+    try {
+      String versionHash = hash(version).substring(0, 16);
+      Path objectDir = checkObject(location, versionHash);
+      block = objectDir.resolve(versionHash + "-" + blockSize + "-" + blockNumber + BLOCK_SUFFIX);
+      byte[] data = readBlock(block, expectedLength);
+      if (data != null) {
+        return data;
+      }
+    } catch (IOException e) {
+      logger.warn("Error reading remote file disk cache for {}", location, e);
+    }
+
+    byte[] data = call(loader);
+    if (block != null && data.length == expectedLength) {
+      try {
+        writeBlock(block, data);
+      } catch (IOException e) {
+        logger.warn("Error writing remote file disk cache for {}", location, e);
+      }
+    }
+    return data;
+  }
+
+  // find the directory for this object, removing the blocks of versions not opened since this cache was created
+  private synchronized Path checkObject(String location, String versionHash) throws IOException {
+    Path objectDir = root.resolve(hash(location));
+    Set<String> versions = checkedVersions.computeIfAbsent(objectDir, k -> new HashSet<>());
+    if (versions.contains(versionHash)) {
+      return objectDir;
+    }
+
+    Path metadata = objectDir.resolve(METADATA_FILE);
+    Properties props = new Properties();
+    if (Files.exists(metadata)) {
+      try (InputStream in = Files.newInputStream(metadata)) {
+        props.load(in);
+      }
+    }
+    if (!location.equals(props.getProperty("location"))) {
+      versions.clear();
+    }
+    versions.add(versionHash);
+    deleteBlocks(objectDir, versions);
+    if (!location.equals(props.getProperty("location")) || !versionHash.equals(props.getProperty("version"))) {
+      Files.createDirectories(objectDir);
+      props.setProperty("location", location);
+      props.setProperty("version", versionHash);
+      Path tmp = Files.createTempFile(objectDir, METADATA_FILE, TEMP_SUFFIX);
+      try {
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+          props.store(out, "remote file disk cache");
+        }
+        Files.move(tmp, metadata, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+        Files.deleteIfExists(tmp);
+      }
+    }
+    return objectDir;
+  }
+
+  private void deleteBlocks(Path objectDir, Set<String> keepVersions) throws IOException {
+    if (!Files.isDirectory(objectDir)) {
+      return;
+    }
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(objectDir, "*" + BLOCK_SUFFIX)) {
+      for (Path block : stream) {
+        String name = block.getFileName().toString();
+        if (keepVersions.contains(name.substring(0, Math.max(name.indexOf('-'), 0)))) {
+          continue;
+        }
+        Long size = blocks.remove(block);
+        if (size != null) {
+          totalBytes -= size;
+        }
+        Files.deleteIfExists(block);
+      }
+    }
+  }
+
+  // null if not in the cache, or if the cached block is not the expected length
+  private byte[] readBlock(Path block, int expectedLength) throws IOException {
+    synchronized (this) {
+      if (blocks.get(block) == null) { // also marks the block as recently used
+        misses++;
+        return null;
+      }
+    }
+    byte[] data;
+    try {
+      data = Files.readAllBytes(block);
+      Files.setLastModifiedTime(block, FileTime.fromMillis(System.currentTimeMillis()));
+    } catch (NoSuchFileException e) {
+      data = null; // removed by another process
+    }
+    synchronized (this) {
+      if (data == null || data.length != expectedLength) {
+        Long size = blocks.remove(block);
+        if (size != null) {
+          totalBytes -= size;
+        }
+        misses++;
+        return null;
+      }
+      hits++;
+    }
+    return data;
+  }
+
+  private void writeBlock(Path block, byte[] data) throws IOException {
+    Path tmp = Files.createTempFile(block.getParent(), block.getFileName().toString(), TEMP_SUFFIX);
+    try {
+      Files.write(tmp, data);
+      Files.move(tmp, block, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+    synchronized (this) {
+      Long old = blocks.put(block, (long) data.length);
+      totalBytes += data.length - (old == null ? 0 : old);
+      evict();
+    }
+  }
+
+  // remove least recently used blocks until within budget
+  private synchronized void evict() {
+    Iterator<Map.Entry<Path, Long>> iter = blocks.entrySet().iterator();
+    while (totalBytes > maxBytes && iter.hasNext()) {
+      Map.Entry<Path, Long> entry = iter.next();
+      try {
+        Files.deleteIfExists(entry.getKey());
+      } catch (IOException e) {
+        logger.debug("Cant delete {}", entry.getKey(), e);
+      }
+      totalBytes -= entry.getValue();
+      evictions++;
+      iter.remove();
+    }
+  }
+
+  private static String hash(String location) {
+    try {
+      MessageDigest md = MessageDigest.getInstance("SHA-256");
+      byte[] digest = md.digest(location.getBytes(StandardCharsets.UTF_8));
+      StringBuilder sb = new StringBuilder();
+      for (byte b : digest) {
+        sb.append(String.format("%02x", b));
+      }
+      return sb.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static byte[] call(Callable<byte[]> loader) throws IOException {
+    try {
+      return loader.call();
+    } catch (IOException | RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new IOException(e);
+    }
+  }
+
+  /** Number of blocks read from the disk cache */
+  public synchronized long getHitCount() {
+    return hits;
+  }
+
+  /** Number of blocks that had to be read from the remote object */
+  public synchronized long getMissCount() {
+    return misses;
+  }
+
+  /** Number of blocks evicted to stay within the byte budget */
+  public synchronized long getEvictionCount() {
+    return evictions;
+  }
+
+  /** Number of blocks in the cache */
+  public synchronized long size() {
+    return blocks.size();
+  }
+
+  /** Total bytes of the blocks in the cache */
+  public synchronized long sizeBytes() {
+    return totalBytes;
+  }
+
+  public synchronized void showStats(Formatter f) {
+    if (root == null) {
+      f.format("RemoteDiskCache disabled%n");
+      return;
+    }
+    f.format("RemoteDiskCache dir=%s maxBytes=%d blocks=%d bytes=%d hits=%d misses=%d evictions=%d%n", root, maxBytes,
+        blocks.size(), totalBytes, hits, misses, evictions);
+  }
+}
@@ -8,14 +8,21 @@ package ucar.unidata.io;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import java.io.EOFException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.WritableByteChannel;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import javax.annotation.Nonnull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import ucar.nc2.util.DaemonExecutors;
 
 /** An abstract superclass for remote RandomAccessFile */
 // not immutable because RandomAccessFile is not immutable.
@@ -31,10 +38,25 @@ public abstract class RemoteRandomAccessFile extends ucar.unidata.io.RandomAcces
   // default cache time to live in milliseconds
   private static final long defaultReadCacheTimeToLive = 30 * 1000;
 
+  // readVectored() reads the ranges of remote files concurrently, shared by all remote files
+  private static final int vectoredReadThreads = Integer.getInteger("ucar.unidata.io.remote.vectoredReadThreads", 8);
+  private static ExecutorService vectoredReadExecutor;
+
+  private static synchronized ExecutorService getVectoredReadExecutor() {
+    if (vectoredReadExecutor == null) {
+      vectoredReadExecutor = DaemonExecutors.newFixedThreadPool("RemoteRandomAccessFile-read", vectoredReadThreads);
+    }
+    return vectoredReadExecutor;
+  }
+
   protected final String url;
   private final boolean readCacheEnabled;
   private final int readCacheBlockSize;
-  private final LoadingCache<Long, byte[]> readCache;
+  private final LoadingCache<Long, byte[]> readCache; // null if not enabled
+  private final RemoteBlockCache sharedCache; // null if not enabled
+  private final RemoteDiskCache diskCache; // null if not enabled
+  private String objectVersion; // null if the object version is unknown
+  private boolean objectVersionKnown;
 
   protected RemoteRandomAccessFile(String url, int bufferSize, long maxRemoteCacheSize) {
     super(bufferSize);
@@ -43,24 +65,29 @@ public abstract class RemoteRandomAccessFile extends ucar.unidata.io.RandomAcces
     file = null;
     location = url;
 
+    // blocks shared with other files for the same object, if the JVM-wide cache is enabled
+    RemoteBlockCache shared = RemoteBlockCache.getInstance();
+    this.sharedCache = shared.isEnabled() ? shared : null;
+    // blocks kept on local disk, if the disk cache is enabled
+    RemoteDiskCache disk = RemoteDiskCache.getInstance();
+    this.diskCache = disk.isEnabled() ? disk : null;
+
     // Only enable cache if its maximum size is at least 2x the buffer size, both of which are configurable
     // at runtime
     int minimumCacheActivationSize = 2 * bufferSize;
     if (maxRemoteCacheSize >= minimumCacheActivationSize) {
-      // have each cache block hold a 1 buffer sized chunk
-      this.readCacheBlockSize = bufferSize;
       // user set max cache size in bytes
       // guava cache set as number of objects
       // The question here is, how many readCacheBlockSize objects would there be in maxRemoteCacheSize bytes?
       // total max cache size in bytes / size of one cache block, rounded up.
-      long numberOfCacheBlocks = (maxRemoteCacheSize / readCacheBlockSize) + 1;
+      long numberOfCacheBlocks = (maxRemoteCacheSize / bufferSize) + 1;
       this.readCache = initCache(numberOfCacheBlocks, Duration.ofMillis(defaultReadCacheTimeToLive));
-      readCacheEnabled = true;
     } else {
-      this.readCacheBlockSize = -1;
-      readCacheEnabled = false;
       readCache = null;
     }
+    readCacheEnabled = readCache != null || sharedCache != null || diskCache != null;
+    // have each cache block hold a 1 buffer sized chunk
+    this.readCacheBlockSize = readCacheEnabled ? bufferSize : -1;
   }
 
   private LoadingCache<Long, byte[]> initCache(long maximumNumberOfCacheBlocks, java.time.Duration timeToLive) {
@@ -76,6 +103,42 @@ public abstract class RemoteRandomAccessFile extends ucar.unidata.io.RandomAcces
     });
   }
 
+  /**
+   * Identifies the content of the remote object, eg its ETag, so that blocks shared between files are not used
+   * once the object has been rewritten. This implementation uses the length and last modified time.
+   *
+   * @return the object version, or null if unknown, in which case blocks are not shared with other files,
+   *         or kept on disk.
+   */
+  protected String getObjectVersion() {
+    long lastModified = getLastModified();
+    if (lastModified <= 0) {
+      return null;
+    }
+    try {
+      return length() + "-" + lastModified;
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  // the object version is found once, since subclasses cant provide it until they are constructed
+  private String getObjectVersionOnce() {
+    if (!objectVersionKnown) {
+      objectVersion = getObjectVersion();
+      objectVersionKnown = true;
+    }
+    return objectVersion;
+  }
+
+  private String getSharedCacheVersion() {
+    return sharedCache == null ? null : getObjectVersionOnce();
+  }
+
+  private String getDiskCacheVersion() {
+    return diskCache == null ? null : getObjectVersionOnce();
+  }
+
   /**
    *
    * Read data into the buffer, and return number of bytes read.
@@ -93,7 +156,12 @@ public abstract class RemoteRandomAccessFile extends ucar.unidata.io.RandomAcces
    */
   @Override
   protected int read_(long pos, byte[] buff, int offset, int len) throws IOException {
-    return readCacheEnabled ? readFromCache(pos, buff, offset, len) : readRemote(pos, buff, offset, len);
+    return useReadCache() ? readFromCache(pos, buff, offset, len) : readRemote(pos, buff, offset, len);
+  }
+
+  private boolean useReadCache() {
+    return readCacheEnabled
+        && (readCache != null || getSharedCacheVersion() != null || getDiskCacheVersion() != null);
   }
 
   /**
@@ -153,14 +221,6 @@ public abstract class RemoteRandomAccessFile extends ucar.unidata.io.RandomAcces
 
     long cacheBlockNumber = pos / readCacheBlockSize;
 
-    // read in the cache block
-    byte[] src;
-    try {
-      src = readCache.get(cacheBlockNumber);
-    } catch (ExecutionException ee) {
-      throw new IOException("Error obtaining data from the remote data read cache.", ee);
-    }
-
     // Careful - we are doing a partial read from the cache block. The pos in the file is some offset into the cache
     // block, so let's start by calculating the pos of the first block
     long posCacheBlockStart = cacheBlockNumber * readCacheBlockSize;
@@ -201,42 +261,178 @@ public abstract class RemoteRandomAccessFile extends ucar.unidata.io.RandomAcces
     // Copy byte array fulfilling the request as obtained from the cache into the destination buffer
     logger.debug("Requested {} bytes from the cache block (cache block size upper limit: {} bytes.)", sizeToCopy,
         readCacheBlockSize);
-    logger.debug("Actual size of the cache block: {} bytes.", src.length);
     logger.debug("Offset into cache block to begin copy: {} bytes.", offsetIntoCacheBlock);
     logger.debug("Total size of the destination buffer: {} bytes.", buff.length);
     logger.debug("Position in buffer to place the copy from the cache: {} bytes.", positionInBuffer);
-    logger.debug("Trying to fit {} bytes from the cache into {} bytes of the destination.",
-        src.length - offsetIntoCacheBlock, buff.length - positionInBuffer);
-    System.arraycopy(src, offsetIntoCacheBlock, buff, positionInBuffer, sizeToCopy);
-    return sizeToCopy;
+    return copyFromCacheBlock(cacheBlockNumber, offsetIntoCacheBlock, buff, positionInBuffer, sizeToCopy);
   }
 
   private int readCacheBlockFull(long cacheBlockNumber, int positionInBuffer, byte[] buff) throws IOException {
+    return copyFromCacheBlock(cacheBlockNumber, 0, buff, positionInBuffer, readCacheBlockSize);
+  }
+
+  private int copyFromCacheBlock(long cacheBlockNumber, int offsetIntoCacheBlock, byte[] buff, int positionInBuffer,
+      int sizeToCopy) throws IOException {
+    return copyFromCacheBlock(cacheBlockNumber, offsetIntoCacheBlock, buff, positionInBuffer, sizeToCopy,
+        this::readRemoteBytes);
+  }
+
+  // copy from the shared cache if the object version is known, otherwise from this file's cache.
+  // Blocks in none of the caches are read with remote.
+  private int copyFromCacheBlock(long cacheBlockNumber, int offsetIntoCacheBlock, byte[] buff, int positionInBuffer,
+      int sizeToCopy, RemoteReader remote) throws IOException {
+    String version = getSharedCacheVersion();
+    if (version != null) {
+      RemoteBlockCache.Key key = RemoteBlockCache.makeKey(location, version, readCacheBlockSize, cacheBlockNumber);
+      return sharedCache.read(key, offsetIntoCacheBlock, buff, positionInBuffer, sizeToCopy,
+          () -> readCacheSizedChunk(cacheBlockNumber, remote));
+    }
+
     byte[] src;
-    try {
-      src = readCache.get(cacheBlockNumber);
-    } catch (ExecutionException ee) {
-      throw new IOException("Error obtaining data from the remote data read cache.", ee);
+    if (readCache == null) { // only the disk cache is enabled
+      src = readCacheSizedChunk(cacheBlockNumber, remote);
+    } else {
+      try {
+        src = readCache.get(cacheBlockNumber, () -> readCacheSizedChunk(cacheBlockNumber, remote));
+      } catch (ExecutionException ee) {
+        throw new IOException("Error obtaining data from the remote data read cache.", ee);
+      }
     }
-    System.arraycopy(src, 0, buff, positionInBuffer, readCacheBlockSize);
-    return readCacheBlockSize;
+    logger.debug("Actual size of the cache block: {} bytes.", src.length);
+    System.arraycopy(src, offsetIntoCacheBlock, buff, positionInBuffer, sizeToCopy);
+    return sizeToCopy;
   }
 
   /**
-   * read a readCacheBlockSize chunk of the remote file
+   * read a readCacheBlockSize chunk of the remote file, from the disk cache if enabled
    */
   private byte[] readRemoteCacheSizedChunk(Long cacheBlockNumber) throws IOException {
+    return readCacheSizedChunk(cacheBlockNumber, this::readRemoteBytes);
+  }
+
+  private byte[] readCacheSizedChunk(long cacheBlockNumber, RemoteReader remote) throws IOException {
     long position = cacheBlockNumber * readCacheBlockSize;
     long toEOF = length() - position;
     // if size to EOF less than readCacheBlockSize, just read to EOF
     long bytesToRead = toEOF < readCacheBlockSize ? toEOF : readCacheBlockSize;
     int bytes = Math.toIntExact(bytesToRead);
-    byte[] buffer = new byte[bytes];
 
+    String version = getDiskCacheVersion();
+    if (version != null) {
+      return diskCache.read(location, version, readCacheBlockSize, cacheBlockNumber, bytes,
+          () -> remote.read(position, bytes));
+    }
+    return remote.read(position, bytes);
+  }
+
+  // reads bytes of the remote file
+  private interface RemoteReader {
+    byte[] read(long position, int bytes) throws IOException;
+  }
+
+  private byte[] readRemoteBytes(long position, int bytes) throws IOException {
+    byte[] buffer = new byte[bytes];
     readRemote(position, buffer, 0, bytes);
     return buffer;
   }
 
+  /**
+   * Read the merged ranges of a vectored read with concurrent range requests to the remote service.
+   * If the read caches are in use, the ranges are read through them: cached blocks are not read again,
+   * and the blocks of a range that are missing are read with a single request, then added to the caches.
+   */
+  @Override
+  protected void readMergedRanges(List<FileRange> merged) throws IOException {
+    boolean useCache = useReadCache();
+    if (merged.size() < 2 || vectoredReadThreads <= 1) {
+      if (!useCache) {
+        super.readMergedRanges(merged);
+        return;
+      }
+      for (FileRange range : merged) {
+        range.setData(readRangeFromCache(range.getPosition(), range.getLength()));
+      }
+      return;
+    }
+    ExecutorService executor = getVectoredReadExecutor();
+    List<Future<byte[]>> results = new ArrayList<>();
+    try {
+      for (FileRange range : merged) {
+        results.add(executor.submit(() -> useCache ? readRangeFromCache(range.getPosition(), range.getLength())
+            : readRemoteFully(range.getPosition(), range.getLength())));
+      }
+      for (int i = 0; i < merged.size(); i++) {
+        merged.get(i).setData(results.get(i).get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted reading " + location, e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new IOException("Error reading " + location, cause);
+    } finally {
+      for (Future<byte[]> result : results) {
+        result.cancel(true);
+      }
+    }
+  }
+
+  // read a range through the caches, block by block
+  private byte[] readRangeFromCache(long position, int length) throws IOException {
+    byte[] data = new byte[length];
+    SpanReader remote = new SpanReader(position + length);
+    int done = 0;
+    while (done < length) {
+      long cacheBlockNumber = (position + done) / readCacheBlockSize;
+      int offsetIntoCacheBlock = Math.toIntExact(position + done - cacheBlockNumber * readCacheBlockSize);
+      int sizeToCopy = Math.min(readCacheBlockSize - offsetIntoCacheBlock, length - done);
+      done += copyFromCacheBlock(cacheBlockNumber, offsetIntoCacheBlock, data, done, sizeToCopy, remote);
+    }
+    return data;
+  }
+
+  // on the first block missing from the caches, read it and all the blocks after it up to the end of the range
+  // with a single request, since the range was merged to be read at once
+  private class SpanReader implements RemoteReader {
+    private final long rangeEnd;
+    private long spanStart;
+    private byte[] span; // null until a block is missing
+
+    SpanReader(long rangeEnd) {
+      this.rangeEnd = rangeEnd;
+    }
+
+    @Override
+    public byte[] read(long position, int bytes) throws IOException {
+      if (span == null) {
+        long blockEnd = (rangeEnd + readCacheBlockSize - 1) / readCacheBlockSize * readCacheBlockSize;
+        spanStart = position;
+        span = readRemoteFully(position, Math.toIntExact(Math.min(blockEnd, length()) - position));
+      }
+      int start = Math.toIntExact(position - spanStart);
+      if (start < 0 || start + bytes > span.length) { // not in the span, eg a block evicted since
+        return readRemoteBytes(position, bytes);
+      }
+      return Arrays.copyOfRange(span, start, start + bytes);
+    }
+  }
+
+  private byte[] readRemoteFully(long position, int length) throws IOException {
+    byte[] data = new byte[length];
+    int done = 0;
+    while (done < length) {
+      int n = readRemote(position + done, data, done, length - done);
+      if (n <= 0) {
+        throw new EOFException("Reading " + location + " at " + position + " file length = " + length());
+      }
+      done += n;
+    }
+    return data;
+  }
+
   @Override
   public long readToByteChannel(WritableByteChannel dest, long offset, long nbytes) throws IOException {
     int n = (int) nbytes;
@@ -252,7 +448,7 @@ public abstract class RemoteRandomAccessFile extends ucar.unidata.io.RandomAcces
   public void close() throws IOException {
     closeRemote();
     super.close();
-    // clean out the cache when closing the Remote Random Access File
+    // clean out the cache when closing the Remote Random Access File; shared blocks stay for other files
     if (readCache != null) {
       readCache.invalidateAll();
       if (debugAccess) {
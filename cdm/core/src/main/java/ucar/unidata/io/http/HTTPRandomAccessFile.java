@@ -46,6 +46,7 @@ public final class HTTPRandomAccessFile extends RemoteRandomAccessFile {
 
   private HTTPSession session;
   private long total_length;
+  private String objectVersion; // ETag or Last-Modified header, null if neither
 
   public HTTPRandomAccessFile(String url) throws IOException {
     this(url, httpBufferSize, httpMaxCacheSize);
@@ -78,6 +79,9 @@ public final class HTTPRandomAccessFile extends RemoteRandomAccessFile {
         }
       }
 
+      objectVersion = method.getResponseHeaderValue("ETag")
+          .orElse(method.getResponseHeaderValue("Last-Modified").orElse(null));
+
       try {
         this.total_length = method.getResponseHeaderValue("Content-Length").map(Long::parseLong)
             .orElseThrow(() -> new IOException("Server does not support Content-Length"));
@@ -229,6 +233,16 @@ public final class HTTPRandomAccessFile extends RemoteRandomAccessFile {
     return 0;
   }
 
+  /**
+   * The ETag of the remote file if the server sent one, otherwise its Last-Modified header.
+   *
+   * @return object version, or null if the server sent neither header.
+   */
+  @Override
+  protected String getObjectVersion() {
+    return objectVersion;
+  }
+
   /**
    * Hook into service provider interface for RandomAccessFileProvider.
    */
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 1998-2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.ma2.DataType;
+import ucar.nc2.internal.iosp.netcdf3.N3iospNew;
+import ucar.nc2.stream.NcStreamIosp;
+import ucar.nc2.write.NetcdfFormatWriter;
+
+/** Test that NetcdfFiles only calls isValidFile() on the IOSPs whose FileSignatures match. */
+public class TestIospProbeStats {
+
+  @Rule
+  public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Test
+  public void shouldSkipIospsWithoutMatchingSignature() throws IOException {
+    File text = tempFolder.newFile("notCdm.txt");
+    Files.write(text.toPath(), "this is not a CDM file".getBytes(StandardCharsets.US_ASCII));
+    String netcdf3 = tempFolder.newFile("netcdf3.nc").getPath();
+    NetcdfFormatWriter.Builder builder = NetcdfFormatWriter.createNewNetcdf3(netcdf3);
+    builder.addDimension("x", 3);
+    builder.addVariable("v", DataType.INT, "x");
+    builder.build().close();
+
+    NetcdfFiles.clearIospProbeStats();
+    assertThat(NetcdfFiles.canOpen(text.getPath())).isFalse();
+    Map<String, NetcdfFiles.IospProbeStats> stats = NetcdfFiles.getIospProbeStats();
+    assertThat(stats.get(NcStreamIosp.class.getName()).getSkipped()).isEqualTo(1);
+    assertThat(stats.get(NcStreamIosp.class.getName()).getCount()).isEqualTo(0);
+    assertThat(stats.get(N3iospNew.class.getName()).getSkipped()).isEqualTo(1);
+
+    try (NetcdfFile ncfile = NetcdfFiles.open(netcdf3)) {
+      assertThat(ncfile.findVariable("v")).isNotNull();
+    }
+    stats = NetcdfFiles.getIospProbeStats();
+    assertThat(stats.get(N3iospNew.class.getName()).getCount()).isEqualTo(1);
+    assertThat(stats.get(N3iospNew.class.getName()).getValid()).isEqualTo(1);
+    assertThat(stats.get(NcStreamIosp.class.getName()).getSkipped()).isEqualTo(2);
+  }
+}
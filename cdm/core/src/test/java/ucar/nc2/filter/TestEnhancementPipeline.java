@@ -0,0 +1,95 @@
+package ucar.nc2.filter;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.ma2.IndexIterator;
+import ucar.ma2.InvalidRangeException;
+
+public class TestEnhancementPipeline {
+
+  @Test
+  public void shouldMatchConvertingEachValue() {
+    Array packed = makeShorts(1000, DataType.SHORT);
+    List<Enhancement> chain = Arrays.asList(new UnsignedConversion(DataType.UINT, DataType.Signedness.UNSIGNED),
+        makeMissing(), makeScaleOffset(DataType.UINT, DataType.SHORT));
+
+    for (DataType outType : new DataType[] {DataType.FLOAT, DataType.DOUBLE, DataType.INT, DataType.SHORT}) {
+      checkSame(chain, packed, outType);
+    }
+  }
+
+  @Test
+  public void shouldReadUnsignedStorage() {
+    Array packed = makeShorts(300, DataType.UBYTE);
+    checkSame(Arrays.asList(makeScaleOffset(DataType.UBYTE, DataType.UBYTE)), packed, DataType.FLOAT);
+    checkSame(Arrays.asList(makeMissing()), packed, DataType.UBYTE);
+  }
+
+  @Test
+  public void shouldConvertSectionsAndLargeArrays() throws InvalidRangeException {
+    List<Enhancement> chain = Arrays.asList(makeMissing(), makeScaleOffset(DataType.INT, DataType.SHORT));
+
+    Array packed = makeShorts(60 * 50, DataType.SHORT).reshape(new int[] {60, 50});
+    checkSame(chain, packed.section(new int[] {10, 5}, new int[] {20, 30}), DataType.FLOAT);
+
+    // converted in parallel chunks
+    checkSame(chain, makeShorts(300_000, DataType.SHORT), DataType.DOUBLE);
+  }
+
+  @Test
+  public void shouldConvertIntoPartOfOutput() {
+    EnhancementPipeline pipeline =
+        new EnhancementPipeline(Arrays.asList(makeScaleOffset(DataType.INT, DataType.SHORT)), DataType.DOUBLE);
+    Array out = Array.factory(DataType.DOUBLE, new int[] {20});
+    pipeline.convert(makeShorts(10, DataType.SHORT), out, 0);
+    pipeline.convert(makeShorts(10, DataType.SHORT), out, 10);
+    assertThat(out.getDouble(3)).isEqualTo(out.getDouble(13));
+    assertThat(out.getDouble(3)).isEqualTo(makeScaleOffset(DataType.INT, DataType.SHORT).convert(3 * 97 - 500));
+  }
+
+  private static void checkSame(List<Enhancement> chain, Array in, DataType outType) {
+    Array expected = Array.factory(outType, in.getShape());
+    IndexIterator iterIn = in.getIndexIterator();
+    IndexIterator iterOut = expected.getIndexIterator();
+    while (iterIn.hasNext()) {
+      double value = iterIn.getDoubleNext();
+      for (Enhancement e : chain) {
+        value = e.convert(value);
+      }
+      iterOut.setObjectNext(value);
+    }
+
+    Array actual = new EnhancementPipeline(chain, outType).convert(in);
+    assertThat(actual.getDataType()).isEqualTo(outType);
+    assertThat(actual.getShape()).isEqualTo(in.getShape());
+    assertThat(actual.get1DJavaArray(outType)).isEqualTo(expected.get1DJavaArray(outType));
+  }
+
+  private static Array makeShorts(int n, DataType type) {
+    Array result = Array.factory(type, new int[] {n});
+    for (int i = 0; i < n; i++) {
+      result.setShort(i, (short) (i * 97 - 500));
+    }
+    return result;
+  }
+
+  private static ConvertMissing makeMissing() {
+    return new ConvertMissing(true, true, true, true, true, -400, 20000, true, -500, new double[] {-403});
+  }
+
+  private static ScaleOffset makeScaleOffset(DataType dtype, DataType astype) {
+    Map<String, Object> props = new HashMap<>();
+    props.put(ScaleOffset.Keys.OFFSET_KEY, 10.0);
+    props.put(ScaleOffset.Keys.SCALE_KEY, 1 / 0.01);
+    props.put(ScaleOffset.Keys.DTYPE_KEY, dtype);
+    props.put(ScaleOffset.Keys.ASTYPE_KEY, astype);
+    return new ScaleOffset(props);
+  }
+}
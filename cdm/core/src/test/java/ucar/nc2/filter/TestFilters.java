@@ -108,6 +108,162 @@ public class TestFilters {
     assertThat(out3).isEqualTo(decoded_data);
   }
 
+  @Test
+  public void testBlosc() throws IOException {
+    Map<String, Object> props = new HashMap<>();
+    props.put("id", "blosc");
+    props.put("typesize", 4);
+    props.put("clevel", 5);
+    for (String cname : new String[] {"blosclz", "lz4", "lz4hc", "zlib"}) {
+      for (int shuffle = 0; shuffle <= 2; shuffle++) {
+        props.put("cname", cname);
+        props.put("shuffle", shuffle);
+        // small blocks to exercise multi-block frames and a leftover block
+        props.put("blocksize", 1000);
+        Filter filter = new Blosc(props);
+        byte[] encoded = filter.encode(decoded_data);
+        assertThat(encoded[0] & 0xff).isEqualTo(2); // format version
+        assertThat(filter.decode(encoded)).isEqualTo(decoded_data);
+
+        props.put("blocksize", 0);
+        filter = new Blosc(props);
+        assertThat(filter.decode(filter.encode(decoded_data))).isEqualTo(decoded_data);
+      }
+    }
+  }
+
+  @Test
+  public void testBloscMemcpyed() throws IOException {
+    Map<String, Object> props = new HashMap<>();
+    props.put("id", "blosc");
+    props.put("clevel", 0);
+    Filter filter = new Blosc(props);
+    byte[] encoded = filter.encode(decoded_data);
+    assertThat(encoded.length).isEqualTo(decoded_data.length + 16);
+    assertThat(encoded[2] & 0x02).isEqualTo(0x02); // memcpyed flag
+    assertThat(filter.decode(encoded)).isEqualTo(decoded_data);
+  }
+
+  @Test
+  public void testBloscDontSplitFlag() throws IOException {
+    Map<String, Object> props = new HashMap<>();
+    props.put("id", "blosc");
+    props.put("cname", "lz4");
+    props.put("typesize", 4);
+    props.put("clevel", 5);
+    props.put("shuffle", 1);
+    // 64 elements per block is too few to split, which must be flagged for c-blosc
+    props.put("blocksize", 256);
+    Filter filter = new Blosc(props);
+    byte[] encoded = filter.encode(decoded_data);
+    assertThat(encoded[2] & 0x10).isEqualTo(0x10);
+    assertThat(filter.decode(encoded)).isEqualTo(decoded_data);
+
+    props.put("blocksize", 0);
+    filter = new Blosc(props);
+    encoded = filter.encode(decoded_data);
+    assertThat(encoded[2] & 0x10).isEqualTo(0);
+    assertThat(filter.decode(encoded)).isEqualTo(decoded_data);
+
+    props.put("cname", "zlib");
+    filter = new Blosc(props);
+    encoded = filter.encode(decoded_data);
+    assertThat(encoded[2] & 0x10).isEqualTo(0x10);
+    assertThat(filter.decode(encoded)).isEqualTo(decoded_data);
+  }
+
+  @Test
+  public void testBloscDecodeReferenceLayout() throws IOException {
+    // 256 little endian ints 0..255: once shuffled, 256 bytes 0..255 followed by 768 zeros
+    byte[] expected = new byte[1024];
+    for (int i = 0; i < 256; i++) {
+      expected[4 * i] = (byte) i;
+    }
+    byte[] ramp = new byte[256];
+    for (int i = 0; i < 256; i++) {
+      ramp[i] = (byte) i;
+    }
+    Filter filter = new Blosc(new HashMap<>());
+
+    // lz4, shuffled, not split (0x10): the block is one lz4 stream
+    byte[] stream = concat(lz4Sequence(ramp, 1, 1, 762), LZ4_LAST_ZEROS);
+    assertThat(filter.decode(bloscFrame(0x31, 4, 1024, withSize(stream)))).isEqualTo(expected);
+
+    // lz4, shuffled, split: one stream per byte of the type, the first one stored as is
+    byte[] zeros = concat(lz4Sequence(new byte[0], 1, 1, 250), LZ4_LAST_ZEROS);
+    byte[] streams = concat(withSize(ramp), withSize(zeros), withSize(zeros), withSize(zeros));
+    assertThat(filter.decode(bloscFrame(0x21, 4, 1024, streams))).isEqualTo(expected);
+  }
+
+  // the last lz4 sequence: 5 literal zeros
+  private static final byte[] LZ4_LAST_ZEROS = {0x50, 0, 0, 0, 0, 0};
+
+  // a blosc 1 frame of one block, laid out as c-blosc 1.x writes it: header, block starts, size prefixed streams
+  private static byte[] bloscFrame(int flags, int typesize, int nbytes, byte[] streams) {
+    byte[] header = new byte[20];
+    header[0] = 2; // format version
+    header[1] = 1; // lz4 format version
+    header[2] = (byte) flags;
+    header[3] = (byte) typesize;
+    writeInt(header, 4, nbytes);
+    writeInt(header, 8, nbytes); // blocksize
+    writeInt(header, 12, header.length + streams.length);
+    writeInt(header, 16, header.length); // start of the block
+    return concat(header, streams);
+  }
+
+  // an lz4 sequence: the literals followed by nzeros zeros, then a match of at least 19 bytes at offset
+  private static byte[] lz4Sequence(byte[] literals, int nzeros, int offset, int matchLength) {
+    int litLen = literals.length + nzeros;
+    int ml = matchLength - 4;
+    byte[] out = new byte[1 + (litLen >= 15 ? 1 + (litLen - 15) / 255 : 0) + litLen + 2 + 1 + (ml - 15) / 255];
+    int pos = 0;
+    out[pos++] = (byte) ((Math.min(litLen, 15) << 4) | Math.min(ml, 15));
+    if (litLen >= 15) {
+      pos = writeLength(out, pos, litLen - 15);
+    }
+    System.arraycopy(literals, 0, out, pos, literals.length);
+    pos += litLen;
+    out[pos++] = (byte) offset;
+    out[pos++] = (byte) (offset >>> 8);
+    writeLength(out, pos, ml - 15);
+    return out;
+  }
+
+  private static int writeLength(byte[] out, int pos, int len) {
+    for (; len >= 255; len -= 255) {
+      out[pos++] = (byte) 255;
+    }
+    out[pos++] = (byte) len;
+    return pos;
+  }
+
+  private static byte[] withSize(byte[] stream) {
+    byte[] size = new byte[4];
+    writeInt(size, 0, stream.length);
+    return concat(size, stream);
+  }
+
+  private static void writeInt(byte[] b, int pos, int val) {
+    for (int i = 0; i < 4; i++) {
+      b[pos + i] = (byte) (val >>> (8 * i));
+    }
+  }
+
+  private static byte[] concat(byte[]... arrays) {
+    int len = 0;
+    for (byte[] a : arrays) {
+      len += a.length;
+    }
+    byte[] out = new byte[len];
+    int pos = 0;
+    for (byte[] a : arrays) {
+      System.arraycopy(a, 0, out, pos, a.length);
+      pos += a.length;
+    }
+    return out;
+  }
+
   private void testEncodeDecode(Filter filter, String filename) throws IOException {
     // test encode
     byte[] out = filter.encode(decoded_data);
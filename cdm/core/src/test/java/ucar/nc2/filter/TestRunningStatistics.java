@@ -0,0 +1,191 @@
+package ucar.nc2.filter;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.ma2.InvalidRangeException;
+import ucar.nc2.Attribute;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFiles;
+import ucar.nc2.dataset.NetcdfDataset;
+import ucar.nc2.dataset.NetcdfDatasets;
+import ucar.nc2.dataset.VariableDS;
+import ucar.nc2.util.DiskCache2;
+import ucar.nc2.write.NetcdfFormatWriter;
+
+public class TestRunningStatistics {
+  private static final double TOLERANCE = 1.0E-9;
+
+  @Rule
+  public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Test
+  public void shouldMatchTwoPassStatistics() {
+    double[] values = {Double.NaN, 5.0, 6.0, 7.0, 8.0, 9.0, 10.0, 11.0, 12.0, 13.0, 14.0, 15.0};
+    RunningStatistics stats = RunningStatistics.of(Array.makeFromJavaArray(values));
+    assertThat(stats.getCount()).isEqualTo(11);
+    assertThat(stats.getMean()).isWithin(TOLERANCE).of(10.0);
+    assertThat(stats.getStandardDeviation()).isWithin(TOLERANCE).of(3.3166247903554);
+    assertThat(stats.getMin()).isEqualTo(5.0);
+    assertThat(stats.getMax()).isEqualTo(15.0);
+  }
+
+  @Test
+  public void shouldHandleNoValues() {
+    RunningStatistics stats = RunningStatistics.of(Array.makeFromJavaArray(new double[] {Double.NaN}));
+    assertThat(stats.getCount()).isEqualTo(0);
+    assertThat(stats.getMean()).isNaN();
+    assertThat(stats.getStandardDeviation()).isNaN();
+
+    stats.add(3.0);
+    assertThat(stats.getMean()).isEqualTo(3.0);
+    assertThat(stats.getStandardDeviation()).isEqualTo(0.0);
+  }
+
+  @Test
+  public void shouldMergeLikeAddingAll() {
+    Random random = new Random(17);
+    RunningStatistics all = new RunningStatistics();
+    RunningStatistics first = new RunningStatistics();
+    RunningStatistics second = new RunningStatistics();
+    for (int i = 0; i < 1000; i++) {
+      double value = 1.0e6 + random.nextGaussian();
+      all.add(value);
+      (i < 300 ? first : second).add(value);
+    }
+    first.merge(second);
+    checkSame(first, all);
+
+    // large arrays are summarized in parallel
+    double[] values = new double[300_000];
+    RunningStatistics sequential = new RunningStatistics();
+    for (int i = 0; i < values.length; i++) {
+      values[i] = random.nextDouble() * 100;
+      sequential.add(values[i]);
+    }
+    checkSame(RunningStatistics.of(Array.makeFromJavaArray(values)), sequential);
+  }
+
+  @Test
+  public void shouldReadUnsignedValues() {
+    Array bytes = Array.factory(DataType.UBYTE, new int[] {2}, new byte[] {(byte) 200, 100});
+    RunningStatistics stats = RunningStatistics.of(bytes);
+    assertThat(stats.getMin()).isEqualTo(100.0);
+    assertThat(stats.getMax()).isEqualTo(200.0);
+  }
+
+  @Test
+  public void shouldStreamVariableInSections() throws IOException, InvalidRangeException {
+    String filePath = writeFile(2000, 3000);
+    try (NetcdfFile ncfile = NetcdfFiles.open(filePath)) {
+      RunningStatistics streamed = RunningStatistics.of(ncfile.findVariable("data"));
+      checkSame(streamed, RunningStatistics.of(ncfile.findVariable("data").read()));
+      assertThat(streamed.getCount()).isEqualTo(2000 * 3000 - 1); // one NaN
+    }
+  }
+
+  @Test
+  public void shouldPersistStatistics() throws IOException, InvalidRangeException {
+    String filePath = writeFile(10, 20);
+    File cacheDir = tempFolder.newFolder();
+    StatisticsCache.setPersistenceCache(new DiskCache2(cacheDir.getPath(), false, 0, 0));
+    try (NetcdfDataset ncd = NetcdfDatasets.openDataset(filePath)) {
+      VariableDS var = (VariableDS) ncd.findVariable("data");
+      RunningStatistics stats = StatisticsCache.get(var, "test");
+      checkSame(stats, RunningStatistics.of(var.read()));
+
+      // read back from disk, not recomputed
+      StatisticsCache.clearCache();
+      checkSame(StatisticsCache.get(var, "test"), stats);
+      assertThat(cacheDir.list()).isNotEmpty();
+
+      // the statistics of another use are added to the same file, which is replaced without leaving temp files
+      StatisticsCache.get(var, "other");
+      try (Stream<Path> files = Files.walk(cacheDir.toPath())) {
+        assertThat(files.map(p -> p.getFileName().toString()).filter(n -> n.endsWith(".stats") || n.endsWith(".tmp"))
+            .collect(Collectors.toList())).containsExactly(new File(filePath).getName() + ".stats");
+      }
+      StatisticsCache.clearCache();
+      checkSame(StatisticsCache.get(var, "test"), stats);
+    } finally {
+      StatisticsCache.setPersistenceCache(null);
+      StatisticsCache.clearCache();
+    }
+  }
+
+  @Test
+  public void shouldKeepStatisticsPerEnhanceMode() throws IOException, InvalidRangeException {
+    String filePath = writeFile(10, 20);
+    try (NetcdfDataset raw = NetcdfDatasets.openDataset(filePath, false, null);
+        NetcdfDataset enhanced = NetcdfDatasets.openDataset(filePath)) {
+      VariableDS rawVar = (VariableDS) raw.findVariable("data");
+      VariableDS enhancedVar = (VariableDS) enhanced.findVariable("data");
+      RunningStatistics rawStats = StatisticsCache.get(rawVar, "test");
+      RunningStatistics enhancedStats = StatisticsCache.get(enhancedVar, "test");
+      checkSame(rawStats, RunningStatistics.of(rawVar.read()));
+      checkSame(enhancedStats, RunningStatistics.of(enhancedVar.read()));
+      assertThat(enhancedStats.getMax()).isEqualTo(2 * rawStats.getMax());
+    } finally {
+      StatisticsCache.clearCache();
+    }
+  }
+
+  @Test
+  public void shouldNotPersistNcmlStatistics() throws IOException, InvalidRangeException {
+    String filePath = writeFile(10, 20);
+    File ncml = tempFolder.newFile("data.ncml");
+    String text = "<netcdf xmlns='http://www.unidata.ucar.edu/namespaces/netcdf/ncml-2.2' location='" + filePath + "'>\n"
+        + "  <variable name='data'><attribute name='scale_factor' type='float' value='4'/></variable>\n"
+        + "</netcdf>\n";
+    Files.write(ncml.toPath(), text.getBytes(StandardCharsets.UTF_8));
+
+    File cacheDir = tempFolder.newFolder();
+    StatisticsCache.setPersistenceCache(new DiskCache2(cacheDir.getPath(), false, 0, 0));
+    try (NetcdfDataset ncd = NetcdfDatasets.openDataset(ncml.getPath())) {
+      VariableDS var = (VariableDS) ncd.findVariable("data");
+      checkSame(StatisticsCache.get(var, "test"), RunningStatistics.of(var.read()));
+      assertThat(cacheDir.list()).isEmpty();
+    } finally {
+      StatisticsCache.setPersistenceCache(null);
+      StatisticsCache.clearCache();
+    }
+  }
+
+  private String writeFile(int nrows, int ncols) throws IOException, InvalidRangeException {
+    String filePath = tempFolder.newFile().getAbsolutePath();
+    NetcdfFormatWriter.Builder builder = NetcdfFormatWriter.createNewNetcdf3(filePath);
+    builder.addDimension("row", nrows);
+    builder.addDimension("col", ncols);
+    builder.addVariable("data", DataType.FLOAT, "row col").addAttribute(new Attribute("scale_factor", 2.0f));
+
+    float[] values = new float[nrows * ncols];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = (i % 977) * 0.5f;
+    }
+    values[3] = Float.NaN;
+    try (NetcdfFormatWriter writer = builder.build()) {
+      writer.write("data", Array.factory(DataType.FLOAT, new int[] {nrows, ncols}, values));
+    }
+    return filePath;
+  }
+
+  private static void checkSame(RunningStatistics actual, RunningStatistics expected) {
+    assertThat(actual.getCount()).isEqualTo(expected.getCount());
+    assertThat(actual.getMean()).isWithin(TOLERANCE * Math.abs(expected.getMean())).of(expected.getMean());
+    assertThat(actual.getVariance()).isWithin(1.0E-6 * expected.getVariance()).of(expected.getVariance());
+    assertThat(actual.getMin()).isEqualTo(expected.getMin());
+    assertThat(actual.getMax()).isEqualTo(expected.getMax());
+  }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 1998-2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.internal.iosp.hdf5;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Formatter;
+import java.util.stream.Collectors;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.ma2.Array;
+import ucar.ma2.ArrayObject;
+import ucar.ma2.DataType;
+import ucar.ma2.InvalidRangeException;
+import ucar.nc2.Attribute;
+import ucar.nc2.Dimension;
+import ucar.nc2.Group;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFiles;
+import ucar.nc2.Variable;
+import ucar.nc2.constants.CDM;
+import ucar.nc2.util.CompareNetcdf2;
+import ucar.nc2.write.Nc4ChunkingDefault;
+import ucar.nc2.write.NetcdfFileFormat;
+import ucar.nc2.write.NetcdfFormatWriter;
+
+/** Test writing netCDF-4 files with {@link H5iospWriter} and reading them back. */
+public class TestH5iospWriter {
+
+  @Rule
+  public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @After
+  public void resetThreads() {
+    H5iospWriter.setCompressThreads(Runtime.getRuntime().availableProcessors());
+  }
+
+  @Test
+  public void shouldWriteSameAsNetcdf3() throws IOException, InvalidRangeException {
+    for (int nthreads : new int[] {1, 3}) {
+      H5iospWriter.setCompressThreads(nthreads);
+      String filename3 = tempFolder.newFile().getAbsolutePath();
+      String filename4 = tempFolder.newFile().getAbsolutePath();
+      writeClassic(NetcdfFormatWriter.createNewNetcdf3(filename3));
+      writeClassic(NetcdfFormatWriter.createNewNetcdf4(NetcdfFileFormat.NETCDF4_CLASSIC, filename4,
+          new Nc4ChunkingDefault(5, true)).setUseJavaNetcdf4Writer(true));
+
+      try (NetcdfFile nc3 = NetcdfFiles.open(filename3); NetcdfFile nc4 = NetcdfFiles.open(filename4)) {
+        assertThat(nc4.getFileTypeId()).isEqualTo("NetCDF-4");
+        assertThat(nc4.findVariable("temperature").findAttribute("_ChunkSizes")).isNotNull();
+        // the only differences are the _ChunkSizes attributes
+        CompareNetcdf2.ObjFilter filter = new CompareNetcdf2.ObjFilter() {
+          @Override
+          public boolean attCheckOk(Variable v, Attribute att) {
+            return !att.getShortName().equals(CDM.CHUNK_SIZES);
+          }
+        };
+        Formatter f = new Formatter();
+        boolean ok = new CompareNetcdf2(f, false, false, true).compare(nc3, nc4, filter);
+        assertWithMessage(f.toString()).that(ok).isTrue();
+      }
+    }
+  }
+
+  private void writeClassic(NetcdfFormatWriter.Builder writerb) throws IOException, InvalidRangeException {
+    writerb.addUnlimitedDimension("time");
+    writerb.addDimension("lat", 90);
+    writerb.addDimension("lon", 100);
+    writerb.addAttribute(new Attribute("title", "classic model"));
+    writerb.addVariable("time", DataType.DOUBLE, "time").addAttribute(new Attribute("units", "hours since 2000-01-01"));
+    writerb.addVariable("lat", DataType.FLOAT, "lat");
+    writerb.addVariable("temperature", DataType.FLOAT, "time lat lon")
+        .addAttribute(new Attribute("_FillValue", -999.0f));
+    writerb.addVariable("count", DataType.SHORT, "lat lon");
+    writerb.addVariable("label", DataType.CHAR, "lat lon");
+    writerb.addVariable("scalar", DataType.INT, "");
+
+    try (NetcdfFormatWriter writer = writerb.build()) {
+      writer.write("lat", Array.makeArray(DataType.FLOAT, 90, -89, 2));
+      writer.write("count", Array.makeArray(DataType.SHORT, 90 * 100, 0, 1).reshape(new int[] {90, 100}));
+      writer.write("scalar", Array.factory(DataType.INT, new int[0], new int[] {42}));
+      for (int time = 0; time < 5; time++) {
+        writer.write(writer.findVariable("time"), new int[] {time}, Array.makeArray(DataType.DOUBLE, 1, time, 1));
+        if (time != 3) { // leave a hole of fill values
+          Array data = Array.makeArray(DataType.FLOAT, 90 * 100, time * 1000, 0.5).reshape(new int[] {1, 90, 100});
+          writer.write(writer.findVariable("temperature"), new int[] {time, 0, 0}, data);
+        }
+      }
+      // rewrite part of a chunk that was already written
+      writer.write(writer.findVariable("temperature"), new int[] {1, 40, 40},
+          Array.makeArray(DataType.FLOAT, 4, -1, 0).reshape(new int[] {1, 2, 2}));
+    }
+  }
+
+  @Test
+  public void shouldWriteEnhancedModel() throws IOException, InvalidRangeException {
+    String filename = tempFolder.newFile().getAbsolutePath();
+    NetcdfFormatWriter.Builder writerb =
+        NetcdfFormatWriter.createNewNetcdf4(NetcdfFileFormat.NETCDF4, filename, null).setUseJavaNetcdf4Writer(true);
+    writerb.addDimension("n", 4);
+    writerb.addDimension(Dimension.builder().setName("row").setIsUnlimited(true).build());
+    writerb.addDimension(Dimension.builder().setName("col").setIsUnlimited(true).build());
+    writerb.addAttribute(Attribute.builder("names").setValues(Arrays.asList("a", "", "ccc"), false).build());
+    writerb.addVariable("strings", DataType.STRING, "n");
+    writerb.addVariable("table", DataType.UINT, "row col");
+    writerb.addVariable("empty", DataType.LONG, "n");
+    Group.Builder nested = Group.builder().setName("nested").addDimension(new Dimension("x", 3))
+        .addAttribute(new Attribute("version", 2.5));
+    writerb.getRootGroup().addGroup(nested);
+    nested.addVariable(Variable.builder().setName("values").setDataType(DataType.UBYTE).setParentGroupBuilder(nested)
+        .setDimensionsByName("x n"));
+
+    try (NetcdfFormatWriter writer = writerb.build()) {
+      ArrayObject strings = (ArrayObject) Array.factory(DataType.STRING, new int[] {4});
+      strings.setObject(0, "zero");
+      strings.setObject(1, "ümläut");
+      strings.setObject(3, "three");
+      writer.write("strings", strings);
+      writer.write(writer.findVariable("nested/values"),
+          Array.makeArray(DataType.UBYTE, 12, 0, 20).reshape(new int[] {3, 4}));
+      // grow both unlimited dimensions
+      writer.write("table", new int[] {0, 0}, Array.factory(DataType.UINT, new int[] {1, 1}, new int[] {1}));
+      writer.write("table", new int[] {1, 0}, Array.factory(DataType.UINT, new int[] {1, 2}, new int[] {2, 2}));
+      writer.write("table", new int[] {0, 2}, Array.factory(DataType.UINT, new int[] {3, 1}, new int[] {3, 3, 3}));
+    }
+
+    try (NetcdfFile ncfile = NetcdfFiles.open(filename)) {
+      assertThat(ncfile.getRootGroup().getDimensions().stream().map(Dimension::getShortName)
+          .collect(Collectors.toList())).containsExactly("n", "row", "col").inOrder();
+      assertThat(ncfile.getRootGroup().findAttribute("names").getValues().getSize()).isEqualTo(3);
+      assertThat(ncfile.getRootGroup().findAttribute("names").getStringValue(2)).isEqualTo("ccc");
+
+      Array strings = ncfile.findVariable("strings").read();
+      assertThat(strings.getObject(1)).isEqualTo("ümläut");
+      assertThat(strings.getObject(2)).isEqualTo("");
+      assertThat(strings.getObject(3)).isEqualTo("three");
+
+      int fill = -1; // NC_FILL_UINT
+      int[] expected = {1, fill, 3, 2, 2, 3, fill, fill, 3};
+      assertThat((int[]) ncfile.findVariable("table").read().get1DJavaArray(DataType.INT)).isEqualTo(expected);
+      assertThat(ncfile.findVariable("empty").read().getLong(0)).isEqualTo(-9223372036854775806L);
+
+      Variable values = ncfile.findVariable("nested/values");
+      assertThat((Object) values).isNotNull();
+      assertThat(values.getDimensionsString()).isEqualTo("x n");
+      assertThat(values.read().getInt(11)).isEqualTo(220);
+      assertThat(ncfile.findGroup("nested").findAttribute("version").getNumericValue()).isEqualTo(2.5);
+    }
+  }
+
+  @Test
+  public void shouldOnlyWriteSupportedTypes() {
+    assertThat(canWrite(DataType.STRING)).isTrue();
+    assertThat(canWrite(DataType.ULONG)).isTrue();
+    assertThat(canWrite(DataType.OPAQUE)).isFalse();
+  }
+
+  private boolean canWrite(DataType dataType) {
+    Group.Builder root = Group.builder().addDimension(new Dimension("n", 4));
+    root.addVariable(Variable.builder().setName("v").setDataType(dataType).setParentGroupBuilder(root)
+        .setDimensionsByName("n"));
+    return H5iospWriter.canWrite(NetcdfFile.builder().setRootGroup(root).build());
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 1998-2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.internal.ncml;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+import ucar.ma2.Array;
+import ucar.ma2.InvalidRangeException;
+import ucar.ma2.MAMath;
+import ucar.ma2.Section;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.Variable;
+import ucar.nc2.dataset.NetcdfDataset;
+import ucar.nc2.ncml.TestNcmlRead;
+import ucar.nc2.util.CancelTaskImpl;
+
+/** Test reading sections of outer dimension aggregations with Aggregation.setReadThreads(). */
+public class TestAggReadThreads {
+  private static final String[] SECTIONS = {"0:58,1,2", "20:40,:,1:3", "1:50:7,0:2:2,:", "30:31,:,:", "58,2,3"};
+
+  @After
+  public void resetThreads() {
+    Aggregation.setReadThreads(1);
+    Aggregation.setExecutor(null);
+  }
+
+  @Test
+  public void shouldReadSameSectionsAsSerial() throws IOException, InvalidRangeException {
+    ExecutorService pool = Executors.newFixedThreadPool(2);
+    try {
+      Aggregation.setExecutor(pool);
+      checkSections("aggExisting.xml", "T", SECTIONS);
+      checkSections("aggSynthetic.xml", "T", new String[] {"0:2,1,2", "1:2,:,1:3", "0:2:2,0:2:2,:", "2,2,3"});
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test
+  public void shouldReadOnCallerIfNotStarted() throws IOException, InvalidRangeException {
+    // an executor that never runs its tasks: the reads must all be made by the caller
+    Aggregation.setExecutor(task -> {
+    });
+    checkSections("aggExisting.xml", "T", SECTIONS);
+  }
+
+  @Test
+  public void shouldReadWithoutExecutor() throws IOException, InvalidRangeException {
+    checkSections("aggExisting.xml", "T", SECTIONS);
+  }
+
+  @Test
+  public void shouldLimitReadsPerAggregation() throws Exception {
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    ExecutorService callers = Executors.newFixedThreadPool(4);
+    String filename = "file:./" + TestNcmlRead.topDir + "aggExisting.xml";
+    try (NetcdfDataset ncd = NcmlReader.readNcml(filename, null, null).build()) {
+      Variable v = ncd.findVariable("T");
+      Array want = v.read("0:58,1,2");
+      AggregationOuter agg = (AggregationOuter) ncd.getAggregation();
+      NestedReadCounter counter = new NestedReadCounter();
+
+      Aggregation.setExecutor(pool);
+      Aggregation.setReadThreads(2);
+      List<Future<Array>> results = new ArrayList<>();
+      for (int i = 0; i < 4; i++) {
+        results.add(callers.submit(() -> agg.reallyRead(v, new Section("0:58,1,2"), counter)));
+      }
+      for (Future<Array> result : results) {
+        assertThat(MAMath.equals(result.get(), want)).isTrue();
+      }
+      assertThat(counter.maxInFlight.get()).isAtMost(2);
+    } finally {
+      callers.shutdownNow();
+      pool.shutdownNow();
+    }
+  }
+
+  // counts the nested datasets being read, from the cancel check made while each one is read
+  private static class NestedReadCounter extends CancelTaskImpl {
+    final AtomicInteger inFlight = new AtomicInteger();
+    final AtomicInteger maxInFlight = new AtomicInteger();
+
+    @Override
+    public boolean isCancel() {
+      boolean nested =
+          Arrays.stream(Thread.currentThread().getStackTrace()).anyMatch(e -> e.getClassName().endsWith("SliceReader"));
+      if (nested) {
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        try {
+          Thread.sleep(5);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        inFlight.decrementAndGet();
+      }
+      return false;
+    }
+  }
+
+  private void checkSections(String ncml, String varName, String[] sections)
+      throws IOException, InvalidRangeException {
+    String filename = "file:./" + TestNcmlRead.topDir + ncml;
+    Array[] serial = new Array[sections.length];
+    try (NetcdfFile ncfile = NcmlReader.readNcml(filename, null, null).build()) {
+      Variable v = ncfile.findVariable(varName);
+      for (int i = 0; i < sections.length; i++) {
+        serial[i] = v.read(sections[i]);
+      }
+    }
+
+    Aggregation.setReadThreads(3);
+    try (NetcdfFile ncfile = NcmlReader.readNcml(filename, null, null).build()) {
+      Variable v = ncfile.findVariable(varName);
+      for (int i = 0; i < sections.length; i++) {
+        Array data = v.read(sections[i]);
+        assertThat(data.getShape()).isEqualTo(serial[i].getShape());
+        assertThat(MAMath.equals(data, serial[i])).isTrue();
+      }
+    }
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 1998-2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.internal.ncml;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+
+/** Test the persisted index of joinExisting aggregations. */
+public class TestAggregationIndex {
+
+  @Rule
+  public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Test
+  public void shouldReadWhatWasWritten() throws IOException {
+    File file = tempFolder.newFile();
+    List<AggregationIndex.Entry> entries = makeEntries(5, 1000);
+    assertThat(new AggregationIndex(file).write(entries)).isTrue();
+
+    Map<String, AggregationIndex.Entry> read = new AggregationIndex(file).read();
+    assertThat(read).hasSize(5);
+    AggregationIndex.Entry entry = read.get("file2.nc");
+    assertThat(entry.size).isEqualTo(1002);
+    assertThat(entry.lastModified).isEqualTo(1000);
+    assertThat(entry.ncoords).isEqualTo(3);
+    assertThat(entry.cache.keySet()).containsExactly("time", "run", "label").inOrder();
+    assertThat((double[]) entry.cache.get("time").copyTo1DJavaArray()).isEqualTo(new double[] {20, 21, 22});
+    assertThat(entry.cache.get("run").getDataType()).isEqualTo(DataType.UINT);
+    assertThat(entry.cache.get("run").getLong(0)).isEqualTo(4000000000L);
+    assertThat(entry.cache.get("label").getObject(1)).isEqualTo("ümläut");
+  }
+
+  @Test
+  public void shouldOnlyAppendChangedDatasets() throws IOException {
+    File file = tempFolder.newFile();
+    AggregationIndex index = new AggregationIndex(file);
+    assertThat(index.write(makeEntries(10, 1000))).isTrue();
+    long length = file.length();
+
+    // nothing changed
+    index = new AggregationIndex(file);
+    index.read();
+    assertThat(index.write(makeEntries(10, 1000))).isTrue();
+    assertThat(file.length()).isEqualTo(length);
+
+    // one changed, one new
+    List<AggregationIndex.Entry> entries = makeEntries(11, 1000);
+    entries.set(3, makeEntry(3, 2000));
+    assertThat(index.write(entries)).isTrue();
+    long entryLength = (length - 12) / 10;
+    assertThat(file.length()).isGreaterThan(length + entryLength);
+    assertThat(file.length()).isLessThan(length + 3 * entryLength);
+
+    Map<String, AggregationIndex.Entry> read = new AggregationIndex(file).read();
+    assertThat(read).hasSize(11);
+    assertThat(read.get("file3.nc").lastModified).isEqualTo(2000);
+    assertThat(read.get("file10.nc").lastModified).isEqualTo(1000);
+  }
+
+  @Test
+  public void shouldRewriteWhenMostlyStale() throws IOException {
+    File file = tempFolder.newFile();
+    AggregationIndex index = new AggregationIndex(file);
+    assertThat(index.write(makeEntries(4, 1000))).isTrue();
+    long length = file.length();
+    for (int i = 1; i <= 3; i++) {
+      assertThat(index.write(makeEntries(4, 1000 + i))).isTrue();
+    }
+    // 16 entries were written, but the file is rewritten to hold only the live ones
+    assertThat(file.length()).isLessThan(3 * length);
+    assertThat(new AggregationIndex(file).read().get("file0.nc").lastModified).isEqualTo(1003);
+  }
+
+  @Test
+  public void shouldIgnoreOtherFilesAndCutOffEntries() throws IOException {
+    File file = tempFolder.newFile();
+    String xml = "<?xml version='1.0' encoding='UTF-8'?>\n<aggregation/>";
+    Files.write(file.toPath(), xml.getBytes(StandardCharsets.UTF_8));
+    AggregationIndex index = new AggregationIndex(file);
+    assertThat(index.read()).isEmpty();
+    assertThat(index.write(makeEntries(3, 1000))).isTrue();
+    assertThat(new AggregationIndex(file).read()).hasSize(3);
+
+    // cut off the last entry, as if a write was interrupted
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.setLength(raf.length() - 5);
+    }
+    index = new AggregationIndex(file);
+    assertThat(index.read().keySet()).containsExactly("file0.nc", "file1.nc");
+    assertThat(index.write(makeEntries(3, 1000))).isTrue();
+    assertThat(new AggregationIndex(file).read()).hasSize(3);
+  }
+
+  private List<AggregationIndex.Entry> makeEntries(int n, long lastModified) {
+    List<AggregationIndex.Entry> entries = new ArrayList<>();
+    for (int i = 0; i < n; i++) {
+      entries.add(makeEntry(i, lastModified));
+    }
+    return entries;
+  }
+
+  private AggregationIndex.Entry makeEntry(int i, long lastModified) {
+    Map<String, Array> cache = new LinkedHashMap<>();
+    cache.put("time", Array.makeArray(DataType.DOUBLE, 3, 10 * i, 1));
+    cache.put("run", Array.factory(DataType.UINT, new int[] {1}, new int[] {(int) 4000000000L}));
+    Array label = Array.factory(DataType.STRING, new int[] {2});
+    label.setObject(0, "file" + i);
+    label.setObject(1, "ümläut");
+    cache.put("label", label);
+    return new AggregationIndex.Entry("file" + i + ".nc", 1000 + i, lastModified, 3,
+        Collections.unmodifiableMap(cache));
+  }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 1998-2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.iosp;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.ma2.InvalidRangeException;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFiles;
+import ucar.nc2.write.Nc4ChunkingDefault;
+import ucar.nc2.write.NetcdfFileFormat;
+import ucar.nc2.write.NetcdfFormatWriter;
+
+public class TestChunkCache {
+  @Rule
+  public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private final long savedMaxBytes = ChunkCache.getInstance().getMaxBytes();
+
+  @After
+  public void restore() {
+    ChunkCache.setMaxBytes(savedMaxBytes);
+  }
+
+  @Test
+  public void shouldLoadOnce() throws IOException {
+    ChunkCache.setMaxBytes(1000);
+    ChunkCache cache = ChunkCache.getInstance();
+    AtomicInteger loads = new AtomicInteger();
+    ChunkCache.Key key = ChunkCache.makeKey("file", 1, "var", 100);
+
+    for (int i = 0; i < 3; i++) {
+      byte[] data = cache.get(key, () -> {
+        loads.incrementAndGet();
+        return new byte[10];
+      });
+      assertThat(data.length).isEqualTo(10);
+    }
+    assertThat(loads.get()).isEqualTo(1);
+    assertThat(cache.getMissCount()).isEqualTo(1);
+    assertThat(cache.getHitCount()).isEqualTo(2);
+    assertThat(cache.size()).isEqualTo(1);
+    assertThat(cache.sizeBytes()).isEqualTo(10);
+
+    // a rewritten file does not see the old chunk
+    cache.get(ChunkCache.makeKey("file", 2, "var", 100), () -> new byte[10]);
+    assertThat(cache.getMissCount()).isEqualTo(2);
+
+    cache.clear();
+    assertThat(cache.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void shouldEvictOverBudget() throws IOException {
+    ChunkCache.setMaxBytes(1000);
+    ChunkCache cache = ChunkCache.getInstance();
+    for (int i = 0; i < 10; i++) {
+      cache.get(ChunkCache.makeKey("file", 1, "var", i), () -> new byte[300]);
+    }
+    assertThat(cache.sizeBytes()).isAtMost(1000);
+    assertThat(cache.getEvictionCount()).isAtLeast(7);
+  }
+
+  @Test
+  public void shouldNotCacheWhenDisabled() throws IOException {
+    ChunkCache.setMaxBytes(0);
+    ChunkCache cache = ChunkCache.getInstance();
+    assertThat(cache.isEnabled()).isFalse();
+    AtomicInteger loads = new AtomicInteger();
+    ChunkCache.Key key = ChunkCache.makeKey("file", 1, "var", 100);
+    for (int i = 0; i < 3; i++) {
+      cache.get(key, () -> {
+        loads.incrementAndGet();
+        return new byte[10];
+      });
+    }
+    assertThat(loads.get()).isEqualTo(3);
+    assertThat(cache.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void shouldPropagateIOException() {
+    ChunkCache.setMaxBytes(1000);
+    try {
+      ChunkCache.getInstance().get(ChunkCache.makeKey("file", 1, "var", 0), () -> {
+        throw new IOException("bad chunk");
+      });
+      fail();
+    } catch (IOException e) {
+      assertThat(e.getMessage()).isEqualTo("bad chunk");
+    }
+  }
+
+  @Test
+  public void shouldNotCacheWithoutLastModified() throws IOException {
+    ChunkCache.setMaxBytes(1000);
+    ChunkCache cache = ChunkCache.getInstance();
+    ChunkCache.Key key = ChunkCache.makeKey("file", 0, "var", 100);
+    assertThat(key).isNull();
+
+    AtomicInteger loads = new AtomicInteger();
+    for (int i = 0; i < 3; i++) {
+      cache.get(key, () -> {
+        loads.incrementAndGet();
+        return new byte[10];
+      });
+    }
+    assertThat(loads.get()).isEqualTo(3);
+    assertThat(cache.contains(key)).isFalse();
+    assertThat(cache.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void shouldNotShareChunksOfInMemoryFiles() throws IOException, InvalidRangeException {
+    ChunkCache.setMaxBytes(1000 * 1000);
+    byte[] ones = writeChunked(1);
+    byte[] twos = writeChunked(2);
+
+    // same location, same layout, different data
+    try (NetcdfFile ncfile1 = NetcdfFiles.openInMemory("inMemory.nc", ones);
+        NetcdfFile ncfile2 = NetcdfFiles.openInMemory("inMemory.nc", twos)) {
+      Array data1 = ncfile1.findVariable("data").read();
+      Array data2 = ncfile2.findVariable("data").read();
+      for (int i = 0; i < data1.getSize(); i++) {
+        assertThat(data1.getInt(i)).isEqualTo(1);
+        assertThat(data2.getInt(i)).isEqualTo(2);
+      }
+    }
+    assertThat(ChunkCache.getInstance().size()).isEqualTo(0);
+  }
+
+  // a netcdf4 file with a deflated variable holding the same value everywhere
+  private byte[] writeChunked(int value) throws IOException, InvalidRangeException {
+    File file = tempFolder.newFile();
+    NetcdfFormatWriter.Builder writerb = NetcdfFormatWriter
+        .createNewNetcdf4(NetcdfFileFormat.NETCDF4, file.getAbsolutePath(), new Nc4ChunkingDefault(5, false))
+        .setUseJavaNetcdf4Writer(true);
+    writerb.addUnlimitedDimension("time");
+    writerb.addDimension("x", 100);
+    writerb.addVariable("data", DataType.INT, "time x");
+
+    try (NetcdfFormatWriter writer = writerb.build()) {
+      for (int time = 0; time < 3; time++) {
+        Array data = Array.makeArray(DataType.INT, 100, value, 0).reshape(new int[] {1, 100});
+        writer.write(writer.findVariable("data"), new int[] {time, 0}, data);
+      }
+    }
+    return Files.readAllBytes(file.toPath());
+  }
+}
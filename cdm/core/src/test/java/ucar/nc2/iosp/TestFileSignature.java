@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 1998-2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.iosp;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+
+/** Test {@link FileSignature} */
+public class TestFileSignature {
+  private static final byte[] header = "xxCDF\u0001yyyy".getBytes(StandardCharsets.US_ASCII);
+
+  @Test
+  public void shouldMatchMagicInHeader() {
+    assertThat(FileSignature.magic(2, new byte[] {'C', 'D', 'F', 1}).mayMatch(header, 10, 100, "a.nc")).isTrue();
+    assertThat(FileSignature.magic(2, new byte[] {'C', 'D', 'F', 2}).mayMatch(header, 10, 100, "a.nc")).isFalse();
+    assertThat(FileSignature.magic(0, "CDF").mayMatch(header, 10, 100, "a.nc")).isFalse();
+  }
+
+  @Test
+  public void shouldOnlyTestBytesThatWereRead() {
+    // ignores the bytes after headerLength
+    assertThat(FileSignature.magic(6, "yyyy").mayMatch(header, 10, 100, "a.nc")).isTrue();
+    assertThat(FileSignature.magic(6, "zzzz").mayMatch(header, 6, 100, "a.nc")).isTrue();
+    // but not beyond the end of the file
+    assertThat(FileSignature.magic(6, "zzzz").mayMatch(header, 6, 6, "a.nc")).isFalse();
+    assertThat(FileSignature.magic(8, "zzzz").mayMatch(header, 10, 10, "a.nc")).isFalse();
+  }
+
+  @Test
+  public void shouldMatchSuffix() {
+    assertThat(FileSignature.suffix(".DEM").mayMatch(header, 10, 100, "/data/W020N90.DEM")).isTrue();
+    assertThat(FileSignature.suffix(".DEM").mayMatch(header, 10, 100, "/data/W020N90.dem")).isFalse();
+    assertThat(FileSignature.suffix(".DEM").mayMatch(header, 10, 100, null)).isFalse();
+  }
+}
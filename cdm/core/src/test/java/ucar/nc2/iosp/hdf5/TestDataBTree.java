@@ -4,11 +4,16 @@ import static com.google.common.truth.Truth.assertThat;
 
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import ucar.ma2.InvalidRangeException;
+import ucar.ma2.Section;
 import ucar.nc2.iosp.hdf5.H5header.Vinfo;
 import ucar.nc2.NetcdfFile;
 import ucar.nc2.Variable;
@@ -51,4 +56,43 @@ public class TestDataBTree {
     netcdfFile.close();
     assertThat(bTree.getRandomAccessFile()).isNull();
   }
+
+  @Test
+  public void shouldReadChunkIndexOnce() throws IOException {
+    final Variable variable = netcdfFile.findVariable("data");
+    assertThat((Object) variable).isNotNull();
+    final DataBTree bTree = ((Vinfo) variable.getSPobject()).btree;
+
+    DataBTree.ChunkIndex index = bTree.getChunkIndex();
+    assertThat(index.nchunks).isGreaterThan(1);
+    assertThat(index.isSorted).isTrue();
+    assertThat(bTree.getChunkIndex()).isSameInstanceAs(index);
+  }
+
+  @Test
+  public void shouldSkipChunksBeforeSection() throws IOException, InvalidRangeException {
+    final Variable variable = netcdfFile.findVariable("data");
+    assertThat((Object) variable).isNotNull();
+    final DataBTree bTree = ((Vinfo) variable.getSPobject()).btree;
+
+    List<DataBTree.DataChunk> all = new ArrayList<>();
+    DataBTree.DataChunkIterator iter = bTree.getDataChunkIteratorFilter(null);
+    while (iter.hasNext()) {
+      all.add(iter.next());
+    }
+    assertThat(all.size()).isGreaterThan(1);
+
+    // starting at the last chunk returns only the last chunk
+    DataBTree.DataChunk last = all.get(all.size() - 1);
+    int rank = variable.getRank();
+    int[] shape = new int[rank];
+    Arrays.fill(shape, 1);
+    Section want = new Section(Arrays.copyOf(last.offset, rank), shape);
+    iter = bTree.getDataChunkIteratorFilter(want);
+    assertThat(iter.hasNext()).isTrue();
+    DataBTree.DataChunk dc = iter.next();
+    assertThat(dc.filePos).isEqualTo(last.filePos);
+    assertThat(dc.offset).isEqualTo(last.offset);
+    assertThat(iter.hasNext()).isFalse();
+  }
 }
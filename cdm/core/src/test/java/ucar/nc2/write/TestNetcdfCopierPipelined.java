@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 1998-2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.write;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import java.io.IOException;
+import java.util.Formatter;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.ma2.InvalidRangeException;
+import ucar.ma2.Section;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFiles;
+import ucar.nc2.Variable;
+import ucar.nc2.util.CompareNetcdf2;
+
+/** Test NetcdfCopier with reads overlapping writes. */
+public class TestNetcdfCopierPipelined {
+
+  @Rule
+  public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Test
+  public void shouldMakeSectionsOfWholeChunks() {
+    checkSections(new int[] {100, 50, 40}, new long[] {10, 25, 40}, 30000, 10);
+    checkSections(new int[] {100, 50, 40}, new long[] {10, 25, 40}, 500, 20); // a chunk is bigger than the max
+    checkSections(new int[] {95, 50, 40}, new long[] {10, 25, 40}, 50000, 5);
+    checkSections(new int[] {7, 13}, new long[] {1024, 1024}, 10, 1); // chunk bigger than the array
+  }
+
+  private void checkSections(int[] shape, long[] chunk, long maxElems, int expectedCount) {
+    List<Section> sections = NetcdfCopier.makeChunkAlignedSections(shape, chunk, maxElems);
+    assertThat(sections).hasSize(expectedCount);
+    long total = 0;
+    for (Section section : sections) {
+      int[] origin = section.getOrigin();
+      int[] sshape = section.getShape();
+      for (int i = 0; i < shape.length; i++) {
+        assertThat(origin[i] % Math.min(chunk[i], shape[i])).isEqualTo(0);
+        assertThat(origin[i] + sshape[i]).isAtMost(shape[i]);
+      }
+      total += section.computeSize();
+    }
+    assertThat(total).isEqualTo(new Section(shape).computeSize());
+  }
+
+  @Test
+  public void shouldCopySameAsSequential() throws IOException, InvalidRangeException {
+    String filename = writeInput();
+    try (NetcdfFile ncfileIn = NetcdfFiles.open(filename)) {
+      String copyName = tempFolder.newFile().getAbsolutePath();
+      NetcdfCopier copier =
+          NetcdfCopier.create(ncfileIn, NetcdfFormatWriter.createNewNetcdf3(copyName)).setReadThreads(3);
+      try (NetcdfFile ncfileOut = copier.write(null)) {
+        assertThat(copier.getBytesCopied()).isEqualTo(5 * 30 * 40 * 4 + 30 * 8 + 30 * 40 * 4);
+      }
+      try (NetcdfFile copy = NetcdfFiles.open(copyName)) {
+        Formatter f = new Formatter();
+        assertThat(new CompareNetcdf2(f, false, false, true).compare(ncfileIn, copy)).isTrue();
+      }
+    }
+  }
+
+  @Test
+  public void shouldCopyWholeChunksToNetcdf4() throws IOException, InvalidRangeException {
+    String filename = writeInput();
+    Nc4ChunkingDefault chunker = new Nc4ChunkingDefault(5, true);
+    chunker.setDefaultChunkSize(1200); // 300 values
+    chunker.setMinChunksize(0);
+    chunker.setMinVariableSize(0);
+
+    try (NetcdfFile ncfileIn = NetcdfFiles.open(filename)) {
+      String copyName = tempFolder.newFile().getAbsolutePath();
+      NetcdfFormatWriter.Builder writerb = NetcdfFormatWriter
+          .createNewNetcdf4(NetcdfFileFormat.NETCDF4, copyName, chunker).setUseJavaNetcdf4Writer(true);
+      // sections of 500 values, so that each variable is read in several sections of whole chunks
+      NetcdfCopier copier = NetcdfCopier.create(ncfileIn, writerb).setReadThreads(3).setSectionSize(2000);
+      copier.write(null).close();
+
+      try (NetcdfFile copy = NetcdfFiles.open(copyName)) {
+        assertThat(copy.findVariable("temperature").findAttribute("_ChunkSizes").getValues().getSize()).isEqualTo(3);
+        for (Variable v : ncfileIn.getVariables()) {
+          Array org = v.read();
+          Array copied = copy.findVariable(v.getFullName()).read();
+          assertWithMessage(v.getFullName()).that(CompareNetcdf2.compareData(v.getFullName(), org, copied)).isTrue();
+        }
+      }
+    }
+  }
+
+  // a netcdf3 file with an unlimited and two fixed size variables
+  private String writeInput() throws IOException, InvalidRangeException {
+    String filename = tempFolder.newFile().getAbsolutePath();
+    NetcdfFormatWriter.Builder writerb = NetcdfFormatWriter.createNewNetcdf3(filename);
+    writerb.addUnlimitedDimension("time");
+    writerb.addDimension("lat", 30);
+    writerb.addDimension("lon", 40);
+    writerb.addVariable("temperature", DataType.FLOAT, "time lat lon");
+    writerb.addVariable("lat", DataType.DOUBLE, "lat");
+    writerb.addVariable("count", DataType.INT, "lat lon");
+    try (NetcdfFormatWriter writer = writerb.build()) {
+      Array temperature = Array.makeArray(DataType.FLOAT, 5 * 30 * 40, 0.0, 0.25);
+      writer.write("temperature", temperature.reshape(new int[] {5, 30, 40}));
+      writer.write("lat", Array.makeArray(DataType.DOUBLE, 30, -45.0, 3.0));
+      writer.write("count", Array.makeArray(DataType.INT, 30 * 40, 0, 1).reshape(new int[] {30, 40}));
+    }
+    return filename;
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 1998-2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.write;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.ma2.Array;
+import ucar.ma2.ArrayChar;
+import ucar.ma2.DataType;
+import ucar.ma2.InvalidRangeException;
+import ucar.nc2.Attribute;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFiles;
+
+/** Test writing netcdf-3 records with NetcdfFormatWriter.Builder.setRecordBufferSize(). */
+public class TestWriteRecordBuffer {
+
+  @Rule
+  public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Test
+  public void shouldWriteSameFileAsUnbuffered() throws IOException, InvalidRangeException {
+    for (boolean fill : new boolean[] {true, false}) {
+      // a buffer of 1 record, a few records, and all of them
+      for (int bufferSize : new int[] {700, 3000, 1000 * 1000}) {
+        File direct = write(0, fill);
+        File buffered = write(bufferSize, fill);
+        assertThat(Files.readAllBytes(buffered.toPath())).isEqualTo(Files.readAllBytes(direct.toPath()));
+      }
+    }
+  }
+
+  private File write(int recordBufferSize, boolean fill) throws IOException, InvalidRangeException {
+    File file = tempFolder.newFile();
+    NetcdfFormatWriter.Builder writerb =
+        NetcdfFormatWriter.createNewNetcdf3(file.getAbsolutePath()).setFill(fill).setRecordBufferSize(recordBufferSize);
+    writerb.addUnlimitedDimension("time");
+    writerb.addDimension("lat", 11);
+    writerb.addDimension("lon", 13);
+    writerb.addDimension("strlen", 5);
+    writerb.addVariable("lat", DataType.FLOAT, "lat");
+    writerb.addVariable("time", DataType.DOUBLE, "time");
+    writerb.addVariable("temperature", DataType.FLOAT, "time lat lon")
+        .addAttribute(new Attribute("_FillValue", -999.0f));
+    writerb.addVariable("count", DataType.SHORT, "time lat");
+    writerb.addVariable("flag", DataType.BYTE, "time lon");
+    writerb.addVariable("name", DataType.CHAR, "time strlen");
+    writerb.addVariable("level", DataType.INT, "time");
+
+    try (NetcdfFormatWriter writer = writerb.build()) {
+      writer.write("lat", Array.makeArray(DataType.FLOAT, 11, -50, 10));
+      // one record at a time, leaving some variables and records unwritten
+      for (int time = 0; time < 20; time++) {
+        if (time == 7) {
+          continue;
+        }
+        writer.write(writer.findVariable("time"), new int[] {time}, Array.makeArray(DataType.DOUBLE, 1, time, 1));
+        if (time % 3 != 0) {
+          Array data = Array.makeArray(DataType.FLOAT, 11 * 13, time * 1000, 0.5).reshape(new int[] {1, 11, 13});
+          writer.write(writer.findVariable("temperature"), new int[] {time, 0, 0}, data);
+        }
+        writer.write(writer.findVariable("count"), new int[] {time, 2},
+            Array.makeArray(DataType.SHORT, 5, time, 1).reshape(new int[] {1, 5}));
+        writer.write(writer.findVariable("flag"), new int[] {time, 0},
+            Array.makeArray(DataType.BYTE, 13, time, 1).reshape(new int[] {1, 13}));
+        writer.write(writer.findVariable("name"), new int[] {time, 0},
+            ArrayChar.makeFromString("t" + time, 5).reshape(new int[] {1, 5}));
+        if (time == 10) {
+          writer.flush();
+        }
+      }
+      // skip ahead, then rewrite records that are already in the file
+      writer.write(writer.findVariable("level"), new int[] {30},
+          Array.factory(DataType.INT, new int[] {1}, new int[] {30}));
+      writer.write("level", Array.makeArray(DataType.INT, 31, 0, 1));
+      writer.write(writer.findVariable("count"), new int[] {3, 0},
+          Array.makeArray(DataType.SHORT, 11, -1, 0).reshape(new int[] {1, 11}));
+      writer.write(writer.findVariable("time"), new int[] {31}, Array.makeArray(DataType.DOUBLE, 1, 31, 1));
+    }
+
+    try (NetcdfFile ncfile = NetcdfFiles.open(file.getAbsolutePath())) {
+      assertThat(ncfile.getUnlimitedDimension().getLength()).isEqualTo(32);
+      assertThat(ncfile.findVariable("level").read().getInt(30)).isEqualTo(30);
+      if (fill) {
+        assertThat(ncfile.findVariable("temperature").read("7,0,0").getFloat(0)).isEqualTo(-999.0f);
+      }
+    }
+    return file;
+  }
+}
@@ -11,6 +11,9 @@ import java.nio.ByteOrder;
 import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import static com.google.common.truth.Truth.assertThat;
 
@@ -249,6 +252,66 @@ public class TestRandomAccessFile {
     assertThat(arraysMatch(buff, UTF8_BYTES, offset, 0, len)).isTrue();
   }
 
+  @Test
+  public void testReadVectored() throws IOException {
+    testFile.seek(3);
+    // unsorted, overlapping, adjacent and distant ranges
+    List<FileRange> ranges = Arrays.asList(new FileRange(40, 10), new FileRange(0, 5), new FileRange(2, 6),
+        new FileRange(8, 4), new FileRange(TEST_FILE_LENGTH - 1, 1));
+    try {
+      RandomAccessFile.setVectoredReadMaxGap(0);
+      testFile.readVectored(ranges);
+      for (FileRange range : ranges) {
+        assertThat(arraysMatch(range.getData(), UTF8_BYTES, 0, (int) range.getPosition(), range.getLength())).isTrue();
+      }
+    } finally {
+      RandomAccessFile.setVectoredReadMaxGap(64 * 1024);
+    }
+    // file position is unchanged
+    assertThat(testFile.getFilePointer()).isEqualTo(3);
+
+    // range past the end of the file
+    Assert.assertThrows(EOFException.class, () -> {
+      testFile.readVectored(Collections.singletonList(new FileRange(TEST_FILE_LENGTH - 1, 2)));
+    });
+  }
+
+  @Test
+  public void testAdaptiveReadAhead() throws IOException {
+    byte[] fixed = new byte[(int) TEST_FILE_LENGTH];
+    byte[] adaptive = new byte[(int) TEST_FILE_LENGTH];
+    long fixedReads;
+    try (RandomAccessFile raf = new RandomAccessFile(TEST_FILE_PATH, "r", 4)) {
+      for (int i = 0; i < fixed.length; i++) {
+        fixed[i] = (byte) raf.read();
+      }
+      fixedReads = raf.getReadCount();
+      assertThat(raf.getBytesRead()).isEqualTo(TEST_FILE_LENGTH);
+    }
+
+    try (RandomAccessFile raf = new RandomAccessFile(TEST_FILE_PATH, "r", 4)) {
+      RandomAccessFile.setReadAheadMax(32);
+      // sequential reads grow the read-ahead, 4, 8, 16, 32
+      for (int i = 0; i < adaptive.length; i++) {
+        adaptive[i] = (byte) raf.read();
+      }
+      assertThat(raf.getReadCount()).isLessThan(fixedReads);
+      assertThat(raf.getBufferSize()).isEqualTo(32);
+
+      // a random access goes back to the buffer size
+      raf.seek(0);
+      long bytesRead = raf.getBytesRead();
+      raf.seek(40);
+      assertThat(raf.getBytesRead() - bytesRead).isEqualTo(4);
+      assertThat(raf.readByte()).isEqualTo(UTF8_BYTES[40]);
+      assertThat(raf.getSeekCount()).isGreaterThan(raf.getBufferHitCount());
+    } finally {
+      RandomAccessFile.setReadAheadMax(0);
+    }
+    assertThat(adaptive).isEqualTo(fixed);
+    assertThat(adaptive).isEqualTo(UTF8_BYTES);
+  }
+
   @Test
   public void testSkipBytes() throws IOException {
     testFile.seek(0);
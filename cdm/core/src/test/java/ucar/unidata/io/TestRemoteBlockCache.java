@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 1998-2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.unidata.io;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+
+public class TestRemoteBlockCache {
+  private static final int BLOCK_SIZE = 100;
+  private static final byte[] CONTENT = new byte[1050];
+  static {
+    for (int i = 0; i < CONTENT.length; i++) {
+      CONTENT[i] = (byte) i;
+    }
+  }
+
+  private final long savedMaxBytes = RemoteBlockCache.getInstance().getMaxBytes();
+  private final boolean savedOffHeap = RemoteBlockCache.getInstance().isOffHeap();
+
+  @After
+  public void restore() {
+    RemoteBlockCache.setMaxBytes(savedMaxBytes, savedOffHeap);
+  }
+
+  @Test
+  public void shouldShareBlocksBetweenFiles() throws IOException {
+    RemoteBlockCache.setMaxBytes(10 * CONTENT.length);
+    checkShared();
+  }
+
+  @Test
+  public void shouldShareBlocksOffHeap() throws IOException {
+    RemoteBlockCache.setMaxBytes(10 * CONTENT.length, true);
+    checkShared();
+  }
+
+  private void checkShared() throws IOException {
+    AtomicInteger remoteReads = new AtomicInteger();
+    try (FakeRemoteFile raf = new FakeRemoteFile("version1", remoteReads)) {
+      assertThat(readAll(raf)).isEqualTo(CONTENT);
+    }
+    int firstReads = remoteReads.get();
+    assertThat(firstReads).isGreaterThan(0);
+
+    // a new file for the same object reads nothing remotely
+    try (FakeRemoteFile raf = new FakeRemoteFile("version1", remoteReads)) {
+      assertThat(readAll(raf)).isEqualTo(CONTENT);
+    }
+    assertThat(remoteReads.get()).isEqualTo(firstReads);
+    assertThat(RemoteBlockCache.getInstance().getHitCount()).isGreaterThan(0);
+
+    // a rewritten object does not see the old blocks
+    try (FakeRemoteFile raf = new FakeRemoteFile("version2", remoteReads)) {
+      assertThat(readAll(raf)).isEqualTo(CONTENT);
+    }
+    assertThat(remoteReads.get()).isEqualTo(2 * firstReads);
+  }
+
+  @Test
+  public void shouldNotShareUnknownVersion() throws IOException {
+    RemoteBlockCache.setMaxBytes(10 * CONTENT.length);
+    AtomicInteger remoteReads = new AtomicInteger();
+    for (int i = 0; i < 2; i++) {
+      try (FakeRemoteFile raf = new FakeRemoteFile(null, remoteReads)) {
+        assertThat(readAll(raf)).isEqualTo(CONTENT);
+      }
+    }
+    assertThat(RemoteBlockCache.getInstance().size()).isEqualTo(0);
+  }
+
+  @Test
+  public void shouldReadVectoredThroughCache() throws IOException {
+    RemoteBlockCache.setMaxBytes(10 * CONTENT.length);
+    RandomAccessFile.setVectoredReadMaxGap(0);
+    try {
+      AtomicInteger remoteReads = new AtomicInteger();
+      try (FakeRemoteFile raf = new FakeRemoteFile("version1", remoteReads)) {
+        checkVectored(raf);
+      }
+      // a single request for each of the two merged ranges, not one for each block
+      assertThat(remoteReads.get()).isEqualTo(2);
+
+      // the blocks read by the vectored read are shared with the next file
+      try (FakeRemoteFile raf = new FakeRemoteFile("version1", remoteReads)) {
+        checkVectored(raf);
+        assertThat(readAll(raf)).isEqualTo(CONTENT);
+      }
+      assertThat(remoteReads.get()).isEqualTo(2 + 3); // blocks 3, 4 and 5
+    } finally {
+      RandomAccessFile.setVectoredReadMaxGap(64 * 1024);
+    }
+  }
+
+  // two merged ranges, from the middle of block 0 to block 2, and within block 6 through the end of the file
+  private static void checkVectored(RandomAccessFile raf) throws IOException {
+    List<FileRange> ranges = Arrays.asList(new FileRange(50, 100), new FileRange(120, 130), new FileRange(620, 30),
+        new FileRange(650, 400));
+    raf.readVectored(ranges);
+    for (FileRange range : ranges) {
+      int start = (int) range.getPosition();
+      assertThat(range.getData()).isEqualTo(Arrays.copyOfRange(CONTENT, start, start + range.getLength()));
+    }
+  }
+
+  @Test
+  public void shouldUseWholeBudget() throws IOException {
+    RemoteBlockCache.setMaxBytes(4 * BLOCK_SIZE);
+    RemoteBlockCache cache = RemoteBlockCache.getInstance();
+    byte[] buff = new byte[BLOCK_SIZE];
+    for (int i = 0; i < 4; i++) {
+      cache.read(RemoteBlockCache.makeKey("object", "v1", BLOCK_SIZE, i), 0, buff, 0, BLOCK_SIZE,
+          () -> new byte[BLOCK_SIZE]);
+    }
+    assertThat(cache.getEvictionCount()).isEqualTo(0);
+    assertThat(cache.sizeBytes()).isEqualTo(4 * BLOCK_SIZE);
+  }
+
+  @Test
+  public void shouldCoalesceConcurrentMisses() throws Exception {
+    RemoteBlockCache.setMaxBytes(10 * CONTENT.length);
+    RemoteBlockCache cache = RemoteBlockCache.getInstance();
+    RemoteBlockCache.Key key = RemoteBlockCache.makeKey("object", "v1", BLOCK_SIZE, 0);
+    AtomicInteger loads = new AtomicInteger();
+
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<byte[]>> results = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        results.add(pool.submit(() -> {
+          byte[] buff = new byte[BLOCK_SIZE];
+          cache.read(key, 0, buff, 0, BLOCK_SIZE, () -> {
+            loads.incrementAndGet();
+            Thread.sleep(100);
+            byte[] block = new byte[BLOCK_SIZE];
+            System.arraycopy(CONTENT, 0, block, 0, BLOCK_SIZE);
+            return block;
+          });
+          return buff;
+        }));
+      }
+      for (Future<byte[]> result : results) {
+        assertThat(result.get()[BLOCK_SIZE - 1]).isEqualTo(CONTENT[BLOCK_SIZE - 1]);
+      }
+    } finally {
+      pool.shutdown();
+    }
+    assertThat(loads.get()).isEqualTo(1);
+  }
+
+  private static byte[] readAll(RandomAccessFile raf) throws IOException {
+    byte[] result = new byte[(int) raf.length()];
+    raf.seek(0);
+    raf.readFully(result);
+    return result;
+  }
+
+  // a remote file whose content is CONTENT, with the per file cache disabled
+  private static class FakeRemoteFile extends RemoteRandomAccessFile {
+    private final String version;
+    private final AtomicInteger remoteReads;
+
+    FakeRemoteFile(String version, AtomicInteger remoteReads) {
+      super("fake://object", BLOCK_SIZE, 0);
+      this.version = version;
+      this.remoteReads = remoteReads;
+    }
+
+    @Override
+    public int readRemote(long pos, byte[] buff, int offset, int len) {
+      remoteReads.incrementAndGet();
+      int n = (int) Math.min(len, CONTENT.length - pos);
+      System.arraycopy(CONTENT, (int) pos, buff, offset, n);
+      return n;
+    }
+
+    @Override
+    public void closeRemote() {}
+
+    @Override
+    public long length() {
+      return CONTENT.length;
+    }
+
+    @Override
+    protected String getObjectVersion() {
+      return version;
+    }
+  }
+}
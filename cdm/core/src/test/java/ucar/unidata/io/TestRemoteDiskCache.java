@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 1998-2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.unidata.io;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestRemoteDiskCache {
+  private static final int BLOCK_SIZE = 100;
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @After
+  public void restore() {
+    RemoteDiskCache.setDirectory(null, 0);
+  }
+
+  @Test
+  public void shouldPersistBlocks() throws IOException {
+    String dir = tempFolder.newFolder("diskCache").getPath();
+    AtomicInteger loads = new AtomicInteger();
+
+    RemoteDiskCache.setDirectory(dir, 10_000);
+    RemoteDiskCache cache = RemoteDiskCache.getInstance();
+    assertThat(cache.isEnabled()).isTrue();
+    for (int i = 0; i < 2; i++) {
+      byte[] data = cache.read("s3://bucket/key", "etag1", BLOCK_SIZE, 3, BLOCK_SIZE, () -> makeBlock(loads, 3));
+      assertThat(data).isEqualTo(makeBlock(new AtomicInteger(), 3));
+    }
+    assertThat(loads.get()).isEqualTo(1);
+    assertThat(cache.getHitCount()).isEqualTo(1);
+
+    // a new cache on the same directory, as after a restart, finds the block
+    RemoteDiskCache.setDirectory(dir, 10_000);
+    cache = RemoteDiskCache.getInstance();
+    assertThat(cache.size()).isEqualTo(1);
+    assertThat(cache.sizeBytes()).isEqualTo(BLOCK_SIZE);
+    cache.read("s3://bucket/key", "etag1", BLOCK_SIZE, 3, BLOCK_SIZE, () -> makeBlock(loads, 3));
+    assertThat(loads.get()).isEqualTo(1);
+
+    // a rewritten object does not see the old blocks
+    cache.read("s3://bucket/key", "etag2", BLOCK_SIZE, 3, BLOCK_SIZE, () -> makeBlock(loads, 3));
+    assertThat(loads.get()).isEqualTo(2);
+    assertThat(cache.size()).isEqualTo(2);
+
+    // which are deleted once no longer opened
+    RemoteDiskCache.setDirectory(dir, 10_000);
+    cache = RemoteDiskCache.getInstance();
+    cache.read("s3://bucket/key", "etag2", BLOCK_SIZE, 3, BLOCK_SIZE, () -> makeBlock(loads, 3));
+    assertThat(loads.get()).isEqualTo(2);
+    assertThat(cache.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldKeepBlocksOfVersionsInUse() throws IOException {
+    String dir = tempFolder.newFolder("diskCache").getPath();
+    AtomicInteger loads = new AtomicInteger();
+    RemoteDiskCache.setDirectory(dir, 10_000);
+    RemoteDiskCache cache = RemoteDiskCache.getInstance();
+
+    // files opened before and after the object was rewritten, reading in turn
+    for (int i = 0; i < 3; i++) {
+      cache.read("s3://bucket/key", "etag1", BLOCK_SIZE, 0, BLOCK_SIZE, () -> makeBlock(loads, 0));
+      cache.read("s3://bucket/key", "etag2", BLOCK_SIZE, 0, BLOCK_SIZE, () -> makeBlock(loads, 1));
+    }
+    assertThat(loads.get()).isEqualTo(2);
+    assertThat(cache.size()).isEqualTo(2);
+  }
+
+  @Test
+  public void shouldNotUseBlockOfOldVersion() throws IOException {
+    String dir = tempFolder.newFolder("diskCache").getPath();
+    AtomicInteger loads = new AtomicInteger();
+    RemoteDiskCache.setDirectory(dir, 10_000);
+    RemoteDiskCache cache = RemoteDiskCache.getInstance();
+
+    // the object is rewritten while a reader of the old version is loading a block
+    byte[] data = cache.read("s3://bucket/key", "etag1", BLOCK_SIZE, 0, BLOCK_SIZE, () -> {
+      cache.read("s3://bucket/key", "etag2", BLOCK_SIZE, 1, BLOCK_SIZE, () -> makeBlock(loads, 1));
+      return makeBlock(loads, 0);
+    });
+    assertThat(data).isEqualTo(makeBlock(new AtomicInteger(), 0));
+
+    data = cache.read("s3://bucket/key", "etag2", BLOCK_SIZE, 0, BLOCK_SIZE, () -> makeBlock(loads, 5));
+    assertThat(data).isEqualTo(makeBlock(new AtomicInteger(), 5));
+    assertThat(loads.get()).isEqualTo(3);
+  }
+
+  @Test
+  public void shouldDeleteLeftoverTempFiles() throws IOException {
+    File dir = tempFolder.newFolder("diskCache");
+    AtomicInteger loads = new AtomicInteger();
+    RemoteDiskCache.setDirectory(dir.getPath(), 10_000);
+    RemoteDiskCache.getInstance().read("s3://bucket/key", "etag1", BLOCK_SIZE, 0, BLOCK_SIZE,
+        () -> makeBlock(loads, 0));
+    File[] objectDirs = dir.listFiles(File::isDirectory);
+    assertThat(objectDirs).hasLength(1);
+
+    // as left by a crash while writing a block
+    Path tmp = objectDirs[0].toPath().resolve("block.blk12345.tmp");
+    Files.write(tmp, new byte[BLOCK_SIZE]);
+
+    RemoteDiskCache.setDirectory(dir.getPath(), 10_000);
+    assertThat(Files.exists(tmp)).isFalse();
+    assertThat(RemoteDiskCache.getInstance().size()).isEqualTo(1);
+    assertThat(RemoteDiskCache.getInstance().sizeBytes()).isEqualTo(BLOCK_SIZE);
+  }
+
+  @Test
+  public void shouldEvictLeastRecentlyUsed() throws IOException {
+    String dir = tempFolder.newFolder("diskCache").getPath();
+    AtomicInteger loads = new AtomicInteger();
+    RemoteDiskCache.setDirectory(dir, 3 * BLOCK_SIZE);
+    RemoteDiskCache cache = RemoteDiskCache.getInstance();
+
+    for (int i = 0; i < 3; i++) {
+      final int blockNumber = i;
+      cache.read("http://server/file", "v1", BLOCK_SIZE, i, BLOCK_SIZE, () -> makeBlock(loads, blockNumber));
+    }
+    // use block 0, so block 1 is the least recently used
+    cache.read("http://server/file", "v1", BLOCK_SIZE, 0, BLOCK_SIZE, () -> makeBlock(loads, 0));
+    cache.read("http://server/file", "v1", BLOCK_SIZE, 3, BLOCK_SIZE, () -> makeBlock(loads, 3));
+    assertThat(loads.get()).isEqualTo(4);
+    assertThat(cache.getEvictionCount()).isEqualTo(1);
+    assertThat(cache.sizeBytes()).isEqualTo(3 * BLOCK_SIZE);
+
+    cache.read("http://server/file", "v1", BLOCK_SIZE, 0, BLOCK_SIZE, () -> makeBlock(loads, 0));
+    assertThat(loads.get()).isEqualTo(4);
+    cache.read("http://server/file", "v1", BLOCK_SIZE, 1, BLOCK_SIZE, () -> makeBlock(loads, 1));
+    assertThat(loads.get()).isEqualTo(5);
+  }
+
+  @Test
+  public void shouldNotCacheWhenDisabled() throws IOException {
+    AtomicInteger loads = new AtomicInteger();
+    RemoteDiskCache cache = RemoteDiskCache.getInstance();
+    assertThat(cache.isEnabled()).isFalse();
+    for (int i = 0; i < 2; i++) {
+      cache.read("http://server/file", "v1", BLOCK_SIZE, 0, BLOCK_SIZE, () -> makeBlock(loads, 0));
+    }
+    assertThat(loads.get()).isEqualTo(2);
+  }
+
+  private static byte[] makeBlock(AtomicInteger loads, int blockNumber) {
+    loads.incrementAndGet();
+    byte[] block = new byte[BLOCK_SIZE];
+    for (int i = 0; i < BLOCK_SIZE; i++) {
+      block[i] = (byte) (blockNumber * BLOCK_SIZE + i);
+    }
+    return block;
+  }
+}
@@ -12,6 +12,7 @@ import com.google.common.collect.BiMap;
 import com.google.common.collect.ImmutableBiMap;
 import com.google.common.primitives.Ints;
 import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
@@ -205,6 +206,10 @@ public class GcdmConverter {
     return builder;
   }
 
+  /**
+   * Encode the values of an Array. Byte data is not copied: the message may share the storage of data,
+   * so data must not be modified while the message is in use.
+   */
   public static GcdmNetcdfProto.Data encodeData(DataType dataType, Array data) {
     if (data.isVlen()) {
       return encodeVlenData(dataType, (ArrayObject) data);
@@ -230,14 +235,15 @@ public class GcdmConverter {
     switch (dataType) {
       case CHAR: {
         final byte[] array = convertCharToByte((char[]) data.get1DJavaArray(DataType.CHAR));
-        builder.addByteData(ByteString.copyFrom(array));
+        builder.addByteData(UnsafeByteOperations.unsafeWrap(array));
         break;
       }
       case ENUM1:
       case UBYTE:
       case BYTE: {
+        // may be the storage of data, which must not be modified while the message is in use
         final byte[] array = (byte[]) data.get1DJavaArray(DataType.UBYTE);
-        builder.addByteData(ByteString.copyFrom(array));
+        builder.addByteData(UnsafeByteOperations.unsafeWrap(array));
         break;
       }
       case SHORT:
@@ -282,7 +288,7 @@ public class GcdmConverter {
       case OPAQUE:
         while (indexIterator.hasNext()) {
           final ByteBuffer bb = (ByteBuffer) indexIterator.getObjectNext();
-          builder.addByteData(ByteString.copyFrom(bb.array()));
+          builder.addByteData(UnsafeByteOperations.unsafeWrap(bb.array()));
         }
         break;
       default:
@@ -13,7 +13,13 @@ import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 import ucar.gcdm.GcdmConverter;
@@ -25,22 +31,46 @@ import ucar.gcdm.GcdmNetcdfProto.HeaderRequest;
 import ucar.gcdm.GcdmNetcdfProto.HeaderResponse;
 import ucar.ma2.Array;
 import ucar.ma2.ArrayStructure;
+import ucar.ma2.ArrayStructureW;
+import ucar.ma2.DataType;
+import ucar.ma2.Index;
+import ucar.ma2.InvalidRangeException;
 import ucar.ma2.Section;
+import ucar.ma2.StructureData;
 import ucar.ma2.StructureDataIterator;
+import ucar.ma2.StructureDataW;
+import ucar.ma2.StructureMembers;
 import ucar.nc2.Group;
 import ucar.nc2.NetcdfFile;
 import ucar.nc2.ParsedSectionSpec;
 import ucar.nc2.Structure;
 import ucar.nc2.Variable;
+import ucar.nc2.util.DaemonExecutors;
+import ucar.nc2.write.ChunkingIndex;
 
-/** A remote CDM NetcdfFile, using gprc protocol to communicate. */
+/**
+ * A remote CDM NetcdfFile, using gprc protocol to communicate.
+ * Large reads are split into sections that are requested in parallel over the one channel, and the data of each
+ * response is copied straight into the result.
+ */
 public class GcdmNetcdfFile extends NetcdfFile {
   private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(GcdmNetcdfFile.class);
   private static final int MAX_DATA_WAIT_SECONDS = 30;
+  // the server may wait half a minute for a turn to read a busy dataset before opening it
+  private static final int MAX_HEADER_WAIT_SECONDS = 60;
   private static final int MAX_MESSAGE = 101 * 1000 * 1000; // 101 Mb
+  // reads larger than twice this are split into requests of about this many bytes
+  private static final int PARALLEL_REQUEST_SIZE = 8 * 1000 * 1000;
+  // requests in flight at the same time, for all GcdmNetcdfFiles; the server limits requests per dataset too
+  private static final int MAX_PARALLEL_REQUESTS = 4;
 
   public static final String PROTOCOL = "gcdm";
 
+  private static class RequestExecutor {
+    private static final ExecutorService executor =
+        DaemonExecutors.newFixedThreadPool("GcdmRequest", MAX_PARALLEL_REQUESTS);
+  }
+
   @Override
   protected StructureDataIterator getStructureIterator(Structure structure, int bufferSize) throws IOException {
     final Array data = readData(structure, structure.getShapeAsSection());
@@ -52,6 +82,12 @@ public class GcdmNetcdfFile extends NetcdfFile {
 
   @Nullable
   protected Array readData(Variable variable, Section sectionWanted) throws IOException {
+    final DataType dataType = variable.getDataType();
+    if ((dataType.isNumeric() || dataType == DataType.CHAR) && !variable.isVariableLength()
+        && sectionWanted.computeSize() * variable.getElementSize() > 2L * PARALLEL_REQUEST_SIZE) {
+      return readDataInParallel(variable, sectionWanted);
+    }
+
     final String spec = ParsedSectionSpec.makeSectionSpecString(variable, sectionWanted.getRanges());
     if (logger.isDebugEnabled()) {
       final long expected = sectionWanted.computeSize() * variable.getElementSize();
@@ -61,6 +97,8 @@ public class GcdmNetcdfFile extends NetcdfFile {
     final Stopwatch stopwatch = Stopwatch.createStarted();
 
     final List<Array> results = new ArrayList<>();
+    // row -> member name -> pieces, for Structure rows too large for one message
+    final Map<Integer, Map<String, List<Array>>> memberPieces = new TreeMap<>();
     long size = 0;
     final DataRequest request = DataRequest.newBuilder().setLocation(this.path).setVariableSpec(spec).build();
     try {
@@ -72,6 +110,11 @@ public class GcdmNetcdfFile extends NetcdfFile {
           throw new IOException(response.getError().getMessage());
         }
         final Array result = GcdmConverter.decodeData(response.getData());
+        if (!response.getMemberName().isEmpty()) {
+          memberPieces.computeIfAbsent(response.getRow(), k -> new LinkedHashMap<>())
+              .computeIfAbsent(response.getMemberName(), k -> new ArrayList<>()).add(result);
+          continue;
+        }
         results.add(result);
         size += result.getSize() * variable.getElementSize();
         if (logger.isDebugEnabled()) {
@@ -91,13 +134,103 @@ public class GcdmNetcdfFile extends NetcdfFile {
     logger.debug(" ** received={} took={} rate={} MB/sec", size, stopwatch.stop(),
         ((double) size) / stopwatch.elapsed(TimeUnit.MICROSECONDS));
 
-    if (results.size() == 1) {
+    if (!memberPieces.isEmpty()) {
+      return combineMemberPieces((Structure) variable, sectionWanted, memberPieces);
+    } else if (results.size() == 1) {
       return results.get(0);
     } else {
       return Array.factoryCopy(variable.getDataType(), sectionWanted.getShape(), results);
     }
   }
 
+  private Array readDataInParallel(Variable variable, Section sectionWanted) throws IOException {
+    final Stopwatch stopwatch = Stopwatch.createStarted();
+    final Array result = Array.factory(variable.getDataType(), sectionWanted.getShape());
+    final long maxElems = Math.max(PARALLEL_REQUEST_SIZE / variable.getElementSize(), 1);
+
+    // contiguous pieces of the wanted section, in canonical order
+    final List<Future<?>> requests = new ArrayList<>();
+    try {
+      final ChunkingIndex index = new ChunkingIndex(sectionWanted.getShape());
+      while (index.currentElement() < index.getSize()) {
+        final int[] origin = index.getCurrentCounter();
+        final int[] shape = index.computeChunkShape(maxElems);
+        final Section piece = sectionWanted.compose(new Section(origin, shape));
+        final int start = index.currentElement();
+        requests.add(RequestExecutor.executor.submit(() -> readInto(variable, piece, result, start)));
+        index.setCurrentCounter(start + (int) Index.computeSize(shape));
+      }
+      for (Future<?> request : requests) {
+        request.get();
+      }
+    } catch (InvalidRangeException e) {
+      requests.forEach(request -> request.cancel(true));
+      throw new IOException(e);
+    } catch (InterruptedException e) {
+      requests.forEach(request -> request.cancel(true));
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted reading " + variable.getFullName(), e);
+    } catch (ExecutionException e) {
+      requests.forEach(request -> request.cancel(true));
+      logger.warn("readData failed: ", e.getCause());
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+
+    if (logger.isDebugEnabled()) {
+      final long size = result.getSize() * variable.getElementSize();
+      logger.debug(" ** received={} in {} requests took={} rate={} MB/sec", size, requests.size(), stopwatch.stop(),
+          ((double) size) / stopwatch.elapsed(TimeUnit.MICROSECONDS));
+    }
+    return result;
+  }
+
+  // read a section, copying the data into result starting at element start
+  private Void readInto(Variable variable, Section section, Array result, int start) throws IOException {
+    final String spec = ParsedSectionSpec.makeSectionSpecString(variable, section.getRanges());
+    final DataRequest request = DataRequest.newBuilder().setLocation(this.path).setVariableSpec(spec).build();
+    int pos = start;
+    try {
+      final Iterator<DataResponse> responses =
+          blockingStub.withDeadlineAfter(MAX_DATA_WAIT_SECONDS, TimeUnit.SECONDS).getNetcdfData(request);
+      while (responses.hasNext()) {
+        final DataResponse response = responses.next();
+        if (response.hasError()) {
+          throw new IOException(response.getError().getMessage());
+        }
+        final Array data = GcdmConverter.decodeData(response.getData());
+        Array.arraycopy(data, 0, result, pos, (int) data.getSize());
+        pos += (int) data.getSize();
+      }
+    } catch (StatusRuntimeException e) {
+      throw new IOException(e);
+    }
+    if (pos - start != section.computeSize()) {
+      throw new IOException(
+          String.format("Expected %d values for %s, received %d", section.computeSize(), spec, pos - start));
+    }
+    return null;
+  }
+
+  private static ArrayStructure combineMemberPieces(Structure structure, Section section,
+      Map<Integer, Map<String, List<Array>>> memberPieces) {
+    final StructureMembers members = structure.makeStructureMembers();
+    final StructureData[] rows = new StructureData[(int) section.computeSize()];
+    for (Map.Entry<Integer, Map<String, List<Array>>> row : memberPieces.entrySet()) {
+      final StructureDataW structureData = new StructureDataW(members);
+      for (Map.Entry<String, List<Array>> pieces : row.getValue().entrySet()) {
+        final StructureMembers.Member member = members.findMember(pieces.getKey());
+        final Array memberData = pieces.getValue().size() == 1 ? pieces.getValue().get(0)
+            : Array.factoryCopy(member.getDataType(), member.getShape(), pieces.getValue());
+        structureData.setMemberData(member, memberData);
+      }
+      rows[row.getKey()] = structureData;
+    }
+    return new ArrayStructureW(members, section.getShape(), rows);
+  }
+
   @Override
   public String getFileTypeId() {
     return PROTOCOL;
@@ -216,7 +349,8 @@ public class GcdmNetcdfFile extends NetcdfFile {
     private void readHeader(String location) {
       logger.info("GcdmNetcdfFile request header for " + location);
       final HeaderRequest request = HeaderRequest.newBuilder().setLocation(location).build();
-      final HeaderResponse response = blockingStub.getNetcdfHeader(request);
+      final HeaderResponse response =
+          blockingStub.withDeadlineAfter(MAX_HEADER_WAIT_SECONDS, TimeUnit.SECONDS).getNetcdfHeader(request);
 
       if (response.hasError()) {
         throw new RuntimeException(response.getError().getMessage());
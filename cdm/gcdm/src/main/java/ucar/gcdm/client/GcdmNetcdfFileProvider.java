@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 1998-2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.gcdm.client;
+
+import java.io.IOException;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.dataset.DatasetUrl;
+import ucar.nc2.dataset.spi.NetcdfFileProvider;
+import ucar.nc2.util.CancelTask;
+
+/** Opens gcdm://host:port/path locations as a {@link GcdmNetcdfFile}. */
+public class GcdmNetcdfFileProvider implements NetcdfFileProvider {
+
+  @Override
+  public String getProtocol() {
+    return GcdmNetcdfFile.PROTOCOL;
+  }
+
+  @Override
+  public boolean isOwnerOf(DatasetUrl durl) {
+    return isOwnerOf(durl.getTrueurl());
+  }
+
+  @Override
+  public NetcdfFile open(String location, CancelTask cancelTask) throws IOException {
+    try {
+      return GcdmNetcdfFile.builder().setRemoteURI(location).build();
+    } catch (RuntimeException e) {
+      throw new IOException("Cant open " + location, e);
+    }
+  }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 1998-2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.gcdm.server;
+
+import java.util.Formatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Request metrics of a GcdmServer: latencies, bytes sent, dataset cache hits, and rejected requests. */
+public class GcdmMetrics {
+  /** Latencies of one kind of request, counted in buckets of increasing upper bound. */
+  public static class LatencyHistogram {
+    // upper bounds in msecs; the last bucket counts everything slower
+    private static final long[] BOUNDS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000};
+
+    private final String name;
+    private final LongAdder[] buckets = new LongAdder[BOUNDS.length + 1];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+
+    LatencyHistogram(String name) {
+      this.name = name;
+      for (int i = 0; i < buckets.length; i++) {
+        buckets[i] = new LongAdder();
+      }
+    }
+
+    void record(long nanos) {
+      long msecs = TimeUnit.NANOSECONDS.toMillis(nanos);
+      int bucket = 0;
+      while (bucket < BOUNDS.length && msecs > BOUNDS[bucket]) {
+        bucket++;
+      }
+      buckets[bucket].increment();
+      count.increment();
+      totalNanos.add(nanos);
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public long getCount() {
+      return count.sum();
+    }
+
+    /** Mean latency in msecs, or 0 if there have been no requests */
+    public double getMeanMillis() {
+      long n = count.sum();
+      return n == 0 ? 0.0 : totalNanos.sum() / 1.0e6 / n;
+    }
+
+    /** Upper bounds of the buckets in msecs; the last bucket has no upper bound. */
+    public static long[] getBucketBounds() {
+      return BOUNDS.clone();
+    }
+
+    /** Number of requests in each bucket, one more than the number of bounds. */
+    public long[] getBucketCounts() {
+      long[] result = new long[buckets.length];
+      for (int i = 0; i < buckets.length; i++) {
+        result[i] = buckets[i].sum();
+      }
+      return result;
+    }
+
+    void show(Formatter f) {
+      f.format("  %s: count=%d mean=%.2f msecs%n   ", name, getCount(), getMeanMillis());
+      long[] counts = getBucketCounts();
+      for (int i = 0; i < counts.length; i++) {
+        if (counts[i] > 0) {
+          f.format(" %s%d:%d", i < BOUNDS.length ? "<=" : ">", i < BOUNDS.length ? BOUNDS[i] : BOUNDS[i - 1], counts[i]);
+        }
+      }
+      f.format("%n");
+    }
+  }
+
+  private final LatencyHistogram headerLatency = new LatencyHistogram("getNetcdfHeader");
+  private final LatencyHistogram dataLatency = new LatencyHistogram("getNetcdfData");
+  private final LongAdder bytesSent = new LongAdder();
+  private final LongAdder messagesSent = new LongAdder();
+  private final LongAdder datasetAcquires = new LongAdder();
+  private final LongAdder datasetOpens = new LongAdder();
+  private final LongAdder rejected = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+
+  public LatencyHistogram getHeaderLatency() {
+    return headerLatency;
+  }
+
+  public LatencyHistogram getDataLatency() {
+    return dataLatency;
+  }
+
+  void recordMessage(int serializedSize) {
+    messagesSent.increment();
+    bytesSent.add(serializedSize);
+  }
+
+  void recordAcquire() {
+    datasetAcquires.increment();
+  }
+
+  void recordOpen() {
+    datasetOpens.increment();
+  }
+
+  void recordRejected() {
+    rejected.increment();
+  }
+
+  void recordFailed() {
+    failed.increment();
+  }
+
+  /** Total size of the response messages sent */
+  public long getBytesSent() {
+    return bytesSent.sum();
+  }
+
+  public long getMessagesSent() {
+    return messagesSent.sum();
+  }
+
+  /** Fraction of requests whose dataset was already open in the cache, or 0 if there have been no requests */
+  public double getCacheHitRate() {
+    long acquires = datasetAcquires.sum();
+    return acquires == 0 ? 0.0 : (double) Math.max(acquires - datasetOpens.sum(), 0) / acquires;
+  }
+
+  /** Number of requests turned away because too many requests were reading the same dataset */
+  public long getRejectedCount() {
+    return rejected.sum();
+  }
+
+  public long getFailedCount() {
+    return failed.sum();
+  }
+
+  public void showStats(Formatter f) {
+    f.format("GcdmServer metrics%n");
+    headerLatency.show(f);
+    dataLatency.show(f);
+    f.format("  messages sent=%d bytes sent=%d%n", getMessagesSent(), getBytesSent());
+    f.format("  dataset acquires=%d opens=%d cache hit rate=%.3f%n", datasetAcquires.sum(), datasetOpens.sum(),
+        getCacheHitRate());
+    f.format("  rejected=%d failed=%d%n", getRejectedCount(), getFailedCount());
+  }
+}
@@ -5,12 +5,25 @@
 package ucar.gcdm.server;
 
 import com.google.common.base.Stopwatch;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import io.grpc.Server;
 import io.grpc.ServerBuilder;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Formatter;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 import ucar.gcdm.GcdmGrpc.GcdmImplBase;
 import ucar.gcdm.GcdmNetcdfProto;
 import ucar.gcdm.GcdmNetcdfProto.DataRequest;
@@ -20,6 +33,7 @@ import ucar.gcdm.GcdmNetcdfProto.HeaderRequest;
 import ucar.gcdm.GcdmNetcdfProto.HeaderResponse;
 import ucar.gcdm.GcdmConverter;
 import ucar.ma2.Array;
+import ucar.ma2.ArrayStructure;
 import ucar.ma2.ArrayStructureW;
 import ucar.ma2.DataType;
 import ucar.ma2.Index;
@@ -31,8 +45,14 @@ import ucar.ma2.StructureMembers;
 import ucar.nc2.NetcdfFile;
 import ucar.nc2.ParsedSectionSpec;
 import ucar.nc2.Sequence;
+import ucar.nc2.Structure;
 import ucar.nc2.Variable;
+import ucar.nc2.dataset.DatasetUrl;
 import ucar.nc2.dataset.NetcdfDatasets;
+import ucar.nc2.util.DaemonExecutors;
+import ucar.nc2.util.cache.FileCache;
+import ucar.nc2.util.cache.FileCacheIF;
+import ucar.nc2.util.cache.FileFactory;
 import ucar.nc2.write.ChunkingIndex;
 
 /** Server that manages startup/shutdown of a gCDM Server. */
@@ -41,16 +61,42 @@ public class GcdmServer {
 
   // public for testing
   public static final int MAX_MESSAGE = 50 * 1000 * 1000; // 50 Mb LOOK could be tuned
+  // smallest message size a client may ask for
+  private static final int MIN_MESSAGE = 64 * 1000;
   private static final int SEQUENCE_CHUNK = 1000;
   private static final int PORT = 16111;
 
+  // open datasets kept in the cache; the headers of cached datasets are not parsed again
+  private static final int CACHE_MIN = 50;
+  private static final int CACHE_SOFT_LIMIT = 200;
+  private static final int CACHE_HARD_LIMIT = 500;
+  private static final int CACHE_CLEANUP_SECS = 5 * 60;
+  // requests reading the same dataset at the same time, each with its own open copy; others wait for a turn
+  public static final int MAX_REQUESTS_PER_DATASET = 8;
+  private static final int MAX_WAIT_SECS = 30;
+
+  private final GcdmImpl gcdm = new GcdmImpl();
   private Server server;
 
+  /** Request metrics, including the hit rate of the dataset cache. */
+  public GcdmMetrics getMetrics() {
+    return gcdm.metrics;
+  }
+
+  public void showStats(Formatter f) {
+    gcdm.metrics.showStats(f);
+    f.format("Dataset cache%n");
+    gcdm.fileCache.showStats(f);
+  }
+
   private void start() throws IOException {
-    server = ServerBuilder.forPort(PORT).addService(new GcdmImpl()).build().start();
+    server = ServerBuilder.forPort(PORT).addService(gcdm).build().start();
     Runtime.getRuntime().addShutdownHook(new Thread(() -> {
       // Use stderr here since the logger may have been reset by its JVM shutdown hook.
       System.err.println("*** shutting down gRPC server since JVM is shutting down");
+      Formatter f = new Formatter();
+      showStats(f);
+      System.err.print(f);
       try {
         GcdmServer.this.stop();
       } catch (InterruptedException e) {
@@ -67,6 +113,8 @@ public class GcdmServer {
     if (server != null) {
       server.shutdown().awaitTermination(30, TimeUnit.SECONDS);
     }
+    gcdm.readExecutor.shutdown();
+    gcdm.fileCache.clearCache(true);
   }
 
   /** Await termination on the main thread since the grpc library uses daemon threads. */
@@ -84,21 +132,83 @@ public class GcdmServer {
   }
 
   static class GcdmImpl extends GcdmImplBase {
+    final FileCacheIF fileCache;
+    final GcdmMetrics metrics = new GcdmMetrics();
+    private final int maxRequestsPerDataset;
+    private final LoadingCache<String, Semaphore> datasetPermits;
+    // reads the next chunk of a large response while the previous one is sent
+    private final ExecutorService readExecutor = DaemonExecutors.newCachedThreadPool("GcdmRead");
+
+    // opens datasets that are not in the cache
+    private final FileFactory fileFactory = (durl, bufferSize, cancelTask, spiObject) -> {
+      metrics.recordOpen();
+      return NetcdfDatasets.openFile(durl, bufferSize, cancelTask, spiObject);
+    };
+
+    GcdmImpl() {
+      this(new FileCache("GcdmFileCache", CACHE_MIN, CACHE_SOFT_LIMIT, CACHE_HARD_LIMIT, CACHE_CLEANUP_SECS),
+          MAX_REQUESTS_PER_DATASET);
+    }
+
+    GcdmImpl(FileCacheIF fileCache, int maxRequestsPerDataset) {
+      this.fileCache = fileCache;
+      this.maxRequestsPerDataset = maxRequestsPerDataset;
+      // a permit is held while a request reads the dataset; unused semaphores are garbage collected
+      this.datasetPermits =
+          CacheBuilder.newBuilder().weakValues().build(CacheLoader.from(() -> new Semaphore(maxRequestsPerDataset)));
+    }
+
+    /** Wait for a turn to read the dataset. The caller must release the permit when done. */
+    private Semaphore waitForTurn(String location) throws IOException {
+      Semaphore permits = datasetPermits.getUnchecked(location);
+      try {
+        if (!permits.tryAcquire(MAX_WAIT_SECS, TimeUnit.SECONDS)) {
+          metrics.recordRejected();
+          throw new IOException(String.format("Too many requests (more than %d) reading %s, try again later",
+              maxRequestsPerDataset, location));
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted waiting to read " + location, e);
+      }
+      return permits;
+    }
+
+    // closing the file releases it back to the cache
+    private NetcdfFile acquire(String location) throws IOException {
+      metrics.recordAcquire();
+      return (NetcdfFile) fileCache.acquire(fileFactory, DatasetUrl.findDatasetUrl(location));
+    }
+
     @Override
     public void getNetcdfHeader(HeaderRequest req, StreamObserver<HeaderResponse> responseObserver) {
       logger.info("GcdmServer getHeader " + req.getLocation());
+      final Stopwatch stopwatch = Stopwatch.createStarted();
       final HeaderResponse.Builder response = HeaderResponse.newBuilder();
-      try (NetcdfFile ncfile = NetcdfDatasets.openFile(req.getLocation(), null)) {
-        final Header.Builder header = Header.newBuilder().setLocation(req.getLocation())
-            .setRoot(GcdmConverter.encodeGroup(ncfile.getRootGroup(), 100).build());
-        response.setHeader(header);
-        responseObserver.onNext(response.build());
-        responseObserver.onCompleted();
+      Semaphore permits = null;
+      try {
+        permits = waitForTurn(req.getLocation());
+        try (NetcdfFile ncfile = acquire(req.getLocation())) {
+          final Header.Builder header = Header.newBuilder().setLocation(req.getLocation())
+              .setRoot(GcdmConverter.encodeGroup(ncfile.getRootGroup(), 100).build());
+          response.setHeader(header);
+        }
       } catch (Throwable t) {
         logger.warn("GcdmServer getHeader failed ", t);
-        t.printStackTrace();
-        response.setError(GcdmNetcdfProto.Error.newBuilder().setMessage(t.getMessage()).build());
+        metrics.recordFailed();
+        // the client still gets a response, eg when the dataset is too busy
+        response.clearHeader().setError(
+            GcdmNetcdfProto.Error.newBuilder().setMessage(t.getMessage() == null ? "N/A" : t.getMessage()).build());
+      } finally {
+        if (permits != null) {
+          permits.release();
+        }
+        metrics.getHeaderLatency().record(stopwatch.elapsed(TimeUnit.NANOSECONDS));
       }
+      HeaderResponse message = response.build();
+      metrics.recordMessage(message.getSerializedSize());
+      responseObserver.onNext(message);
+      responseObserver.onCompleted();
     }
 
     @Override
@@ -107,80 +217,185 @@ public class GcdmServer {
       final Stopwatch stopwatch = Stopwatch.createStarted();
       long size = -1;
 
-      try (NetcdfFile ncfile = NetcdfDatasets.openFile(req.getLocation(), null)) { // LOOK cache ncfile?
-        final ParsedSectionSpec varSection = ParsedSectionSpec.parseVariableSection(ncfile, req.getVariableSpec());
-        final Variable var = varSection.getVariable();
-        if (var instanceof Sequence) {
-          size = getSequenceData(ncfile, varSection, responseObserver);
-        } else {
-          final Section wantSection = varSection.getArraySection();
-          size = var.getElementSize() * wantSection.computeSize();
-          getNetcdfData(ncfile, varSection, responseObserver);
-        }
-        responseObserver.onCompleted();
+      Semaphore permits = null;
+      try {
+        permits = waitForTurn(req.getLocation());
+        size = sendNetcdfData(req, responseObserver);
       } catch (Throwable t) {
         logger.warn("GcdmServer getData failed ", t);
-        t.printStackTrace();
+        metrics.recordFailed();
         final DataResponse.Builder response =
             DataResponse.newBuilder().setLocation(req.getLocation()).setVariableSpec(req.getVariableSpec());
         response.setError(
             GcdmNetcdfProto.Error.newBuilder().setMessage(t.getMessage() == null ? "N/A" : t.getMessage()).build());
         responseObserver.onNext(response.build());
+        responseObserver.onCompleted();
+      } finally {
+        if (permits != null) {
+          permits.release();
+        }
+        metrics.getDataLatency().record(stopwatch.elapsed(TimeUnit.NANOSECONDS));
       }
 
       logger.debug(" ** size={} took={}", size, stopwatch.stop());
     }
 
-    private void getNetcdfData(NetcdfFile ncfile, ParsedSectionSpec varSection,
-        StreamObserver<DataResponse> responseObserver) throws IOException, InvalidRangeException {
+    private long sendNetcdfData(DataRequest req, StreamObserver<DataResponse> responseObserver)
+        throws IOException, InvalidRangeException {
+      final DataSender sender = new DataSender(responseObserver, metrics);
+      final long maxMessage = req.getMaxMessageSize() > 0
+          ? Math.max(Math.min(req.getMaxMessageSize(), MAX_MESSAGE), MIN_MESSAGE) : MAX_MESSAGE;
+      long size;
+      try (NetcdfFile ncfile = acquire(req.getLocation())) {
+        final ParsedSectionSpec varSection = ParsedSectionSpec.parseVariableSection(ncfile, req.getVariableSpec());
+        final Variable var = varSection.getVariable();
+        if (var instanceof Sequence) {
+          size = getSequenceData(ncfile, varSection, sender);
+        } else {
+          final Section wantSection = varSection.getArraySection();
+          size = var.getElementSize() * wantSection.computeSize();
+          getNetcdfData(ncfile, varSection, sender, maxMessage);
+        }
+      }
+      responseObserver.onCompleted();
+      return size;
+    }
+
+    private void getNetcdfData(NetcdfFile ncfile, ParsedSectionSpec varSection, DataSender sender, long maxMessage)
+        throws IOException, InvalidRangeException {
       final Variable var = varSection.getVariable();
       final Section wantSection = varSection.getArraySection();
       long size = var.getElementSize() * wantSection.computeSize();
-      if (size > MAX_MESSAGE) {
-        getDataInChunks(ncfile, varSection, responseObserver);
+      if (size <= maxMessage) {
+        sender.send(makeResponse(ncfile, varSection, var.read(wantSection)));
+      } else if (var instanceof Structure && var.getElementSize() > maxMessage) {
+        getStructureDataInPieces(ncfile, varSection, sender, maxMessage);
       } else {
-        getOneChunk(ncfile, varSection, responseObserver);
+        getDataInChunks(ncfile, varSection, sender, maxMessage);
       }
     }
 
-    // TODO this returns structure member data in one chunk no matter the size, see testDataChunkingForStructures
-    private void getDataInChunks(NetcdfFile ncfile, ParsedSectionSpec varSection,
-        StreamObserver<DataResponse> responseObserver) throws IOException, InvalidRangeException {
-
+    // the next chunk is read while the previous one is sent
+    private void getDataInChunks(NetcdfFile ncfile, ParsedSectionSpec varSection, DataSender sender, long maxMessage)
+        throws IOException, InvalidRangeException {
       final Variable var = varSection.getVariable();
-      final Section section = varSection.getArraySection();
-      long maxChunkElems = MAX_MESSAGE / var.getElementSize();
+      final List<Section> chunks =
+          chunkSections(varSection.getArraySection(), Math.max(maxMessage / var.getElementSize(), 1));
+
+      Future<Array> next = readAsync(var, chunks.get(0));
+      try {
+        for (int i = 0; i < chunks.size(); i++) {
+          final Array data = await(next);
+          next = (i + 1 < chunks.size()) ? readAsync(var, chunks.get(i + 1)) : null;
+          sender.send(makeResponse(ncfile, new ParsedSectionSpec(var, chunks.get(i)), data));
+        }
+      } finally {
+        finish(next);
+      }
+    }
+
+    // Structure rows too large for one message: send each member of each row separately, in pieces
+    private void getStructureDataInPieces(NetcdfFile ncfile, ParsedSectionSpec varSection, DataSender sender,
+        long maxMessage) throws IOException, InvalidRangeException {
+      final Structure structure = (Structure) varSection.getVariable();
+      final String spec = varSection.makeSectionSpecString();
+      final List<Section> rows = chunkSections(varSection.getArraySection(), 1);
+
+      Future<Array> next = readAsync(structure, rows.get(0));
+      try {
+        for (int row = 0; row < rows.size(); row++) {
+          final ArrayStructure rowData = (ArrayStructure) await(next);
+          next = (row + 1 < rows.size()) ? readAsync(structure, rows.get(row + 1)) : null;
+          final StructureData structureData = rowData.getStructureData(0);
+          for (StructureMembers.Member member : structureData.getMembers()) {
+            for (Array piece : memberPieces(member, structureData.getArray(member), maxMessage)) {
+              final DataResponse response = DataResponse.newBuilder().setLocation(ncfile.getLocation())
+                  .setVariableSpec(spec).setVarFullName(structure.getFullName()).setMemberName(member.getName())
+                  .setRow(row).setData(GcdmConverter.encodeData(member.getDataType(), piece)).build();
+              sender.send(response);
+            }
+          }
+        }
+      } finally {
+        finish(next);
+      }
+    }
+
+    private static List<Array> memberPieces(StructureMembers.Member member, Array data, long maxMessage)
+        throws InvalidRangeException {
+      final DataType dataType = member.getDataType();
+      final long size = data.getSize() * Math.max(dataType.getSize(), 1);
+      if (size <= maxMessage || data.isVlen() || dataType == DataType.STRUCTURE || dataType == DataType.SEQUENCE
+          || data.getRank() == 0) {
+        return Collections.singletonList(data);
+      }
+      final List<Array> pieces = new ArrayList<>();
+      for (Section chunk : chunkSections(new Section(data.getShape()), maxMessage / Math.max(dataType.getSize(), 1))) {
+        pieces.add(data.section(chunk.getOrigin(), chunk.getShape()));
+      }
+      return pieces;
+    }
+
+    // contiguous sections of at most maxChunkElems elements, covering section in canonical order
+    private static List<Section> chunkSections(Section section, long maxChunkElems) throws InvalidRangeException {
+      final List<Section> result = new ArrayList<>();
       final ChunkingIndex index = new ChunkingIndex(section.getShape());
       while (index.currentElement() < index.getSize()) {
         final int[] chunkOrigin = index.getCurrentCounter();
         final int[] chunkShape = index.computeChunkShape(maxChunkElems);
-        final Section chunkSection = new Section(chunkOrigin, chunkShape);
-        final ParsedSectionSpec spec = new ParsedSectionSpec(var, chunkSection);
-        getOneChunk(ncfile, spec, responseObserver);
+        result.add(section.compose(new Section(chunkOrigin, chunkShape)));
         index.setCurrentCounter(index.currentElement() + (int) Index.computeSize(chunkShape));
       }
+      return result;
     }
 
-    private void getOneChunk(NetcdfFile ncfile, ParsedSectionSpec varSection,
-        StreamObserver<DataResponse> responseObserver) throws IOException, InvalidRangeException {
-
-      final String spec = varSection.makeSectionSpecString();
-      final Variable var = varSection.getVariable();
-      final Section wantSection = varSection.getArraySection();
+    private Future<Array> readAsync(Variable var, Section section) {
+      return readExecutor.submit(() -> var.read(section));
+    }
 
-      final DataResponse.Builder response = DataResponse.newBuilder().setLocation(ncfile.getLocation())
-          .setVariableSpec(spec).setVarFullName(var.getFullName());
+    private static Array await(Future<Array> future) throws IOException, InvalidRangeException {
+      try {
+        return future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted reading data", e);
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof IOException) {
+          throw (IOException) e.getCause();
+        }
+        if (e.getCause() instanceof InvalidRangeException) {
+          throw (InvalidRangeException) e.getCause();
+        }
+        throw new IOException(e.getCause());
+      }
+    }
 
-      final Array data = var.read(wantSection);
-      response.setData(GcdmConverter.encodeData(data.getDataType(), data));
+    // wait for a read still in progress, if any, so the file is not released to the cache while it is being read
+    private static void finish(Future<Array> future) {
+      if (future == null) {
+        return;
+      }
+      try {
+        future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (ExecutionException e) {
+        // the request has already failed
+      }
+    }
 
-      responseObserver.onNext(response.build());
-      logger.debug("Send one chunk {} size={} bytes", spec, data.getSize() * varSection.getVariable().getElementSize());
+    private DataResponse makeResponse(NetcdfFile ncfile, ParsedSectionSpec varSection, Array data) {
+      final String spec = varSection.makeSectionSpecString();
+      final Variable var = varSection.getVariable();
+      final DataResponse response = DataResponse.newBuilder().setLocation(ncfile.getLocation()).setVariableSpec(spec)
+          .setVarFullName(var.getFullName()).setData(GcdmConverter.encodeData(data.getDataType(), data)).build();
+      logger.debug("Send one chunk {} size={} bytes", spec, data.getSize() * var.getElementSize());
+      return response;
     }
 
     // TODO count >= SEQUENCE_CHUNK is not covered in tests
-    private long getSequenceData(NetcdfFile ncfile, ParsedSectionSpec varSection,
-        StreamObserver<DataResponse> responseObserver) throws IOException {
+    private long getSequenceData(NetcdfFile ncfile, ParsedSectionSpec varSection, DataSender sender)
+        throws IOException {
 
       final String spec = varSection.makeSectionSpecString();
       final Sequence seq = (Sequence) varSection.getVariable();
@@ -199,7 +414,7 @@ public class GcdmServer {
           final DataResponse.Builder response = DataResponse.newBuilder().setLocation(ncfile.getLocation())
               .setVariableSpec(spec).setVarFullName(seq.getFullName());
           response.setData(GcdmConverter.encodeData(DataType.SEQUENCE, arrayStructure));
-          responseObserver.onNext(response.build());
+          sender.send(response.build());
           start = count;
           count = 0;
         }
@@ -207,4 +422,53 @@ public class GcdmServer {
       return (long) (start + count) * members.getStructureSize();
     }
   } // GcdmImpl
+
+  /**
+   * Sends the responses to a data request, waiting while the transport is not ready for more, so that the server does
+   * not buffer a large response in memory when the client reads it slower than the server can read the data.
+   */
+  private static class DataSender {
+    private static final long MIN_POLL_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final long MAX_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+    private final StreamObserver<DataResponse> observer;
+    private final ServerCallStreamObserver<DataResponse> serverObserver; // null if not a server call, eg in tests
+    private final GcdmMetrics metrics;
+
+    DataSender(StreamObserver<DataResponse> observer, GcdmMetrics metrics) {
+      this.observer = observer;
+      this.serverObserver =
+          observer instanceof ServerCallStreamObserver ? (ServerCallStreamObserver<DataResponse>) observer : null;
+      this.metrics = metrics;
+    }
+
+    void send(DataResponse response) throws IOException {
+      awaitReady();
+      metrics.recordMessage(response.getSerializedSize());
+      observer.onNext(response);
+    }
+
+    // onReady callbacks are not delivered while the request thread is busy sending, so poll isReady()
+    private void awaitReady() throws IOException {
+      if (serverObserver == null) {
+        return;
+      }
+      final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(MAX_WAIT_SECS);
+      long poll = MIN_POLL_NANOS;
+      while (!serverObserver.isReady()) {
+        if (serverObserver.isCancelled()) {
+          throw new IOException("Request was cancelled by the client");
+        }
+        if (System.nanoTime() > deadline) {
+          throw new IOException("Timed out waiting for the client to read the data");
+        }
+        LockSupport.parkNanos(poll);
+        if (Thread.interrupted()) {
+          Thread.currentThread().interrupt();
+          throw new IOException("Interrupted sending data");
+        }
+        poll = Math.min(2 * poll, MAX_POLL_NANOS);
+      }
+    }
+  }
 }
@@ -10,7 +10,6 @@ import static ucar.gcdm.TestUtils.gcdmPrefix;
 
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
-import org.junit.Ignore;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
@@ -24,11 +23,14 @@ import ucar.ma2.ArrayStructure;
 import ucar.ma2.ArrayStructureW;
 import ucar.ma2.DataType;
 import ucar.ma2.InvalidRangeException;
+import ucar.ma2.Section;
 import ucar.ma2.StructureDataW;
 import ucar.ma2.StructureMembers;
 import ucar.ma2.StructureMembers.MemberBuilder;
+import ucar.nc2.NetcdfFile;
 import ucar.nc2.Structure;
 import ucar.nc2.Variable;
+import ucar.nc2.dataset.NetcdfDatasets;
 import ucar.nc2.write.NetcdfFileFormat;
 import ucar.nc2.write.NetcdfFormatWriter;
 import ucar.unidata.util.test.TestDir;
@@ -71,7 +73,29 @@ public class TestGcdmDataChunking {
     }
   }
 
-  @Ignore("Can lead to an out of memory exception because structure member data is not chunked")
+  @Test
+  public void testParallelSectionRead() throws IOException, InvalidRangeException {
+    String variableName = "varName";
+    DataType dataType = DataType.INT;
+    Array expectedData = Array.makeArray(dataType, 12_000_000, 0, 1).reshape(new int[] {3000, 4000});
+
+    String filename = writeNetcdfFile(variableName, dataType, expectedData);
+    String gcdmUrl = gcdmPrefix + filename;
+
+    // opened through the gcdm: NetcdfFileProvider
+    try (NetcdfFile gcdmFile = NetcdfDatasets.openFile(gcdmUrl, null)) {
+      assertThat(gcdmFile).isInstanceOf(GcdmNetcdfFile.class);
+      Variable variable = gcdmFile.findVariable(variableName);
+      assertThat((Object) variable).isNotNull();
+
+      Section section = new Section("10:2999:2, 1:3998");
+      Array data = variable.read(section);
+      Array expected = expectedData.section(section.getRanges());
+      assertThat(data.getShape()).isEqualTo(expected.getShape());
+      assertThat((int[]) data.get1DJavaArray(dataType)).isEqualTo((int[]) expected.get1DJavaArray(dataType));
+    }
+  }
+
   @Test
   public void testDataChunkingForStructures() throws IOException, InvalidRangeException {
     String structureName = "structureName";
@@ -103,8 +127,13 @@ public class TestGcdmDataChunking {
     String filename = tempFolder.newFile().getAbsolutePath();
     NetcdfFormatWriter.Builder writerBuilder = NetcdfFormatWriter.createNewNetcdf3(filename);
 
-    writerBuilder.addDimension("dimension", (int) values.getSize());
-    writerBuilder.addVariable(variableName, dataType, "dimension");
+    int[] shape = values.getShape();
+    StringBuilder dimensions = new StringBuilder();
+    for (int i = 0; i < shape.length; i++) {
+      writerBuilder.addDimension("dimension" + i, shape[i]);
+      dimensions.append(i == 0 ? "" : " ").append("dimension").append(i);
+    }
+    writerBuilder.addVariable(variableName, dataType, dimensions.toString());
 
     try (NetcdfFormatWriter writer = writerBuilder.build()) {
       writer.write(variableName, values);
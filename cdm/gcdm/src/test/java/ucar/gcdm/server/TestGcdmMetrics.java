@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 1998-2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.gcdm.server;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.Formatter;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/** Test {@link GcdmMetrics} */
+public class TestGcdmMetrics {
+
+  @Test
+  public void shouldCountLatenciesInBuckets() {
+    GcdmMetrics.LatencyHistogram histogram = new GcdmMetrics().getDataLatency();
+    histogram.record(TimeUnit.MICROSECONDS.toNanos(500));
+    histogram.record(TimeUnit.MILLISECONDS.toNanos(7));
+    histogram.record(TimeUnit.MINUTES.toNanos(2));
+
+    long[] counts = histogram.getBucketCounts();
+    assertThat(counts).hasLength(GcdmMetrics.LatencyHistogram.getBucketBounds().length + 1);
+    assertThat(counts[0]).isEqualTo(1); // <= 1 msec
+    assertThat(counts[3]).isEqualTo(1); // <= 10 msecs
+    assertThat(counts[counts.length - 1]).isEqualTo(1);
+    assertThat(histogram.getCount()).isEqualTo(3);
+  }
+
+  @Test
+  public void shouldComputeCacheHitRate() {
+    GcdmMetrics metrics = new GcdmMetrics();
+    assertThat(metrics.getCacheHitRate()).isEqualTo(0.0);
+    for (int i = 0; i < 4; i++) {
+      metrics.recordAcquire();
+    }
+    metrics.recordOpen();
+    assertThat(metrics.getCacheHitRate()).isEqualTo(0.75);
+
+    metrics.recordMessage(100);
+    metrics.recordMessage(20);
+    assertThat(metrics.getBytesSent()).isEqualTo(120);
+    assertThat(metrics.getMessagesSent()).isEqualTo(2);
+
+    Formatter f = new Formatter();
+    metrics.showStats(f);
+    assertThat(f.toString()).contains("cache hit rate=0.750");
+  }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 1998-2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.gcdm.server;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import io.grpc.stub.StreamObserver;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import ucar.gcdm.GcdmNetcdfProto.DataRequest;
+import ucar.gcdm.GcdmNetcdfProto.DataResponse;
+import ucar.gcdm.GcdmNetcdfProto.HeaderRequest;
+import ucar.gcdm.GcdmNetcdfProto.HeaderResponse;
+import ucar.nc2.util.cache.FileCacheNOP;
+
+/** Test the responses of {@link GcdmServer.GcdmImpl} to failed requests. */
+public class TestGcdmServer {
+  private static final String MISSING = "src/test/data/noSuchFile.nc";
+
+  @Test
+  public void shouldSendHeaderError() {
+    GcdmServer.GcdmImpl gcdm = new GcdmServer.GcdmImpl(new FileCacheNOP(), 1);
+    RecordingObserver<HeaderResponse> observer = new RecordingObserver<>();
+    gcdm.getNetcdfHeader(HeaderRequest.newBuilder().setLocation(MISSING).build(), observer);
+
+    assertThat(observer.completed).isTrue();
+    assertThat(observer.responses).hasSize(1);
+    assertThat(observer.responses.get(0).hasError()).isTrue();
+    assertThat(observer.responses.get(0).hasHeader()).isFalse();
+    assertThat(gcdm.metrics.getFailedCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldSendDataError() {
+    GcdmServer.GcdmImpl gcdm = new GcdmServer.GcdmImpl(new FileCacheNOP(), 1);
+    RecordingObserver<DataResponse> observer = new RecordingObserver<>();
+    gcdm.getNetcdfData(DataRequest.newBuilder().setLocation(MISSING).setVariableSpec("data").build(), observer);
+
+    assertThat(observer.completed).isTrue();
+    assertThat(observer.responses).hasSize(1);
+    assertThat(observer.responses.get(0).hasError()).isTrue();
+  }
+
+  private static class RecordingObserver<T> implements StreamObserver<T> {
+    final List<T> responses = new ArrayList<>();
+    boolean completed;
+
+    @Override
+    public void onNext(T value) {
+      assertThat(completed).isFalse();
+      responses.add(value);
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      throw new AssertionError(t);
+    }
+
+    @Override
+    public void onCompleted() {
+      completed = true;
+    }
+  }
+}
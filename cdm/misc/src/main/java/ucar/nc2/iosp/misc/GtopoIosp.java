@@ -17,6 +17,8 @@ import ucar.unidata.io.RandomAccessFile;
 import ucar.ma2.*;
 import java.io.IOException;
 import java.io.File;
+import java.util.Collections;
+import java.util.List;
 import java.util.StringTokenizer;
 
 /**
@@ -38,6 +40,11 @@ public class GtopoIosp extends AbstractIOServiceProvider {
     return hdrFile.exists();
   }
 
+  @Override
+  public List<FileSignature> getFileSignatures() {
+    return Collections.singletonList(FileSignature.suffix(".DEM"));
+  }
+
   public String getFileTypeId() {
     return "GTOPO";
   }
@@ -11,10 +11,13 @@ import ucar.ma2.*;
 import ucar.nc2.*;
 import ucar.nc2.constants.AxisType;
 import ucar.nc2.constants.CDM;
+import ucar.nc2.iosp.FileSignature;
 import ucar.nc2.util.CancelTask;
 import ucar.unidata.io.RandomAccessFile;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
 
 
 /**
@@ -114,6 +117,11 @@ public class Nldn extends AbstractLightningIOSP {
     return test.equals(MAGIC);
   }
 
+  @Override
+  public List<FileSignature> getFileSignatures() {
+    return Collections.singletonList(FileSignature.magic(0, MAGIC));
+  }
+
   /**
    * Get a unique id for this file type.
    *
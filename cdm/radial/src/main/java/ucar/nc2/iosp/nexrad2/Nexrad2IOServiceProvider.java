@@ -17,12 +17,14 @@ import ucar.ma2.*;
 import ucar.nc2.*;
 import ucar.nc2.constants.*;
 import ucar.nc2.iosp.AbstractIOServiceProvider;
+import ucar.nc2.iosp.FileSignature;
 import ucar.nc2.units.DateFormatter;
 import ucar.nc2.util.CancelTask;
 import ucar.unidata.io.RandomAccessFile;
 import java.io.IOException;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 
 /**
@@ -55,6 +57,11 @@ public class Nexrad2IOServiceProvider extends AbstractIOServiceProvider {
     }
   }
 
+  @Override
+  public List<FileSignature> getFileSignatures() {
+    return Arrays.asList(FileSignature.magic(0, "ARCHIVE2"), FileSignature.magic(0, "AR2V"));
+  }
+
   // private Dimension radialDim;
   private double radarRadius;
   private Variable v0, v1;
@@ -129,6 +129,12 @@ public final class S3RandomAccessFile extends RemoteRandomAccessFile implements
     return objectHeadResponse.lastModified().toEpochMilli();
   }
 
+  @Override
+  protected String getObjectVersion() {
+    String eTag = objectHeadResponse.eTag();
+    return eTag != null ? eTag : super.getObjectVersion();
+  }
+
   @Override
   public String getLocation() {
     return uri.toString();
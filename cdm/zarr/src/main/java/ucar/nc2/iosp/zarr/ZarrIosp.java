@@ -15,11 +15,13 @@ import ucar.nc2.NetcdfFile;
 import ucar.nc2.Variable;
 import ucar.nc2.iosp.*;
 import ucar.nc2.util.CancelTask;
+import ucar.nc2.util.DaemonExecutors;
 import ucar.unidata.io.RandomAccessFile;
 import ucar.unidata.io.zarr.RandomAccessDirectory;
 
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
+import java.util.concurrent.ExecutorService;
 
 /**
  * IOSP for reading/writing Zarr/NCZarr formats
@@ -31,7 +33,46 @@ public class ZarrIosp extends AbstractIOServiceProvider {
   private static final String fileTypeId = "Zarr";
   private static final String fileTypeDescription = "Zarr v2 formatted dataset";
 
+  // concurrent chunk reads: off by default, may be set with system properties, or with setReadPipeline()
+  private static final String READ_THREADS_PROPERTY = "ucar.nc2.iosp.zarr.readThreads";
+  private static final String MAX_CHUNKS_IN_FLIGHT_PROPERTY = "ucar.nc2.iosp.zarr.maxChunksInFlight";
+
+  private static int readThreads = Integer.getInteger(READ_THREADS_PROPERTY, 1);
+  private static int maxChunksInFlight = Integer.getInteger(MAX_CHUNKS_IN_FLIGHT_PROPERTY, 2 * readThreads);
+  private static ExecutorService readExecutor;
+
+  /**
+   * Configure the chunk read pipeline used by readData(). Chunks are read from the store and decoded on a shared
+   * pool of nthreads threads, with at most maxInFlight chunks fetched ahead of the copy into the result array.
+   * This mostly pays off for object stores, where the latency of each chunk read dominates.
+   *
+   * @param nthreads number of threads that read and decode chunks; 0 or 1 reads chunks serially (default)
+   * @param maxInFlight maximum number of chunks read ahead
+   */
+  public static synchronized void setReadPipeline(int nthreads, int maxInFlight) {
+    if (nthreads != readThreads) {
+      readExecutor = null; // idle threads of the old pool time out
+    }
+    readThreads = nthreads;
+    maxChunksInFlight = maxInFlight;
+  }
+
+  private static synchronized ExecutorService getReadExecutor() {
+    if (readThreads <= 1 || maxChunksInFlight <= 1) {
+      return null;
+    }
+    if (readExecutor == null) {
+      readExecutor = DaemonExecutors.newFixedThreadPool("ZarrIosp-read", readThreads);
+    }
+    return readExecutor;
+  }
+
+  private static synchronized int getMaxChunksInFlight() {
+    return maxChunksInFlight;
+  }
+
   private ZarrHeader header;
+  private long lastModified; // of the store when opened
 
   @Override
   public boolean isValidFile(RandomAccessFile raf) {
@@ -68,6 +109,7 @@ public class ZarrIosp extends AbstractIOServiceProvider {
     super.open(raf, null, cancelTask);
     header = new ZarrHeader((RandomAccessDirectory) raf, rootGroup);
     header.read(); // build CDM from Zarr
+    lastModified = raf.getLastModified();
   }
 
   @Override
@@ -83,7 +125,7 @@ public class ZarrIosp extends AbstractIOServiceProvider {
     Object fillValue = getFillValue(vinfo, dataType);
 
     // create layout object
-    Layout layout = new ZarrLayoutBB(v2, section, this.raf);
+    Layout layout = new ZarrLayoutBB(v2, section, this.raf, lastModified, getReadExecutor(), getMaxChunksInFlight());
     Object data = IospHelper.readDataFill((LayoutBB) layout, dataType, fillValue);
 
     Array array = Array.factory(dataType, section.getShape(), data);
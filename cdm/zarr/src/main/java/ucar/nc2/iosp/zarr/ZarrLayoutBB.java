@@ -1,22 +1,32 @@
 package ucar.nc2.iosp.zarr;
 
+import ucar.ma2.InvalidRangeException;
 import ucar.ma2.Range;
 import ucar.ma2.Section;
 import ucar.nc2.Dimension;
 import ucar.nc2.Variable;
 import ucar.nc2.filter.Filter;
+import ucar.nc2.iosp.ChunkCache;
 import ucar.nc2.iosp.LayoutBB;
 import ucar.nc2.iosp.LayoutBBTiled;
 import ucar.unidata.io.RandomAccessFile;
+import ucar.unidata.io.zarr.RandomAccessDirectory;
 
 import java.io.IOException;
 import java.nio.*;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
- * A tiled layout for Zarr formats that accommodates uncompressing and filtering data before returning
+ * A tiled layout for Zarr formats that accommodates uncompressing and filtering data before returning.
+ * When given an executor, chunks intersecting the wanted section are read and decoded ahead of the consumer,
+ * with a bounded number of chunks in flight; they are still handed out in storage order.
  */
 public class ZarrLayoutBB implements LayoutBB {
 
@@ -36,9 +46,36 @@ public class ZarrLayoutBB implements LayoutBB {
   private Filter compressor;
   private List<Filter> filters;
 
+  private final ExecutorService executor; // if not null, prefetch chunks on this executor
+  private final int maxInFlight; // max number of chunks being prefetched
+
+  // identifies the variable in the ChunkCache
+  private final String location;
+  private final long lastModified;
+  private final String varName;
+
   public ZarrLayoutBB(Variable v2, Section wantSection, RandomAccessFile raf) {
+    this(v2, wantSection, raf, raf.getLastModified(), null, 0);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param v2 Variable to read
+   * @param wantSection the wanted section of data
+   * @param raf the RandomAccessFile, must be a RandomAccessDirectory to read chunks concurrently
+   * @param lastModified last modified time of the store when it was opened, identifies decoded chunks in the
+   *        ChunkCache
+   * @param executor if not null, read and decode chunks concurrently on this executor
+   * @param maxInFlight maximum number of chunks read or decoded ahead of the consumer
+   */
+  public ZarrLayoutBB(Variable v2, Section wantSection, RandomAccessFile raf, long lastModified,
+      ExecutorService executor, int maxInFlight) {
     // var data info
     this.raf = raf;
+    this.location = raf.getLocation();
+    this.lastModified = lastModified;
+    this.varName = v2.getFullName();
     ZarrHeader.VInfo vinfo = (ZarrHeader.VInfo) v2.getSPobject();
     this.byteOrder = vinfo.getByteOrder();
     this.varOffset = vinfo.getOffset();
@@ -77,8 +114,14 @@ public class ZarrLayoutBB implements LayoutBB {
 
     this.elemSize = v2.getDataType().getSize();
 
+    // concurrent reads need positional reads that do not share the file pointer
+    boolean prefetch = executor != null && maxInFlight > 1 && raf instanceof RandomAccessDirectory;
+    this.executor = prefetch ? executor : null;
+    this.maxInFlight = maxInFlight;
+
     // create delegate and chunk iterator
-    ZarrLayoutBB.DataChunkIterator iter = new ZarrLayoutBB.DataChunkIterator();
+    LayoutBBTiled.DataChunkIterator iter =
+        prefetch ? new PrefetchingChunkIterator() : new ZarrLayoutBB.DataChunkIterator();
     delegate = new LayoutBBTiled(iter, chunkSize, elemSize, this.want);
   }
 
@@ -119,7 +162,7 @@ public class ZarrLayoutBB implements LayoutBB {
       return this.chunkNum < totalNChunks;
     }
 
-    public LayoutBBTiled.DataChunk next() {
+    public DataChunk next() {
       DataChunk chunk = new ZarrLayoutBB.DataChunk(this.currChunk, this.chunkNum, this.currOffset);
       incrementChunk();
       return chunk;
@@ -138,11 +181,48 @@ public class ZarrLayoutBB implements LayoutBB {
     }
   }
 
+  /**
+   * Keeps up to maxInFlight chunks that intersect the wanted section being read and decoded on the executor.
+   * Non-intersecting chunks are skipped here, as LayoutBBTiled would skip them anyway.
+   */
+  private class PrefetchingChunkIterator implements LayoutBBTiled.DataChunkIterator {
+    private final ZarrLayoutBB.DataChunkIterator source = new ZarrLayoutBB.DataChunkIterator();
+    private final Deque<DataChunk> inFlight = new ArrayDeque<>();
+
+    public boolean hasNext() {
+      fill();
+      return !inFlight.isEmpty();
+    }
+
+    public LayoutBBTiled.DataChunk next() {
+      fill();
+      DataChunk chunk = inFlight.poll();
+      fill(); // replace the chunk handed out, so the pipeline stays full while the consumer copies
+      return chunk;
+    }
+
+    private void fill() {
+      while (inFlight.size() < maxInFlight && source.hasNext()) {
+        DataChunk chunk = source.next();
+        try {
+          if (!new Section(chunk.getOffset(), chunkSize).intersects(want)) {
+            continue;
+          }
+        } catch (InvalidRangeException e) {
+          throw new IllegalStateException(e);
+        }
+        chunk.prefetch();
+        inFlight.add(chunk);
+      }
+    }
+  }
+
   private class DataChunk implements LayoutBBTiled.DataChunk {
 
     private int[] offset; // start indices of chunk in elements
     private long rafOffset; // start position of chunk in bytes
     private int chunkNum;
+    private Future<ByteBuffer> pending; // prefetched data, if any
 
     DataChunk(int[] index, int chunkNum, long rafOffset) {
       this.rafOffset = rafOffset;
@@ -158,9 +238,29 @@ public class ZarrLayoutBB implements LayoutBB {
       return this.offset;
     }
 
+    void prefetch() {
+      this.pending = executor.submit(this::readChunk);
+    }
+
     public ByteBuffer getByteBuffer() throws IOException {
-      // read the data
-      byte[] data;
+      if (pending == null) {
+        return readChunk();
+      }
+      try {
+        return pending.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException(e);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) {
+          throw (IOException) cause;
+        }
+        throw new IOException(cause);
+      }
+    }
+
+    private ByteBuffer readChunk() throws IOException {
       // if chunk does not exist as file, return empty buffer
       long dataLength = initializedChunks.getOrDefault(chunkNum, (long) 0);
       if (dataLength == 0) {
@@ -169,10 +269,24 @@ public class ZarrLayoutBB implements LayoutBB {
         return result;
       }
 
-      data = new byte[(int) dataLength];
-      raf.seek(this.rafOffset);
-      // raf.read(data, 0, (int)dataLength);
-      raf.readFully(data);
+      // decoded chunks are shared through the ChunkCache
+      ChunkCache.Key key = ChunkCache.makeKey(location, lastModified, varName, rafOffset);
+      byte[] data = ChunkCache.getInstance().get(key, () -> readAndDecode((int) dataLength));
+
+      ByteBuffer result = ByteBuffer.wrap(data);
+      result.order(byteOrder);
+      return result;
+    }
+
+    private byte[] readAndDecode(int dataLength) throws IOException {
+      byte[] data = new byte[dataLength];
+      if (executor != null) {
+        ((RandomAccessDirectory) raf).readFullyAt(this.rafOffset, data, 0, data.length);
+      } else {
+        raf.seek(this.rafOffset);
+        // raf.read(data, 0, (int)dataLength);
+        raf.readFully(data);
+      }
 
       // apply compressor
       data = compressor.decode(data);
@@ -180,10 +294,7 @@ public class ZarrLayoutBB implements LayoutBB {
       for (int i = filters.size() - 1; i >= 0; i--) {
         data = filters.get(i).decode(data);
       }
-
-      ByteBuffer result = ByteBuffer.wrap(data);
-      result.order(byteOrder);
-      return result;
+      return data;
     }
   }
 
@@ -119,6 +119,59 @@ public class RandomAccessDirectory extends ucar.unidata.io.RandomAccessFile impl
     return files;
   }
 
+  /**
+   * Read bytes from the store without using or moving the file pointer of this RandomAccessDirectory.
+   * Each directory item is locked separately, so reads that fall in different items (e.g. different Zarr chunks)
+   * may run concurrently.
+   *
+   * @param pos position in the store to start reading at
+   * @param b buffer to read into
+   * @param offset offset into the buffer
+   * @param len number of bytes to read
+   * @throws IOException on read error, or if the store ends before len bytes are read
+   */
+  public void readFullyAt(long pos, byte[] b, int offset, int len) throws IOException {
+    int n = 0;
+    int index = findItemIndex(pos);
+    while (n < len) {
+      if (index < 0 || index >= this.children.size()) {
+        throw new EOFException("Reading " + location + " at " + pos + " past end of store");
+      }
+      RandomAccessDirectoryItem item = this.children.get(index);
+      long itemPos = pos + n - item.startIndex();
+      int count = (int) Math.min(len - n, item.length() - itemPos);
+      if (count > 0) {
+        synchronized (item) {
+          RandomAccessFile raf = item.getOrOpenRaf();
+          raf.seek(itemPos);
+          raf.readFully(b, offset + n, count);
+        }
+        n += count;
+      }
+      index++;
+    }
+  }
+
+  /**
+   * binary search for the item containing pos, items are sorted by start index
+   */
+  private int findItemIndex(long pos) {
+    int low = 0;
+    int high = this.children.size() - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      RandomAccessDirectoryItem item = this.children.get(mid);
+      if (pos < item.startIndex()) {
+        high = mid - 1;
+      } else if (pos >= item.startIndex() + item.length()) {
+        low = mid + 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
   /**
    * sets current RandomAccessFile to that containing pos
    * saves start position on current RAF
@@ -18,6 +18,7 @@ import ucar.nc2.Group;
 import ucar.nc2.NetcdfFile;
 import ucar.nc2.NetcdfFiles;
 import ucar.nc2.Variable;
+import ucar.nc2.util.CompareNetcdf2;
 
 import java.io.IOException;
 import java.nio.ByteOrder;
@@ -220,6 +221,36 @@ public class TestZarrIosp {
     ncfile.close();
   }
 
+  @Test
+  public void testReadPipeline() throws IOException {
+    // concurrent chunk reads must give the same result as serial reads
+    List<String> localStores = Arrays.asList(DIRECTORY_STORE_URI, ZIP_STORE_URI);
+    try {
+      for (String uri : localStores) {
+        ZarrIosp.setReadPipeline(1, 1);
+        Map<String, Array> serial = readAll(uri);
+        ZarrIosp.setReadPipeline(4, 3);
+        Map<String, Array> pipelined = readAll(uri);
+        assertThat(pipelined.keySet()).isEqualTo(serial.keySet());
+        for (String name : serial.keySet()) {
+          assertThat(CompareNetcdf2.compareData(name, serial.get(name), pipelined.get(name))).isTrue();
+        }
+      }
+    } finally {
+      ZarrIosp.setReadPipeline(1, 2);
+    }
+  }
+
+  private Map<String, Array> readAll(String location) throws IOException {
+    Map<String, Array> result = new HashMap<>();
+    try (NetcdfFile ncfile = NetcdfFiles.open(location)) {
+      for (Variable v : ncfile.getVariables()) {
+        result.put(v.getFullName(), v.read());
+      }
+    }
+    return result;
+  }
+
   @Test
   public void testReadUninitialized() throws IOException, InvalidRangeException {
     for (String uri : stores) {
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2021 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package ucar.nc2.iosp.zarr;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.base.Stopwatch;
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ucar.ma2.Array;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFiles;
+import ucar.nc2.filter.Blosc;
+import ucar.nc2.util.CompareNetcdf2;
+import ucar.unidata.util.test.category.Slow;
+
+/**
+ * Compare throughput of the serial and concurrent chunk read paths of ZarrIosp, on a generated store
+ */
+@Category(Slow.class)
+public class TestZarrReadTiming {
+  private static final Logger logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  @ClassRule
+  public static TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private static final int N = 2048; // shape is N x N ints
+  private static final int CHUNK = 128;
+  private static final int NTRIALS = 5;
+
+  private static String storeLocation;
+
+  @BeforeClass
+  public static void makeStore() throws IOException {
+    File store = tempFolder.newFolder("timing.zarr");
+    Files.write(new File(store, ".zgroup").toPath(), "{\"zarr_format\": 2}".getBytes(StandardCharsets.UTF_8));
+    File var = new File(store, "data");
+    assertThat(var.mkdir()).isTrue();
+    String zarray = String.format("{\"chunks\": [%d, %d], \"compressor\": {\"id\": \"blosc\", \"cname\": \"lz4\", "
+        + "\"clevel\": 5, \"shuffle\": 1, \"blocksize\": 0}, \"dtype\": \"<i4\", \"fill_value\": 0, "
+        + "\"filters\": null, \"order\": \"C\", \"shape\": [%d, %d], \"zarr_format\": 2}", CHUNK, CHUNK, N, N);
+    Files.write(new File(var, ".zarray").toPath(), zarray.getBytes(StandardCharsets.UTF_8));
+
+    Map<String, Object> props = new HashMap<>();
+    props.put("cname", "lz4");
+    props.put("shuffle", 1);
+    props.put("typesize", 4);
+    Blosc blosc = new Blosc(props);
+    for (int i = 0; i < N / CHUNK; i++) {
+      for (int j = 0; j < N / CHUNK; j++) {
+        ByteBuffer bb = ByteBuffer.allocate(CHUNK * CHUNK * 4).order(ByteOrder.LITTLE_ENDIAN);
+        for (int k = 0; k < CHUNK * CHUNK; k++) {
+          bb.putInt((i * CHUNK + k / CHUNK) * N + j * CHUNK + k % CHUNK);
+        }
+        Files.write(new File(var, i + "." + j).toPath(), blosc.encode(bb.array()));
+      }
+    }
+    storeLocation = store.getPath();
+  }
+
+  @Test
+  public void compareSerialAndPipelined() throws IOException {
+    int nthreads = Runtime.getRuntime().availableProcessors();
+    try {
+      ZarrIosp.setReadPipeline(1, 1);
+      Array serial = timeReads("serial");
+      ZarrIosp.setReadPipeline(nthreads, 2 * nthreads);
+      Array pipelined = timeReads("pipelined, " + nthreads + " threads");
+      assertThat(CompareNetcdf2.compareData("data", serial, pipelined)).isTrue();
+    } finally {
+      ZarrIosp.setReadPipeline(1, 2);
+    }
+  }
+
+  private Array timeReads(String what) throws IOException {
+    Array data = null;
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    for (int trial = 0; trial < NTRIALS; trial++) {
+      try (NetcdfFile ncfile = NetcdfFiles.open(storeLocation)) {
+        data = ncfile.findVariable("data").read();
+      }
+    }
+    stopwatch.stop();
+    double rate = ((double) NTRIALS * data.getSizeBytes()) / stopwatch.elapsed(TimeUnit.MICROSECONDS);
+    logger.info("{}: {} reads took {} = {} MB/sec", what, NTRIALS, stopwatch, rate);
+    return data;
+  }
+}
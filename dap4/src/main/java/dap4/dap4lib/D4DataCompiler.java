@@ -30,6 +30,9 @@ public class D4DataCompiler {
   //////////////////////////////////////////////////
   // Constants
 
+  // decode fixed-size values in pieces of at most this many bytes
+  static final int MAXDECODESIZE = 1 << 20;
+
   //////////////////////////////////////////////////
   // Instance variables
 
@@ -163,17 +166,22 @@ public class D4DataCompiler {
       return compileOpaqueVar(var);
 
     // All other fixed-size atomic types
+    // Decode straight from the de-chunked stream into the vector, a piece of a chunk at a time,
+    // rather than first reading all the bytes of the variable.
     long dimproduct = var.getCount();
-    long total = dimproduct * daptype.getSize();
-    byte[] bytes = new byte[(int) total]; // total space required
-    int red = this.stream.read(bytes);
-    if (red <= 0)
-      throw new IOException("D4DataCompiler: read failure");
-    if (red < total)
-      throw new DapException("D4DataCompiler: short read");
-    // Convert to vector of required type
-    Object storage = CDMTypeFcns.bytesAsTypeVec(daptype, bytes);
-    CDMTypeFcns.decodebytes(this.remoteorder, daptype, bytes, storage);
+    if (dimproduct > Integer.MAX_VALUE)
+      throw new DapException("D4DataCompiler: too many values in " + var.getFQN() + ": " + dimproduct);
+    int count = (int) dimproduct;
+    int elemsize = daptype.getSize();
+    Object storage = CDMTypeFcns.newTypeVec(daptype, count);
+    int maxbytes = Math.max(MAXDECODESIZE / elemsize, 1) * elemsize;
+    int done = 0;
+    while (done < count) {
+      ByteBuffer slice = this.stream.readSlice((int) Math.min(maxbytes, (long) (count - done) * elemsize), elemsize);
+      int n = slice.remaining() / elemsize;
+      CDMTypeFcns.decodebytes(this.remoteorder, daptype, slice, storage, done, n);
+      done += n;
+    }
     return storage;
   }
 
@@ -121,7 +121,7 @@ public class DeChunkedInputStream extends InputStream {
         return red;
     }
     assert this.chunk.avail > 0;
-    int c = this.chunk.chunk[this.chunk.pos];
+    int c = this.chunk.chunk[this.chunk.pos] & 0xFF; // -1 is reserved for eof
     this.chunk.pos++;
     this.chunk.avail--;
     if (checksumming)
@@ -164,6 +164,37 @@ public class DeChunkedInputStream extends InputStream {
     return len;
   }
 
+  /**
+   * Read up to max bytes without copying them: return a view of the current chunk, whose length is a multiple of
+   * unit, so that values of size unit are never split. Only when a value straddles two chunks are its bytes copied.
+   * The view is only valid until the next read, as the chunk buffer is reused.
+   *
+   * @param max maximum number of bytes to read; a positive multiple of unit
+   * @param unit size of the values being read
+   * @return the bytes read, from position to limit
+   */
+  public ByteBuffer readSlice(int max, int unit) throws IOException {
+    if (max < unit || unit <= 0)
+      throw new DapException("DeChunkedInputStream: illegal arguments: max < unit");
+    if (this.chunk.avail == 0) {
+      int red = readChunk(this.chunk); // read next chunk
+      if (red <= 0)
+        throw new IOException("DeChunkedInputStream: IO error");
+    }
+    int len = Math.min(max, this.chunk.avail - (this.chunk.avail % unit));
+    if (len == 0) { // a value straddles two chunks
+      byte[] value = new byte[unit];
+      read(value, 0, unit);
+      return ByteBuffer.wrap(value);
+    }
+    ByteBuffer slice = ByteBuffer.wrap(this.chunk.chunk, this.chunk.pos, len).slice();
+    if (checksumming)
+      computeChecksum(this.chunk.chunk, this.chunk.pos, len);
+    this.chunk.pos += len;
+    this.chunk.avail -= len;
+    return slice;
+  }
+
   public long skip(long n) throws IOException {
     long count = n;
     while (count > 0) {
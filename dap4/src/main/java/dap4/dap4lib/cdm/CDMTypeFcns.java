@@ -1389,6 +1389,93 @@ public abstract class CDMTypeFcns {
     return null;
   }
 
+  /**
+   * Allocate the vector that holds count values of a fixed-size atomic type.
+   *
+   * @param daptype the type
+   * @param count number of values
+   * @return <type>[count], or null if the type is not fixed-size
+   */
+  public static Object newTypeVec(DapType daptype, int count) {
+    switch (daptype.getTypeSort()) {
+      case Char:
+        return new char[count];
+      case Int8:
+      case UInt8:
+        return new byte[count];
+      case Int16:
+      case UInt16:
+        return new short[count];
+      case Int32:
+      case UInt32:
+        return new int[count];
+      case Int64:
+      case UInt64:
+        return new long[count];
+      case Float32:
+        return new float[count];
+      case Float64:
+        return new double[count];
+      case Enum:
+        // Coverity[FB.BC_UNCONFIRMED_CAST]
+        return newTypeVec(((DapEnumeration) daptype).getBaseType(), count);
+      default:
+        break;
+    }
+    return null;
+  }
+
+  /**
+   * Decode count values from the remaining bytes of src into vector, starting at vector[offset].
+   * Used to fill a vector a piece at a time as the bytes arrive.
+   *
+   * @param remoteorder byte order of src
+   * @param daptype the type of the values
+   * @param src the encoded values; its position is not changed
+   * @param vector as allocated by newTypeVec
+   * @param offset where to put the first value in vector
+   * @param count number of values to decode
+   */
+  public static void decodebytes(ByteOrder remoteorder, DapType daptype, ByteBuffer src, Object vector, int offset,
+      int count) {
+    ByteBuffer bb = src.duplicate().order(remoteorder);
+    switch (daptype.getTypeSort()) {
+      case Char:
+        char[] cv = (char[]) vector;
+        for (int i = 0; i < count; i++)
+          cv[offset + i] = (char) (bb.get() & 0xFF); // DAP4 chars are 8 bits
+        break;
+      case Int8:
+      case UInt8:
+        bb.get((byte[]) vector, offset, count);
+        break;
+      case Int16:
+      case UInt16:
+        bb.asShortBuffer().get((short[]) vector, offset, count);
+        break;
+      case Int32:
+      case UInt32:
+        bb.asIntBuffer().get((int[]) vector, offset, count);
+        break;
+      case Int64:
+      case UInt64:
+        bb.asLongBuffer().get((long[]) vector, offset, count);
+        break;
+      case Float32:
+        bb.asFloatBuffer().get((float[]) vector, offset, count);
+        break;
+      case Float64:
+        bb.asDoubleBuffer().get((double[]) vector, offset, count);
+        break;
+      case Enum:
+        // Coverity[FB.BC_UNCONFIRMED_CAST]
+        decodebytes(remoteorder, ((DapEnumeration) daptype).getBaseType(), src, vector, offset, count);
+        break;
+      default:
+        break;
+    }
+  }
+
   public static void decodebytes(ByteOrder remoteorder, DapType daptype, byte[] bytes, Object vector) {
     TypeSort tsort = daptype.getTypeSort();
     ByteBuffer bb = ByteBuffer.wrap(bytes).order(remoteorder);
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2024, UCAR/Unidata.
+ * See the LICENSE file for more information.
+ */
+
+package dap4.test;
+
+import dap4.core.dmr.DapType;
+import dap4.core.util.DapConstants;
+import dap4.dap4lib.DeChunkedInputStream;
+import dap4.dap4lib.RequestMode;
+import dap4.dap4lib.cdm.CDMTypeFcns;
+import org.junit.Assert;
+import org.junit.Test;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Test decoding fixed-size values straight from the chunks of a DAP4 response,
+ * with DeChunkedInputStream.readSlice and CDMTypeFcns.decodebytes(ByteBuffer).
+ */
+public class TestDeChunkedInputStream {
+
+  @Test
+  public void testReadSliceAcrossChunks() throws IOException {
+    int[] values = {1, -2, 0x01020304, Integer.MIN_VALUE, 77};
+    ByteBuffer encoded = ByteBuffer.allocate(4 * values.length).order(ByteOrder.LITTLE_ENDIAN);
+    for (int v : values)
+      encoded.putInt(v);
+    byte[] data = encoded.array();
+
+    // the third value straddles the first and second chunks
+    byte[] first = Arrays.copyOfRange(data, 0, 10);
+    byte[] second = Arrays.copyOfRange(data, 10, data.length);
+    DeChunkedInputStream stream = chunked(DapConstants.CHUNK_LITTLE_ENDIAN, first, second);
+    Assert.assertEquals(ByteOrder.LITTLE_ENDIAN, stream.getRemoteOrder());
+    stream.startChecksum();
+
+    int[] decoded = (int[]) CDMTypeFcns.newTypeVec(DapType.INT32, values.length);
+    int[] sliceSizes = new int[values.length];
+    int nslices = 0;
+    int done = 0;
+    while (done < values.length) {
+      ByteBuffer slice = stream.readSlice(4 * (values.length - done), 4);
+      Assert.assertEquals(0, slice.remaining() % 4);
+      int n = slice.remaining() / 4;
+      CDMTypeFcns.decodebytes(stream.getRemoteOrder(), DapType.INT32, slice, decoded, done, n);
+      sliceSizes[nslices++] = n;
+      done += n;
+    }
+    Assert.assertArrayEquals(values, decoded);
+    Assert.assertArrayEquals(new int[] {2, 1, 2}, Arrays.copyOf(sliceSizes, nslices));
+
+    CRC32 crc = new CRC32();
+    crc.update(data, 0, data.length);
+    Assert.assertEquals(crc.getValue(), stream.endChecksum());
+  }
+
+  @Test
+  public void testReadSliceMax() throws IOException {
+    byte[] data = new byte[16];
+    for (int i = 0; i < data.length; i++)
+      data[i] = (byte) (i * 17);
+    DeChunkedInputStream stream = chunked(0, data);
+    Assert.assertEquals(ByteOrder.BIG_ENDIAN, stream.getRemoteOrder());
+
+    ByteBuffer slice = stream.readSlice(6, 2);
+    Assert.assertEquals(6, slice.remaining());
+    short[] decoded = new short[8];
+    CDMTypeFcns.decodebytes(stream.getRemoteOrder(), DapType.UINT16, slice, decoded, 0, 3);
+    slice = stream.readSlice(10, 2);
+    Assert.assertEquals(10, slice.remaining());
+    CDMTypeFcns.decodebytes(stream.getRemoteOrder(), DapType.UINT16, slice, decoded, 3, 5);
+
+    short[] expected = new short[8];
+    ByteBuffer.wrap(data).asShortBuffer().get(expected);
+    Assert.assertArrayEquals(expected, decoded);
+  }
+
+  @Test
+  public void testDecodeSameAsWholeArray() {
+    ByteBuffer encoded = ByteBuffer.allocate(8 * 4 + 2);
+    encoded.put((byte) 0).put((byte) 0); // skipped, so the values are not aligned in the buffer
+    for (double d : new double[] {1.5, -0.25, Double.MAX_VALUE, Double.NaN})
+      encoded.putDouble(d);
+    byte[] bytes = Arrays.copyOfRange(encoded.array(), 2, encoded.capacity());
+
+    for (ByteOrder order : new ByteOrder[] {ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+      double[] whole = (double[]) CDMTypeFcns.bytesAsTypeVec(DapType.FLOAT64, bytes);
+      CDMTypeFcns.decodebytes(order, DapType.FLOAT64, bytes, whole);
+
+      double[] pieces = (double[]) CDMTypeFcns.newTypeVec(DapType.FLOAT64, 4);
+      ByteBuffer src = ByteBuffer.wrap(encoded.array(), 2, 16).slice();
+      CDMTypeFcns.decodebytes(order, DapType.FLOAT64, src, pieces, 0, 2);
+      Assert.assertEquals(0, src.position()); // not changed
+      CDMTypeFcns.decodebytes(order, DapType.FLOAT64, ByteBuffer.wrap(bytes, 16, 16).slice(), pieces, 2, 2);
+      Assert.assertArrayEquals(whole, pieces, 0.0);
+    }
+  }
+
+  @Test
+  public void testDecodeChars() {
+    // ASCII decodes as it does from a whole array
+    byte[] ascii = "DAP4 chars".getBytes(StandardCharsets.US_ASCII);
+    char[] whole = (char[]) CDMTypeFcns.bytesAsTypeVec(DapType.CHAR, ascii);
+    CDMTypeFcns.decodebytes(ByteOrder.BIG_ENDIAN, DapType.CHAR, ascii, whole);
+    char[] pieces = (char[]) CDMTypeFcns.newTypeVec(DapType.CHAR, ascii.length);
+    CDMTypeFcns.decodebytes(ByteOrder.BIG_ENDIAN, DapType.CHAR, ByteBuffer.wrap(ascii), pieces, 0, ascii.length);
+    Assert.assertArrayEquals(whole, pieces);
+    Assert.assertArrayEquals("DAP4 chars".toCharArray(), pieces);
+
+    // each 8 bit char is one value, even if it is not ASCII, so a vector never runs short of values
+    byte[] latin1 = {'a', (byte) 0xE9, (byte) 0xFF, 'z'};
+    char[] chars = new char[latin1.length];
+    CDMTypeFcns.decodebytes(ByteOrder.BIG_ENDIAN, DapType.CHAR, ByteBuffer.wrap(latin1), chars, 0, latin1.length);
+    Assert.assertArrayEquals(new char[] {'a', 'é', 'ÿ', 'z'}, chars);
+  }
+
+  // a DAP response: a DMR chunk, then the data chunks, the last one flagged as the end
+  private static DeChunkedInputStream chunked(int flags, byte[]... chunks) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    writeChunk(out, flags, "<Dataset/>".getBytes(StandardCharsets.UTF_8));
+    for (int i = 0; i < chunks.length; i++)
+      writeChunk(out, flags | (i == chunks.length - 1 ? DapConstants.CHUNK_END : DapConstants.CHUNK_DATA), chunks[i]);
+    return new DeChunkedInputStream(new ByteArrayInputStream(out.toByteArray()), RequestMode.DAP);
+  }
+
+  private static void writeChunk(ByteArrayOutputStream out, int flags, byte[] chunk) {
+    out.write(flags);
+    out.write(chunk.length >>> 16);
+    out.write(chunk.length >>> 8);
+    out.write(chunk.length);
+    out.write(chunk, 0, chunk.length);
+  }
+}
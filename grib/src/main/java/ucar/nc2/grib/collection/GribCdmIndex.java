@@ -23,6 +23,7 @@ import ucar.nc2.grib.grib1.Grib1RecordScanner;
 import ucar.nc2.grib.grib2.Grib2RecordScanner;
 import ucar.nc2.stream.NcStream;
 import ucar.nc2.util.CancelTask;
+import ucar.nc2.util.DaemonExecutors;
 import ucar.nc2.util.cache.FileCacheIF;
 import ucar.nc2.util.cache.FileCacheable;
 import ucar.nc2.util.cache.FileFactory;
@@ -33,10 +34,16 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Formatter;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RunnableFuture;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -74,6 +81,73 @@ public class GribCdmIndex implements IndexReader {
     gribCollectionCache = cache;
   }
 
+  /////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  // concurrent indexing: off by default, may be set with the system property, or with setIndexThreads()
+  private static final String INDEX_THREADS_PROPERTY = "ucar.nc2.grib.indexThreads";
+
+  private static int indexThreads = Integer.getInteger(INDEX_THREADS_PROPERTY, 1);
+  private static ExecutorService indexExecutor;
+
+  /**
+   * Build GRIB collections concurrently: the gbx9 indexes of the files of a collection, and the children of a
+   * partition, are read or created on a shared pool of nthreads threads. Results are used in the same order as a serial
+   * build, so the ncx4 indexes are identical.
+   *
+   * @param nthreads number of threads that index files and partitions; 0 or 1 indexes serially (default)
+   */
+  public static synchronized void setIndexThreads(int nthreads) {
+    if (nthreads != indexThreads) {
+      indexExecutor = null; // idle threads of the old pool time out
+    }
+    indexThreads = nthreads;
+  }
+
+  private static synchronized ExecutorService getIndexExecutor() {
+    if (indexThreads <= 1) {
+      return null;
+    }
+    if (indexExecutor == null) {
+      indexExecutor = DaemonExecutors.newFixedThreadPool("GribCdmIndex-index", indexThreads);
+    }
+    return indexExecutor;
+  }
+
+  /**
+   * Start the tasks on the index pool, if there is one. Get each result with getIndexResult(), in order: a task that
+   * has not started by then is run on the calling thread, so tasks may submit and wait for their own tasks.
+   */
+  static <T> List<RunnableFuture<T>> submitIndexTasks(List<Callable<T>> tasks) {
+    ExecutorService executor = getIndexExecutor();
+    List<RunnableFuture<T>> result = new ArrayList<>(tasks.size());
+    for (Callable<T> task : tasks) {
+      RunnableFuture<T> future = new FutureTask<>(task);
+      if (executor != null) {
+        executor.execute(future);
+      }
+      result.add(future);
+    }
+    return result;
+  }
+
+  static <T> T getIndexResult(RunnableFuture<T> future) throws IOException {
+    future.run(); // does nothing if already started
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while indexing GRIB files", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException)
+        throw (IOException) cause;
+      if (cause instanceof RuntimeException)
+        throw (RuntimeException) cause;
+      if (cause instanceof Error)
+        throw (Error) cause;
+      throw new IOException(cause);
+    }
+  }
+
   // open GribCollectionImmutable from an existing index file. return null on failure
   static GribCollectionImmutable acquireGribCollection(FileFactory factory, Object hashKey, String location,
       int buffer_size, CancelTask cancelTask, Object spiObject) throws IOException {
@@ -394,10 +468,23 @@ public class GribCdmIndex implements IndexReader {
     long start = System.currentTimeMillis();
     Formatter errlog = new Formatter();
 
+    List<MCollection> parts = new ArrayList<>();
+    List<Callable<Formatter>> tasks = new ArrayList<>();
     for (MCollection part : tp.makePartitions(updateType)) {
-      try {
+      parts.add(part);
+      tasks.add(() -> {
+        Formatter partErrlog = new Formatter();
         updateGribCollection(isGrib1, part, updateType, FeatureCollectionConfig.PartitionType.timePeriod, logger,
-            errlog);
+            partErrlog);
+        return partErrlog;
+      });
+    }
+
+    List<RunnableFuture<Formatter>> results = submitIndexTasks(tasks);
+    for (int i = 0; i < parts.size(); i++) {
+      MCollection part = parts.get(i);
+      try {
+        errlog.format("%s", getIndexResult(results.get(i)));
 
       } catch (Throwable t) {
         logger.warn("Error making partition " + part.getRoot(), t);
@@ -467,16 +554,27 @@ public class GribCdmIndex implements IndexReader {
 
     // check the children partitions first
     if (updateType != CollectionUpdateType.testIndexOnly) { // skip children on testIndexOnly
+      List<MCollection> parts = new ArrayList<>();
+      List<Callable<Boolean>> tasks = new ArrayList<>();
       for (MCollection part : dpart.makePartitions(updateType)) {
         part.putAuxInfo(FeatureCollectionConfig.AUX_CONFIG, config);
-        try {
+        parts.add(part);
+        tasks.add(() -> {
           if (part instanceof DirectoryPartition) { // LOOK if child partition fails, the parent partition doesnt know
                                                     // that - suckage
-            updateDirectoryCollectionRecurse(isGrib1, (DirectoryPartition) part, config, updateType, logger);
+            return updateDirectoryCollectionRecurse(isGrib1, (DirectoryPartition) part, config, updateType, logger);
           } else {
-            Path partPath = Paths.get(part.getRoot());
-            updateLeafCollection(isGrib1, config, updateType, false, logger, partPath); // LOOK why not using part ??
+            Path partPath = Paths.get(part.getRoot()); // LOOK why not using part ??
+            return updateLeafCollection(isGrib1, config, updateType, false, logger, partPath);
           }
+        });
+      }
+
+      List<RunnableFuture<Boolean>> results = submitIndexTasks(tasks);
+      for (int i = 0; i < parts.size(); i++) {
+        MCollection part = parts.get(i);
+        try {
+          getIndexResult(results.get(i));
         } catch (IllegalStateException t) {
           logger.warn("Error making partition {} '{}'", part.getRoot(), t.getMessage());
           dpart.removePartition(part); // keep on truckin; can happen if directory is empty
@@ -571,15 +669,27 @@ public class GribCdmIndex implements IndexReader {
 
       // redo the children here
       if (updateType != CollectionUpdateType.testIndexOnly) { // skip children on testIndexOnly
+        List<MCollection> parts = new ArrayList<>();
+        List<Callable<Formatter>> tasks = new ArrayList<>();
         partition.iterateOverMFileCollection(mfile -> {
           MCollection part = new CollectionSingleFile(mfile, logger);
           part.putAuxInfo(FeatureCollectionConfig.AUX_CONFIG, config);
-
-          try {
+          parts.add(part);
+          tasks.add(() -> {
+            Formatter partErrlog = new Formatter();
             boolean changed = updateGribCollection(isGrib1, part, updateType,
-                FeatureCollectionConfig.PartitionType.file, logger, errlog);
+                FeatureCollectionConfig.PartitionType.file, logger, partErrlog);
             if (changed)
               anyChange.set(true);
+            return partErrlog;
+          });
+        });
+
+        List<RunnableFuture<Formatter>> results = submitIndexTasks(tasks);
+        for (int i = 0; i < parts.size(); i++) {
+          MCollection part = parts.get(i);
+          try {
+            errlog.format("%s", getIndexResult(results.get(i)));
 
           } catch (IllegalStateException t) {
             logger.warn("Error making partition {} '{}'", part.getRoot(), t.getMessage());
@@ -589,7 +699,7 @@ public class GribCdmIndex implements IndexReader {
             logger.error("Error making partition " + part.getRoot(), t);
             partition.removePartition(part);
           }
-        });
+        }
       }
 
       // LOOK what if theres only one file?
@@ -26,6 +26,8 @@ import ucar.unidata.util.StringUtil2;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RunnableFuture;
 
 /**
  * Superclass to build indexes for collections of Grib files.
@@ -110,6 +112,35 @@ abstract class GribCollectionBuilder {
     return false;
   }
 
+  // the files of the collection, in the order of its iterator; null if it has no iterator
+  protected List<MFile> getFiles() throws IOException {
+    try (CloseableIterator<MFile> iter = dcm.getFileIterator()) { // not sorted
+      if (iter == null)
+        return null;
+      List<MFile> files = new ArrayList<>();
+      while (iter.hasNext())
+        files.add(iter.next());
+      return files;
+    }
+  }
+
+  /**
+   * Read or create the gbx9 index of each file, concurrently if GribCdmIndex.setIndexThreads() is more than 1.
+   * Get each index in order with GribCdmIndex.getIndexResult(), which throws the IOException of its file.
+   */
+  protected List<RunnableFuture<GribIndex>> readOrCreateIndexes(List<MFile> files) {
+    List<Callable<GribIndex>> tasks = new ArrayList<>(files.size());
+    for (MFile mfile : files) {
+      if (Grib.debugGbxIndexOnly) {
+        tasks.add(() -> GribIndex.open(isGrib1, mfile));
+      } else {
+        // here is where gbx9 files get recreated
+        tasks.add(() -> GribIndex.readOrCreateIndexFromSingleFile(isGrib1, mfile, CollectionUpdateType.test, logger));
+      }
+    }
+    return GribCdmIndex.submitIndexTasks(tasks);
+  }
+
   //////////////////////////////////////////////////////////////////////////////////////////////////////////
 
   // Throw exception if failure
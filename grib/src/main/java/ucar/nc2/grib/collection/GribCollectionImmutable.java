@@ -452,7 +452,7 @@ public abstract class GribCollectionImmutable implements Closeable, FileCacheabl
     }
   }
 
-  @Immutable // except for sa
+  @Immutable // except for sa, which is immutable once read
   public class VariableIndex {
     final GroupGC group; // belongs to this group
     final VariableIndex.Info info;
@@ -465,8 +465,8 @@ public abstract class GribCollectionImmutable implements Closeable, FileCacheabl
     // stats
     final int ndups, nrecords, nmissing;
 
-    // read in on demand
-    private SparseArray<Record> sa; // for GC only; lazily read; same array shape as variable, minus x and y
+    // read in on demand, then never changed, so lookups need no locking
+    private volatile SparseArray<Record> sa; // for GC only; lazily read; same array shape as variable, minus x and y
 
     protected VariableIndex(GroupGC g, GribCollectionMutable.VariableIndex gcVar) {
       this.group = g;
@@ -482,12 +482,16 @@ public abstract class GribCollectionImmutable implements Closeable, FileCacheabl
       this.nmissing = gcVar.nmissing;
     }
 
-    public synchronized void readRecords() throws IOException {
-      if (this.sa != null)
+    public void readRecords() throws IOException {
+      if (this.sa != null || recordsLen == 0)
         return;
+      synchronized (this) {
+        if (this.sa == null)
+          this.sa = makeSparseArray();
+      }
+    }
 
-      if (recordsLen == 0)
-        return;
+    private SparseArray<Record> makeSparseArray() throws IOException {
       byte[] b = new byte[recordsLen];
 
       try (RandomAccessFile indexRaf = RandomAccessFile.acquire(indexFilename)) {
@@ -515,14 +519,21 @@ public abstract class GribCollectionImmutable implements Closeable, FileCacheabl
         for (int i = 0; i < ntrack; i++)
           track[i] = proto.getTrack(i);
 
+        // keep the records in primitive arrays, rather than millions of small objects
         int n = proto.getRecordsCount();
-        List<Record> records = new ArrayList<>(n);
+        int[] fileno = new int[n];
+        long[] pos = new long[n];
+        int[] bmsOffset = new int[n];
+        int[] drsOffset = new int[n];
         for (int i = 0; i < n; i++) {
           GribCollectionProto.Record pr = proto.getRecords(i);
-          records.add(new Record(pr.getFileno(), pr.getStartPos(), pr.getBmsOffset(), pr.getDrsOffset()));
+          fileno[i] = pr.getFileno();
+          pos[i] = pr.getStartPos();
+          bmsOffset[i] = pr.getBmsOffset();
+          drsOffset[i] = pr.getDrsOffset();
         }
         int ndups = proto.getNdups();
-        this.sa = new SparseArray<>(size, track, records, ndups);
+        return new SparseArray<>(size, track, new RecordList(fileno, pos, bmsOffset, drsOffset), ndups);
 
       } catch (com.google.protobuf.InvalidProtocolBufferException e) {
         logger.error(" file={} recordsLen={} recordPos={}", indexFilename, recordsLen, recordsPos);
@@ -530,18 +541,18 @@ public abstract class GribCollectionImmutable implements Closeable, FileCacheabl
       }
     }
 
-    synchronized Record getRecordAt(int sourceIndex) {
+    Record getRecordAt(int sourceIndex) {
       return sa.getContent(sourceIndex);
     }
 
-    synchronized Record getRecordAt(int[] sourceIndex) {
+    Record getRecordAt(int[] sourceIndex) {
       return sa.getContent(sourceIndex);
     }
 
     ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
     // coord based record finding. note only one record at a time
     @Nullable
-    synchronized Record getRecordAt(SubsetParams coords) {
+    Record getRecordAt(SubsetParams coords) {
       int[] want = new int[getRank()];
       int count = 0;
       int runIdx = -1;
@@ -881,6 +892,61 @@ public abstract class GribCollectionImmutable implements Closeable, FileCacheabl
     }
   }
 
+  /**
+   * The records of a variable, stored in parallel primitive arrays. A Record is made on each get().
+   * The offsets arrays are not kept if they are all zero, eg for GRIB-1.
+   */
+  @Immutable
+  public static class RecordList extends AbstractList<Record> implements RandomAccess {
+    private final int[] fileno;
+    private final long[] pos;
+    private final int[] bmsOffset; // null if all zero
+    private final int[] drsOffset; // null if all zero
+
+    public RecordList(int[] fileno, long[] pos, int[] bmsOffset, int[] drsOffset) {
+      if (pos.length != fileno.length || bmsOffset.length != fileno.length || drsOffset.length != fileno.length)
+        throw new IllegalArgumentException("record arrays must have the same length");
+      this.fileno = fileno;
+      this.pos = pos;
+      this.bmsOffset = allZero(bmsOffset) ? null : bmsOffset;
+      this.drsOffset = allZero(drsOffset) ? null : drsOffset;
+    }
+
+    private static boolean allZero(int[] values) {
+      for (int value : values) {
+        if (value != 0)
+          return false;
+      }
+      return true;
+    }
+
+    @Override
+    public Record get(int index) {
+      return new Record(fileno[index], pos[index], getBmsOffset(index), getDrsOffset(index));
+    }
+
+    @Override
+    public int size() {
+      return fileno.length;
+    }
+
+    public int getFileno(int index) {
+      return fileno[index];
+    }
+
+    public long getPos(int index) {
+      return pos[index];
+    }
+
+    public int getBmsOffset(int index) {
+      return bmsOffset == null ? 0 : bmsOffset[index];
+    }
+
+    public int getDrsOffset(int index) {
+      return drsOffset == null ? 0 : drsOffset[index];
+    }
+  }
+
   //////////////////////////////////////////////////////////////////////////////////////////////////
   // stuff for FileCacheable
 
@@ -18,15 +18,22 @@ import ucar.nc2.grib.coord.TimeCoordIntvDateValue;
 import ucar.nc2.grib.grib1.Grib1ParamTime;
 import ucar.nc2.grib.grib1.Grib1Parameter;
 import ucar.nc2.grib.grib1.Grib1Record;
+import ucar.nc2.grib.grib1.Grib1SectionIndicator;
 import ucar.nc2.grib.grib1.Grib1SectionProductDefinition;
 import ucar.nc2.grib.grib1.tables.Grib1Customizer;
 import ucar.nc2.grib.grib2.Grib2Record;
 import ucar.nc2.grib.grib2.Grib2RecordScanner;
+import ucar.nc2.grib.grib2.Grib2SectionIndicator;
 import ucar.nc2.grib.grib2.table.Grib2Tables;
+import ucar.nc2.util.DaemonExecutors;
+import ucar.unidata.io.InMemoryRandomAccessFile;
 import ucar.unidata.io.RandomAccessFile;
 import javax.annotation.concurrent.Immutable;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * Grib Data Reader.
@@ -52,6 +59,44 @@ public abstract class GribDataReader {
 
   protected abstract void show(RandomAccessFile rafData, long dataPos) throws IOException;
 
+  // length of the GRIB message starting at pos
+  protected abstract long readMessageLength(RandomAccessFile rafData, long pos) throws IOException;
+
+  /////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  // concurrent decoding: off by default, may be set with the system property, or with setDecodeThreads()
+  private static final String DECODE_THREADS_PROPERTY = "ucar.nc2.grib.decodeThreads";
+
+  private static int decodeThreads = Integer.getInteger(DECODE_THREADS_PROPERTY, 1);
+  private static ExecutorService decodeExecutor;
+
+  /**
+   * Decode the GRIB records of a read concurrently. Records are still read from the file in file order on the calling
+   * thread, and are decoded on a shared pool of nthreads threads, with at most 2 * nthreads records read ahead.
+   * This pays off for large reads of records with expensive packing, eg JPEG2000, PNG or complex packing.
+   *
+   * @param nthreads number of threads that decode records; 0 or 1 decodes serially on the calling thread (default)
+   */
+  public static synchronized void setDecodeThreads(int nthreads) {
+    if (nthreads != decodeThreads) {
+      decodeExecutor = null; // idle threads of the old pool time out
+    }
+    decodeThreads = nthreads;
+  }
+
+  private static synchronized ExecutorService getDecodeExecutor() {
+    if (decodeThreads <= 1) {
+      return null;
+    }
+    if (decodeExecutor == null) {
+      decodeExecutor = DaemonExecutors.newFixedThreadPool("GribDataReader-decode", decodeThreads);
+    }
+    return decodeExecutor;
+  }
+
+  private static synchronized int getMaxRecordsInFlight() {
+    return 2 * decodeThreads;
+  }
+
   /////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
   public static GribCollectionImmutable.Record currentDataRecord;
   public static GribDataValidator validator;
@@ -238,6 +283,7 @@ public abstract class GribDataReader {
 
     int currFile = -1;
     RandomAccessFile rafData = null;
+    RecordDecoder decoder = makeDecoder(dataReceiver);
     try {
       for (DataRecord dr : records) {
         if (Grib.debugIndexOnly || Grib.debugGbxIndexOnly) {
@@ -269,12 +315,12 @@ public abstract class GribDataReader {
           show(rafData, dr.record.pos + dr.record.drsOffset);
         }
 
-        float[] data = readData(rafData, dr);
-        GdsHorizCoordSys hcs = vindex.group.getGdsHorizCoordSys();
-        dataReceiver.addData(data, dr.resultIndex, hcs.nx);
+        decoder.decode(rafData, dr, vindex.group.getGdsHorizCoordSys().nx);
       }
+      decoder.finish();
 
     } finally {
+      decoder.cancel();
       if (rafData != null)
         rafData.close(); // make sure its closed even on exception
     }
@@ -291,6 +337,7 @@ public abstract class GribDataReader {
 
     PartitionCollectionImmutable.DataRecord lastRecord = null;
     RandomAccessFile rafData = null;
+    RecordDecoder decoder = makeDecoder(dataReceiver);
     try {
 
       for (DataRecord dr : records) {
@@ -321,17 +368,116 @@ public abstract class GribDataReader {
           show(rafData, dr.record.pos + dr.record.drsOffset);
         }
 
-        float[] data = readData(rafData, dr);
-        GdsHorizCoordSys hcs = dr.hcs;
-        dataReceiver.addData(data, dr.resultIndex, hcs.nx);
+        decoder.decode(rafData, dr, dr.hcs.nx);
       }
+      decoder.finish();
 
     } finally {
+      decoder.cancel();
       if (rafData != null)
         rafData.close(); // make sure its closed even on exception
     }
   }
 
+  private RecordDecoder makeDecoder(DataReceiverIF dataReceiver) {
+    // validation and debugging read from the data file, so stay serial
+    ExecutorService executor = (validator != null || show) ? null : getDecodeExecutor();
+    if (executor == null)
+      return new RecordDecoder(dataReceiver);
+    return new ConcurrentRecordDecoder(dataReceiver, executor, getMaxRecordsInFlight());
+  }
+
+  // Decodes records serially, on the calling thread
+  private class RecordDecoder {
+    final DataReceiverIF dataReceiver;
+
+    RecordDecoder(DataReceiverIF dataReceiver) {
+      this.dataReceiver = dataReceiver;
+    }
+
+    void decode(RandomAccessFile rafData, DataRecord dr, int nx) throws IOException {
+      float[] data = readData(rafData, dr);
+      dataReceiver.addData(data, dr.resultIndex, nx);
+    }
+
+    // wait for all records to be decoded
+    void finish() throws IOException {}
+
+    // abandon any records not yet decoded
+    void cancel() {}
+  }
+
+  // Reads each GRIB message into memory on the calling thread, in the order of the records, and decodes it on the
+  // executor. Each record goes into its own slice of the result, so the decoding threads do not need to lock.
+  private class ConcurrentRecordDecoder extends RecordDecoder {
+    private final ExecutorService executor;
+    private final int maxInFlight;
+    private final Deque<Future<?>> inFlight = new ArrayDeque<>();
+
+    ConcurrentRecordDecoder(DataReceiverIF dataReceiver, ExecutorService executor, int maxInFlight) {
+      super(dataReceiver);
+      this.executor = executor;
+      this.maxInFlight = maxInFlight;
+    }
+
+    @Override
+    void decode(RandomAccessFile rafData, DataRecord dr, int nx) throws IOException {
+      long len = readMessageLength(rafData, dr.record.pos);
+      if (len > Integer.MAX_VALUE)
+        throw new IOException("GRIB message too large to decode concurrently: " + len);
+      byte[] message = new byte[(int) len];
+      rafData.seek(dr.record.pos);
+      rafData.readFully(message);
+
+      // same record, relative to the start of the message
+      GribCollectionImmutable.Record record =
+          new GribCollectionImmutable.Record(dr.record.fileno, 0, dr.record.bmsOffset, dr.record.drsOffset);
+      DataRecord drMessage = new DataRecord(dr.resultIndex, record, dr.hcs);
+      String location = rafData.getLocation();
+
+      while (inFlight.size() >= maxInFlight)
+        waitFor(inFlight.removeFirst());
+      inFlight.addLast(executor.submit(() -> {
+        try (RandomAccessFile raf = new InMemoryRandomAccessFile(location, message)) {
+          float[] data = readData(raf, drMessage);
+          dataReceiver.addData(data, drMessage.resultIndex, nx);
+        }
+        return null;
+      }));
+    }
+
+    @Override
+    void finish() throws IOException {
+      while (!inFlight.isEmpty())
+        waitFor(inFlight.removeFirst());
+    }
+
+    @Override
+    void cancel() {
+      for (Future<?> f : inFlight)
+        f.cancel(true);
+      inFlight.clear();
+    }
+
+    private void waitFor(Future<?> f) throws IOException {
+      try {
+        f.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while decoding GRIB records", e);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException)
+          throw (IOException) cause;
+        if (cause instanceof RuntimeException)
+          throw (RuntimeException) cause;
+        if (cause instanceof Error)
+          throw (Error) cause;
+        throw new IOException(cause);
+      }
+    }
+  }
+
   public static class DataRecord implements Comparable<DataRecord> {
     int resultIndex; // index into the result array
     final GribCollectionImmutable.Record record;
@@ -474,6 +620,12 @@ public abstract class GribDataReader {
           hcs.nyRaw, hcs.nptsInLine);
     }
 
+    @Override
+    protected long readMessageLength(RandomAccessFile rafData, long pos) throws IOException {
+      rafData.seek(pos);
+      return new Grib2SectionIndicator(rafData).getMessageLength();
+    }
+
     @Override
     protected void show(RandomAccessFile rafData, long pos) throws IOException {
       Grib2Record gr = Grib2RecordScanner.findRecordByDrspos(rafData, pos);
@@ -506,6 +658,12 @@ public abstract class GribDataReader {
       return Grib1Record.readData(rafData, dr.record.pos);
     }
 
+    @Override
+    protected long readMessageLength(RandomAccessFile rafData, long pos) throws IOException {
+      rafData.seek(pos);
+      return new Grib1SectionIndicator(rafData).getMessageLength();
+    }
+
     @Override
     protected void show(RandomAccessFile rafData, long dataPos) throws IOException {
       rafData.seek(dataPos);
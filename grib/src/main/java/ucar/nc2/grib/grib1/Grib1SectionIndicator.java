@@ -26,13 +26,13 @@ public class Grib1SectionIndicator {
   boolean isMessageLengthFixed;
 
   /**
-   * Read Grib2SectionIndicator from raf.
+   * Read Grib1SectionIndicator from raf.
    *
    * @param raf RandomAccessFile, with pointer at start (the "GRIB")
    * @throws java.io.IOException on I/O error
-   * @throws IllegalArgumentException if not a GRIB-2 record
+   * @throws IllegalArgumentException if not a GRIB-1 record
    */
-  Grib1SectionIndicator(RandomAccessFile raf) throws IOException {
+  public Grib1SectionIndicator(RandomAccessFile raf) throws IOException {
     startPos = raf.getFilePointer();
     byte[] b = new byte[4];
     raf.readFully(b);
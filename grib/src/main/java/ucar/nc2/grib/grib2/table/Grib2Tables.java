@@ -26,6 +26,7 @@ import ucar.nc2.time.CalendarPeriod;
 import ucar.nc2.wmo.CommonCodeTable;
 import javax.annotation.concurrent.Immutable;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Grib 2 Tables - allows local overrides and augmentation of WMO tables.
@@ -41,7 +42,7 @@ import java.util.*;
 // TODO version 6: remove implements TimeUnitConverter
 public class Grib2Tables implements ucar.nc2.grib.GribTables, TimeUnitConverter {
   private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(Grib2Tables.class);
-  private static final Map<Grib2TablesId, Grib2Tables> tables = new HashMap<>();
+  private static final Map<Grib2TablesId, Grib2Tables> tables = new ConcurrentHashMap<>();
   private static Grib2Tables wmoStandardTable;
 
   public static Grib2Tables factory(Grib2Record gr) {
@@ -54,17 +55,9 @@ public class Grib2Tables implements ucar.nc2.grib.GribTables, TimeUnitConverter
   // Lazy instantiation.
   public static Grib2Tables factory(int center, int subCenter, int masterVersion, int localVersion, int genProcessId) {
     Grib2TablesId id = new Grib2TablesId(center, subCenter, masterVersion, localVersion, genProcessId);
-    Grib2Tables cust = tables.get(id);
-    if (cust != null) {
-      return cust;
-    }
-
+    // may be called by concurrent indexing threads, so each id is built once
     // note that we match on id, so same Grib2Customizer may be mapped to multiple id's (eg match on -1)
-    Grib2TableConfig config = Grib2TableConfig.matchTable(id);
-    cust = build(config);
-
-    tables.put(id, cust);
-    return cust;
+    return tables.computeIfAbsent(id, key -> build(Grib2TableConfig.matchTable(key)));
   }
 
   private static Grib2Tables build(Grib2TableConfig config) {
@@ -88,12 +81,16 @@ public class Grib2Tables implements ucar.nc2.grib.GribTables, TimeUnitConverter
       case nwsDev:
         return new NwsMetDevTables(config);
       default:
-        if (wmoStandardTable == null)
-          wmoStandardTable = new Grib2Tables(config);
-        return wmoStandardTable;
+        return getWmoStandardTable(config);
     }
   }
 
+  private static synchronized Grib2Tables getWmoStandardTable(Grib2TableConfig config) {
+    if (wmoStandardTable == null)
+      wmoStandardTable = new Grib2Tables(config);
+    return wmoStandardTable;
+  }
+
   public static int makeParamId(int discipline, int category, int number) {
     return (discipline << 16) + (category << 8) + number;
   }
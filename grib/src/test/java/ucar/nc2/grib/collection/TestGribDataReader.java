@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 1998-2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.grib.collection;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import ucar.ma2.Array;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFiles;
+import ucar.nc2.Variable;
+import ucar.nc2.util.CompareNetcdf2;
+
+/** Compare serial and concurrent decoding of GRIB records */
+@RunWith(Parameterized.class)
+public class TestGribDataReader {
+
+  @Parameterized.Parameters(name = "{0}")
+  public static List<Object[]> getTestParameters() {
+    return Arrays.asList(new Object[][] {{"../grib/src/test/data/complex_packing.grib1"},
+        {"../grib/src/test/data/thinGrid.grib2"},
+        {"../grib/src/test/data/pngEncoding/24-bit/MRMS_FLASH_HP_MAXUNITSTREAMFLOW_00.00_20210615-190000.grib2"},
+        {"../grib/src/test/data/GFS_Global_onedeg_20220627.TotalPrecip.Out24hrs.grib2"}});
+  }
+
+  private final String filename;
+
+  public TestGribDataReader(String filename) {
+    this.filename = filename;
+  }
+
+  @After
+  public void restore() {
+    GribDataReader.setDecodeThreads(1);
+  }
+
+  @Test
+  public void shouldDecodeConcurrently() throws IOException {
+    try (NetcdfFile ncfile = NetcdfFiles.open(filename)) {
+      for (Variable v : ncfile.getVariables()) {
+        if (v.getRank() < 3) {
+          continue; // coordinates
+        }
+        GribDataReader.setDecodeThreads(1);
+        Array serial = v.read();
+        GribDataReader.setDecodeThreads(4);
+        Array concurrent = v.read();
+        assertThat(CompareNetcdf2.compareData(v.getFullName(), serial, concurrent)).isTrue();
+      }
+    }
+  }
+}
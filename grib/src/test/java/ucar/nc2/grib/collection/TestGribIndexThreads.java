@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 1998-2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.grib.collection;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import thredds.featurecollection.FeatureCollectionConfig;
+import thredds.featurecollection.FeatureCollectionType;
+import thredds.inventory.CollectionUpdateType;
+import ucar.nc2.stream.NcStream;
+
+/** Test that building GRIB collections with GribCdmIndex.setIndexThreads() writes the same ncx4 as a serial build. */
+public class TestGribIndexThreads {
+  private static final Logger logger = LoggerFactory.getLogger(TestGribIndexThreads.class);
+  private static final String DATA_DIR = "src/test/data/";
+  private static final String[] FILES =
+      {"ds.sky.grib2", "ds.snow.grib2", "sref.pds2.grib2", "sref.pds12.grib2", "sref_eta.grib2", "cosmo-eu.grib2"};
+
+  @Rule
+  public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @After
+  public void resetThreads() {
+    GribCdmIndex.setIndexThreads(1);
+  }
+
+  @Test
+  public void shouldWriteSameCollectionIndex() throws IOException {
+    File dir = tempFolder.newFolder("collection");
+    for (String name : FILES) {
+      copy(name, dir);
+    }
+    checkSameIndexes(dir, "none");
+  }
+
+  @Test
+  public void shouldWriteSamePartitionIndexes() throws IOException {
+    File dir = tempFolder.newFolder("partition");
+    for (int i = 0; i < FILES.length; i++) {
+      File child = new File(dir, "part" + (i % 3));
+      assertThat(child.isDirectory() || child.mkdir()).isTrue();
+      copy(FILES[i], child);
+    }
+    checkSameIndexes(dir, "directory");
+  }
+
+  private void checkSameIndexes(File dir, String partitionType) throws IOException {
+    GribCdmIndex.setIndexThreads(1);
+    Map<String, byte[]> serial = buildIndexes(dir, partitionType);
+    assertThat(serial).isNotEmpty();
+
+    GribCdmIndex.setIndexThreads(4);
+    Map<String, byte[]> concurrent = buildIndexes(dir, partitionType);
+
+    assertThat(concurrent.keySet()).containsExactlyElementsIn(serial.keySet());
+    for (Map.Entry<String, byte[]> entry : serial.entrySet()) {
+      byte[] want = withoutChildTimes(entry.getValue());
+      assertWithMessage(entry.getKey()).that(withoutChildTimes(concurrent.get(entry.getKey()))).isEqualTo(want);
+    }
+  }
+
+  // build the collection from scratch, and return the contents of its ncx4 files, keyed by path
+  private Map<String, byte[]> buildIndexes(File dir, String partitionType) throws IOException {
+    for (File f : listFiles(dir)) {
+      if (f.getName().endsWith(".ncx4") || f.getName().endsWith(".gbx9")) {
+        Files.delete(f.toPath());
+      }
+    }
+
+    String spec = dir.getPath() + "/**/.*grib2$";
+    FeatureCollectionConfig config = new FeatureCollectionConfig(dir.getName(), "test/" + dir.getName(),
+        FeatureCollectionType.GRIB2, spec, null, null, null, partitionType, null);
+    assertThat(GribCdmIndex.updateGribCollection(config, CollectionUpdateType.always, logger)).isTrue();
+
+    Map<String, byte[]> result = new TreeMap<>();
+    for (File f : listFiles(dir)) {
+      if (f.getName().endsWith(".ncx4")) {
+        result.put(dir.toPath().relativize(f.toPath()).toString(), Files.readAllBytes(f.toPath()));
+      }
+    }
+    return result;
+  }
+
+  // The ncx4 of a partition holds the last modified time of each child ncx4, which is new whenever the children are
+  // rebuilt, concurrently or not. Return the ncx4 of a collection as is, and the message of a partition without them.
+  private static byte[] withoutChildTimes(byte[] ncx4) throws IOException {
+    byte[] magic = Grib2PartitionBuilder.MAGIC_START.getBytes(StandardCharsets.UTF_8);
+    if (!Arrays.equals(Arrays.copyOf(ncx4, magic.length), magic)) {
+      return ncx4;
+    }
+    // skip the version and the (empty) record section
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(ncx4, magic.length + 12, ncx4.length));
+    byte[] message = new byte[NcStream.readVInt(in)];
+    in.readFully(message);
+
+    GribCollectionProto.GribCollection.Builder proto =
+        GribCollectionProto.GribCollection.parseFrom(message).toBuilder();
+    assertThat(proto.getPartitionsCount()).isGreaterThan(1);
+    for (int i = 0; i < proto.getMfilesCount(); i++) {
+      proto.setMfiles(i, proto.getMfiles(i).toBuilder().setLastModified(0));
+    }
+    for (int i = 0; i < proto.getPartitionsCount(); i++) {
+      proto.setPartitions(i, proto.getPartitions(i).toBuilder().setLastModified(0));
+    }
+    return proto.build().toByteArray();
+  }
+
+  private static List<File> listFiles(File dir) {
+    List<File> result = new ArrayList<>();
+    File[] files = dir.listFiles();
+    if (files != null) {
+      for (File f : files) {
+        if (f.isDirectory()) {
+          result.addAll(listFiles(f));
+        } else {
+          result.add(f);
+        }
+      }
+    }
+    return result;
+  }
+
+  private static void copy(String name, File dir) throws IOException {
+    Files.copy(new File(DATA_DIR + name).toPath(), new File(dir, name).toPath(), StandardCopyOption.COPY_ATTRIBUTES);
+  }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 1998-2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.grib.collection;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+import ucar.nc2.grib.coord.SparseArray;
+import ucar.nc2.grib.collection.GribCollectionImmutable.Record;
+import ucar.nc2.grib.collection.GribCollectionImmutable.RecordList;
+
+/** Test {@link GribCollectionImmutable.RecordList} */
+public class TestRecordList {
+
+  @Test
+  public void shouldMakeRecordsFromArrays() {
+    RecordList records = new RecordList(new int[] {0, 1, 1}, new long[] {0, 5000000000L, 300},
+        new int[] {0, 17, 0}, new int[] {16, 16, 16});
+    assertThat(records).hasSize(3);
+
+    Record record = records.get(1);
+    assertThat(record.fileno).isEqualTo(1);
+    assertThat(record.pos).isEqualTo(5000000000L);
+    assertThat(record.bmsOffset).isEqualTo(17);
+    assertThat(record.drsOffset).isEqualTo(16);
+    assertThat(records.getPos(2)).isEqualTo(300);
+  }
+
+  @Test
+  public void shouldReturnZeroOffsetsWhenNotKept() {
+    RecordList records = new RecordList(new int[] {3, 4}, new long[] {10, 20}, new int[2], new int[2]);
+    assertThat(records.get(0).bmsOffset).isEqualTo(0);
+    assertThat(records.get(1).drsOffset).isEqualTo(0);
+    assertThat(records.getBmsOffset(1)).isEqualTo(0);
+  }
+
+  @Test
+  public void shouldLookUpThroughSparseArray() {
+    RecordList records = new RecordList(new int[] {7, 8}, new long[] {100, 200}, new int[2], new int[2]);
+    int[] track = {0, 2, 0, 1}; // 1-based, 0 is missing
+    SparseArray<Record> sa = new SparseArray<>(new int[] {2, 2}, track, records, 0);
+
+    assertThat(sa.getContent(new int[] {0, 0})).isNull();
+    assertThat(sa.getContent(new int[] {0, 1}).pos).isEqualTo(200);
+    assertThat(sa.getContent(3).fileno).isEqualTo(7);
+    assertThat(sa.countNotMissing()).isEqualTo(2);
+  }
+}
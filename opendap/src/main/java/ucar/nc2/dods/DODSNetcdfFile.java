@@ -119,6 +119,41 @@ public class DODSNetcdfFile extends ucar.nc2.NetcdfFile {
     preload = b;
   }
 
+  private static int batchWindowMsecs = (int) DodsReadPlanner.readLongProperty(DodsReadPlanner.BATCH_WINDOW_PROPERTY);
+  private static long maxRequestBytes = DodsReadPlanner.readLongProperty(DodsReadPlanner.MAX_REQUEST_BYTES_PROPERTY);
+  private static long slabCacheBytes = DodsReadPlanner.readLongProperty(DodsReadPlanner.SLAB_CACHE_BYTES_PROPERTY);
+
+  /**
+   * Set how long a read of a numeric variable waits for reads by other threads, so that they are all sent to the
+   * server in one request, merging overlapping or adjacent sections of the same variable.
+   * Only affects files opened afterwards.
+   *
+   * @param msecs time to wait in msecs, 0 (the default) to send each read at once.
+   */
+  public static void setBatchWindow(int msecs) {
+    batchWindowMsecs = msecs;
+  }
+
+  /**
+   * Set the largest request for the data of a numeric variable. Larger reads are split into several requests,
+   * made in parallel. Only affects files opened afterwards.
+   *
+   * @param bytes maximum size of a request, 0 (the default) for no maximum.
+   */
+  public static void setMaxRequestSize(long bytes) {
+    maxRequestBytes = bytes;
+  }
+
+  /**
+   * Set the size of the cache of each file of the recently read sections of numeric variables, so that reading
+   * subsets of a section already read does not go back to the server. Only affects files opened afterwards.
+   *
+   * @param bytes maximum size of the cache, 0 (the default) for no cache.
+   */
+  public static void setSlabCacheSize(long bytes) {
+    slabCacheBytes = bytes;
+  }
+
   /**
    * If preloading, set maximum size of coordinate variables to be preloaded.
    *
@@ -149,6 +184,7 @@ public class DODSNetcdfFile extends ucar.nc2.NetcdfFile {
   //////////////////////////////////////////////////////////////////////////////////
   private ConvertD2N convertD2N = new ConvertD2N();
   private DConnect2 dodsConnection = null;
+  private DodsReadPlanner planner; // null if reads are not planned
   private DDS dds;
   private DAS das;
 
@@ -310,6 +346,9 @@ public class DODSNetcdfFile extends ucar.nc2.NetcdfFile {
       }
     }
 
+    planner = DodsReadPlanner.create(this, pos >= 0 ? urlName.substring(0, pos) : urlName, accept_compress,
+        batchWindowMsecs, maxRequestBytes, slabCacheBytes);
+
     // preload scalers, coordinate variables, strings, small arrays
     if (preload) {
       List<Variable> preloadList = new ArrayList<Variable>();
@@ -343,6 +382,10 @@ public class DODSNetcdfFile extends ucar.nc2.NetcdfFile {
         return;
     }
 
+    if (null != planner) {
+      planner.close();
+      planner = null;
+    }
     if (null != dodsConnection) {
       dodsConnection.close();
       dodsConnection = null;
@@ -1462,6 +1505,13 @@ public class DODSNetcdfFile extends ucar.nc2.NetcdfFile {
    * @throws opendap.dap.DAP2Exception if you have otherwise been bad
    */
   DataDDS readDataDDSfromServer(String CE) throws IOException, opendap.dap.DAP2Exception {
+    synchronized (this) {
+      return readDataDDSfromServer(CE, dodsConnection);
+    }
+  }
+
+  /** Same as readDataDDSfromServer(CE), using a connection that only the calling thread is using. */
+  DataDDS readDataDDSfromServer(String CE, DConnect2 connection) throws IOException, opendap.dap.DAP2Exception {
     if (debugServerCall)
       System.out.println("DODSNetcdfFile.readDataDDSfromServer = <" + CE + ">");
 
@@ -1471,10 +1521,7 @@ public class DODSNetcdfFile extends ucar.nc2.NetcdfFile {
 
     if (!CE.startsWith("?"))
       CE = "?" + CE;
-    DataDDS data;
-    synchronized (this) {
-      data = dodsConnection.getData(CE, null);
-    }
+    DataDDS data = connection.getData(CE, null);
     if (debugTime)
       System.out
           .println("DODSNetcdfFile.readDataDDSfromServer took = " + (System.currentTimeMillis() - start) / 1000.0);
@@ -1644,6 +1691,15 @@ public class DODSNetcdfFile extends ucar.nc2.NetcdfFile {
 
   @Override
   protected Array readData(ucar.nc2.Variable v, Section section) throws IOException, InvalidRangeException {
+    DodsReadPlanner planner = this.planner;
+    if (planner != null && planner.canPlan(v)) {
+      return planner.read(v, section);
+    }
+    return readDataFromServer(v, section);
+  }
+
+  // read one section of one variable in its own request
+  Array readDataFromServer(ucar.nc2.Variable v, Section section) throws IOException, InvalidRangeException {
     // if (unlocked)
     // throw new IllegalStateException("File is unlocked - cannot use");
 
@@ -2355,6 +2411,10 @@ public class DODSNetcdfFile extends ucar.nc2.NetcdfFile {
     buffOS = new ByteArrayOutputStream(8000);
     das.print(buffOS);
     f.format("%s%n", new String(buffOS.toByteArray(), StandardCharsets.UTF_8));
+
+    if (planner != null) {
+      planner.showStats(f);
+    }
   }
 
   public String getFileTypeId() {
@@ -0,0 +1,556 @@
+/*
+ * Copyright (c) 1998-2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.dods;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Formatter;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import opendap.dap.DAP2Exception;
+import opendap.dap.DConnect2;
+import opendap.dap.DataDDS;
+import ucar.ma2.Array;
+import ucar.ma2.InvalidRangeException;
+import ucar.ma2.Range;
+import ucar.ma2.Section;
+import ucar.nc2.Variable;
+import ucar.nc2.util.DaemonExecutors;
+
+/**
+ * Plans the data requests of a DODSNetcdfFile, for reads of whole or partial numeric variables:
+ * <ul>
+ * <li>Reads made by concurrent callers within a short window are sent together in one constraint expression, and
+ * overlapping or adjacent hyperslabs of the same variable are merged into one.</li>
+ * <li>Requests larger than a maximum size are split along the outer dimension into several constraint expressions
+ * made in parallel.</li>
+ * <li>Recently fetched hyperslabs are kept in a byte bounded LRU cache, so that repeated subsetting of the same
+ * region does not go back to the server.</li>
+ * </ul>
+ * Each is off by default; see DODSNetcdfFile.setBatchWindow, setMaxRequestSize and setSlabCacheSize.
+ */
+class DodsReadPlanner {
+  private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(DodsReadPlanner.class);
+
+  static final String BATCH_WINDOW_PROPERTY = "ucar.nc2.dods.batchWindowMsecs";
+  static final String MAX_REQUEST_BYTES_PROPERTY = "ucar.nc2.dods.maxRequestBytes";
+  static final String SLAB_CACHE_BYTES_PROPERTY = "ucar.nc2.dods.slabCacheBytes";
+
+  static final int MAX_PARALLEL_REQUESTS = 4;
+  // see DODSNetcdfFile.preloadData on the limits of GET request urls
+  private static final int MAX_URL_LENGTH = 4096;
+
+  private static ExecutorService requestExecutor;
+
+  private static synchronized ExecutorService getRequestExecutor() {
+    if (requestExecutor == null) {
+      requestExecutor = DaemonExecutors.newFixedThreadPool("DodsRequest", MAX_PARALLEL_REQUESTS);
+    }
+    return requestExecutor;
+  }
+
+  static long readLongProperty(String name) {
+    String s = System.getProperty(name);
+    if (s == null) {
+      return 0;
+    }
+    try {
+      return Long.parseLong(s.trim());
+    } catch (NumberFormatException e) {
+      logger.warn("-D{} is not a number: {}", name, s);
+      return 0;
+    }
+  }
+
+  /**
+   * Make a planner for a file, or return null if planning is turned off, or the dataset is a local file, whose
+   * constraint expressions are ignored.
+   */
+  static DodsReadPlanner create(DODSNetcdfFile ncfile, String datasetUrl, boolean acceptCompress, int batchWindowMsecs,
+      long maxRequestBytes, long slabCacheBytes) {
+    if (datasetUrl.startsWith("file:") || (batchWindowMsecs <= 0 && maxRequestBytes <= 0 && slabCacheBytes <= 0)) {
+      return null;
+    }
+    return new DodsReadPlanner(ncfile, datasetUrl, acceptCompress, batchWindowMsecs, maxRequestBytes,
+        slabCacheBytes);
+  }
+
+  //////////////////////////////////////////////////////////////////////////
+
+  /** A read of a section of a variable by one caller. */
+  private static class Request {
+    final Variable v;
+    final Section section;
+    final CompletableFuture<Array> result = new CompletableFuture<>();
+
+    Request(Variable v, Section section) {
+      this.v = v;
+      this.section = section;
+    }
+  }
+
+  /** A section of a variable to fetch, covering the sections of one or more requests. */
+  private static class Slab {
+    final Variable v;
+    Section section;
+    final List<Request> requests = new ArrayList<>();
+    Array data;
+
+    Slab(Request request) {
+      this.v = request.v;
+      this.section = request.section;
+      this.requests.add(request);
+    }
+
+    long bytes() {
+      return section.computeSize() * v.getElementSize();
+    }
+  }
+
+  /** A piece of a slab fetched in one constraint expression, along with pieces of other variables. */
+  private static class Projection {
+    final Slab slab;
+    final Section section;
+    Array data;
+
+    Projection(Slab slab, Section section) {
+      this.slab = slab;
+      this.section = section;
+    }
+  }
+
+  private static class SlabKey {
+    final String varName;
+    final Section section;
+
+    SlabKey(String varName, Section section) {
+      this.varName = varName;
+      this.section = section;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof SlabKey)) {
+        return false;
+      }
+      SlabKey other = (SlabKey) o;
+      return varName.equals(other.varName) && section.equals(other.section);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(varName, section);
+    }
+  }
+
+  private final DODSNetcdfFile ncfile;
+  private final String datasetUrl;
+  private final boolean acceptCompress;
+  private final int batchWindowMsecs;
+  private final long maxRequestBytes;
+  private final int maxQueryLength;
+  private final Cache<SlabKey, Array> slabCache; // null if not caching
+  private final ConvertD2N convertD2N = new ConvertD2N();
+  private final ConcurrentLinkedQueue<DConnect2> idleConnections = new ConcurrentLinkedQueue<>();
+
+  private final Object lock = new Object();
+  private List<Request> pending = new ArrayList<>(); // guarded by lock
+  private volatile boolean closed;
+
+  private DodsReadPlanner(DODSNetcdfFile ncfile, String datasetUrl, boolean acceptCompress, int batchWindowMsecs,
+      long maxRequestBytes, long slabCacheBytes) {
+    this.ncfile = ncfile;
+    this.datasetUrl = datasetUrl;
+    this.acceptCompress = acceptCompress;
+    this.batchWindowMsecs = Math.max(batchWindowMsecs, 0);
+    this.maxRequestBytes = Math.max(maxRequestBytes, 0);
+    this.maxQueryLength = MAX_URL_LENGTH - datasetUrl.length();
+    if (slabCacheBytes > 0) {
+      Weigher<SlabKey, Array> weigher = (key, data) -> (int) Math.min(data.getSizeBytes(), Integer.MAX_VALUE);
+      this.slabCache = CacheBuilder.newBuilder().maximumWeight(slabCacheBytes).weigher(weigher).recordStats().build();
+    } else {
+      this.slabCache = null;
+    }
+  }
+
+  /** true if reads of v can be planned: a top level numeric variable with a fixed shape */
+  boolean canPlan(Variable v) {
+    return !closed && v.getRank() > 0 && v.getDataType().isNumeric() && !v.isVariableLength()
+        && !v.isMemberOfStructure();
+  }
+
+  /** Read a section of a variable, as DODSNetcdfFile.readData does. */
+  Array read(Variable v, Section section) throws IOException, InvalidRangeException {
+    section = Section.fill(section, v.getShape());
+    Array cached = readFromCache(v, section);
+    if (cached != null) {
+      return cached;
+    }
+
+    Request request = new Request(v, section);
+    if (batchWindowMsecs == 0) {
+      execute(Collections.singletonList(request));
+      return await(request);
+    }
+
+    boolean leader;
+    synchronized (lock) {
+      leader = pending.isEmpty();
+      pending.add(request);
+    }
+    if (leader) {
+      // wait for the reads of other callers, then make the requests for all of them
+      try {
+        Thread.sleep(batchWindowMsecs);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      List<Request> batch;
+      synchronized (lock) {
+        batch = pending;
+        pending = new ArrayList<>();
+      }
+      execute(batch);
+    }
+    return await(request);
+  }
+
+  private Array await(Request request) throws IOException {
+    try {
+      return request.result.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted reading " + request.v.getFullName(), e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause().getMessage() + "; " + request.v.getShortName() + " -- " + request.section,
+          e.getCause());
+    }
+  }
+
+  private Array readFromCache(Variable v, Section want) throws InvalidRangeException {
+    if (slabCache == null) {
+      return null;
+    }
+    for (Map.Entry<SlabKey, Array> entry : slabCache.asMap().entrySet()) {
+      SlabKey key = entry.getKey();
+      if (key.varName.equals(v.getFullName()) && contains(key.section, want)) {
+        slabCache.getIfPresent(key); // mark as recently used
+        Array result = subset(entry.getValue(), key.section, want);
+        return result == entry.getValue() ? result.copy() : result; // dont let callers modify the cached data
+      }
+    }
+    return null;
+  }
+
+  // have is a stride 1 section
+  private static boolean contains(Section have, Section want) {
+    for (int i = 0; i < have.getRank(); i++) {
+      Range h = have.getRange(i);
+      Range w = want.getRange(i);
+      if (w.first() < h.first() || w.last() > h.last()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // the want section of data, which holds the have section of the variable
+  private static Array subset(Array data, Section have, Section want) throws InvalidRangeException {
+    if (have.equals(want)) {
+      return data;
+    }
+    List<Range> relative = new ArrayList<>(want.getRank());
+    for (int i = 0; i < want.getRank(); i++) {
+      Range w = want.getRange(i);
+      int first = have.getRange(i).first();
+      relative.add(new Range(w.first() - first, w.last() - first, w.stride()));
+    }
+    return data.sectionNoReduce(relative).copy();
+  }
+
+  //////////////////////////////////////////////////////////////////////////
+
+  // Fetch the data of all the requests and complete them.
+  private void execute(List<Request> batch) {
+    try {
+      List<Slab> slabs = mergeRequests(batch);
+      List<List<Projection>> plan = makePlan(slabs);
+      fetch(plan);
+      for (List<Projection> projections : plan) {
+        for (Projection projection : projections) {
+          assemble(projection);
+        }
+      }
+      for (Slab slab : slabs) {
+        finishSlab(slab);
+      }
+    } catch (Throwable t) {
+      for (Request request : batch) {
+        request.result.completeExceptionally(t);
+      }
+    }
+  }
+
+  // Merge the requests for each variable into as few slabs as possible.
+  private List<Slab> mergeRequests(List<Request> batch) throws InvalidRangeException {
+    Map<Variable, List<Slab>> byVariable = new LinkedHashMap<>();
+    for (Request request : batch) {
+      List<Slab> slabs = byVariable.computeIfAbsent(request.v, v -> new ArrayList<>());
+      Slab merged = null;
+      if (isStrideOne(request.section)) {
+        for (Slab slab : slabs) {
+          if (isStrideOne(slab.section)) {
+            Section union = union(slab.section, request.section);
+            // overlapping or adjacent, so the union reads no more than the two separately
+            if (union.computeSize() <= slab.section.computeSize() + request.section.computeSize()) {
+              slab.section = union;
+              slab.requests.add(request);
+              merged = slab;
+              break;
+            }
+          }
+        }
+      }
+      if (merged == null) {
+        slabs.add(new Slab(request));
+      }
+    }
+
+    List<Slab> result = new ArrayList<>();
+    byVariable.values().forEach(result::addAll);
+    return result;
+  }
+
+  private static boolean isStrideOne(Section section) {
+    for (Range r : section.getRanges()) {
+      if (r.stride() != 1) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static Section union(Section a, Section b) throws InvalidRangeException {
+    List<Range> ranges = new ArrayList<>(a.getRank());
+    for (int i = 0; i < a.getRank(); i++) {
+      Range ra = a.getRange(i);
+      Range rb = b.getRange(i);
+      ranges.add(new Range(Math.min(ra.first(), rb.first()), Math.max(ra.last(), rb.last())));
+    }
+    return new Section(ranges);
+  }
+
+  // Group the slabs, or pieces of oversized slabs, into the constraint expressions to send.
+  private List<List<Projection>> makePlan(List<Slab> slabs) throws InvalidRangeException {
+    List<List<Projection>> plan = new ArrayList<>();
+    List<Projection> current = new ArrayList<>();
+    Set<Variable> currentVars = new HashSet<>();
+    int currentLength = 0;
+
+    for (Slab slab : slabs) {
+      if (maxRequestBytes > 0 && slab.bytes() > maxRequestBytes && slab.section.getRange(0).length() > 1) {
+        for (Section piece : split(slab.section, slab.v.getElementSize(), maxRequestBytes)) {
+          plan.add(Collections.singletonList(new Projection(slab, piece)));
+        }
+        continue;
+      }
+
+      Projection projection = new Projection(slab, slab.section);
+      int length = makeProjection(projection).length() + 1;
+      if (!current.isEmpty() && (currentVars.contains(slab.v) || currentLength + length > maxQueryLength)) {
+        plan.add(current);
+        current = new ArrayList<>();
+        currentVars = new HashSet<>();
+        currentLength = 0;
+      }
+      current.add(projection);
+      currentVars.add(slab.v);
+      currentLength += length;
+    }
+    if (!current.isEmpty()) {
+      plan.add(current);
+    }
+    return plan;
+  }
+
+  // split a section along the outer dimension into pieces of at most maxBytes
+  static List<Section> split(Section section, int elementSize, long maxBytes) throws InvalidRangeException {
+    Range outer = section.getRange(0);
+    long rowBytes = section.computeSize() / outer.length() * elementSize;
+    int rowsPerPiece = (int) Math.max(maxBytes / Math.max(rowBytes, 1), 1);
+
+    List<Section> pieces = new ArrayList<>();
+    for (int start = 0; start < outer.length(); start += rowsPerPiece) {
+      int end = Math.min(start + rowsPerPiece, outer.length()) - 1;
+      // a new Section for each piece, as replaceRange modifies the section it is called on
+      List<Range> ranges = new ArrayList<>(section.getRanges());
+      ranges.set(0, new Range(outer.element(start), outer.element(end), outer.stride()));
+      pieces.add(new Section(ranges));
+    }
+    return pieces;
+  }
+
+  private String makeProjection(Projection projection) {
+    StringBuilder buff = new StringBuilder();
+    buff.append(DODSNetcdfFile.getDODSConstraintName(projection.slab.v));
+    for (Range r : projection.section.getRanges()) {
+      buff.append('[').append(r.first()).append(':').append(r.stride()).append(':').append(r.last()).append(']');
+    }
+    return buff.toString();
+  }
+
+  // Send the constraint expressions, in parallel if there are more than one.
+  private void fetch(List<List<Projection>> plan) throws IOException {
+    if (plan.size() == 1) {
+      fetch(plan.get(0), false);
+      return;
+    }
+
+    List<Future<?>> futures = new ArrayList<>(plan.size());
+    for (List<Projection> projections : plan) {
+      futures.add(getRequestExecutor().submit(() -> {
+        fetch(projections, true);
+        return null;
+      }));
+    }
+    IOException failure = null;
+    for (Future<?> future : futures) {
+      try {
+        future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        failure = new IOException("Interrupted reading " + datasetUrl, e);
+      } catch (ExecutionException e) {
+        if (failure == null) {
+          failure = e.getCause() instanceof IOException ? (IOException) e.getCause()
+              : new IOException("Failed reading " + datasetUrl, e.getCause());
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private void fetch(List<Projection> projections, boolean ownConnection) throws IOException {
+    StringBuilder ce = new StringBuilder();
+    for (Projection projection : projections) {
+      ce.append(ce.length() == 0 ? "" : ",").append(makeProjection(projection));
+    }
+
+    try {
+      DataDDS dataDDS;
+      if (ownConnection) {
+        DConnect2 connection = idleConnections.poll();
+        if (connection == null) {
+          connection = new DConnect2(datasetUrl, acceptCompress);
+        }
+        try {
+          dataDDS = ncfile.readDataDDSfromServer(ce.toString(), connection);
+        } finally {
+          idleConnections.add(connection);
+        }
+      } else {
+        dataDDS = ncfile.readDataDDSfromServer(ce.toString());
+      }
+
+      DodsV root = DodsV.parseDataDDS(dataDDS);
+      for (Projection projection : projections) {
+        Variable v = projection.slab.v;
+        for (DodsV element : root.children) {
+          if (element.getFullName().equals(v.getFullName())) {
+            projection.data = convertD2N.convertTopVariable(v, projection.section.getRanges(), element);
+            break;
+          }
+        }
+      }
+    } catch (DAP2Exception | opendap.dap.parsers.ParseException e) {
+      throw new IOException(e.getMessage() + "; " + ce, e);
+    }
+
+    // not in the response, eg an array of a Grid: read it on its own, the way DODSNetcdfFile does
+    for (Projection projection : projections) {
+      if (projection.data == null) {
+        try {
+          projection.data = ncfile.readDataFromServer(projection.slab.v, projection.section);
+        } catch (InvalidRangeException e) {
+          throw new IOException(e.getMessage(), e);
+        }
+      }
+    }
+  }
+
+  // Put the data of a projection into its slab: all of it, or some rows if the slab was split
+  private void assemble(Projection projection) throws InvalidRangeException {
+    Slab slab = projection.slab;
+    if (projection.section.equals(slab.section)) {
+      slab.data = projection.data;
+      return;
+    }
+    if (slab.data == null) {
+      slab.data = Array.factory(slab.v.getDataType(), slab.section.getShape());
+    }
+    copyRows(projection.data, projection.section, slab.data, slab.section);
+  }
+
+  // copy the data of a piece made by split into the data of the whole section
+  static void copyRows(Array pieceData, Section piece, Array data, Section section) {
+    Range outer = section.getRange(0);
+    int startRow = (piece.getRange(0).first() - outer.first()) / outer.stride();
+    long rowSize = section.computeSize() / outer.length();
+    Array.arraycopy(pieceData, 0, data, (int) (startRow * rowSize), (int) pieceData.getSize());
+  }
+
+  // Cache a slab, and complete its requests.
+  private void finishSlab(Slab slab) throws InvalidRangeException {
+    boolean caching = slabCache != null && isStrideOne(slab.section);
+    for (Request request : slab.requests) {
+      Array result = subset(slab.data, slab.section, request.section);
+      request.result.complete(caching && result == slab.data ? result.copy() : result);
+    }
+    if (caching) {
+      slabCache.put(new SlabKey(slab.v.getFullName(), slab.section), slab.data);
+    }
+  }
+
+  //////////////////////////////////////////////////////////////////////////
+
+  void close() {
+    closed = true;
+    DConnect2 connection;
+    while ((connection = idleConnections.poll()) != null) {
+      connection.close();
+    }
+    if (slabCache != null) {
+      slabCache.invalidateAll();
+    }
+  }
+
+  void showStats(Formatter f) {
+    f.format("DodsReadPlanner batchWindow=%d msecs maxRequestBytes=%d%n", batchWindowMsecs, maxRequestBytes);
+    if (slabCache != null) {
+      f.format("  slab cache %s%n", slabCache.stats());
+    }
+  }
+}
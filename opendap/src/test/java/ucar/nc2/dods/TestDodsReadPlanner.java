@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 1998-2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.dods;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.List;
+import org.junit.Test;
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.ma2.InvalidRangeException;
+import ucar.ma2.Section;
+
+/** Test splitting oversized requests of {@link DodsReadPlanner}, and putting the pieces back together. */
+public class TestDodsReadPlanner {
+
+  @Test
+  public void shouldSplitIntoPieces() throws InvalidRangeException {
+    Section section = new Section("2:11,0:3,1:2");
+    String original = section.toString();
+    // 8 ints in a row, so 3 rows of 32 bytes to a piece
+    List<Section> pieces = DodsReadPlanner.split(section, 4, 100);
+
+    assertThat(pieces).hasSize(4);
+    assertThat(pieces.get(0)).isEqualTo(new Section("2:4,0:3,1:2"));
+    assertThat(pieces.get(1)).isEqualTo(new Section("5:7,0:3,1:2"));
+    assertThat(pieces.get(2)).isEqualTo(new Section("8:10,0:3,1:2"));
+    assertThat(pieces.get(3)).isEqualTo(new Section("11:11,0:3,1:2"));
+    assertThat(section.toString()).isEqualTo(original);
+  }
+
+  @Test
+  public void shouldSplitStridedSection() throws InvalidRangeException {
+    Section section = new Section("1:19:3,0:4");
+    List<Section> pieces = DodsReadPlanner.split(section, 8, 80);
+
+    assertThat(pieces).hasSize(4);
+    assertThat(pieces.get(0)).isEqualTo(new Section("1:4:3,0:4"));
+    assertThat(pieces.get(3)).isEqualTo(new Section("19:19:3,0:4"));
+    assertThat(section).isEqualTo(new Section("1:19:3,0:4"));
+  }
+
+  @Test
+  public void shouldAssemblePieces() throws InvalidRangeException {
+    int[] shape = {12, 4, 3};
+    Array var = Array.makeArray(DataType.INT, (int) Section.computeSize(shape), 0, 1).reshape(shape);
+    Section section = new Section("2:11:1,0:3,1:2");
+    Array expected = var.section(section.getRanges());
+
+    Array data = Array.factory(DataType.INT, section.getShape());
+    List<Section> pieces = DodsReadPlanner.split(section, 4, 100);
+    assertThat(pieces.size()).isGreaterThan(1);
+    for (Section piece : pieces) {
+      // as the server would return it
+      Array pieceData = var.section(piece.getRanges()).copy();
+      DodsReadPlanner.copyRows(pieceData, piece, data, section);
+    }
+
+    assertThat(data.getShape()).isEqualTo(expected.getShape());
+    assertThat(data.copyTo1DJavaArray()).isEqualTo(expected.copyTo1DJavaArray());
+  }
+
+  @Test
+  public void shouldAssembleStridedPieces() throws InvalidRangeException {
+    int[] shape = {20, 5};
+    Array var = Array.makeArray(DataType.DOUBLE, (int) Section.computeSize(shape), 0.5, 1).reshape(shape);
+    Section section = new Section("1:19:3,0:4");
+    Array expected = var.section(section.getRanges());
+
+    Array data = Array.factory(DataType.DOUBLE, section.getShape());
+    for (Section piece : DodsReadPlanner.split(section, 8, 80)) {
+      DodsReadPlanner.copyRows(var.section(piece.getRanges()).copy(), piece, data, section);
+    }
+
+    assertThat(data.copyTo1DJavaArray()).isEqualTo(expected.copyTo1DJavaArray());
+  }
+}
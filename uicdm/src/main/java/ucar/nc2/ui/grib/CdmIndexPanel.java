@@ -405,7 +405,7 @@ public class CdmIndexPanel extends JPanel {
               SparseArray<Record> sa = v.getSparseArray();
               int ntracks = sa.getTotalSize();
               int nrecords = sa.getContent().size();
-              int memEstForSA = 276 + nrecords * 40 + ntracks * 4;
+              int memEstForSA = 276 + nrecords * 20 + ntracks * 4; // records are kept in primitive arrays
               int memEstBytes = 280 + memEstForSA;
               f.format("%6d %6d %-50s nrecords=%6d%n", memEstBytes, memEstForSA, bean.getName(), nrecords);
               bytesTotal += memEstBytes;
@@ -477,7 +477,7 @@ public class CdmIndexPanel extends JPanel {
               SparseArray<GribCollectionImmutable.Record> sa = v.getSparseArray();
               int ntracks = sa.getTotalSize();
               int nrecords = sa.getContent().size();
-              int memEstForSA = 276 + nrecords * 40 + ntracks * 4;
+              int memEstForSA = 276 + nrecords * 20 + ntracks * 4; // records are kept in primitive arrays
               int memEstBytes = 280 + memEstForSA;
               f.format("%6d %6d %-50s nrecords=%6d%n", memEstBytes, memEstForSA, bean.getName(), nrecords);
               bytesTotal += memEstBytes;